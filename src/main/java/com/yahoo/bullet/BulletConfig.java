@@ -35,6 +35,19 @@ public class BulletConfig extends Config {
     public static final String FILTER_BOLT_CPU_LOAD = "topology.filter.bolt.cpu.load";
     public static final String FILTER_BOLT_MEMORY_ON_HEAP_LOAD = "topology.filter.bolt.memory.on.heap.load";
     public static final String FILTER_BOLT_MEMORY_OFF_HEAP_LOAD = "topology.filter.bolt.memory.off.heap.load";
+    public static final String FILTER_BOLT_FIELD_MEMO_ENABLE = "topology.filter.bolt.field.memo.enable";
+    public static final String FILTER_BOLT_BATCH_SIZE = "topology.filter.bolt.batch.size";
+    public static final String FILTER_BOLT_BATCH_TIMEOUT_MS = "topology.filter.bolt.batch.timeout.ms";
+    public static final String FILTER_BOLT_WORKER_THREADS = "topology.filter.bolt.worker.threads";
+    public static final String FILTER_BOLT_SHARED_RULES_ENABLE = "topology.filter.bolt.shared.rules.enable";
+    public static final String FILTER_BOLT_RULE_TIMING_INTERVAL = "topology.filter.bolt.rule.timing.interval";
+    public static final String FILTER_BOLT_RULE_CPU_BUDGET_MS = "topology.filter.bolt.rule.cpu.budget.ms";
+    public static final String FILTER_BOLT_SHEDDING_ENABLE = "topology.filter.bolt.shedding.enable";
+    public static final String FILTER_BOLT_SHEDDING_WINDOW_MS = "topology.filter.bolt.shedding.window.ms";
+    public static final String FILTER_BOLT_SHEDDING_HIGH_LOAD = "topology.filter.bolt.shedding.high.load";
+    public static final String FILTER_BOLT_SHEDDING_LOW_LOAD = "topology.filter.bolt.shedding.low.load";
+    public static final String FILTER_BOLT_SHEDDING_MAX_FRACTION = "topology.filter.bolt.shedding.max.fraction";
+    public static final String FILTER_BOLT_FEEDBACK_TICK_TIMEOUT = "topology.filter.bolt.feedback.tick.timeout";
     public static final String JOIN_BOLT_PARALLELISM = "topology.join.bolt.parallelism";
     public static final String JOIN_BOLT_CPU_LOAD = "topology.join.bolt.cpu.load";
     public static final String JOIN_BOLT_MEMORY_ON_HEAP_LOAD = "topology.join.bolt.memory.on.heap.load";
@@ -46,13 +59,17 @@ public class BulletConfig extends Config {
     public static final String RETURN_BOLT_MEMORY_ON_HEAP_LOAD = "topology.return.bolt.memory.on.heap.load";
     public static final String RETURN_BOLT_MEMORY_OFF_HEAP_LOAD = "topology.return.bolt.memory.off.heap.load";
     public static final String TICK_INTERVAL_SECS = "topology.tick.interval.secs";
+    public static final String MAX_CONCURRENT_RULES = "topology.max.concurrent.rules";
 
     public static final String SPECIFICATION_DEFAULT_DURATION = "rule.default.duration";
     public static final String SPECIFICATION_MAX_DURATION = "rule.max.duration";
+    public static final String FILTER_MAX_VALUES = "rule.filter.max.values";
     public static final String AGGREGATION_DEFAULT_SIZE = "rule.aggregation.default.size";
     public static final String AGGREGATION_MAX_SIZE = "rule.aggregation.max.size";
     public static final String AGGREGATION_COMPOSITE_FIELD_SEPARATOR = "rule.aggregation.composite.field.separator";
 
+    public static final String GROUP_AGGREGATION_MAX_SIZE = "rule.aggregation.group.max.size";
+
     public static final String RAW_AGGREGATION_MICRO_BATCH_SIZE = "rule.aggregation.raw.micro.batch.size";
 
     public static final String COUNT_DISTINCT_AGGREGATION_SKETCH_ENTRIES = "rule.aggregation.count.distinct.sketch.entries";
@@ -60,6 +77,12 @@ public class BulletConfig extends Config {
     public static final String COUNT_DISTINCT_AGGREGATION_SKETCH_FAMILY = "rule.aggregation.count.distinct.sketch.family";
     public static final String COUNT_DISTINCT_AGGREGATION_SKETCH_RESIZE_FACTOR = "rule.aggregation.count.distinct.sketch.resize.factor";
 
+    public static final String TOP_K_AGGREGATION_SKETCH_ENTRIES = "rule.aggregation.top.k.sketch.entries";
+    public static final String TOP_K_AGGREGATION_SKETCH_ERROR_TYPE = "rule.aggregation.top.k.sketch.error.type";
+
+    public static final String PERCENTILE_AGGREGATION_SKETCH_ENTRIES = "rule.aggregation.percentile.sketch.entries";
+    public static final String PERCENTILE_AGGREGATION_MAX_POINTS = "rule.aggregation.percentile.max.points";
+
     public static final String RECORD_INJECT_TIMESTAMP = "record.inject.timestamp.enable";
     public static final String RECORD_INJECT_TIMESTAMP_KEY = "record.inject.timestamp.key";
 
@@ -164,6 +164,7 @@ public class Topology {
         builder.setBolt(TopologyConstants.FILTER_COMPONENT, new FilterBolt(recordComponent, tickInterval), filterBoltParallelism)
                .shuffleGrouping(recordComponent)
                .allGrouping(TopologyConstants.PREPARE_COMPONENT, TopologyConstants.ARGS_STREAM)
+               .allGrouping(TopologyConstants.JOIN_COMPONENT, TopologyConstants.FEEDBACK_STREAM)
                .setCPULoad(filterBoltCPULoad)
                .setMemoryLoad(filterBoltMemoryOnheapLoad, filterBoltMemoryOffHeapLoad);
 
@@ -171,6 +172,9 @@ public class Topology {
                .fieldsGrouping(TopologyConstants.PREPARE_COMPONENT, TopologyConstants.ARGS_STREAM, new Fields(TopologyConstants.ID_FIELD))
                .fieldsGrouping(TopologyConstants.PREPARE_COMPONENT, TopologyConstants.RETURN_STREAM, new Fields(TopologyConstants.ID_FIELD))
                .fieldsGrouping(TopologyConstants.FILTER_COMPONENT, TopologyConstants.FILTER_STREAM, new Fields(TopologyConstants.ID_FIELD))
+               .fieldsGrouping(TopologyConstants.FILTER_COMPONENT, TopologyConstants.ERROR_STREAM, new Fields(TopologyConstants.ID_FIELD))
+               .fieldsGrouping(TopologyConstants.FILTER_COMPONENT, TopologyConstants.SHED_STREAM, new Fields(TopologyConstants.ID_FIELD))
+               .fieldsGrouping(TopologyConstants.FILTER_COMPONENT, TopologyConstants.FLUSH_STREAM, new Fields(TopologyConstants.ID_FIELD))
                .setCPULoad(joinBoltCPULoad)
                .setMemoryLoad(joinBoltMemoryOnHeapLoad, joinBoltMemoryOffHeapLoad);
 
@@ -5,22 +5,104 @@
  */
 package com.yahoo.bullet.drpc;
 
+import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.operations.predicates.SharedPredicates;
+import com.yahoo.bullet.parsing.Error;
 import com.yahoo.bullet.parsing.ParsingException;
 import com.yahoo.bullet.record.BulletRecord;
 import com.yahoo.bullet.tracing.FilterRule;
+import com.yahoo.bullet.tracing.RuleRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.storm.Config;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
 import org.apache.storm.tuple.Values;
+import org.apache.storm.utils.RotatingMap;
 import org.apache.storm.utils.Utils;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class FilterBolt extends RuleBolt<FilterRule> {
     public static final String FILTER_STREAM = Utils.DEFAULT_STREAM_ID;
+    /** Rules that are refused or terminated here are sent to the JoinBolt with an error on this stream. */
+    public static final String ERROR_STREAM = "error";
+    /** If load is shed, the records that arrived and were shed for each rule are sent on this stream every tick. */
+    public static final String SHED_STREAM = "shed";
+    /** When a rule expires here, its id is sent on this stream after its data, so the JoinBolt knows it has it all. */
+    public static final String FLUSH_STREAM = "flush";
+    public static final String SHARED_FILTER_HIT_RATE_METRIC = "shared_filter_hit_rate";
+    /** The total and the largest estimated CPU cost of the active rules. The cost of each rule is logged when it ends. */
+    public static final String RULE_CPU_METRIC = "rule_cpu_ms";
+    public static final String RULE_CPU_TOTAL = "total";
+    public static final String RULE_CPU_MAX = "max";
+    public static final String SHED_FRACTION_METRIC = "shed_fraction";
+    public static final int DEFAULT_METRIC_INTERVAL = 60;
+    public static final int DEFAULT_BATCH_SIZE = 1;
+    public static final int DEFAULT_BATCH_TIMEOUT_MS = 100;
+    public static final int DEFAULT_WORKER_THREADS = 1;
+    public static final int DEFAULT_RULE_TIMING_INTERVAL = 16;
+    public static final long DEFAULT_RULE_CPU_BUDGET_MS = 0L;
+    public static final long DEFAULT_SHEDDING_WINDOW_MS = 1000L;
+    public static final double DEFAULT_SHEDDING_HIGH_LOAD = 0.95;
+    public static final double DEFAULT_SHEDDING_LOW_LOAD = 0.8;
+    public static final double DEFAULT_SHEDDING_MAX_FRACTION = 0.9;
+    public static final int DEFAULT_FEEDBACK_TICKOUT = 3;
+    public static final String CPU_BUDGET_EXCEEDED_RESOLUTION = "Please try again with fewer or simpler filters, such " +
+                                                                "as fewer regular expressions";
     private String recordComponent;
+    // Null if rules are parsed by each FilterBolt
+    private RuleRegistry registry;
+
+    // The rules are split across these. Each is only used by one thread at a time.
+    private RulePartition[] partitions;
+    private Map<Long, RulePartition> owners;
+    // The rules that the JoinBolt was done with before they arrived here, so that they are not run when they do
+    private RotatingMap<Long, Boolean> finishedRules;
+    // Only used if there is more than one partition. Partitions other than the first are checked in the pool.
+    private ForkJoinPool pool;
+    private PartitionCheck[] checks;
+    private RulePartition.Pending[] pending;
+    // Created once so that emitting does not allocate
+    private RulePartition.Emitter emitter;
+    private long budgetMS;
+
+    // Null if load is not shed
+    private LoadShedder shedder;
+    // The records that had arrived and been shed when the shedding for each rule was last reported
+    private Map<Long, long[]> shedMarks;
+
+    // Only used if records are checked in batches
+    private int batchSize;
+    private List<Tuple> batchTuples;
+    private long batchTimeout;
+    private long batchStart;
+
+    /*
+     * Checks a record or, if there is none, a batch, against a partition. Reused for every record.
+     */
+    private static class PartitionCheck extends RecursiveAction {
+        private final RulePartition partition;
+        private BulletRecord record;
+
+        private PartitionCheck(RulePartition partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        protected void compute() {
+            checkPartition(partition, record);
+        }
+    }
 
     /**
      * Default constructor.
@@ -47,6 +129,80 @@ public class FilterBolt extends RuleBolt<FilterRule> {
         this.recordComponent = recordComponent;
     }
 
+    @Override
+    public void prepare(Map stormConf, TopologyContext context, OutputCollector collector) {
+        super.prepare(stormConf, context, collector);
+        emitter = this::emitData;
+        Boolean shareFields = (Boolean) configuration.getOrDefault(BulletConfig.FILTER_BOLT_FIELD_MEMO_ENABLE, true);
+        Boolean shareRules = (Boolean) configuration.getOrDefault(BulletConfig.FILTER_BOLT_SHARED_RULES_ENABLE, true);
+        registry = shareRules ? RuleRegistry.getInstance() : null;
+        batchSize = ((Number) configuration.getOrDefault(BulletConfig.FILTER_BOLT_BATCH_SIZE,
+                                                         DEFAULT_BATCH_SIZE)).intValue();
+        if (batchSize > 1) {
+            batchTuples = new ArrayList<>(batchSize);
+            batchTimeout = ((Number) configuration.getOrDefault(BulletConfig.FILTER_BOLT_BATCH_TIMEOUT_MS,
+                                                                DEFAULT_BATCH_TIMEOUT_MS)).longValue();
+        }
+
+        int timingInterval = ((Number) configuration.getOrDefault(BulletConfig.FILTER_BOLT_RULE_TIMING_INTERVAL,
+                                                                  DEFAULT_RULE_TIMING_INTERVAL)).intValue();
+        timingInterval = Math.max(timingInterval, 0);
+        budgetMS = ((Number) configuration.getOrDefault(BulletConfig.FILTER_BOLT_RULE_CPU_BUDGET_MS,
+                                                        DEFAULT_RULE_CPU_BUDGET_MS)).longValue();
+        long budget = TimeUnit.MILLISECONDS.toNanos(Math.max(budgetMS, 0L));
+
+        int threads = ((Number) configuration.getOrDefault(BulletConfig.FILTER_BOLT_WORKER_THREADS,
+                                                           DEFAULT_WORKER_THREADS)).intValue();
+        threads = Math.max(threads, 1);
+        partitions = new RulePartition[threads];
+        owners = new HashMap<>();
+        int feedbackTickout = ((Number) configuration.getOrDefault(BulletConfig.FILTER_BOLT_FEEDBACK_TICK_TIMEOUT,
+                                                                   DEFAULT_FEEDBACK_TICKOUT)).intValue();
+        finishedRules = new RotatingMap<>(feedbackTickout);
+        // The first partition is checked on this thread so it can emit directly
+        partitions[0] = new RulePartition(shareFields, batchSize, timingInterval, budget, emitter);
+        if (threads > 1) {
+            log.info("Checking rules on {} threads", threads);
+            pool = new ForkJoinPool(threads - 1);
+            checks = new PartitionCheck[threads];
+            pending = new RulePartition.Pending[threads];
+            for (int i = 1; i < threads; ++i) {
+                pending[i] = new RulePartition.Pending();
+                partitions[i] = new RulePartition(shareFields, batchSize, timingInterval, budget, pending[i]);
+                checks[i] = new PartitionCheck(partitions[i]);
+            }
+        }
+
+        Boolean shed = (Boolean) configuration.getOrDefault(BulletConfig.FILTER_BOLT_SHEDDING_ENABLE, false);
+        if (shed) {
+            shedder = makeShedder(configuration);
+            shedMarks = new HashMap<>();
+        }
+
+        Number interval = (Number) stormConf.get(Config.TOPOLOGY_BUILTIN_METRICS_BUCKET_SIZE_SECS);
+        context.registerMetric(SHARED_FILTER_HIT_RATE_METRIC, this::getAndResetHitRate,
+                               interval == null ? DEFAULT_METRIC_INTERVAL : interval.intValue());
+        context.registerMetric(RULE_CPU_METRIC, this::getRuleCosts,
+                               interval == null ? DEFAULT_METRIC_INTERVAL : interval.intValue());
+        if (shedder != null) {
+            context.registerMetric(SHED_FRACTION_METRIC, shedder::getFraction,
+                                   interval == null ? DEFAULT_METRIC_INTERVAL : interval.intValue());
+        }
+    }
+
+    private static LoadShedder makeShedder(Map configuration) {
+        long window = ((Number) configuration.getOrDefault(BulletConfig.FILTER_BOLT_SHEDDING_WINDOW_MS,
+                                                           DEFAULT_SHEDDING_WINDOW_MS)).longValue();
+        double high = ((Number) configuration.getOrDefault(BulletConfig.FILTER_BOLT_SHEDDING_HIGH_LOAD,
+                                                           DEFAULT_SHEDDING_HIGH_LOAD)).doubleValue();
+        double low = ((Number) configuration.getOrDefault(BulletConfig.FILTER_BOLT_SHEDDING_LOW_LOAD,
+                                                          DEFAULT_SHEDDING_LOW_LOAD)).doubleValue();
+        double max = ((Number) configuration.getOrDefault(BulletConfig.FILTER_BOLT_SHEDDING_MAX_FRACTION,
+                                                          DEFAULT_SHEDDING_MAX_FRACTION)).doubleValue();
+        log.info("Shedding up to {} of the records if busier than {} of the time", max, high);
+        return new LoadShedder(TimeUnit.MILLISECONDS.toNanos(window), high, low, max, System.nanoTime());
+    }
+
     private TupleType.Type getCustomType(Tuple tuple) {
         return recordComponent.equals(tuple.getSourceComponent()) ? TupleType.Type.RECORD_TUPLE : null;
     }
@@ -54,17 +210,28 @@ public class FilterBolt extends RuleBolt<FilterRule> {
     @Override
     public void execute(Tuple tuple) {
         // If it isn't any of our default TupleTypes, check if the component is from our custom source
-        TupleType.Type type = TupleType.classify(tuple).orElse(getCustomType(tuple));
+        TupleType.Type type = TupleType.classifyOrNull(tuple);
+        type = type == null ? getCustomType(tuple) : type;
         switch (type) {
             case TICK_TUPLE:
-                emitForRules(retireRules());
+                retire();
+                emitShed();
+                finishedRules.rotate();
                 break;
             case RULE_TUPLE:
+                checkBatch();
                 initializeRule(tuple);
                 break;
-            case RECORD_TUPLE:
-                checkRule(tuple);
+            case FEEDBACK_TUPLE:
+                removeRule(tuple);
                 break;
+            case RECORD_TUPLE:
+                if (shedder != null) {
+                    shedOrCheck(tuple);
+                    return;
+                }
+                onRecord(tuple);
+                return;
             default:
                 // May want to throw an error here instead of not acking
                 log.error("Unknown tuple encountered: {}", type);
@@ -73,37 +240,298 @@ public class FilterBolt extends RuleBolt<FilterRule> {
         collector.ack(tuple);
     }
 
+    private void onRecord(Tuple tuple) {
+        // Rules are retired as soon as a record arrives after they expire instead of waiting for a tick
+        if (hasExpiredRules()) {
+            retire();
+        }
+        if (batchTuples != null) {
+            // The tuple is acked when its batch is checked
+            addToBatch(tuple);
+            return;
+        }
+        checkRule(tuple);
+        collector.ack(tuple);
+    }
+
+    private void shedOrCheck(Tuple tuple) {
+        long start = System.nanoTime();
+        if (shedder.shouldShed()) {
+            collector.ack(tuple);
+            return;
+        }
+        onRecord(tuple);
+        shedder.addBusyTime(start, System.nanoTime());
+    }
+
     @Override
     public void declareOutputFields(OutputFieldsDeclarer declarer) {
         declarer.declare(new Fields(TopologyConstants.ID_FIELD, TopologyConstants.RECORD_FIELD));
+        declarer.declareStream(ERROR_STREAM, new Fields(TopologyConstants.ID_FIELD, TopologyConstants.ERROR_FIELD,
+                                                        TopologyConstants.RESOLUTION_FIELD));
+        declarer.declareStream(SHED_STREAM, new Fields(TopologyConstants.ID_FIELD, TopologyConstants.ARRIVED_FIELD,
+                                                       TopologyConstants.SHED_FIELD));
+        declarer.declareStream(FLUSH_STREAM, new Fields(TopologyConstants.ID_FIELD));
+    }
+
+    @Override
+    public void cleanup() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        if (registry != null) {
+            rulesMap.forEach(registry::release);
+        }
     }
 
     @Override
     protected FilterRule getRule(Long id, String ruleString) {
         // No need to handle any errors here. The JoinBolt reports all errors.
         try {
-            return new FilterRule(ruleString, configuration);
+            return registry == null ? new FilterRule(ruleString, configuration) :
+                                      registry.acquire(id, ruleString, configuration);
         } catch (ParsingException | RuntimeException e) {
             return null;
         }
     }
 
+    @Override
+    protected void initializeRule(Tuple tuple) {
+        Long id = tuple.getLong(TopologyConstants.ID_POSITION);
+        if (finishedRules.remove(id) != null) {
+            log.info("Not running rule {} since it was already refused, satisfied or terminated", id);
+            return;
+        }
+        FilterRule existing = rulesMap.get(id);
+        super.initializeRule(tuple);
+        FilterRule rule = rulesMap.get(id);
+        if (rule == null || rule == existing) {
+            return;
+        }
+        if (existing != null) {
+            remove(id, existing);
+        }
+        RulePartition partition = getSmallestPartition();
+        partition.add(id, rule);
+        owners.put(id, partition);
+        if (shedder != null) {
+            shedMarks.put(id, new long[] {shedder.getArrived(), shedder.getShed()});
+        }
+    }
+
+    @Override
+    protected void refuseRule(Long id, Error error) {
+        emitError(id, error);
+    }
+
+    private void removeRule(Tuple tuple) {
+        Long id = tuple.getLong(TopologyConstants.ID_POSITION);
+        FilterRule rule = rulesMap.remove(id);
+        if (rule != null) {
+            log.info("Removed satisfied rule {}. There are {} active rule(s).", id, rulesMap.size());
+            remove(id, rule);
+        } else {
+            // The rule may have already expired here or it may not have arrived yet
+            finishedRules.put(id, true);
+        }
+    }
+
+    @Override
+    protected Map<Long, FilterRule> retireRules() {
+        Map<Long, FilterRule> retired = super.retireRules();
+        retired.forEach(this::retireRule);
+        return retired;
+    }
+
+    private void retireRule(Long id, FilterRule rule) {
+        // The shedding is reported before the data so that the JoinBolt has it when the data finishes the rule
+        emitShed(id);
+        remove(id, rule);
+    }
+
+    private void remove(Long id, FilterRule rule) {
+        log.info("Rule {} cost an estimated {} ms of CPU", id, TimeUnit.NANOSECONDS.toMillis(rule.getCost()));
+        owners.remove(id).remove(id, rule);
+        release(id, rule);
+        if (shedMarks != null) {
+            shedMarks.remove(id);
+        }
+    }
+
+    private void release(Long id, FilterRule rule) {
+        if (registry != null) {
+            registry.release(id, rule);
+        }
+    }
+
+    private void retire() {
+        // Records that came before are checked before the rules change
+        checkBatch();
+        emitForRules(retireRules());
+    }
+
+    private RulePartition getSmallestPartition() {
+        RulePartition smallest = partitions[0];
+        for (RulePartition partition : partitions) {
+            smallest = partition.size() < smallest.size() ? partition : smallest;
+        }
+        return smallest;
+    }
+
     private void checkRule(Tuple tuple) {
         BulletRecord record = (BulletRecord) tuple.getValue(0);
         // TODO Consider how to anchor this tuple
-        // For each rule that is satisfied, we will emit the data but we will not expire the rule.
-        rulesMap.entrySet().stream().filter(e -> e.getValue().consume(record)).forEach(this::emitForRule);
+        check(record);
+    }
+
+    private void addToBatch(Tuple tuple) {
+        long now = System.currentTimeMillis();
+        if (batchTuples.isEmpty()) {
+            batchStart = now;
+        }
+        BulletRecord record = (BulletRecord) tuple.getValue(0);
+        for (RulePartition partition : partitions) {
+            partition.addToBatch(record);
+        }
+        batchTuples.add(tuple);
+        if (batchTuples.size() >= batchSize || now - batchStart >= batchTimeout) {
+            checkBatch();
+        }
+    }
+
+    private void checkBatch() {
+        if (batchTuples == null || batchTuples.isEmpty()) {
+            return;
+        }
+        check(null);
+        batchTuples.forEach(collector::ack);
+        batchTuples.clear();
+    }
+
+    /*
+     * Checks the record, or the batch if it is null, against all the partitions. The other partitions are checked in
+     * the pool while the first is checked here. Their emissions are then made from this thread.
+     */
+    private void check(BulletRecord record) {
+        if (pool == null) {
+            checkPartition(partitions[0], record);
+            terminateOverBudget();
+            return;
+        }
+        for (int i = 1; i < checks.length; ++i) {
+            checks[i].reinitialize();
+            checks[i].record = record;
+            pool.execute(checks[i]);
+        }
+        try {
+            checkPartition(partitions[0], record);
+        } finally {
+            for (int i = 1; i < checks.length; ++i) {
+                checks[i].join();
+            }
+        }
+        for (int i = 1; i < pending.length; ++i) {
+            pending[i].drainTo(emitter);
+        }
+        terminateOverBudget();
+    }
+
+    private void terminateOverBudget() {
+        for (RulePartition partition : partitions) {
+            List<Long> ids = partition.getOverBudget();
+            // Checked first so that iterating does not allocate for every record
+            if (ids.isEmpty()) {
+                continue;
+            }
+            for (Long id : ids) {
+                FilterRule rule = rulesMap.remove(id);
+                if (rule != null) {
+                    log.warn("Terminating rule {} for using over {} ms of CPU: {}", id, budgetMS, rule);
+                    remove(id, rule);
+                    emitError(id, Error.makeError("The rule used more than " + budgetMS + " ms of CPU on a " +
+                                                  "FilterBolt and was terminated", CPU_BUDGET_EXCEEDED_RESOLUTION));
+                }
+            }
+            ids.clear();
+        }
+    }
+
+    private static void checkPartition(RulePartition partition, BulletRecord record) {
+        if (record == null) {
+            partition.checkBatch();
+        } else {
+            partition.check(record);
+        }
+    }
+
+    private Double getAndResetHitRate() {
+        long hits = 0;
+        long total = 0;
+        for (RulePartition partition : partitions) {
+            SharedPredicates shared = partition.getSharedPredicates();
+            hits += shared.getHits();
+            total += shared.getHits() + shared.getMisses();
+            shared.getAndResetHitRate();
+        }
+        return total == 0 ? null : (double) hits / total;
+    }
+
+    private Map<String, Long> getRuleCosts() {
+        long total = 0L;
+        long max = 0L;
+        for (FilterRule rule : rulesMap.values()) {
+            total += rule.getCost();
+            max = Math.max(max, rule.getCost());
+        }
+        Map<String, Long> costs = new HashMap<>();
+        costs.put(RULE_CPU_TOTAL, TimeUnit.NANOSECONDS.toMillis(total));
+        costs.put(RULE_CPU_MAX, TimeUnit.NANOSECONDS.toMillis(max));
+        return costs;
     }
 
     private void emitForRules(Map<Long, FilterRule> entries) {
-        entries.entrySet().stream().forEach(this::emitForRule);
+        entries.forEach(this::emitForRule);
     }
 
-    private void emitForRule(Map.Entry<Long, FilterRule> pair) {
+    private void emitForRule(Long id, FilterRule rule) {
         // The FilterRule will handle giving us the right data - a byte[] to emit
-        byte[] data = pair.getValue().getData();
+        byte[] data = rule.getData();
         if (data != null) {
-            collector.emit(new Values(pair.getKey(), data));
+            emitData(id, data);
+        }
+        // Even if there was no data, so that the JoinBolt does not wait for it
+        collector.emit(FLUSH_STREAM, new Values(id));
+    }
+
+    private void emitData(Long id, byte[] data) {
+        collector.emit(new Values(id, data));
+    }
+
+    /*
+     * Reports the shedding for every rule once a tick rather than with every emission. A rule that is satisfied between
+     * ticks is reported with the shedding up to the last tick.
+     */
+    private void emitShed() {
+        if (shedMarks != null) {
+            shedMarks.keySet().forEach(this::emitShed);
         }
     }
+
+    private void emitShed(Long id) {
+        long[] mark = shedMarks == null ? null : shedMarks.get(id);
+        if (mark == null) {
+            return;
+        }
+        long arrived = shedder.getArrived() - mark[0];
+        long shed = shedder.getShed() - mark[1];
+        if (arrived > 0) {
+            collector.emit(SHED_STREAM, new Values(id, arrived, shed));
+            mark[0] = shedder.getArrived();
+            mark[1] = shedder.getShed();
+        }
+    }
+
+    private void emitError(Long id, Error error) {
+        collector.emit(ERROR_STREAM, new Values(id, error.getError(), error.getResolutions().get(0)));
+    }
 }
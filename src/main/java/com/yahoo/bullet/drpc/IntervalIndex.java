@@ -0,0 +1,241 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.drpc;
+
+import com.yahoo.bullet.drpc.RuleIndex.CandidateConsumer;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.tracing.FilterRule;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A segment tree of {@link FilterRule} keyed by closed intervals of doubles. It finds all the rules whose interval
+ * contains a value in one walk from a leaf to the root, presenting each rule once and without allocating.
+ *
+ * Rules can be added and removed at any time. The tree is updated in place when they are, so searching never has to
+ * rebuild it. Only adding an interval with an endpoint that is not already in the tree, or removing enough intervals
+ * that most endpoints are unused, rebuilds it.
+ */
+public class IntervalIndex {
+    private static final Interval[] NONE = new Interval[0];
+    private static final int INITIAL_CAPACITY = 2;
+
+    private static class Interval {
+        private final Long id;
+        private final FilterRule rule;
+        private final double low;
+        private final double high;
+        // The position of this interval in the array of all the intervals
+        private int position;
+
+        private Interval(Long id, FilterRule rule, double low, double high) {
+            this.id = id;
+            this.rule = rule;
+            this.low = low;
+            this.high = high;
+        }
+
+        private boolean isEmpty() {
+            return !(low <= high);
+        }
+    }
+
+    private final Map<Long, Interval> intervals = new HashMap<>();
+
+    // All the intervals, for values that cannot be searched for
+    private Interval[] all = NONE;
+
+    // The sorted distinct endpoints. Leaf 2i + 1 is the endpoint i and leaf 2i is the gap before it.
+    private double[] endpoints = new double[0];
+    // The first leaf of the tree. The children of node n are nodes 2n and 2n + 1.
+    private int leaves = 1;
+    private Interval[][] nodes = new Interval[2][];
+    private int[] nodeSizes = new int[2];
+
+    /**
+     * Adds a rule with the given interval, replacing any rule with the same id.
+     *
+     * @param id The non-null id of the rule.
+     * @param rule The non-null rule.
+     * @param low The smallest value in the interval.
+     * @param high The largest value in the interval. If this is less than the low, the interval is empty.
+     */
+    public void add(Long id, FilterRule rule, double low, double high) {
+        Interval existing = intervals.remove(id);
+        if (existing != null) {
+            unlink(existing);
+        }
+        Interval interval = new Interval(id, rule, low + 0.0, high + 0.0);
+        intervals.put(id, interval);
+        if (intervals.size() > all.length) {
+            all = Arrays.copyOf(all, Math.max(INITIAL_CAPACITY, 2 * all.length));
+        }
+        interval.position = intervals.size() - 1;
+        all[interval.position] = interval;
+        if (interval.isEmpty()) {
+            return;
+        }
+        if (Arrays.binarySearch(endpoints, interval.low) >= 0 && Arrays.binarySearch(endpoints, interval.high) >= 0) {
+            cover(interval, true);
+        } else {
+            rebuild();
+        }
+    }
+
+    /**
+     * Removes a rule if it is present.
+     *
+     * @param id The id of the rule to remove.
+     * @return A boolean denoting whether the rule was present.
+     */
+    public boolean remove(Long id) {
+        Interval interval = intervals.remove(id);
+        if (interval == null) {
+            return false;
+        }
+        unlink(interval);
+        // Stop unused endpoints from growing the tree without bound
+        if (endpoints.length > 4 * intervals.size() + 16) {
+            rebuild();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of rules.
+     *
+     * @return The number of rules.
+     */
+    public int size() {
+        return intervals.size();
+    }
+
+    /**
+     * Checks to see if there are no rules.
+     *
+     * @return A boolean denoting whether there are no rules.
+     */
+    public boolean isEmpty() {
+        return intervals.isEmpty();
+    }
+
+    /**
+     * Performs the given action for all the rules whose interval contains the value.
+     *
+     * @param record The {@link BulletRecord} to pass to the action.
+     * @param value The value to search for. It must not be NaN.
+     * @param action The action to perform with the record, the id and the rule.
+     */
+    public void forEachContaining(BulletRecord record, double value, CandidateConsumer action) {
+        int node = leaves + getLeaf(value + 0.0);
+        for (; node > 0; node >>>= 1) {
+            Interval[] stored = nodes[node];
+            for (int i = 0; i < nodeSizes[node]; ++i) {
+                action.accept(record, stored[i].id, stored[i].rule);
+            }
+        }
+    }
+
+    /**
+     * Performs the given action for all the rules.
+     *
+     * @param record The {@link BulletRecord} to pass to the action.
+     * @param action The action to perform with the record, the id and the rule.
+     */
+    public void forEach(BulletRecord record, CandidateConsumer action) {
+        int size = intervals.size();
+        for (int i = 0; i < size; ++i) {
+            action.accept(record, all[i].id, all[i].rule);
+        }
+    }
+
+    private int getLeaf(double value) {
+        int index = Arrays.binarySearch(endpoints, value);
+        return index >= 0 ? 2 * index + 1 : -2 * (index + 1);
+    }
+
+    /*
+     * Takes an interval that is no longer in the map out of the array of all the intervals and out of the tree.
+     */
+    private void unlink(Interval interval) {
+        int last = intervals.size();
+        Interval moved = all[last];
+        all[interval.position] = moved;
+        moved.position = interval.position;
+        all[last] = null;
+        if (!interval.isEmpty()) {
+            cover(interval, false);
+        }
+    }
+
+    private void rebuild() {
+        double[] sorted = new double[2 * intervals.size()];
+        int count = 0;
+        for (Interval interval : intervals.values()) {
+            if (!interval.isEmpty()) {
+                sorted[count++] = interval.low;
+                sorted[count++] = interval.high;
+            }
+        }
+        Arrays.sort(sorted, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; ++i) {
+            if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        endpoints = Arrays.copyOf(sorted, distinct);
+        leaves = Math.max(1, Integer.highestOneBit(2 * endpoints.length) << 1);
+        nodes = new Interval[2 * leaves][];
+        nodeSizes = new int[2 * leaves];
+        for (Interval interval : intervals.values()) {
+            if (!interval.isEmpty()) {
+                cover(interval, true);
+            }
+        }
+    }
+
+    /*
+     * Stores or removes the interval in the fewest nodes that exactly cover its leaves. Each leaf then has exactly one
+     * of these nodes on its path to the root.
+     */
+    private void cover(Interval interval, boolean store) {
+        int left = leaves + getLeaf(interval.low);
+        int right = leaves + getLeaf(interval.high) + 1;
+        for (; left < right; left >>>= 1, right >>>= 1) {
+            if ((left & 1) == 1) {
+                update(left++, interval, store);
+            }
+            if ((right & 1) == 1) {
+                update(--right, interval, store);
+            }
+        }
+    }
+
+    private void update(int node, Interval interval, boolean store) {
+        Interval[] stored = nodes[node];
+        int size = nodeSizes[node];
+        if (store) {
+            if (stored == null || size == stored.length) {
+                stored = stored == null ? new Interval[INITIAL_CAPACITY] : Arrays.copyOf(stored, 2 * size);
+                nodes[node] = stored;
+            }
+            stored[size] = interval;
+            nodeSizes[node] = size + 1;
+            return;
+        }
+        for (int i = 0; i < size; ++i) {
+            if (stored[i] == interval) {
+                stored[i] = stored[size - 1];
+                stored[size - 1] = null;
+                nodeSizes[node] = size - 1;
+                return;
+            }
+        }
+    }
+}
@@ -33,6 +33,8 @@ import java.util.function.Consumer;
 @Slf4j
 public class JoinBolt extends RuleBolt<AggregationRule> {
     public static final String JOIN_STREAM = Utils.DEFAULT_STREAM_ID;
+    /** The ids of rules that are done early (satisfied, refused or terminated) are sent back to the FilterBolts. */
+    public static final String FEEDBACK_STREAM = "feedback";
 
     /** This is the default number of ticks for which we will buffer an individual error message. */
     public static final int DEFAULT_ERROR_TICKOUT = 3;
@@ -42,8 +44,16 @@ public class JoinBolt extends RuleBolt<AggregationRule> {
     private Map<Long, Tuple> activeReturns;
     // For doing a LEFT OUTER JOIN between Rules and ReturnInfo if the Rule has validation issues
     private RotatingMap<Long, Clip> bufferedErrors;
+    // The first termination by a FilterBolt of each rule that had not arrived yet, to apply when it does
+    private RotatingMap<Long, Error> bufferedTerminations;
     // For doing a LEFT OUTER JOIN between Rules and intermediate aggregation, if the aggregations are lagging.
     private RotatingMap<Long, AggregationRule> bufferedRules;
+    // The records that arrived at and were shed by all the FilterBolts for each rule, if they shed load
+    private Map<Long, long[]> shedCounts;
+    // The number of FilterBolts that have expired and flushed each rule. Once all have, the rule has all its data.
+    private Map<Long, Integer> flushCounts;
+    // Results are only emitted when all the FilterBolts have flushed the rule if this is known
+    private int filterBolts;
 
     /**
      * Default constructor.
@@ -65,11 +75,15 @@ public class JoinBolt extends RuleBolt<AggregationRule> {
         super.prepare(stormConf, context, collector);
 
         activeReturns = new HashMap<>();
+        shedCounts = new HashMap<>();
+        flushCounts = new HashMap<>();
+        filterBolts = context.getComponentTasks(TopologyConstants.FILTER_COMPONENT).size();
 
         Number errorTickoutNumber = (Number) configuration.getOrDefault(BulletConfig.JOIN_BOLT_ERROR_TICK_TIMEOUT,
                                                                         DEFAULT_ERROR_TICKOUT);
         int errorTickout = errorTickoutNumber.intValue();
         bufferedErrors = new RotatingMap<>(errorTickout);
+        bufferedTerminations = new RotatingMap<>(errorTickout);
 
         Number ruleTickoutNumber = (Number) configuration.getOrDefault(BulletConfig.JOIN_BOLT_RULE_TICK_TIMEOUT,
                                                                        DEFAULT_RULE_TICKOUT);
@@ -79,7 +93,12 @@ public class JoinBolt extends RuleBolt<AggregationRule> {
 
     @Override
     public void execute(Tuple tuple) {
-        TupleType.Type type = TupleType.classify(tuple).orElse(null);
+        TupleType.Type type = TupleType.classifyOrNull(tuple);
+        // Rules are retired as soon as a tuple arrives after they expire instead of waiting for a tick. This starts
+        // their rule tickout sooner, so a result is emitted on the rule tickout-th tick after the rule is retired.
+        if (type != TupleType.Type.TICK_TUPLE && hasExpiredRules()) {
+            retireRules().forEach(bufferedRules::put);
+        }
         switch (type) {
             case TICK_TUPLE:
                 handleTick();
@@ -93,6 +112,15 @@ public class JoinBolt extends RuleBolt<AggregationRule> {
             case FILTER_TUPLE:
                 emit(tuple);
                 break;
+            case ERROR_TUPLE:
+                terminateRule(tuple);
+                break;
+            case SHED_TUPLE:
+                addShed(tuple);
+                break;
+            case FLUSH_TUPLE:
+                addFlush(tuple);
+                break;
             default:
                 // May want to throw an error here instead of not acking
                 log.error("Unknown tuple encountered in join: {}", type);
@@ -104,6 +132,7 @@ public class JoinBolt extends RuleBolt<AggregationRule> {
     @Override
     public void declareOutputFields(OutputFieldsDeclarer declarer) {
         declarer.declare(new Fields(TopologyConstants.JOIN_FIELD, TopologyConstants.RETURN_FIELD));
+        declarer.declareStream(FEEDBACK_STREAM, new Fields(TopologyConstants.ID_FIELD));
     }
 
     @Override
@@ -121,6 +150,79 @@ public class JoinBolt extends RuleBolt<AggregationRule> {
         return null;
     }
 
+    @Override
+    protected void refuseRule(Long id, Error error) {
+        emitError(id, error);
+        // The FilterBolts may have room for the rule
+        collector.emit(FEEDBACK_STREAM, new Values(id));
+    }
+
+    @Override
+    protected void initializeRule(Tuple tuple) {
+        super.initializeRule(tuple);
+        Long id = tuple.getLong(TopologyConstants.ID_POSITION);
+        Error error = (Error) bufferedTerminations.remove(id);
+        // A FilterBolt may have terminated the rule before it arrived here
+        if (error != null && rulesMap.remove(id) != null) {
+            terminateRule(id, error);
+        }
+    }
+
+    private void terminateRule(Tuple tuple) {
+        Long id = tuple.getLong(TopologyConstants.ID_POSITION);
+        Error error = Error.makeError(tuple.getString(TopologyConstants.ERROR_POSITION),
+                                      tuple.getString(TopologyConstants.RESOLUTION_POSITION));
+        AggregationRule rule = rulesMap.remove(id);
+        rule = rule == null ? (AggregationRule) bufferedRules.remove(id) : rule;
+        if (rule != null) {
+            terminateRule(id, error);
+            return;
+        }
+        // Every FilterBolt may terminate the rule but only the first one is reported. The rule may also not be here yet.
+        if (!bufferedTerminations.containsKey(id)) {
+            bufferedTerminations.put(id, error);
+        }
+    }
+
+    private void terminateRule(Long id, Error error) {
+        log.info("Rule {} was terminated by a FilterBolt: {}", id, error.getError());
+        shedCounts.remove(id);
+        flushCounts.remove(id);
+        emitError(id, error);
+        // The other FilterBolts stop working on it too
+        collector.emit(FEEDBACK_STREAM, new Values(id));
+    }
+
+    private void addShed(Tuple tuple) {
+        Long id = tuple.getLong(TopologyConstants.ID_POSITION);
+        // Counts for rules that are already done are not kept
+        if (rulesMap.get(id) == null && bufferedRules.get(id) == null) {
+            return;
+        }
+        long[] counts = shedCounts.computeIfAbsent(id, k -> new long[2]);
+        counts[0] += tuple.getLong(TopologyConstants.ARRIVED_POSITION);
+        counts[1] += tuple.getLong(TopologyConstants.SHED_POSITION);
+    }
+
+    private void addFlush(Tuple tuple) {
+        Long id = tuple.getLong(TopologyConstants.ID_POSITION);
+        AggregationRule rule = rulesMap.get(id);
+        rule = rule == null ? (AggregationRule) bufferedRules.get(id) : rule;
+        // Flushes for rules that are already done are not kept
+        if (rule == null || filterBolts == 0) {
+            return;
+        }
+        if (flushCounts.merge(id, 1, Integer::sum) < filterBolts) {
+            return;
+        }
+        // No more data is coming so there is no need to wait for the rule tickout
+        Tuple returnTuple = activeReturns.get(id);
+        if (canEmit(id, rule, returnTuple)) {
+            log.info("All {} FilterBolts have flushed rule {}", filterBolts, id);
+            emit(id, rule, returnTuple);
+        }
+    }
+
     private void initializeReturn(Tuple tuple) {
         Long id = tuple.getLong(TopologyConstants.ID_POSITION);
         // Check if we have any buffered errors.
@@ -136,9 +238,13 @@ public class JoinBolt extends RuleBolt<AggregationRule> {
     private void handleTick() {
         // Buffer whatever we're retiring now and forceEmit all the bufferedRules that are being rotated out.
         // Whatever we're retiring now MUST not have been satisfied since we emit Rules when FILTER_TUPLES satisfy them.
+        // A rule is emitted as soon as all the FilterBolts have flushed it. This is for the ones that never do, such as
+        // ones that failed, so it is counted in ticks: a result is emitted between rule tickout - 1 and rule tickout
+        // ticks after its rule is retired.
         emitRetired(bufferedRules.rotate());
         // We'll just rotate and lose any buffered errors (if rotated enough times) as designed.
         bufferedErrors.rotate();
+        bufferedTerminations.rotate();
     }
 
     private void emitError(Long id, Error... errors) {
@@ -166,6 +272,8 @@ public class JoinBolt extends RuleBolt<AggregationRule> {
             if (canEmit(id, rule, returnTuple)) {
                 emit(id, rule, returnTuple);
             }
+            shedCounts.remove(id);
+            flushCounts.remove(id);
         }
         // For the others that were just retired, roll them over into bufferedRules
         retireRules().forEach(bufferedRules::put);
@@ -206,6 +314,8 @@ public class JoinBolt extends RuleBolt<AggregationRule> {
             return;
         }
         emit(id, rule, returnTuple);
+        // The FilterBolts can stop working on the rule now instead of when it expires
+        collector.emit(FEEDBACK_STREAM, new Values(id));
     }
 
     private void emit(Long id, AggregationRule rule, Tuple returnTuple) {
@@ -222,6 +332,8 @@ public class JoinBolt extends RuleBolt<AggregationRule> {
         rulesMap.remove(id);
         bufferedRules.remove(id);
         activeReturns.remove(id);
+        shedCounts.remove(id);
+        flushCounts.remove(id);
     }
 
     private void emit(Clip clip, Tuple returnTuple) {
@@ -240,9 +352,16 @@ public class JoinBolt extends RuleBolt<AggregationRule> {
         consumeRegisteredConcept(Concept.RULE_BODY, (k) -> meta.add(k, rule.toString()));
         consumeRegisteredConcept(Concept.CREATION_TIME, (k) -> meta.add(k, rule.getStartTime()));
         consumeRegisteredConcept(Concept.TERMINATION_TIME, (k) -> meta.add(k, rule.getLastAggregationTime()));
+        consumeRegisteredConcept(Concept.SAMPLING_RATE, (k) -> meta.add(k, rule.getSamplingRate()));
+        consumeRegisteredConcept(Concept.SHED_FRACTION, (k) -> meta.add(k, getShedFraction(id)));
         return meta;
     }
 
+    private double getShedFraction(Long id) {
+        long[] counts = shedCounts.get(id);
+        return counts == null || counts[0] == 0 ? 0.0 : (double) counts[1] / counts[0];
+    }
+
     private void consumeRegisteredConcept(Concept concept, Consumer<String> action) {
         // Only consume the concept if we have a key for it: i.e. it was registered
         String key = metadataKeys.get(concept.getName());
@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.drpc;
+
+import lombok.Getter;
+
+/**
+ * Decides which records a bolt should drop when it cannot keep up with them. The load is the fraction of the time
+ * spent processing records in each window of time. When a window is busier than the high load, the bolt is assumed to
+ * be falling behind - its receive queue is filling up - and a larger fraction of the records is shed in the next
+ * window. When a window is less busy than the low load, a smaller fraction is shed.
+ *
+ * Records are picked by hashing their sequence number, so the same records are shed for the same fraction and the shed
+ * records are spread evenly. This does not allocate and is not thread-safe.
+ */
+public class LoadShedder {
+    // The fraction shed is changed by this much per window
+    public static final double STEP = 0.05;
+
+    private final long window;
+    private final double highLoad;
+    private final double lowLoad;
+    private final double maxFraction;
+
+    @Getter
+    private double fraction = 0.0;
+    // Records whose hash is less than this are shed
+    private long threshold = Long.MIN_VALUE;
+
+    @Getter
+    private long arrived = 0L;
+    @Getter
+    private long shed = 0L;
+
+    private long windowStart;
+    private long busy = 0L;
+
+    /**
+     * Constructor.
+     *
+     * @param window The length of a window in nanoseconds.
+     * @param highLoad The load, from 0 to 1, above which more records are shed.
+     * @param lowLoad The load, from 0 to 1, below which fewer records are shed.
+     * @param maxFraction The most fraction of the records, from 0 to 1, that may be shed.
+     * @param now The current time in nanoseconds, from {@link System#nanoTime()}.
+     */
+    public LoadShedder(long window, double highLoad, double lowLoad, double maxFraction, long now) {
+        this.window = window;
+        this.highLoad = highLoad;
+        this.lowLoad = lowLoad;
+        this.maxFraction = maxFraction;
+        windowStart = now;
+    }
+
+    /**
+     * Counts a record that arrived and decides whether it should be shed.
+     *
+     * @return A boolean denoting whether the record should be dropped.
+     */
+    public boolean shouldShed() {
+        long hash = mix(arrived++);
+        if (hash < threshold) {
+            shed++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds the time spent processing a record and moves to the next window if the current one is over.
+     *
+     * @param start The time in nanoseconds when the processing started.
+     * @param end The time in nanoseconds when the processing ended.
+     */
+    public void addBusyTime(long start, long end) {
+        busy += end - start;
+        long elapsed = end - windowStart;
+        if (elapsed < window) {
+            return;
+        }
+        double load = (double) busy / elapsed;
+        if (load > highLoad) {
+            setFraction(Math.min(fraction + STEP, maxFraction));
+        } else if (load < lowLoad) {
+            setFraction(Math.max(fraction - STEP, 0.0));
+        }
+        windowStart = end;
+        busy = 0L;
+    }
+
+    private void setFraction(double fraction) {
+        this.fraction = fraction;
+        // Maps [0, 1] to [Long.MIN_VALUE, Long.MAX_VALUE]. The hashes are uniform over the longs.
+        threshold = fraction == 0.0 ? Long.MIN_VALUE : (long) (Long.MIN_VALUE + fraction * Math.pow(2, 64));
+    }
+
+    /*
+     * The finalizer of SplitMix64. Consecutive inputs give uniformly spread, uncorrelated outputs.
+     */
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -6,6 +6,7 @@
 package com.yahoo.bullet.drpc;
 
 import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.parsing.Error;
 import com.yahoo.bullet.result.Metadata;
 import com.yahoo.bullet.tracing.AbstractRule;
 import lombok.extern.slf4j.Slf4j;
@@ -15,23 +16,51 @@ import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.IRichBolt;
 import org.apache.storm.tuple.Tuple;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.PriorityQueue;
 
 @Slf4j
 public abstract class RuleBolt<R extends AbstractRule> implements IRichBolt {
     public static final Integer DEFAULT_TICK_INTERVAL = 5;
+    public static final int DEFAULT_MAX_CONCURRENT_RULES = 0;
+    public static final String TOO_MANY_RULES_RESOLUTION = "Please try again later";
     protected int tickInterval;
+    // There is no limit if this is not positive
+    protected int maxRules;
     protected Map configuration;
     protected OutputCollector collector;
     protected Map<String, String> metadataKeys;
 
-    // TODO consider a rotating map with multilevels and reinserts upon rotating instead for scalability
     protected Map<Long, R> rulesMap;
 
+    // The rules in the order they expire. Entries for rules no longer in the rulesMap are skipped when they are due.
+    private PriorityQueue<Expiry<R>> expiries;
+    // Rules that were due but did not report themselves expired. These are checked again on the next retirement.
+    private List<Expiry<R>> overdue;
+
+    private static class Expiry<R> implements Comparable<Expiry<R>> {
+        private final long time;
+        private final Long id;
+        private final R rule;
+
+        private Expiry(long time, Long id, R rule) {
+            this.time = time;
+            this.id = id;
+            this.rule = rule;
+        }
+
+        @Override
+        public int compareTo(Expiry<R> other) {
+            return Long.compare(time, other.time);
+        }
+    }
+
     /**
      * Constructor that accepts the tick interval.
      * @param tickInterval The tick interval in seconds.
@@ -53,6 +82,10 @@ public abstract class RuleBolt<R extends AbstractRule> implements IRichBolt {
         this.configuration = new HashMap<>(stormConf);
         this.collector = collector;
         rulesMap = new LinkedHashMap<>();
+        expiries = new PriorityQueue<>();
+        overdue = new ArrayList<>();
+        maxRules = ((Number) configuration.getOrDefault(BulletConfig.MAX_CONCURRENT_RULES,
+                                                        DEFAULT_MAX_CONCURRENT_RULES)).intValue();
 
         // Get all known Concepts
         metadataKeys = Metadata.getConceptNames(configuration, new HashSet<>(Metadata.KNOWN_CONCEPTS));
@@ -66,13 +99,32 @@ public abstract class RuleBolt<R extends AbstractRule> implements IRichBolt {
     }
 
     /**
-     * Retires DRPC rules that are active past the tick time.
-     * @return The map of DRPC request ids to Rules that were retired.
+     * Retires DRPC rules that have expired. Only the rules that are due to expire are looked at.
+     * @return The map of DRPC request ids to Rules that were retired, in the order they expired.
      */
     protected Map<Long, R> retireRules() {
-        Map<Long, R> retiredRules = rulesMap.entrySet().stream().filter(e -> e.getValue().isExpired())
-                                            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-        rulesMap.keySet().removeAll(retiredRules.keySet());
+        long now = System.currentTimeMillis();
+        List<Expiry<R>> due = new ArrayList<>(overdue);
+        overdue.clear();
+        while (!expiries.isEmpty() && now > expiries.peek().time) {
+            due.add(expiries.poll());
+        }
+        if (due.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, R> retiredRules = new LinkedHashMap<>();
+        for (Expiry<R> expiry : due) {
+            // Skip rules that were replaced or removed
+            if (rulesMap.get(expiry.id) != expiry.rule) {
+                continue;
+            }
+            if (expiry.rule.isExpired()) {
+                rulesMap.remove(expiry.id);
+                retiredRules.put(expiry.id, expiry.rule);
+            } else {
+                overdue.add(expiry);
+            }
+        }
         if (retiredRules.size() > 0) {
             log.info("Retired {} rule(s). There are {} active rule(s).", retiredRules.size(), rulesMap.size());
         }
@@ -80,12 +132,29 @@ public abstract class RuleBolt<R extends AbstractRule> implements IRichBolt {
     }
 
     /**
-     * Initializes a rule from a rule tuple.
+     * Checks to see if any rules are due to expire. This is cheap and does not allocate so it can be done for every
+     * tuple, to retire rules sooner than the next tick.
+     *
+     * @return A boolean denoting whether {@link #retireRules()} should be called.
+     */
+    protected boolean hasExpiredRules() {
+        Expiry<R> next = expiries.peek();
+        return next != null && System.currentTimeMillis() > next.time;
+    }
+
+    /**
+     * Initializes a rule from a rule tuple. A new rule is refused if there are already the maximum number of rules.
      * @param tuple The rule tuple with the rule to initialize.
      */
     protected void initializeRule(Tuple tuple) {
         Long id = tuple.getLong(TopologyConstants.ID_POSITION);
         String ruleString = tuple.getString(TopologyConstants.RULE_POSITION);
+        if (maxRules > 0 && !rulesMap.containsKey(id) && rulesMap.size() >= maxRules) {
+            log.warn("Refusing rule {} since there are already {} active rule(s)", id, rulesMap.size());
+            refuseRule(id, Error.makeError("There are already " + maxRules + " rules running",
+                                           TOO_MANY_RULES_RESOLUTION));
+            return;
+        }
         R rule = getRule(id, ruleString);
         if (rule == null) {
             log.error("Failed to initialize rule for request {} with rule {}", id, ruleString);
@@ -93,6 +162,7 @@ public abstract class RuleBolt<R extends AbstractRule> implements IRichBolt {
         }
         log.info("Initialized rule {} : {}", id, rule.toString());
         rulesMap.put(id, rule);
+        expiries.add(new Expiry<>(rule.getExpiryTime(), id, rule));
     }
 
     /**
@@ -123,4 +193,12 @@ public abstract class RuleBolt<R extends AbstractRule> implements IRichBolt {
      * @return The appropriate type of AbstractRule to use for this Bolt.
      */
     protected abstract R getRule(Long id, String ruleString);
+
+    /**
+     * Handles a rule that will not be run because there are too many rules.
+     *
+     * @param id The DRPC request id.
+     * @param error The {@link Error} to report for the rule.
+     */
+    protected abstract void refuseRule(Long id, Error error);
 }
@@ -0,0 +1,387 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.drpc;
+
+import com.yahoo.bullet.operations.FilterOperations.FilterType;
+import com.yahoo.bullet.operations.predicates.LogicalPredicate;
+import com.yahoo.bullet.operations.predicates.Predicate;
+import com.yahoo.bullet.operations.predicates.RelationalPredicate;
+import com.yahoo.bullet.operations.predicates.SharedPredicate;
+import com.yahoo.bullet.operations.typesystem.Type;
+import com.yahoo.bullet.operations.typesystem.TypedValues;
+import com.yahoo.bullet.parsing.FieldPath;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.tracing.FilterRule;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An inverted index over the top level equality filters of {@link FilterRule}. A rule that must satisfy a
+ * field == [values] filter is indexed by that field and the values, cast to every type they can be cast to. For a
+ * record, only the rules indexed under the value of each indexed field in the record and the rules that could not
+ * be indexed need to be checked.
+ *
+ * Rules without such a filter that must satisfy range filters (&gt;, &gt;=, &lt;, &lt;=) on a field are instead
+ * kept in an {@link IntervalIndex} for that field, under the numbers that can satisfy all those filters. For a record
+ * with a number in the field, only the rules whose interval contains it need to be checked. Since non-numeric values
+ * are compared as other types, all these rules need to be checked for them.
+ *
+ * The index only narrows down the rules that could match. The rules must still be checked fully.
+ */
+public class RuleIndex {
+    /**
+     * Performs an action on a rule that could match a record.
+     */
+    @FunctionalInterface
+    public interface CandidateConsumer {
+        /**
+         * Performs the action for a record and a rule.
+         *
+         * @param record The {@link BulletRecord} being checked.
+         * @param id The id of the rule.
+         * @param rule The {@link FilterRule} that could match the record.
+         */
+        void accept(BulletRecord record, Long id, FilterRule rule);
+    }
+
+    /*
+     * A group of rules that also keeps them in arrays so that they can be iterated over without allocating.
+     */
+    private static class Rules {
+        private static final Long[] NO_IDS = new Long[0];
+        private static final FilterRule[] NO_RULES = new FilterRule[0];
+
+        private final Map<Long, FilterRule> map = new LinkedHashMap<>();
+        private Long[] ids = NO_IDS;
+        private FilterRule[] rules = NO_RULES;
+
+        private void put(Long id, FilterRule rule) {
+            map.put(id, rule);
+            snapshot();
+        }
+
+        private boolean remove(Long id) {
+            boolean removed = map.remove(id) != null;
+            if (removed) {
+                snapshot();
+            }
+            return removed;
+        }
+
+        private boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        private void forEach(BulletRecord record, CandidateConsumer action) {
+            for (int i = 0; i < ids.length; ++i) {
+                action.accept(record, ids[i], rules[i]);
+            }
+        }
+
+        private void snapshot() {
+            ids = map.keySet().toArray(new Long[map.size()]);
+            rules = map.values().toArray(new FilterRule[map.size()]);
+        }
+    }
+
+    /*
+     * The rules indexed by a field. The field is kept as the FieldPath of the first rule so that it can be reused.
+     */
+    private static class FieldIndex {
+        private final FieldPath path;
+        // typed value key -> rules
+        private final Map<Object, Rules> postings = new HashMap<>();
+
+        private FieldIndex(FieldPath path) {
+            this.path = path;
+        }
+    }
+
+    /*
+     * The rules with range filters on a field.
+     */
+    private static class FieldRanges {
+        private final FieldPath path;
+        private final IntervalIndex intervals = new IntervalIndex();
+
+        private FieldRanges(FieldPath path) {
+            this.path = path;
+        }
+    }
+
+    /*
+     * The numbers that can satisfy all the top level range filters on a field.
+     */
+    private static class Range {
+        private final FieldPath path;
+        private double low = Double.NEGATIVE_INFINITY;
+        private double high = Double.POSITIVE_INFINITY;
+
+        private Range(FieldPath path) {
+            this.path = path;
+        }
+
+        private boolean isBounded() {
+            return low != Double.NEGATIVE_INFINITY && high != Double.POSITIVE_INFINITY;
+        }
+    }
+
+    private Map<FieldPath, FieldIndex> index = new HashMap<>();
+    // The same as the values in index, for iterating without allocating
+    private FieldIndex[] fieldIndices = new FieldIndex[0];
+    // Rules that have no top level equality filters
+    private Rules residuals = new Rules();
+    // The filter that each indexed rule was indexed by. Needed to remove the rule.
+    private Map<Long, RelationalPredicate> indexedBy = new HashMap<>();
+    private Map<FieldPath, FieldRanges> ranges = new HashMap<>();
+    // The same as the values in ranges, for iterating without allocating
+    private FieldRanges[] fieldRanges = new FieldRanges[0];
+    // The field that each rule with ranges was indexed by
+    private Map<Long, FieldPath> rangedBy = new HashMap<>();
+
+    /**
+     * Adds a rule to the index, replacing any rule with the same id.
+     *
+     * @param id The non-null id of the rule.
+     * @param rule The non-null rule to add.
+     */
+    public void add(Long id, FilterRule rule) {
+        remove(id);
+        RelationalPredicate equality = findEquality(rule.getPredicate());
+        if (equality == null) {
+            addRange(id, rule);
+            return;
+        }
+        indexedBy.put(id, equality);
+        FieldIndex fieldIndex = index.get(equality.getPath());
+        if (fieldIndex == null) {
+            fieldIndex = new FieldIndex(equality.getPath());
+            index.put(equality.getPath(), fieldIndex);
+            snapshot();
+        }
+        for (Object key : equality.getValues().getKeys()) {
+            fieldIndex.postings.computeIfAbsent(key, k -> new Rules()).put(id, rule);
+        }
+    }
+
+    /**
+     * Removes a rule from the index if it is present.
+     *
+     * @param id The id of the rule to remove.
+     */
+    public void remove(Long id) {
+        if (residuals.remove(id) || removeRange(id)) {
+            return;
+        }
+        RelationalPredicate equality = indexedBy.remove(id);
+        if (equality == null) {
+            return;
+        }
+        FieldIndex fieldIndex = index.get(equality.getPath());
+        for (Object key : equality.getValues().getKeys()) {
+            Rules rules = fieldIndex.postings.get(key);
+            rules.remove(id);
+            if (rules.isEmpty()) {
+                fieldIndex.postings.remove(key);
+            }
+        }
+        if (fieldIndex.postings.isEmpty()) {
+            index.remove(equality.getPath());
+            snapshot();
+        }
+    }
+
+    /**
+     * Performs the given action for all the rules that could match the given record. Each rule is presented at most
+     * once. This does not allocate any memory.
+     *
+     * @param record The {@link BulletRecord} to find rules for.
+     * @param action The action to perform with the record, the id and the rule.
+     */
+    public void forEachCandidate(BulletRecord record, CandidateConsumer action) {
+        for (FieldIndex fieldIndex : fieldIndices) {
+            Rules rules = fieldIndex.postings.get(getKey(fieldIndex.path, record));
+            if (rules != null) {
+                rules.forEach(record, action);
+            }
+        }
+        for (FieldRanges ranged : fieldRanges) {
+            forEachInRange(ranged, record, action);
+        }
+        residuals.forEach(record, action);
+    }
+
+    /**
+     * Returns the number of rules in the index.
+     *
+     * @return The number of rules.
+     */
+    public int size() {
+        return indexedBy.size() + rangedBy.size() + residuals.map.size();
+    }
+
+    /**
+     * Returns the number of rules that could not be indexed and will be checked for every record.
+     *
+     * @return The number of residual rules.
+     */
+    public int residualSize() {
+        return residuals.map.size();
+    }
+
+    /**
+     * Returns the number of rules that are indexed by their range filters.
+     *
+     * @return The number of ranged rules.
+     */
+    public int rangedSize() {
+        return rangedBy.size();
+    }
+
+    private void snapshot() {
+        fieldIndices = index.values().toArray(new FieldIndex[index.size()]);
+        fieldRanges = ranges.values().toArray(new FieldRanges[ranges.size()]);
+    }
+
+    private void addRange(Long id, FilterRule rule) {
+        Range range = findRange(rule.getPredicate());
+        if (range == null) {
+            residuals.put(id, rule);
+            return;
+        }
+        rangedBy.put(id, range.path);
+        FieldRanges ranged = ranges.get(range.path);
+        if (ranged == null) {
+            ranged = new FieldRanges(range.path);
+            ranges.put(range.path, ranged);
+            snapshot();
+        }
+        ranged.intervals.add(id, rule, range.low, range.high);
+    }
+
+    private boolean removeRange(Long id) {
+        FieldPath path = rangedBy.remove(id);
+        if (path == null) {
+            return false;
+        }
+        FieldRanges ranged = ranges.get(path);
+        ranged.intervals.remove(id);
+        if (ranged.intervals.isEmpty()) {
+            ranges.remove(path);
+            snapshot();
+        }
+        return true;
+    }
+
+    private static void forEachInRange(FieldRanges ranged, BulletRecord record, CandidateConsumer action) {
+        Object value = ranged.path.extract(record);
+        Type type = Type.getType(value);
+        // Range filters are never true for nulls
+        if (type == Type.NULL) {
+            return;
+        }
+        if (type == Type.LONG) {
+            ranged.intervals.forEachContaining(record, (double) (Long) value, action);
+        } else if (type == Type.DOUBLE && !Double.isNaN((Double) value)) {
+            ranged.intervals.forEachContaining(record, (Double) value, action);
+        } else {
+            ranged.intervals.forEach(record, action);
+        }
+    }
+
+    private static Object getKey(FieldPath field, BulletRecord record) {
+        Object value = field == null ? null : field.extract(record);
+        Type type = Type.getType(value);
+        // Unknown type -> force to string, like RelationalPredicate
+        if (type == null) {
+            return value.toString();
+        }
+        return TypedValues.getKey(type, value);
+    }
+
+    /*
+     * Finds the equality filter with the fewest values that must be true for the whole predicate to be true. These
+     * are found in the top level ANDs.
+     */
+    private static RelationalPredicate findEquality(Predicate predicate) {
+        if (predicate instanceof SharedPredicate) {
+            return findEquality(((SharedPredicate) predicate).getPredicate());
+        }
+        if (predicate instanceof RelationalPredicate) {
+            RelationalPredicate relational = (RelationalPredicate) predicate;
+            return relational.getOperation() == FilterType.EQUALS ? relational : null;
+        }
+        if (!(predicate instanceof LogicalPredicate)) {
+            return null;
+        }
+        LogicalPredicate logical = (LogicalPredicate) predicate;
+        if (logical.getOperation() != FilterType.AND) {
+            return null;
+        }
+        RelationalPredicate best = null;
+        for (Predicate child : logical.getPredicates()) {
+            RelationalPredicate candidate = findEquality(child);
+            if (candidate != null && (best == null || size(candidate) < size(best))) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /*
+     * Finds the field with range filters that must be true for the whole predicate to be true, preferring one that is
+     * bounded on both sides, and the intersection of the numbers that satisfy those filters.
+     */
+    private static Range findRange(Predicate predicate) {
+        Map<FieldPath, Range> found = new LinkedHashMap<>();
+        collectRanges(predicate, found);
+        return found.values().stream().filter(Range::isBounded).findFirst()
+                    .orElse(found.values().stream().findFirst().orElse(null));
+    }
+
+    private static void collectRanges(Predicate predicate, Map<FieldPath, Range> found) {
+        if (predicate instanceof SharedPredicate) {
+            collectRanges(((SharedPredicate) predicate).getPredicate(), found);
+        } else if (predicate instanceof RelationalPredicate) {
+            collectRange((RelationalPredicate) predicate, found);
+        } else if (predicate instanceof LogicalPredicate) {
+            LogicalPredicate logical = (LogicalPredicate) predicate;
+            if (logical.getOperation() == FilterType.AND) {
+                for (Predicate child : logical.getPredicates()) {
+                    collectRanges(child, found);
+                }
+            }
+        }
+    }
+
+    private static void collectRange(RelationalPredicate predicate, Map<FieldPath, Range> found) {
+        FieldPath path = predicate.getPath();
+        if (path == null) {
+            return;
+        }
+        TypedValues values = predicate.getValues();
+        switch (predicate.getOperation()) {
+            case GREATER_THAN:
+            case GREATER_EQUALS:
+                Range lower = found.computeIfAbsent(path, Range::new);
+                lower.low = Math.max(lower.low, values.getNumericMinimum());
+                break;
+            case LESS_THAN:
+            case LESS_EQUALS:
+                Range upper = found.computeIfAbsent(path, Range::new);
+                upper.high = Math.min(upper.high, values.getNumericMaximum());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static int size(RelationalPredicate predicate) {
+        return predicate.getValues().getValues().size();
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.drpc;
+
+import com.yahoo.bullet.operations.predicates.RecordBatch;
+import com.yahoo.bullet.operations.predicates.SharedPredicates;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.tracing.FilterRule;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Some of the rules of a {@link FilterBolt} and everything needed to check records against them: a {@link RuleIndex}
+ * and the {@link SharedPredicates} their filters are shared through. Everything reachable from a partition, including
+ * the state of its rules, is only used by one thread at a time, so different partitions can check the same record
+ * on different threads.
+ *
+ * The data of the rules that need it emitted is taken from them on the checking thread and handed to an
+ * {@link Emitter}.
+ *
+ * Some of the checks of each rule can be timed to keep a running estimate of its cost. The rules that go over a budget
+ * are collected in {@link #getOverBudget()} to be terminated once the partition is no longer being checked.
+ */
+public class RulePartition {
+    /**
+     * Handles the data of a rule that should be emitted.
+     */
+    @FunctionalInterface
+    public interface Emitter {
+        /**
+         * Handles the data.
+         *
+         * @param id The id of the rule.
+         * @param data The non-null data of the rule, from {@link FilterRule#getData()}.
+         */
+        void emit(Long id, byte[] data);
+    }
+
+    /**
+     * An {@link Emitter} that holds on to the data so that it can be emitted later, on another thread.
+     */
+    public static class Pending implements Emitter {
+        private final List<Long> ids = new ArrayList<>();
+        private final List<byte[]> data = new ArrayList<>();
+
+        @Override
+        public void emit(Long id, byte[] data) {
+            ids.add(id);
+            this.data.add(data);
+        }
+
+        /**
+         * Hands all the data held, in the order it was added, to the given {@link Emitter} and forgets it.
+         *
+         * @param emitter The {@link Emitter} to hand the data to.
+         */
+        public void drainTo(Emitter emitter) {
+            for (int i = 0; i < ids.size(); ++i) {
+                emitter.emit(ids.get(i), data.get(i));
+            }
+            ids.clear();
+            data.clear();
+        }
+    }
+
+    private final Map<Long, FilterRule> rules = new HashMap<>();
+    private final RuleIndex ruleIndex = new RuleIndex();
+    @Getter
+    private final SharedPredicates sharedPredicates;
+    private final Emitter emitter;
+    // One in this many checks of each rule is timed. None are if this is 0.
+    private final int timingInterval;
+    // In nanoseconds. There is no budget if this is 0.
+    private final long budget;
+    @Getter
+    private final List<Long> overBudget = new ArrayList<>();
+    // Created once so that checking a record does not allocate
+    private final RuleIndex.CandidateConsumer ruleConsumer = this::consumeForRule;
+
+    // Only used if records are checked in batches
+    private final RecordBatch batch;
+    // The position in the batch of the record that candidate rules are being found for
+    private int batchPosition;
+    // The positions in the batch of the records that could match each rule
+    private final Map<Long, BitSet> batchCandidates = new LinkedHashMap<>();
+    private final RuleIndex.CandidateConsumer batchConsumer = this::addBatchCandidate;
+
+    /**
+     * Constructor.
+     *
+     * @param shareFields A boolean denoting whether the fields used by the filters should be extracted once per record.
+     * @param batchSize The most number of records checked at once. Records are checked one at a time if this is 1.
+     * @param emitter The {@link Emitter} to hand the data of the rules to.
+     */
+    public RulePartition(boolean shareFields, int batchSize, Emitter emitter) {
+        this(shareFields, batchSize, 0, 0L, emitter);
+    }
+
+    /**
+     * Constructor that also times the rules.
+     *
+     * @param shareFields A boolean denoting whether the fields used by the filters should be extracted once per record.
+     * @param batchSize The most number of records checked at once. Records are checked one at a time if this is 1.
+     * @param timingInterval One in this many checks of each record against a rule is timed. None are if this is 0.
+     *                       Checks of batches are always timed.
+     * @param budget The most estimated nanoseconds a rule may cost before it is over budget. No budget if this is 0.
+     * @param emitter The {@link Emitter} to hand the data of the rules to.
+     */
+    public RulePartition(boolean shareFields, int batchSize, int timingInterval, long budget, Emitter emitter) {
+        sharedPredicates = new SharedPredicates(shareFields);
+        batch = batchSize > 1 ? new RecordBatch(batchSize) : null;
+        this.timingInterval = timingInterval;
+        this.budget = budget;
+        this.emitter = emitter;
+    }
+
+    /**
+     * Adds a rule. The filters of the rule are replaced by shared ones.
+     *
+     * @param id The non-null id of the rule.
+     * @param rule The non-null {@link FilterRule} to add.
+     */
+    public void add(Long id, FilterRule rule) {
+        if (rule.getPredicate() != null) {
+            rule.setPredicate(sharedPredicates.share(rule.getPredicate()));
+        }
+        rules.put(id, rule);
+        ruleIndex.add(id, rule);
+    }
+
+    /**
+     * Removes a rule added with {@link #add(Long, FilterRule)}.
+     *
+     * @param id The non-null id of the rule.
+     * @param rule The non-null {@link FilterRule} to remove.
+     */
+    public void remove(Long id, FilterRule rule) {
+        rules.remove(id);
+        ruleIndex.remove(id);
+        sharedPredicates.release(rule.getPredicate());
+    }
+
+    /**
+     * Returns the number of rules.
+     *
+     * @return The number of rules.
+     */
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * Checks a record against the rules. This does not allocate any memory.
+     *
+     * @param record The {@link BulletRecord} to check.
+     */
+    public void check(BulletRecord record) {
+        // For each rule that is satisfied, we will emit the data but we will not expire the rule.
+        // Only the rules that could possibly match this record are checked.
+        sharedPredicates.advance();
+        ruleIndex.forEachCandidate(record, ruleConsumer);
+    }
+
+    /**
+     * Adds a record to be checked with {@link #checkBatch()}. This must only be used if the batch size is more than 1.
+     *
+     * @param record The {@link BulletRecord} to add.
+     */
+    public void addToBatch(BulletRecord record) {
+        batch.add(record);
+    }
+
+    /**
+     * Checks all the records added with {@link #addToBatch(BulletRecord)} against the rules and then forgets them.
+     */
+    public void checkBatch() {
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        // The index is still used to narrow down the rules, one record at a time
+        for (batchPosition = 0; batchPosition < batch.getSize(); ++batchPosition) {
+            sharedPredicates.advance();
+            ruleIndex.forEachCandidate(batch.get(batchPosition), batchConsumer);
+        }
+        // The filters of each rule are then checked on all its candidate records at once
+        sharedPredicates.advance();
+        batchCandidates.forEach(this::checkBatchForRule);
+        batchCandidates.clear();
+        batch.clear();
+    }
+
+    private void consumeForRule(BulletRecord record, Long id, FilterRule rule) {
+        boolean satisfied;
+        if (timingInterval > 0 && rule.countCheck() % timingInterval == 0) {
+            long start = System.nanoTime();
+            satisfied = rule.consume(record);
+            // Stands in for the checks that are not timed
+            charge(id, rule, (System.nanoTime() - start) * timingInterval);
+        } else {
+            satisfied = rule.consume(record);
+        }
+        if (satisfied) {
+            emit(id, rule);
+        }
+    }
+
+    private void addBatchCandidate(BulletRecord record, Long id, FilterRule rule) {
+        batchCandidates.computeIfAbsent(id, k -> new BitSet(batch.getSize())).set(batchPosition);
+    }
+
+    private void checkBatchForRule(Long id, BitSet candidates) {
+        FilterRule rule = rules.get(id);
+        long start = System.nanoTime();
+        rule.filter(batch, candidates);
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (rule.consumeFiltered(batch.get(i))) {
+                emit(id, rule);
+            }
+        }
+        if (timingInterval > 0) {
+            charge(id, rule, System.nanoTime() - start);
+        }
+    }
+
+    private void charge(Long id, FilterRule rule, long nanos) {
+        boolean wasWithinBudget = rule.getCost() <= budget;
+        rule.addCost(nanos);
+        // A rule is only collected once, when it first goes over
+        if (budget > 0 && wasWithinBudget && rule.getCost() > budget) {
+            overBudget.add(id);
+        }
+    }
+
+    private void emit(Long id, FilterRule rule) {
+        // The FilterRule will handle giving us the right data - a byte[] to emit. This resets the rule so it must be
+        // done now and not when the data is emitted.
+        byte[] data = rule.getData();
+        if (data != null) {
+            emitter.emit(id, data);
+        }
+    }
+}
@@ -16,10 +16,18 @@ public class TopologyConstants {
     public static final String RECORD_FIELD = "record";
     public static final String JOIN_FIELD = "result";
     public static final String RETURN_FIELD = "return-info";
+    public static final String ERROR_FIELD = "error";
+    public static final String RESOLUTION_FIELD = "resolution";
+    public static final String ARRIVED_FIELD = "arrived";
+    public static final String SHED_FIELD = "shed";
     public static final int ID_POSITION = 0;
     public static final int RULE_POSITION = 1;
     public static final int RETURN_POSITION = 1;
     public static final int RECORD_POSITION = 1;
+    public static final int ERROR_POSITION = 1;
+    public static final int RESOLUTION_POSITION = 2;
+    public static final int ARRIVED_POSITION = 1;
+    public static final int SHED_POSITION = 2;
 
     public static final String RECORD_COMPONENT = "DataSource";
     public static final String TICK_COMPONENT = Constants.SYSTEM_COMPONENT_ID;
@@ -32,6 +40,10 @@ public class TopologyConstants {
     public static final String TICK_STREAM = Constants.SYSTEM_TICK_STREAM_ID;
     public static final String FILTER_STREAM = FilterBolt.FILTER_STREAM;
     public static final String JOIN_STREAM = JoinBolt.JOIN_STREAM;
+    public static final String FEEDBACK_STREAM = JoinBolt.FEEDBACK_STREAM;
+    public static final String ERROR_STREAM = FilterBolt.ERROR_STREAM;
+    public static final String SHED_STREAM = FilterBolt.SHED_STREAM;
+    public static final String FLUSH_STREAM = FilterBolt.FLUSH_STREAM;
     public static final String RETURN_STREAM = PrepareRequest.RETURN_STREAM;
     public static final String ARGS_STREAM = PrepareRequest.ARGS_STREAM;
     public static final String ID_STREAM = PrepareRequest.ID_STREAM;
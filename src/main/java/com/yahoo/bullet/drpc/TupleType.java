@@ -9,11 +9,13 @@ import lombok.Getter;
 import org.apache.storm.tuple.Tuple;
 
 import java.util.Optional;
-import java.util.stream.Stream;
 
 import static com.yahoo.bullet.drpc.TopologyConstants.ARGS_STREAM;
+import static com.yahoo.bullet.drpc.TopologyConstants.ERROR_STREAM;
+import static com.yahoo.bullet.drpc.TopologyConstants.FEEDBACK_STREAM;
 import static com.yahoo.bullet.drpc.TopologyConstants.FILTER_COMPONENT;
 import static com.yahoo.bullet.drpc.TopologyConstants.FILTER_STREAM;
+import static com.yahoo.bullet.drpc.TopologyConstants.FLUSH_STREAM;
 import static com.yahoo.bullet.drpc.TopologyConstants.ID_STREAM;
 import static com.yahoo.bullet.drpc.TopologyConstants.JOIN_COMPONENT;
 import static com.yahoo.bullet.drpc.TopologyConstants.JOIN_STREAM;
@@ -21,6 +23,7 @@ import static com.yahoo.bullet.drpc.TopologyConstants.PREPARE_COMPONENT;
 import static com.yahoo.bullet.drpc.TopologyConstants.RECORD_COMPONENT;
 import static com.yahoo.bullet.drpc.TopologyConstants.RECORD_STREAM;
 import static com.yahoo.bullet.drpc.TopologyConstants.RETURN_STREAM;
+import static com.yahoo.bullet.drpc.TopologyConstants.SHED_STREAM;
 import static com.yahoo.bullet.drpc.TopologyConstants.TICK_COMPONENT;
 import static com.yahoo.bullet.drpc.TopologyConstants.TICK_STREAM;
 
@@ -37,8 +40,12 @@ public class TupleType {
         RETURN_TUPLE(PREPARE_COMPONENT, RETURN_STREAM),
         ID_TUPLE(PREPARE_COMPONENT, ID_STREAM),
         FILTER_TUPLE(FILTER_COMPONENT, FILTER_STREAM),
+        ERROR_TUPLE(FILTER_COMPONENT, ERROR_STREAM),
+        SHED_TUPLE(FILTER_COMPONENT, SHED_STREAM),
+        FLUSH_TUPLE(FILTER_COMPONENT, FLUSH_STREAM),
         RECORD_TUPLE(RECORD_COMPONENT, RECORD_STREAM),
-        JOIN_TUPLE(JOIN_COMPONENT, JOIN_STREAM);
+        JOIN_TUPLE(JOIN_COMPONENT, JOIN_STREAM),
+        FEEDBACK_TUPLE(JOIN_COMPONENT, FEEDBACK_STREAM);
 
         private String stream;
         private String component;
@@ -66,6 +73,21 @@ public class TupleType {
      * @return An optional {@link TupleType.Type} for the tuple.
      */
     public static Optional<Type> classify(Tuple tuple) {
-        return Stream.of(ALL_TYPES).filter(x -> x.isMe(tuple)).findFirst();
+        return Optional.ofNullable(classifyOrNull(tuple));
+    }
+
+    /**
+     * Returns the {@link TupleType.Type} of this tuple without allocating.
+     *
+     * @param tuple The tuple whose type is needed.
+     * @return The {@link TupleType.Type} for the tuple or null if it is not one of them.
+     */
+    public static Type classifyOrNull(Tuple tuple) {
+        for (Type type : ALL_TYPES) {
+            if (type.isMe(tuple)) {
+                return type;
+            }
+        }
+        return null;
     }
 }
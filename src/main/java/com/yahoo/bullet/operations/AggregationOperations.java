@@ -8,9 +8,12 @@ package com.yahoo.bullet.operations;
 import com.google.gson.annotations.SerializedName;
 import com.yahoo.bullet.operations.aggregations.CountDistinct;
 import com.yahoo.bullet.operations.aggregations.GroupAll;
+import com.yahoo.bullet.operations.aggregations.GroupBy;
 import com.yahoo.bullet.operations.aggregations.GroupOperation;
+import com.yahoo.bullet.operations.aggregations.Percentile;
 import com.yahoo.bullet.operations.aggregations.Raw;
 import com.yahoo.bullet.operations.aggregations.Strategy;
+import com.yahoo.bullet.operations.aggregations.TopK;
 import com.yahoo.bullet.parsing.Aggregation;
 import lombok.Getter;
 
@@ -114,12 +117,25 @@ public class AggregationOperations {
             return new CountDistinct(aggregation);
         }
 
+        if (type == AggregationType.TOP && !noFields) {
+            return new TopK(aggregation);
+        }
+
+        if (type == AggregationType.PERCENTILE && !noFields && fields.size() == 1) {
+            return new Percentile(aggregation);
+        }
+
         Set<GroupOperation> operations = aggregation.getGroupOperations();
         boolean noOperations = isEmpty(operations);
         if (type == AggregationType.GROUP && noFields && !noOperations) {
             return new GroupAll(aggregation);
         }
 
+        // Without operations, this is a DISTINCT on the fields
+        if (type == AggregationType.GROUP && !noFields) {
+            return new GroupBy(aggregation);
+        }
+
         return null;
     }
 }
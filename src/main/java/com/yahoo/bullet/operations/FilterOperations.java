@@ -8,14 +8,11 @@ package com.yahoo.bullet.operations;
 import com.google.gson.annotations.SerializedName;
 import com.yahoo.bullet.operations.typesystem.Type;
 import com.yahoo.bullet.operations.typesystem.TypedObject;
-import com.yahoo.bullet.parsing.Clause;
-import com.yahoo.bullet.record.BulletRecord;
 
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.function.BiPredicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -61,10 +58,6 @@ public class FilterOperations {
         boolean compare(TypedObject object, List<T> values);
     }
 
-    // Just to avoid typing BiPredicate<...>
-    public interface LogicalOperator extends BiPredicate<BulletRecord, List<Clause>> {
-    }
-
     // These predicates WILL satisfy the "vacuous" truth checks. That is if the stream is empty, allMatch and
     // noneMatch will return true; anyMatch will return false. This means that if after failing to cast all values
     // to t's type causing the stream to be empty, the any/all/none matches will behave as above.
@@ -92,10 +85,6 @@ public class FilterOperations {
                                                               v.stream().map(p -> p.matcher(t.toString()))
                                                                .anyMatch(Matcher::matches);
 
-    public static final LogicalOperator AND = (r, l) -> l.stream().map(c -> c.check(r)).allMatch(Boolean::valueOf);
-    public static final LogicalOperator  OR = (r, l) -> l.stream().map(c -> c.check(r)).anyMatch(Boolean::valueOf);
-    public static final LogicalOperator NOT = (r, l) -> !l.get(0).check(r);
-
     // Convenience maps from operators to operations, grouped by type.
     public static final Map<FilterType, Comparator> RELATIONAL_OPERATORS = new HashMap<>();
     static {
@@ -107,11 +96,4 @@ public class FilterOperations {
         RELATIONAL_OPERATORS.put(FilterType.LESS_EQUALS, LE);
         RELATIONAL_OPERATORS.put(FilterType.REGEX_LIKE, RLIKE);
     }
-
-    public static final Map<FilterType, LogicalOperator> LOGICAL_OPERATORS = new HashMap<>();
-    static {
-        LOGICAL_OPERATORS.put(FilterType.AND, AND);
-        LOGICAL_OPERATORS.put(FilterType.OR, OR);
-        LOGICAL_OPERATORS.put(FilterType.NOT, NOT);
-    }
 }
@@ -2,7 +2,7 @@ package com.yahoo.bullet.operations.aggregations;
 
 import com.yahoo.bullet.BulletConfig;
 import com.yahoo.bullet.parsing.Aggregation;
-import com.yahoo.bullet.parsing.Specification;
+import com.yahoo.bullet.parsing.FieldPath;
 import com.yahoo.bullet.record.BulletRecord;
 import com.yahoo.bullet.result.Clip;
 import com.yahoo.bullet.result.Metadata;
@@ -17,13 +17,11 @@ import com.yahoo.sketches.theta.Sketches;
 import com.yahoo.sketches.theta.Union;
 import com.yahoo.sketches.theta.UpdateSketch;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -33,18 +31,18 @@ import static java.util.Arrays.asList;
 public class CountDistinct implements Strategy {
     private UpdateSketch updateSketch;
     private Union unionSketch;
-    private List<String> fields;
+    private List<FieldPath> fields;
     private String newName;
 
+    // Reused for the hashes of the values of the fields of each record, which together are the item put in the Sketch
+    private long[] key;
+
     private boolean consumed = false;
     private boolean combined = false;
 
     public static final String NEW_NAME_KEY = "newName";
     public static final String DEFAULT_NEW_NAME = "COUNT DISTINCT";
 
-    // Separator for multiple fields when inserting into the Sketch
-    private String separator;
-
     // Sketch defaults
     // No sampling
     public static final float DEFAULT_SAMPLING_PROBABILITY = 1.0f;
@@ -75,6 +73,15 @@ public class CountDistinct implements Strategy {
     public static final String META_STD_DEV_UB = "upperBound";
     public static final String META_STD_DEV_LB = "lowerBound";
 
+    // Seeds that keep values of different types from hashing alike
+    private static final long LONG_SEED = 0x9e3779b97f4a7c15L;
+    private static final long DOUBLE_SEED = 0x632be59bd9b4e019L;
+    private static final long STRING_SEED = 0xcbf29ce484222325L;
+    private static final long NULL_HASH = 0x2545f4914f6cdd1dL;
+    private static final long TRUE_HASH = 0x5851f42d4c957f2dL;
+    private static final long FALSE_HASH = 0x14057b7ef767814fL;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     /**
      * Constructor that requires an {@link Aggregation}.
      *
@@ -85,17 +92,21 @@ public class CountDistinct implements Strategy {
         Map config = aggregation.getConfiguration();
         Map<String, Object> attributes = aggregation.getAttributes();
 
-        fields = new ArrayList<>(aggregation.getFields().keySet());
+        fields = aggregation.getFields().keySet().stream().map(FieldPath::of).collect(Collectors.toList());
+        key = new long[fields.size()];
         newName = attributes == null ? DEFAULT_NEW_NAME :
                                        attributes.getOrDefault(NEW_NAME_KEY, DEFAULT_NEW_NAME).toString();
         metadataKeys = (Map<String, String>) config.getOrDefault(BulletConfig.RESULT_METADATA_METRICS_MAPPING,
                                                                  Collections.emptyMap());
 
-        separator = config.getOrDefault(BulletConfig.AGGREGATION_COMPOSITE_FIELD_SEPARATOR,
-                                        Aggregation.DEFAULT_FIELD_SEPARATOR).toString();
-
         float samplingProbability = ((Number) config.getOrDefault(BulletConfig.COUNT_DISTINCT_AGGREGATION_SKETCH_SAMPLING,
                                                                   DEFAULT_SAMPLING_PROBABILITY)).floatValue();
+        // The records are not sampled for a COUNT DISTINCT. The Sketch samples the distinct values at the rate instead,
+        // which its estimate and bounds account for.
+        double rate = aggregation.getSamplingRate();
+        if (rate > 0.0 && rate < samplingProbability) {
+            samplingProbability = (float) rate;
+        }
 
         Family family = getFamily(config.getOrDefault(BulletConfig.COUNT_DISTINCT_AGGREGATION_SKETCH_FAMILY,
                                                       DEFAULT_UPDATE_SKETCH_FAMILY).toString());
@@ -116,8 +127,10 @@ public class CountDistinct implements Strategy {
 
     @Override
     public void consume(BulletRecord data) {
-        String field = getFieldsAsString(fields, data, separator);
-        updateSketch.update(field);
+        for (int i = 0; i < key.length; ++i) {
+            key[i] = hash(fields.get(i).extract(data));
+        }
+        updateSketch.update(key);
         consumed = true;
     }
 
@@ -166,11 +179,50 @@ public class CountDistinct implements Strategy {
         }
     }
 
-    private static String getFieldsAsString(List<String> fields, BulletRecord record, String separator) {
-        // This explicitly does not do a TypedObject checking. Nulls turn into a String that will be counted.
-        return fields.stream().map(field -> Specification.extractField(field, record))
-                              .map(Objects::toString)
-                              .collect(Collectors.joining(separator));
+    /**
+     * Hashes a value of a field by its type without turning it into a String. Integral numbers hash the same no matter
+     * their type, as do floating point numbers. Nulls are counted as a value of their own. Maps and lists fall back to
+     * hashing their String form. For testing.
+     *
+     * @param value The possibly null value to hash.
+     * @return A 64 bit hash of the value.
+     */
+    static long hash(Object value) {
+        if (value == null) {
+            return NULL_HASH;
+        }
+        if (value instanceof String) {
+            return hash((String) value);
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return mix(((Number) value).longValue() ^ LONG_SEED);
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return mix(Double.doubleToLongBits(((Number) value).doubleValue()) ^ DOUBLE_SEED);
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE_HASH : FALSE_HASH;
+        }
+        return hash(value.toString());
+    }
+
+    private static long hash(String value) {
+        // FNV-1a over the chars, seeded with the length
+        long hash = STRING_SEED ^ value.length();
+        for (int i = 0; i < value.length(); ++i) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        // The 64 bit finalizer of MurmurHash3. It is a bijection, so distinct longs do not collide.
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
     }
 
     private Map<String, Object> getSketchMetadata(Sketch sketch, Map<String, String> conceptKeys) {
@@ -5,24 +5,51 @@
  */
 package com.yahoo.bullet.operations.aggregations;
 
+import com.yahoo.bullet.BulletConfig;
 import com.yahoo.bullet.parsing.Aggregation;
 import com.yahoo.bullet.record.BulletRecord;
 import com.yahoo.bullet.result.Clip;
+import com.yahoo.bullet.result.Metadata;
+import com.yahoo.bullet.result.Metadata.Concept;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.yahoo.bullet.operations.aggregations.CountDistinct.META_STD_DEV_1;
+import static com.yahoo.bullet.operations.aggregations.CountDistinct.META_STD_DEV_2;
+import static com.yahoo.bullet.operations.aggregations.CountDistinct.META_STD_DEV_3;
+import static com.yahoo.bullet.operations.aggregations.CountDistinct.META_STD_DEV_LB;
+import static com.yahoo.bullet.operations.aggregations.CountDistinct.META_STD_DEV_UB;
+
 @Slf4j
 public class GroupAll implements Strategy {
     // We only have a single group.
     private GroupData data;
 
+    // The fraction of the records that were consumed, if the rule samples records.
+    private double samplingRate = 1.0;
+    private Map<String, String> metadataKeys;
+
     /**
      * Constructor that takes in an {@link Aggregation}. Requires the aggregation to have generated its group operations.
      *
      * @param aggregation The {@link Aggregation} that specifies how and what this will compute.
      */
+    @SuppressWarnings("unchecked")
     public GroupAll(Aggregation aggregation) {
         // GroupOperations is all we care about - size etc. are meaningless for Group All since it's a single result
         data = new GroupData(aggregation.getGroupOperations());
+
+        double rate = aggregation.getSamplingRate();
+        if (rate > 0.0 && rate < 1.0) {
+            samplingRate = rate;
+        }
+        Map config = aggregation.getConfiguration();
+        metadataKeys = config == null ? Collections.emptyMap() :
+                       (Map<String, String>) config.getOrDefault(BulletConfig.RESULT_METADATA_METRICS_MAPPING,
+                                                                 Collections.emptyMap());
     }
 
     @Override
@@ -42,6 +69,53 @@ public class GroupAll implements Strategy {
 
     @Override
     public Clip getAggregation() {
-        return Clip.of(data.getAsBulletRecord());
+        BulletRecord record = data.getAsBulletRecord(samplingRate);
+        if (samplingRate == 1.0) {
+            return Clip.of(record);
+        }
+        String aggregationMetaKey = metadataKeys.get(Concept.AGGREGATION_METADATA.getName());
+        String standardDeviationsKey = metadataKeys.get(Concept.STANDARD_DEVIATIONS.getName());
+        if (aggregationMetaKey == null || standardDeviationsKey == null) {
+            return Clip.of(record);
+        }
+        Map<String, Object> aggregationMetadata = new HashMap<>();
+        aggregationMetadata.put(standardDeviationsKey, getStandardDeviations(data, samplingRate));
+        return Clip.of(new Metadata().add(aggregationMetaKey, aggregationMetadata)).add(record);
+    }
+
+    /**
+     * Gets the bounds at 1, 2 and 3 standard deviations for each COUNT of a group that was only presented a sample of
+     * the records.
+     *
+     * @param data The {@link GroupData} of the group.
+     * @param samplingRate The fraction, greater than 0 and less than 1, of the records that were presented.
+     * @return A {@link Map} of the result names of the COUNT operations to their bounds.
+     */
+    static Map<String, Object> getStandardDeviations(GroupData data, double samplingRate) {
+        Map<String, Object> standardDeviations = new HashMap<>();
+        data.getCounts().forEach((name, count) -> standardDeviations.put(name, getStandardDeviations(count,
+                                                                                                     samplingRate)));
+        return standardDeviations;
+    }
+
+    private static Map<String, Map<String, Double>> getStandardDeviations(long count, double samplingRate) {
+        Map<String, Map<String, Double>> standardDeviations = new HashMap<>();
+        standardDeviations.put(META_STD_DEV_1, getStandardDeviation(count, samplingRate, 1));
+        standardDeviations.put(META_STD_DEV_2, getStandardDeviation(count, samplingRate, 2));
+        standardDeviations.put(META_STD_DEV_3, getStandardDeviation(count, samplingRate, 3));
+        return standardDeviations;
+    }
+
+    /*
+     * Each record was kept independently with the sampling rate, so the count seen is binomial. The total is estimated
+     * as count / rate and the deviation of that is sqrt(count * (1 - rate)) / rate. It cannot be less than the count.
+     */
+    private static Map<String, Double> getStandardDeviation(long count, double samplingRate, int standardDeviation) {
+        double estimate = count / samplingRate;
+        double deviation = Math.sqrt(count * (1.0 - samplingRate)) / samplingRate;
+        Map<String, Double> bounds = new HashMap<>();
+        bounds.put(META_STD_DEV_LB, Math.max(count, estimate - standardDeviation * deviation));
+        bounds.put(META_STD_DEV_UB, estimate + standardDeviation * deviation);
+        return bounds;
     }
 }
@@ -0,0 +1,219 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.aggregations;
+
+import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.parsing.Aggregation;
+import com.yahoo.bullet.parsing.FieldPath;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.Clip;
+import com.yahoo.bullet.result.Metadata;
+import com.yahoo.bullet.result.Metadata.Concept;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Implements the GROUP operation on one or more fields. Each distinct combination of the values of the fields is a
+ * group with its own {@link GroupData}, found by the list of the values. Without any operations, this is a DISTINCT on
+ * the fields.
+ *
+ * The groups are aggregated where the records are consumed, so a call to {@link #getSerializedAggregation()} only
+ * returns the values of the fields of each group, in order, and its metrics in the binary format of {@link GroupData},
+ * with the layout of the operations written once for all of them. A call to {@link #combine(byte[])} merges them into
+ * the groups with the same values as they are read.
+ *
+ * At most as many groups as the size of the aggregation are kept. The records and groups for any other values that
+ * arrive after that are dropped and the result is marked as truncated, since some of its groups may then be missing
+ * records that were dropped elsewhere.
+ *
+ * If the rule samples records, the bounds of the COUNT of each group are reported the same way as for
+ * {@link GroupAll}, in a list in the same order as the records.
+ */
+@Slf4j
+public class GroupBy implements Strategy {
+    private final Map<List<String>, GroupData> groups = new HashMap<>();
+    // Shared by all the groups
+    private final GroupData.Layout layout;
+    private final List<FieldPath> fields;
+    private final List<String> names;
+    private final int maxGroups;
+
+    // The fraction of the records that were consumed, if the rule samples records.
+    private double samplingRate = 1.0;
+    private Map<String, String> metadataKeys;
+    // Whether a group was dropped here or in any of the groups that were combined
+    private boolean truncated = false;
+
+    // Reused for the values of the fields of each record. The key views them as a list.
+    private final String[] values;
+    private final List<String> key;
+
+    /**
+     * Constructor that takes in an {@link Aggregation} with fields. Requires the aggregation to have generated its
+     * group operations, if it has any.
+     *
+     * @param aggregation The {@link Aggregation} that specifies how and what this will compute.
+     */
+    @SuppressWarnings("unchecked")
+    public GroupBy(Aggregation aggregation) {
+        Set<GroupOperation> groupOperations = aggregation.getGroupOperations();
+        layout = new GroupData.Layout(groupOperations == null ? Collections.emptySet() : groupOperations);
+
+        fields = new ArrayList<>();
+        names = new ArrayList<>();
+        for (Map.Entry<String, String> field : aggregation.getFields().entrySet()) {
+            fields.add(FieldPath.of(field.getKey()));
+            // The field is renamed in the result if it has a new name
+            String name = field.getValue();
+            names.add(name == null || name.isEmpty() ? field.getKey() : name);
+        }
+        values = new String[fields.size()];
+        key = Arrays.asList(values);
+
+        Map config = aggregation.getConfiguration();
+        maxGroups = aggregation.getSize();
+
+        double rate = aggregation.getSamplingRate();
+        if (rate > 0.0 && rate < 1.0) {
+            samplingRate = rate;
+        }
+        metadataKeys = (Map<String, String>) config.getOrDefault(BulletConfig.RESULT_METADATA_METRICS_MAPPING,
+                                                                 Collections.emptyMap());
+    }
+
+    @Override
+    public void consume(BulletRecord data) {
+        for (int i = 0; i < values.length; ++i) {
+            // Missing values are kept as nulls, which are not the same as the String null
+            Object value = fields.get(i).extract(data);
+            values[i] = value == null ? null : value.toString();
+        }
+        GroupData group = getOrCreate();
+        if (group != null) {
+            group.consume(data);
+        }
+    }
+
+    /**
+     * Merges the serialized groups from {@link #getSerializedAggregation()} into the groups with the same values.
+     * Groups that are not present and do not fit are ignored.
+     *
+     * @param serializedAggregation The serialized groups.
+     */
+    @Override
+    public void combine(byte[] serializedAggregation) {
+        if (serializedAggregation == null) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(serializedAggregation))) {
+            GroupData.readVersion(in);
+            GroupData.Layout otherLayout = GroupData.readLayout(in);
+            truncated |= in.readBoolean();
+            int size = in.readInt();
+            for (int i = 0; i < size; ++i) {
+                combine(in, otherLayout);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not deserialize groups {}", serializedAggregation);
+            log.error("Exception was ", e);
+        }
+    }
+
+    @Override
+    public byte[] getSerializedAggregation() {
+        try (
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bos)
+        ) {
+            out.writeByte(GroupData.VERSION);
+            GroupData.writeLayout(out, layout);
+            out.writeBoolean(truncated);
+            out.writeInt(groups.size());
+            for (Map.Entry<List<String>, GroupData> group : groups.entrySet()) {
+                // The values are written in order since the names of the fields may not be distinct
+                for (String value : group.getKey()) {
+                    GroupData.writeString(out, value);
+                }
+                group.getValue().writeMetrics(out);
+            }
+            return bos.toByteArray();
+        } catch (IOException ioe) {
+            log.error("Could not serialize groups {}", groups);
+            log.error("Exception was ", ioe);
+        }
+        return null;
+    }
+
+    @Override
+    public Clip getAggregation() {
+        Clip clip = new Clip();
+        groups.values().forEach(group -> clip.add(group.getAsBulletRecord(samplingRate)));
+        String aggregationMetaKey = metadataKeys.get(Concept.AGGREGATION_METADATA.getName());
+        if (aggregationMetaKey == null) {
+            return clip;
+        }
+        Map<String, Object> aggregationMetadata = new HashMap<>();
+        String truncatedKey = metadataKeys.get(Concept.TRUNCATED_RESULT.getName());
+        if (truncatedKey != null) {
+            aggregationMetadata.put(truncatedKey, truncated);
+        }
+        String standardDeviationsKey = metadataKeys.get(Concept.STANDARD_DEVIATIONS.getName());
+        if (samplingRate != 1.0 && standardDeviationsKey != null) {
+            List<Map<String, Object>> standardDeviations = new ArrayList<>();
+            groups.values().forEach(group -> standardDeviations.add(GroupAll.getStandardDeviations(group,
+                                                                                                    samplingRate)));
+            aggregationMetadata.put(standardDeviationsKey, standardDeviations);
+        }
+        if (aggregationMetadata.isEmpty()) {
+            return clip;
+        }
+        return clip.add(new Metadata().add(aggregationMetaKey, aggregationMetadata));
+    }
+
+    private void combine(DataInputStream in, GroupData.Layout otherLayout) throws IOException {
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = GroupData.readString(in);
+        }
+        GroupData group = getOrCreate();
+        // The metrics of a group that does not fit still have to be read past
+        if (group == null) {
+            group = new GroupData(null, otherLayout);
+        }
+        group.combine(in, otherLayout);
+    }
+
+    private GroupData getOrCreate() {
+        GroupData group = groups.get(key);
+        if (group != null) {
+            return group;
+        }
+        if (groups.size() >= maxGroups) {
+            truncated = true;
+            return null;
+        }
+        Map<String, String> groupFields = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; ++i) {
+            groupFields.put(names.get(i), values[i]);
+        }
+        group = new GroupData(groupFields, layout);
+        // The key is a view of the reused values so the group is stored under a copy
+        groups.put(new ArrayList<>(key), group);
+        return group;
+    }
+}
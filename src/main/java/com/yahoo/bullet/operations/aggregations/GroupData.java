@@ -5,32 +5,52 @@
  */
 package com.yahoo.bullet.operations.aggregations;
 
-import com.yahoo.bullet.operations.AggregationOperations;
-import com.yahoo.bullet.operations.AggregationOperations.AggregationOperator;
 import com.yahoo.bullet.operations.AggregationOperations.GroupOperationType;
 import com.yahoo.bullet.record.BulletRecord;
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
 import static com.yahoo.bullet.operations.AggregationOperations.GroupOperationType.AVG;
+import static com.yahoo.bullet.operations.AggregationOperations.GroupOperationType.COUNT;
 import static com.yahoo.bullet.operations.AggregationOperations.GroupOperationType.COUNT_FIELD;
 
 /**
  * This class represents the results of a GroupOperations. The result is always a {@link Number}, so
  * that is what this class stores. It is {@link Serializable} and provides convenience static methods to
  * manually perform serialization {@link #toBytes(GroupData)} and deserialization {@link #fromBytes(byte[])}
+ * to a compact binary format. A serialized GroupData can also be merged straight from its bytes with
+ * {@link #combine(byte[])}.
  *
  * It can compute all the operations if presented with a {@link BulletRecord}, merge other GroupData and
- * present the results of the operations as a BulletRecord.
+ * present the results of the operations as a BulletRecord. If it is one of many groups, it also holds the values of
+ * the fields that identify its group and adds them to that BulletRecord.
+ *
+ * The metrics are kept in primitive arrays at the positions given by a {@link Layout}, which should be created once
+ * and shared by all the GroupData for the same operations. Counts are longs and everything else is a double that is
+ * null till a number is seen.
+ *
+ * Java serialization still uses the form of older versions, a {@link Map} of each {@link GroupOperation} to its metric,
+ * so that older and newer versions can read each other's GroupData.
  */
 @Slf4j
 public class GroupData implements Serializable {
@@ -38,7 +58,114 @@ public class GroupData implements Serializable {
 
     public static final String NAME_SEPARATOR = "_";
 
-    private Map<GroupOperation, Number> metrics = new HashMap<>();
+    /**
+     * The version of the binary format. It is the first byte and is followed by the {@link Layout}, as the count of
+     * the operations and the type ordinal, field and new name of each, then the group fields and then the metrics. The
+     * metrics are all the longs, then a byte of bits for whether each next eight doubles are present, each followed by
+     * the ones that are.
+     */
+    public static final byte VERSION = 1;
+
+    // Every stream from an ObjectOutputStream starts with this. Used to read the GroupData of older versions.
+    private static final byte JAVA_SERIALIZATION_MAGIC = (byte) 0xAC;
+
+    // The fields of older versions. The metrics have a COUNT_FIELD for the count of the field of each AVG.
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("metrics", Map.class),
+        new ObjectStreamField("groupFields", Map.class)
+    };
+
+    /**
+     * The positions of the metrics of a {@link Set} of {@link GroupOperation} in the arrays of a {@link GroupData}.
+     * Equal sets of operations have equal layouts.
+     */
+    public static class Layout {
+        // Ordered so that the same operations always get the same positions
+        private final GroupOperation[] operations;
+        private final GroupOperationType[] types;
+        private final String[] fields;
+        private final String[] names;
+        // The position in the longs for counts or the doubles for everything else
+        private final int[] slots;
+        // For AVG, the position in the longs of the count of the values of its field
+        private final int[] countSlots;
+        // The type of the operation for each position in the doubles
+        private final GroupOperationType[] doubleTypes;
+        private final int doubles;
+        private final int longs;
+
+        /**
+         * Constructor that lays out the given operations.
+         *
+         * @param operations The non-null operations to lay out.
+         */
+        public Layout(Set<GroupOperation> operations) {
+            this.operations = operations.toArray(new GroupOperation[operations.size()]);
+            Arrays.sort(this.operations, Comparator.comparing(GroupOperation::getType)
+                                                   .thenComparing(GroupOperation::getField,
+                                                                  Comparator.nullsFirst(Comparator.naturalOrder())));
+            int size = this.operations.length;
+            types = new GroupOperationType[size];
+            fields = new String[size];
+            names = new String[size];
+            slots = new int[size];
+            countSlots = new int[size];
+            int doubleSlots = 0;
+            int longSlots = 0;
+            for (int i = 0; i < size; ++i) {
+                GroupOperation operation = this.operations[i];
+                types[i] = operation.getType();
+                fields[i] = operation.getField();
+                names[i] = getResultName(operation);
+                slots[i] = isCount(types[i]) ? longSlots++ : doubleSlots++;
+                countSlots[i] = types[i] == AVG ? longSlots++ : -1;
+            }
+            doubles = doubleSlots;
+            longs = longSlots;
+            doubleTypes = new GroupOperationType[doubles];
+            for (int i = 0; i < size; ++i) {
+                if (!isCount(types[i])) {
+                    doubleTypes[slots[i]] = types[i];
+                }
+            }
+        }
+
+        private static boolean isCount(GroupOperationType type) {
+            return type == COUNT || type == COUNT_FIELD;
+        }
+
+        private int indexOf(GroupOperation operation) {
+            for (int i = 0; i < operations.length; ++i) {
+                if (operations[i].equals(operation)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            return object instanceof Layout && Arrays.equals(operations, ((Layout) object).operations);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(operations);
+        }
+    }
+
+    private final Layout layout;
+    private final double[] doubles;
+    private final long[] longs;
+    // The doubles that are not null
+    private final BitSet present;
+
+    // Null if this is the only group
+    @Getter
+    private Map<String, String> groupFields;
+
+    // Only set while this is read with Java serialization, before it is resolved to a GroupData with a layout
+    private transient Map<GroupOperation, Number> serializedMetrics;
 
     /**
      * Constructor that initializes the GroupData with a {@link Set} of {@link GroupOperation}.
@@ -46,14 +173,33 @@ public class GroupData implements Serializable {
      * @param operations the non-null operations that this will compute metrics for.
      */
     public GroupData(Set<GroupOperation> operations) {
-        // Initialize with nulls.
-        for (GroupOperation operation : operations) {
-            metrics.put(operation, null);
-            if (operation.getType() == AVG) {
-                // For AVG we store an addition COUNT_FIELD operation to store the count (the sum is stored in AVG)
-                metrics.put(new GroupOperation(COUNT_FIELD, operation.getField(), null), null);
-            }
-        }
+        this(null, new Layout(operations));
+    }
+
+    /**
+     * Constructor that initializes the GroupData for a group with the values of its fields and a {@link Set} of
+     * {@link GroupOperation}.
+     *
+     * @param groupFields The {@link Map} of the names to use for the fields of the group to their values. May be null.
+     * @param operations the non-null operations that this will compute metrics for.
+     */
+    public GroupData(Map<String, String> groupFields, Set<GroupOperation> operations) {
+        this(groupFields, new Layout(operations));
+    }
+
+    /**
+     * Constructor that initializes the GroupData for a group with the values of its fields and the {@link Layout} of
+     * the operations to compute.
+     *
+     * @param groupFields The {@link Map} of the names to use for the fields of the group to their values. May be null.
+     * @param layout The non-null {@link Layout} of the operations that this will compute metrics for.
+     */
+    public GroupData(Map<String, String> groupFields, Layout layout) {
+        this.groupFields = groupFields;
+        this.layout = layout;
+        doubles = new double[layout.doubles];
+        longs = new long[layout.longs];
+        present = new BitSet(layout.doubles);
     }
 
     /**
@@ -62,7 +208,26 @@ public class GroupData implements Serializable {
      * @param data The record to compute metrics for.
      */
     public void consume(BulletRecord data) {
-        metrics.entrySet().stream().forEach(e -> consume(e, data));
+        GroupOperationType[] types = layout.types;
+        int[] slots = layout.slots;
+        for (int i = 0; i < types.length; ++i) {
+            if (types[i] == COUNT) {
+                longs[slots[i]]++;
+                continue;
+            }
+            Object value = data.get(layout.fields[i]);
+            if (types[i] == COUNT_FIELD) {
+                longs[slots[i]] += value != null ? 1 : 0;
+                continue;
+            }
+            if (types[i] == AVG && value != null) {
+                // Non-numeric values are counted for the average, the same as a COUNT of the field
+                longs[layout.countSlots[i]]++;
+            }
+            if (value instanceof Number) {
+                update(types[i], slots[i], ((Number) value).doubleValue());
+            }
+        }
     }
 
     /**
@@ -72,12 +237,24 @@ public class GroupData implements Serializable {
      * @param serializedGroupData the serialized bytes of a GroupData.
      */
     public void combine(byte[] serializedGroupData) {
-        GroupData otherMetric = GroupData.fromBytes(serializedGroupData);
-        if (otherMetric == null) {
-            log.error("Could not create a GroupData. Skipping...");
+        if (isJavaSerialized(serializedGroupData)) {
+            GroupData otherMetric = GroupData.fromBytes(serializedGroupData);
+            if (otherMetric == null) {
+                log.error("Could not create a GroupData. Skipping...");
+                return;
+            }
+            combine(otherMetric);
             return;
         }
-        combine(otherMetric);
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(serializedGroupData))) {
+            readVersion(in);
+            Layout otherLayout = readLayout(in);
+            readGroupFields(in);
+            combine(in, otherLayout);
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not merge a GroupData from raw data {}. Skipping...", serializedGroupData);
+            log.error("Exception when merging GroupData", e);
+        }
     }
 
     /**
@@ -87,7 +264,19 @@ public class GroupData implements Serializable {
      * @param otherData The other GroupData to merge.
      */
     public void combine(GroupData otherData) {
-        metrics.entrySet().stream().forEach(e -> combine(e, otherData));
+        if (layout.equals(otherData.layout)) {
+            for (int i = 0; i < layout.types.length; ++i) {
+                combine(otherData, i, i);
+            }
+            return;
+        }
+        // Only the operations that are in both are merged
+        for (int i = 0; i < layout.types.length; ++i) {
+            int other = otherData.layout.indexOf(layout.operations[i]);
+            if (other >= 0) {
+                combine(otherData, i, other);
+            }
+        }
     }
 
     /**
@@ -96,84 +285,155 @@ public class GroupData implements Serializable {
      * @return A non-null {@link BulletRecord} containing the data stored in this object.
      */
     public BulletRecord getAsBulletRecord() {
+        return getAsBulletRecord(1.0);
+    }
+
+    /**
+     * Gets the data stored for the group as a {@link BulletRecord}, estimating the results for all the records when
+     * only a sample of them was presented. Counts and sums are scaled up by the inverse of the sampling rate. Averages,
+     * minimums and maximums are left as they are.
+     *
+     * @param samplingRate The fraction, greater than 0 and at most 1, of the records that were presented.
+     * @return A non-null {@link BulletRecord} containing the estimated data for the group.
+     */
+    public BulletRecord getAsBulletRecord(double samplingRate) {
         BulletRecord record = new BulletRecord();
-        metrics.entrySet().stream().forEach(e -> addToRecord(e, record));
+        if (groupFields != null) {
+            groupFields.forEach(record::setString);
+        }
+        for (int i = 0; i < layout.types.length; ++i) {
+            addToRecord(i, record, samplingRate);
+        }
         return record;
     }
 
-    private void consume(Map.Entry<GroupOperation, Number> metric, BulletRecord data) {
-        GroupOperation operation = metric.getKey();
-        Object value = data.get(operation.getField());
-        switch (operation.getType()) {
-            case MIN:
-                updateMetric(value, metric, AggregationOperations.MIN);
-                break;
-            case MAX:
-                updateMetric(value, metric, AggregationOperations.MAX);
-                break;
-            case COUNT:
-                updateMetric(1L, metric, AggregationOperations.COUNT);
-                break;
-            case COUNT_FIELD:
-                updateMetric(value != null ? 1L : null, metric, AggregationOperations.COUNT);
-                break;
-            case SUM:
-            case AVG:
-                updateMetric(value, metric, AggregationOperations.SUM);
-                break;
+    /**
+     * Gets the counts stored for the group, as they were presented.
+     *
+     * @return A non-null {@link Map} of the result names of the COUNT operations to their counts.
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new HashMap<>();
+        for (int i = 0; i < layout.types.length; ++i) {
+            if (layout.types[i] == COUNT) {
+                counts.put(layout.names[i], longs[layout.slots[i]]);
+            }
         }
+        return counts;
     }
 
-    private void combine(Map.Entry<GroupOperation, Number> metric, GroupData otherData) {
-        GroupOperation operation = metric.getKey();
-        Number value = otherData.metrics.get(metric.getKey());
-        switch (operation.getType()) {
+    private void update(GroupOperationType type, int slot, double value) {
+        if (!present.get(slot)) {
+            present.set(slot);
+            doubles[slot] = value;
+            return;
+        }
+        double current = doubles[slot];
+        switch (type) {
             case MIN:
-                updateMetric(value, metric, AggregationOperations.MIN);
+                doubles[slot] = value < current ? value : current;
                 break;
             case MAX:
-                updateMetric(value, metric, AggregationOperations.MAX);
+                doubles[slot] = value > current ? value : current;
                 break;
-            case SUM:
-            case AVG:
-                updateMetric(value, metric, AggregationOperations.SUM);
-                break;
-            case COUNT:
-            case COUNT_FIELD:
-                updateMetric(value, metric, AggregationOperations.COUNT);
+            default:
+                doubles[slot] = current + value;
                 break;
         }
     }
 
-    private void addToRecord(Map.Entry<GroupOperation, Number> metric, BulletRecord record) {
-        GroupOperation operation = metric.getKey();
-        Number value = metric.getValue();
-        switch (operation.getType()) {
+    private void combine(GroupData otherData, int index, int otherIndex) {
+        int slot = layout.slots[index];
+        int otherSlot = otherData.layout.slots[otherIndex];
+        GroupOperationType type = layout.types[index];
+        if (Layout.isCount(type)) {
+            longs[slot] += otherData.longs[otherSlot];
+            return;
+        }
+        if (type == AVG) {
+            longs[layout.countSlots[index]] += otherData.longs[otherData.layout.countSlots[otherIndex]];
+        }
+        if (otherData.present.get(otherSlot)) {
+            update(type, slot, otherData.doubles[otherSlot]);
+        }
+    }
+
+    /**
+     * Writes the metrics in the binary format.
+     *
+     * @param out The {@link DataOutputStream} to write to.
+     * @throws IOException if the metrics could not be written.
+     */
+    void writeMetrics(DataOutputStream out) throws IOException {
+        for (long value : longs) {
+            out.writeLong(value);
+        }
+        for (int i = 0; i < doubles.length; i += Byte.SIZE) {
+            int end = Math.min(i + Byte.SIZE, doubles.length);
+            int bits = 0;
+            for (int j = i; j < end; ++j) {
+                bits |= present.get(j) ? 1 << (j - i) : 0;
+            }
+            out.writeByte(bits);
+            for (int j = present.nextSetBit(i); j >= 0 && j < end; j = present.nextSetBit(j + 1)) {
+                out.writeDouble(doubles[j]);
+            }
+        }
+    }
+
+    /**
+     * Merges metrics in the binary format into this. If they have the same {@link Layout} as this, they are merged
+     * into the positions as they are read.
+     *
+     * @param in The {@link DataInputStream} to read from.
+     * @param otherLayout The {@link Layout} of the metrics that are read.
+     * @throws IOException if the metrics could not be read.
+     */
+    void combine(DataInputStream in, Layout otherLayout) throws IOException {
+        if (!layout.equals(otherLayout)) {
+            GroupData otherData = new GroupData(null, otherLayout);
+            otherData.combine(in, otherLayout);
+            combine(otherData);
+            return;
+        }
+        for (int i = 0; i < longs.length; ++i) {
+            longs[i] += in.readLong();
+        }
+        for (int i = 0; i < doubles.length; i += Byte.SIZE) {
+            int end = Math.min(i + Byte.SIZE, doubles.length);
+            int bits = in.readUnsignedByte();
+            for (int j = i; j < end; ++j) {
+                if ((bits & 1 << (j - i)) != 0) {
+                    update(layout.doubleTypes[j], j, in.readDouble());
+                }
+            }
+        }
+    }
+
+    private void addToRecord(int index, BulletRecord record, double samplingRate) {
+        String name = layout.names[index];
+        int slot = layout.slots[index];
+        switch (layout.types[index]) {
             case COUNT:
-                record.setLong(getResultName(operation), value == null ? 0 : value.longValue());
+                record.setLong(name, Math.round(longs[slot] / samplingRate));
                 break;
             case AVG:
-                record.setDouble(getResultName(operation), calculateAvg(value, operation.getField()));
+                long count = longs[layout.countSlots[index]];
+                record.setDouble(name, present.get(slot) && count != 0 ? doubles[slot] / count : null);
                 break;
-            case COUNT_FIELD:
-                // Internal use only for AVG. Not exposed.
+            case SUM:
+                record.setDouble(name, present.get(slot) ? doubles[slot] / samplingRate : null);
                 break;
             case MIN:
             case MAX:
-            case SUM:
-                record.setDouble(getResultName(operation), value == null ? null : value.doubleValue());
+                record.setDouble(name, present.get(slot) ? doubles[slot] : null);
+                break;
+            case COUNT_FIELD:
+                // Internal use only for AVG. Not exposed.
                 break;
         }
     }
 
-    private Double calculateAvg(Number sum, String field) {
-        Number count = metrics.get(new GroupOperation(COUNT_FIELD, field, null));
-        if (sum == null || count == null) {
-            return null;
-        }
-        return sum.doubleValue() / count.longValue();
-    }
-
     /**
      * Returns the name of the result field to use for the given {@link GroupOperation}. If the operation
      * does specify a newName, it will be returned. Otherwise, a composite name containing the type of the
@@ -197,17 +457,22 @@ public class GroupData implements Serializable {
 
     /**
      * Convenience method to deserialize an instance from raw serialized data produced by {@link #toBytes(GroupData)}.
+     * Also reads a GroupData that was serialized with Java serialization by older versions.
      *
      * @param data The raw serialized byte[] representing the data.
      * @return A reified object or null if not successful.
      */
     public static GroupData fromBytes(byte[] data) {
-        try (
-            ByteArrayInputStream bis = new ByteArrayInputStream(data);
-            ObjectInputStream ois = new ObjectInputStream(bis);
-        ) {
-            return (GroupData) ois.readObject();
-        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+        if (isJavaSerialized(data)) {
+            return fromJavaSerialized(data);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            readVersion(in);
+            Layout layout = readLayout(in);
+            GroupData groupData = new GroupData(readGroupFields(in), layout);
+            groupData.combine(in, layout);
+            return groupData;
+        } catch (IOException | RuntimeException e) {
             log.error("Could not reify a GroupData from raw data {}", data);
             log.error("Exception when parsing GroupData", e);
         }
@@ -223,27 +488,218 @@ public class GroupData implements Serializable {
     public static byte[] toBytes(GroupData metric) {
         try (
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(bos);
+            DataOutputStream out = new DataOutputStream(bos)
         ) {
-            oos.writeObject(metric);
+            out.writeByte(VERSION);
+            writeLayout(out, metric.layout);
+            writeGroupFields(out, metric.groupFields);
+            metric.writeMetrics(out);
             return bos.toByteArray();
         } catch (IOException | RuntimeException e) {
-            log.error("Could not serialize given GroupData contents", metric.metrics);
+            log.error("Could not serialize given GroupData {}", metric);
             log.error("Exception when serializing GroupData", e);
         }
         return null;
     }
 
-    /*
-     * This function accepts an AggregationOperator and applies it to the new and current value for the given
-     * GroupOperation and updates metrics accordingly.
+    /**
+     * Reads the version of the binary format and checks that it is known.
+     *
+     * @param in The {@link DataInputStream} to read from.
+     * @throws IOException if the version could not be read or is not known.
+     */
+    static void readVersion(DataInputStream in) throws IOException {
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown version of GroupData: " + version);
+        }
+    }
+
+    /**
+     * Writes a {@link Layout} in the binary format.
+     *
+     * @param out The {@link DataOutputStream} to write to.
+     * @param layout The {@link Layout} to write.
+     * @throws IOException if the layout could not be written.
+     */
+    static void writeLayout(DataOutputStream out, Layout layout) throws IOException {
+        out.writeInt(layout.operations.length);
+        for (GroupOperation operation : layout.operations) {
+            out.writeByte(operation.getType().ordinal());
+            writeString(out, operation.getField());
+            writeString(out, operation.getNewName());
+        }
+    }
+
+    /**
+     * Reads a {@link Layout} in the binary format.
+     *
+     * @param in The {@link DataInputStream} to read from.
+     * @return The read {@link Layout}.
+     * @throws IOException if the layout could not be read.
+     */
+    static Layout readLayout(DataInputStream in) throws IOException {
+        GroupOperationType[] types = GroupOperationType.values();
+        int size = in.readInt();
+        Set<GroupOperation> operations = new HashSet<>();
+        for (int i = 0; i < size; ++i) {
+            GroupOperationType type = types[in.readUnsignedByte()];
+            String field = readString(in);
+            operations.add(new GroupOperation(type, field, readString(in)));
+        }
+        return new Layout(operations);
+    }
+
+    /**
+     * Writes the values of the fields of a group in the binary format.
+     *
+     * @param out The {@link DataOutputStream} to write to.
+     * @param groupFields The {@link Map} of the names of the fields to their values. May be null.
+     * @throws IOException if the fields could not be written.
+     */
+    static void writeGroupFields(DataOutputStream out, Map<String, String> groupFields) throws IOException {
+        if (groupFields == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(groupFields.size());
+        for (Map.Entry<String, String> field : groupFields.entrySet()) {
+            writeString(out, field.getKey());
+            writeString(out, field.getValue());
+        }
+    }
+
+    /**
+     * Reads the values of the fields of a group in the binary format.
+     *
+     * @param in The {@link DataInputStream} to read from.
+     * @return The {@link Map} of the names of the fields to their values or null if there were none.
+     * @throws IOException if the fields could not be read.
      */
-    private void updateMetric(Object object, Map.Entry<GroupOperation, Number> metric, AggregationOperator operator) {
-        // Also catches null.
-        if (object instanceof Number) {
-            Number current = metric.getValue();
-            Number number = (Number) object;
-            metrics.put(metric.getKey(), current == null ? number : operator.apply(number, current));
+    static Map<String, String> readGroupFields(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        Map<String, String> groupFields = new LinkedHashMap<>();
+        for (int i = 0; i < size; ++i) {
+            String name = readString(in);
+            groupFields.put(name, readString(in));
+        }
+        return groupFields;
+    }
+
+    /**
+     * Writes a possibly null String in the binary format. This does not use writeUTF, which cannot write more than 64K
+     * bytes.
+     *
+     * @param out The {@link DataOutputStream} to write to.
+     * @param string The String to write. May be null.
+     * @throws IOException if the String could not be written.
+     */
+    static void writeString(DataOutputStream out, String string) throws IOException {
+        if (string == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a possibly null String in the binary format.
+     *
+     * @param in The {@link DataInputStream} to read from.
+     * @return The read String, which may be null.
+     * @throws IOException if the String could not be read.
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Not enough data for a string of length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        Map<GroupOperation, Number> metrics = new HashMap<>();
+        for (int i = 0; i < layout.types.length; ++i) {
+            int slot = layout.slots[i];
+            if (Layout.isCount(layout.types[i])) {
+                metrics.put(layout.operations[i], longs[slot]);
+                continue;
+            }
+            metrics.put(layout.operations[i], present.get(slot) ? doubles[slot] : null);
+            if (layout.types[i] == AVG) {
+                metrics.put(new GroupOperation(COUNT_FIELD, layout.fields[i], null), longs[layout.countSlots[i]]);
+            }
         }
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("metrics", metrics);
+        fields.put("groupFields", groupFields);
+        out.writeFields();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        serializedMetrics = (Map<GroupOperation, Number>) fields.get("metrics", null);
+        // Older versions do not have this
+        groupFields = (Map<String, String>) fields.get("groupFields", null);
+    }
+
+    private Object readResolve() throws InvalidObjectException {
+        if (serializedMetrics == null) {
+            throw new InvalidObjectException("GroupData has no metrics");
+        }
+        Set<GroupOperation> operations = new HashSet<>();
+        for (GroupOperation operation : serializedMetrics.keySet()) {
+            // These are the counts for the AVG operations
+            if (operation.getType() != COUNT_FIELD) {
+                operations.add(operation);
+            }
+        }
+        GroupData data = new GroupData(groupFields, new Layout(operations));
+        Layout layout = data.layout;
+        for (int i = 0; i < layout.types.length; ++i) {
+            int slot = layout.slots[i];
+            Number value = serializedMetrics.get(layout.operations[i]);
+            if (Layout.isCount(layout.types[i])) {
+                data.longs[slot] = value == null ? 0L : value.longValue();
+                continue;
+            }
+            if (value != null) {
+                data.present.set(slot);
+                data.doubles[slot] = value.doubleValue();
+            }
+            if (layout.types[i] == AVG) {
+                Number count = serializedMetrics.get(new GroupOperation(COUNT_FIELD, layout.fields[i], null));
+                data.longs[layout.countSlots[i]] = count == null ? 0L : count.longValue();
+            }
+        }
+        return data;
+    }
+
+    private static boolean isJavaSerialized(byte[] data) {
+        return data != null && data.length > 0 && data[0] == JAVA_SERIALIZATION_MAGIC;
+    }
+
+    private static GroupData fromJavaSerialized(byte[] data) {
+        try (
+            ByteArrayInputStream bis = new ByteArrayInputStream(data);
+            ObjectInputStream ois = new ObjectInputStream(bis);
+        ) {
+            return (GroupData) ois.readObject();
+        } catch (IOException | ClassNotFoundException | RuntimeException e) {
+            log.error("Could not reify a GroupData from raw data {}", data);
+            log.error("Exception when parsing GroupData", e);
+        }
+        return null;
     }
 }
@@ -0,0 +1,302 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.aggregations;
+
+import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.parsing.Aggregation;
+import com.yahoo.bullet.parsing.FieldPath;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.Clip;
+import com.yahoo.bullet.result.Metadata;
+import com.yahoo.bullet.result.Metadata.Concept;
+import com.yahoo.memory.NativeMemory;
+import com.yahoo.sketches.Family;
+import com.yahoo.sketches.quantiles.DoublesSketch;
+import com.yahoo.sketches.quantiles.DoublesUnion;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Implements the PERCENTILE operation on a single numeric field. The values of the field are put into a quantiles
+ * Sketch, which keeps all of them till it sees more than twice its k values. After that, it keeps a sample of them in
+ * constant memory and the results are estimates with a normalized rank error that only depends on k. Records where the
+ * field is not a number are ignored.
+ *
+ * The result is one of three kinds of distributions, picked by the type attribute:
+ * <ul>
+ *   <li>QUANTILE: a record with the value at each of the given quantiles (fractions between 0 and 1).</li>
+ *   <li>PMF: a record with the probability and count of the values in each range between the given points.</li>
+ *   <li>CDF: a record with the probability and count of the values less than each of the given points.</li>
+ * </ul>
+ *
+ * The points are either given as a list or as a number of points, which are then evenly spaced between 0 and 1 for
+ * QUANTILE and between the minimum and maximum values seen for PMF and CDF.
+ */
+@Slf4j
+public class Percentile implements Strategy {
+    public enum DistributionType {
+        QUANTILE, PMF, CDF
+    }
+
+    public static final String TYPE_KEY = "type";
+    public static final String POINTS_KEY = "points";
+    public static final String NUMBER_OF_POINTS_KEY = "numberOfPoints";
+
+    public static final DistributionType DEFAULT_TYPE = DistributionType.QUANTILE;
+    public static final int DEFAULT_NUMBER_OF_POINTS = 11;
+    public static final int DEFAULT_MAX_POINTS = 100;
+
+    // This gives a normalized rank error of about 1.7%. Must be a power of 2.
+    public static final int DEFAULT_K = 128;
+    public static final int MIN_K = 2;
+    public static final int MAX_K = 32768;
+
+    public static final String QUANTILE_FIELD = "Quantile";
+    public static final String VALUE_FIELD = "Value";
+    public static final String RANGE_FIELD = "Range";
+    public static final String PROBABILITY_FIELD = "Probability";
+    public static final String COUNT_FIELD = "Count";
+
+    public static final String NEGATIVE_INFINITY = "-inf";
+    public static final String POSITIVE_INFINITY = "+inf";
+
+    private final DoublesUnion union;
+    private final FieldPath field;
+    private final DistributionType type;
+    // Null if the points are to be evenly spaced
+    private final double[] points;
+    private final int numberOfPoints;
+
+    // The fraction of the records that were consumed, if the rule samples records.
+    private double samplingRate = 1.0;
+    private Map<String, String> metadataKeys;
+
+    /**
+     * Constructor that takes in an {@link Aggregation} with a single field.
+     *
+     * @param aggregation The {@link Aggregation} that specifies how and what this will compute.
+     */
+    @SuppressWarnings("unchecked")
+    public Percentile(Aggregation aggregation) {
+        Map config = aggregation.getConfiguration();
+        Map<String, Object> attributes = aggregation.getAttributes();
+
+        field = FieldPath.of(aggregation.getFields().keySet().iterator().next());
+        DistributionType distributionType = getDistributionType(attributes);
+        type = distributionType == null ? DEFAULT_TYPE : distributionType;
+
+        int maxPoints = ((Number) config.getOrDefault(BulletConfig.PERCENTILE_AGGREGATION_MAX_POINTS,
+                                                      DEFAULT_MAX_POINTS)).intValue();
+        points = getPoints(attributes, maxPoints);
+        numberOfPoints = getNumberOfPoints(attributes, maxPoints);
+
+        metadataKeys = (Map<String, String>) config.getOrDefault(BulletConfig.RESULT_METADATA_METRICS_MAPPING,
+                                                                 Collections.emptyMap());
+        double rate = aggregation.getSamplingRate();
+        if (rate > 0.0 && rate < 1.0) {
+            samplingRate = rate;
+        }
+
+        int k = getK((Number) config.getOrDefault(BulletConfig.PERCENTILE_AGGREGATION_SKETCH_ENTRIES, DEFAULT_K));
+        union = DoublesUnion.builder().setK(k).build();
+    }
+
+    @Override
+    public void consume(BulletRecord data) {
+        Object value = field.extract(data);
+        if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            if (!Double.isNaN(number)) {
+                union.update(number);
+            }
+        }
+    }
+
+    @Override
+    public void combine(byte[] serializedAggregation) {
+        try {
+            union.update(DoublesSketch.heapify(new NativeMemory(serializedAggregation)));
+        } catch (RuntimeException e) {
+            log.error("Could not deserialize sketch {}", serializedAggregation);
+            log.error("Exception was ", e);
+        }
+    }
+
+    @Override
+    public byte[] getSerializedAggregation() {
+        return union.getResult().toByteArray();
+    }
+
+    @Override
+    public Clip getAggregation() {
+        DoublesSketch sketch = union.getResult();
+        Clip clip = new Clip();
+        if (!sketch.isEmpty()) {
+            if (type == DistributionType.QUANTILE) {
+                addQuantiles(clip, sketch);
+            } else {
+                addRanges(clip, sketch);
+            }
+        }
+        String aggregationMetaKey = metadataKeys.get(Concept.AGGREGATION_METADATA.getName());
+        if (aggregationMetaKey == null) {
+            return clip;
+        }
+        return clip.add(new Metadata().add(aggregationMetaKey, getSketchMetadata(sketch)));
+    }
+
+    private void addQuantiles(Clip clip, DoublesSketch sketch) {
+        double[] fractions = points == null ? evenlySpaced(0.0, 1.0, numberOfPoints) : points;
+        double[] values = sketch.getQuantiles(fractions);
+        for (int i = 0; i < fractions.length; ++i) {
+            clip.add(new BulletRecord().setDouble(QUANTILE_FIELD, fractions[i]).setDouble(VALUE_FIELD, values[i]));
+        }
+    }
+
+    private void addRanges(Clip clip, DoublesSketch sketch) {
+        double[] splits = points == null ? evenlySpaced(sketch.getMinValue(), sketch.getMaxValue(), numberOfPoints) :
+                                           points;
+        boolean isPMF = type == DistributionType.PMF;
+        double[] probabilities = isPMF ? sketch.getPMF(splits) : sketch.getCDF(splits);
+        double count = sketch.getN() / samplingRate;
+        // There is one more range than there are points
+        for (int i = 0; i < probabilities.length; ++i) {
+            String start = i == 0 || !isPMF ? NEGATIVE_INFINITY : Double.toString(splits[i - 1]);
+            String end = i == splits.length ? POSITIVE_INFINITY : Double.toString(splits[i]);
+            String range = (isPMF && i > 0 ? "[" : "(") + start + " to " + end + ")";
+            clip.add(new BulletRecord().setString(RANGE_FIELD, range)
+                                       .setDouble(PROBABILITY_FIELD, probabilities[i])
+                                       .setDouble(COUNT_FIELD, probabilities[i] * count));
+        }
+    }
+
+    private Map<String, Object> getSketchMetadata(DoublesSketch sketch) {
+        Map<String, Object> metadata = new HashMap<>();
+        String isEstimatedKey = metadataKeys.get(Concept.ESTIMATED_RESULT.getName());
+        String familyKey = metadataKeys.get(Concept.SKETCH_FAMILY.getName());
+        String sizeKey = metadataKeys.get(Concept.SKETCH_SIZE.getName());
+        String rankErrorKey = metadataKeys.get(Concept.NORMALIZED_RANK_ERROR.getName());
+        String itemsSeenKey = metadataKeys.get(Concept.ITEMS_SEEN.getName());
+        String minimumKey = metadataKeys.get(Concept.MINIMUM_VALUE.getName());
+        String maximumKey = metadataKeys.get(Concept.MAXIMUM_VALUE.getName());
+
+        addIfKeyNonNull(metadata, isEstimatedKey, () -> sketch.getN() > sketch.getRetainedItems() || samplingRate < 1.0);
+        addIfKeyNonNull(metadata, familyKey, Family.QUANTILES::getFamilyName);
+        addIfKeyNonNull(metadata, sizeKey, sketch::getStorageBytes);
+        addIfKeyNonNull(metadata, rankErrorKey, sketch::getNormalizedRankError);
+        addIfKeyNonNull(metadata, itemsSeenKey, () -> Math.round(sketch.getN() / samplingRate));
+        addIfKeyNonNull(metadata, minimumKey, sketch::getMinValue);
+        addIfKeyNonNull(metadata, maximumKey, sketch::getMaxValue);
+        return metadata;
+    }
+
+    private static void addIfKeyNonNull(Map<String, Object> metadata, String key, Supplier<Object> supplier) {
+        if (key != null) {
+            metadata.put(key, supplier.get());
+        }
+    }
+
+    private static double[] evenlySpaced(double start, double end, int count) {
+        if (count == 1 || start == end) {
+            return new double[] { start };
+        }
+        double range = end - start;
+        double[] spaced = new double[count];
+        // Dividing each time instead of adding an increment keeps points like 0.3 from showing up as 0.30000000000000004
+        for (int i = 0; i < count - 1; ++i) {
+            spaced[i] = start + range * i / (count - 1);
+        }
+        // Exactly the end, without any rounding
+        spaced[count - 1] = end;
+        return spaced;
+    }
+
+    /**
+     * Gets the {@link DistributionType} from the type attribute.
+     *
+     * @param attributes The possibly null attributes of the aggregation.
+     * @return The {@link DistributionType}, {@link #DEFAULT_TYPE} if there is no type or null if it is not valid.
+     */
+    public static DistributionType getDistributionType(Map<String, Object> attributes) {
+        Object type = attributes == null ? null : attributes.get(TYPE_KEY);
+        if (type == null) {
+            return DEFAULT_TYPE;
+        }
+        for (DistributionType distributionType : DistributionType.values()) {
+            if (distributionType.name().equals(type.toString())) {
+                return distributionType;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the points from the points attribute as sorted, distinct numbers. The Sketch requires them to be so. For
+     * testing.
+     *
+     * @param attributes The possibly null attributes of the aggregation.
+     * @param maxPoints The most points to keep. The smallest ones are kept.
+     * @return The points or null if there is no list of numbers in the attributes.
+     */
+    static double[] getPoints(Map<String, Object> attributes, int maxPoints) {
+        Object points = attributes == null ? null : attributes.get(POINTS_KEY);
+        if (!(points instanceof List) || ((List) points).isEmpty()) {
+            return null;
+        }
+        double[] values = ((List<?>) points).stream().filter(Number.class::isInstance)
+                                                     .mapToDouble(p -> ((Number) p).doubleValue())
+                                                     .filter(p -> !Double.isNaN(p))
+                                                     .sorted().distinct().limit(Math.max(maxPoints, 1)).toArray();
+        return values.length == 0 ? null : values;
+    }
+
+    /**
+     * Checks if the points in the attributes are valid for the type of distribution. Quantiles must be between 0 and
+     * 1, inclusive.
+     *
+     * @param attributes The possibly null attributes of the aggregation.
+     * @return A boolean denoting whether the points, if any, are valid.
+     */
+    public static boolean hasValidPoints(Map<String, Object> attributes) {
+        if (getDistributionType(attributes) != DistributionType.QUANTILE) {
+            return true;
+        }
+        double[] points = getPoints(attributes, Integer.MAX_VALUE);
+        return points == null || Arrays.stream(points).allMatch(p -> p >= 0.0 && p <= 1.0);
+    }
+
+    /**
+     * Gets the number of evenly spaced points to use if there is no list of points. For testing.
+     *
+     * @param attributes The possibly null attributes of the aggregation.
+     * @param maxPoints The most points to use.
+     * @return The number of points between 1 and the maximum or {@link #DEFAULT_NUMBER_OF_POINTS} if not given.
+     */
+    static int getNumberOfPoints(Map<String, Object> attributes, int maxPoints) {
+        Object count = attributes == null ? null : attributes.get(NUMBER_OF_POINTS_KEY);
+        int numberOfPoints = count instanceof Number ? ((Number) count).intValue() : DEFAULT_NUMBER_OF_POINTS;
+        return Math.max(Math.min(numberOfPoints, maxPoints), 1);
+    }
+
+    /**
+     * Converts the configured k into a valid k for the Sketch, which is a power of 2 between {@link #MIN_K} and
+     * {@link #MAX_K}. For testing.
+     *
+     * @param entries The configured k.
+     * @return The smallest valid k that is at least as large, if possible.
+     */
+    static int getK(Number entries) {
+        int k = Math.min(Math.max(entries.intValue(), MIN_K), MAX_K);
+        int power = Integer.highestOneBit(k);
+        return power == k ? k : power << 1;
+    }
+}
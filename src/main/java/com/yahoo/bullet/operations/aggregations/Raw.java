@@ -11,30 +11,28 @@ import com.yahoo.bullet.record.BulletRecord;
 import com.yahoo.bullet.result.Clip;
 import lombok.extern.slf4j.Slf4j;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
  * Implements the LIMIT operation on multiple raw {@link BulletRecord}.
  *
  * A call to {@link #getSerializedAggregation()} will return and removes the current collection of records, which
- * is a {@link List} of {@link BulletRecord}.
+ * is a {@link List} of {@link BulletRecord} serialized as a {@link RecordBatch}. The records that are consumed are
+ * encoded into the batch as they arrive and are not held on to.
  *
  * A call to {@link #combine(byte[])} with the result of {@link #getSerializedAggregation()} will combine records from
- * the {@link List} till the aggregation size is reached.
+ * the {@link List} till the aggregation size is reached. The records past that are not decoded.
  *
  * This {@link Strategy} will only consume or combine till the specified aggregation size is reached.
  */
 @Slf4j
 public class Raw implements Strategy {
     public static final Integer DEFAULT_MICRO_BATCH_SIZE = 1;
+    // The records that were combined
     private List<BulletRecord> aggregate = new ArrayList<>();
+    // The records that were consumed
+    private final RecordBatch.Writer batch = new RecordBatch.Writer();
 
     private Integer size;
     private int consumed = 0;
@@ -61,7 +59,7 @@ public class Raw implements Strategy {
     @Override
     public boolean isMicroBatch() {
         // Anything more than a single record is a micro-batch
-        return aggregate.size() >= microBatchSize;
+        return batch.getSize() + aggregate.size() >= microBatchSize;
     }
 
     @Override
@@ -69,35 +67,27 @@ public class Raw implements Strategy {
         if (!isAcceptingData() || data == null) {
             return;
         }
-        consumed++;
-        aggregate.add(data);
+        if (batch.add(data)) {
+            consumed++;
+        }
     }
 
     /**
      * Since {@link #getSerializedAggregation()} returns a {@link List} of {@link BulletRecord}, this method consumes
-     * that list. If the deserialized List has a size that takes the aggregated records above the aggregation size, only
-     * the first X records in the List will be combined till the size is reached.
+     * that list. If the serialized List has a size that takes the aggregated records above the aggregation size, only
+     * the first X records in the List will be read and combined till the size is reached.
      *
-     * @param serializedAggregation A serialized {@link List} of {@link BulletRecord}.
+     * @param serializedAggregation A {@link List} of {@link BulletRecord} serialized as a {@link RecordBatch}.
      */
     @Override
     public void combine(byte[] serializedAggregation) {
         if (!isAcceptingData() || serializedAggregation == null) {
             return;
         }
-        List<BulletRecord> batch = read(serializedAggregation);
-        if (batch.isEmpty()) {
-            return;
-        }
-        int batchSize = batch.size();
         int maximumLeft = size - aggregate.size();
-        if (batchSize <= maximumLeft) {
-            aggregate.addAll(batch);
-            combined += batchSize;
-        } else {
-            aggregate.addAll(batch.subList(0, maximumLeft));
-            combined += maximumLeft;
-        }
+        List<BulletRecord> records = RecordBatch.fromBytes(serializedAggregation, maximumLeft);
+        aggregate.addAll(records);
+        combined += records.size();
     }
 
     /**
@@ -111,12 +101,14 @@ public class Raw implements Strategy {
      */
     @Override
     public byte[] getSerializedAggregation() {
-        if (aggregate.isEmpty()) {
+        if (batch.getSize() == 0 && aggregate.isEmpty()) {
             return null;
         }
-        List<BulletRecord> batch = aggregate;
+        aggregate.forEach(batch::add);
         aggregate = new ArrayList<>();
-        return write(batch);
+        byte[] serialized = batch.toBytes();
+        batch.reset();
+        return serialized;
     }
 
     /**
@@ -127,33 +119,11 @@ public class Raw implements Strategy {
      */
     @Override
     public Clip getAggregation() {
-        return Clip.of(aggregate);
-    }
-
-    private byte[] write(List<BulletRecord> batch) {
-        try (
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            ObjectOutputStream oos = new ObjectOutputStream(bos)
-        ) {
-            oos.writeObject(batch);
-            return bos.toByteArray();
-        } catch (IOException ioe) {
-            log.error("Could not serialize batch {}", batch);
-            log.error("Exception was ", ioe);
-        }
-        return null;
-    }
-
-    private List<BulletRecord> read(byte[] batch) {
-        try (
-            ByteArrayInputStream bis = new ByteArrayInputStream(batch);
-            ObjectInputStream ois = new ObjectInputStream(bis)
-        ) {
-            return (List<BulletRecord>) ois.readObject();
-        } catch (IOException | ClassNotFoundException | ClassCastException e) {
-            log.error("Could not deserialize batch {}", batch);
-            log.error("Exception was ", e);
+        if (batch.getSize() == 0) {
+            return Clip.of(aggregate);
         }
-        return Collections.emptyList();
+        List<BulletRecord> records = new ArrayList<>(RecordBatch.fromBytes(batch.toBytes()));
+        records.addAll(aggregate);
+        return Clip.of(records);
     }
 }
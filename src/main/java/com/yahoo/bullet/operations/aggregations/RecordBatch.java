@@ -0,0 +1,471 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.aggregations;
+
+import com.yahoo.bullet.record.BulletRecord;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serializes and deserializes a batch of {@link BulletRecord} to a compact binary format. The format is the version,
+ * the count of the records, a dictionary of all the field names and map keys in the batch and then the records. Each
+ * record is the count of its fields followed by the position of the name of each in the dictionary and its value,
+ * written as a tag for its type and then the value. Counts, positions, lengths and integers are variable length.
+ *
+ * Since the count is in the header, a batch can be read up to a maximum number of records without decoding the rest.
+ * A batch can also be built up a record at a time with a {@link Writer}.
+ */
+@Slf4j
+public class RecordBatch {
+    public static final byte VERSION = 1;
+
+    // Every stream from an ObjectOutputStream starts with this. Used to read the batches of older versions.
+    private static final byte JAVA_SERIALIZATION_MAGIC = (byte) 0xAC;
+
+    private static final int NULL = 0;
+    private static final int STRING = 1;
+    private static final int BOOLEAN = 2;
+    private static final int INTEGER = 3;
+    private static final int LONG = 4;
+    private static final int FLOAT = 5;
+    private static final int DOUBLE = 6;
+    private static final int MAP = 7;
+    private static final int LIST = 8;
+
+    // A ByteArrayOutputStream that can take back what was written and copy out without a copy of its own
+    private static class Buffer extends ByteArrayOutputStream {
+        private void truncate(int size) {
+            count = size;
+        }
+
+        private void copyTo(byte[] destination, int offset) {
+            System.arraycopy(buf, 0, destination, offset, count);
+        }
+    }
+
+    /**
+     * Encodes records into a batch one at a time, as they arrive. The records are encoded into a buffer that grows as
+     * needed and is reused after a {@link #reset()}, so the records need not be held till the batch is serialized.
+     * This is not thread-safe.
+     */
+    public static class Writer {
+        private final Buffer body = new Buffer();
+        private final DataOutputStream out = new DataOutputStream(body);
+        // The names are only all known once the records are written, so they are written at the end
+        private final Map<String, Integer> dictionary = new LinkedHashMap<>();
+        @Getter
+        private int size = 0;
+
+        /**
+         * Encodes a record into the batch. If it cannot be, it is left out of the batch.
+         *
+         * @param record The non-null {@link BulletRecord} to add.
+         * @return A boolean denoting whether the record was added.
+         */
+        public boolean add(BulletRecord record) {
+            int mark = body.size();
+            try {
+                writeRecord(out, record, dictionary);
+                size++;
+                return true;
+            } catch (IOException | RuntimeException e) {
+                body.truncate(mark);
+                log.error("Could not serialize record {}", record);
+                log.error("Exception was ", e);
+            }
+            return false;
+        }
+
+        /**
+         * Serializes the records added since the last {@link #reset()}.
+         *
+         * @return the serialized byte[] or null if not successful.
+         */
+        public byte[] toBytes() {
+            try (
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                DataOutputStream header = new DataOutputStream(bos)
+            ) {
+                header.writeByte(VERSION);
+                writeVarLong(header, size);
+                writeVarLong(header, dictionary.size());
+                for (String name : dictionary.keySet()) {
+                    writeString(header, name);
+                }
+                byte[] batch = new byte[bos.size() + body.size()];
+                System.arraycopy(bos.toByteArray(), 0, batch, 0, bos.size());
+                body.copyTo(batch, bos.size());
+                return batch;
+            } catch (IOException e) {
+                log.error("Could not serialize batch of {} records", size);
+                log.error("Exception was ", e);
+            }
+            return null;
+        }
+
+        /**
+         * Removes all the records from the batch. The buffer is kept for the next records.
+         */
+        public void reset() {
+            body.reset();
+            dictionary.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Serializes the given batch of records.
+     *
+     * @param records The non-null {@link List} of {@link BulletRecord} to serialize.
+     * @return the serialized byte[] or null if not successful.
+     */
+    public static byte[] toBytes(List<BulletRecord> records) {
+        Writer writer = new Writer();
+        for (BulletRecord record : records) {
+            if (!writer.add(record)) {
+                return null;
+            }
+        }
+        return writer.toBytes();
+    }
+
+    /**
+     * Deserializes a batch of records from {@link #toBytes(List)}. Also reads a {@link List} of {@link BulletRecord}
+     * that was serialized with Java serialization by older versions.
+     *
+     * @param data The serialized batch.
+     * @return A non-null {@link List} of the records. It is empty if the batch could not be read.
+     */
+    public static List<BulletRecord> fromBytes(byte[] data) {
+        return fromBytes(data, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Deserializes at most the given number of the first records of a batch from {@link #toBytes(List)}. The records
+     * after them are not decoded.
+     *
+     * @param data The serialized batch.
+     * @param maximum The most records to read.
+     * @return A non-null {@link List} of the records. It is empty if the batch could not be read.
+     */
+    public static List<BulletRecord> fromBytes(byte[] data, int maximum) {
+        if (data != null && data.length > 0 && data[0] == JAVA_SERIALIZATION_MAGIC) {
+            List<BulletRecord> records = fromJavaSerialized(data);
+            return records.size() <= maximum ? records : new ArrayList<>(records.subList(0, Math.max(maximum, 0)));
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unknown version of batch: " + version);
+            }
+            int count = Math.min(readVarInt(in), maximum);
+            // Every name and record takes at least a byte, so corrupt counts are caught before allocating for them
+            int names = readVarInt(in);
+            if (names > in.available()) {
+                throw new IOException("Not enough data for " + names + " names");
+            }
+            String[] dictionary = new String[names];
+            for (int i = 0; i < dictionary.length; ++i) {
+                dictionary[i] = readString(in);
+            }
+            List<BulletRecord> records = new ArrayList<>(Math.max(Math.min(count, in.available()), 0));
+            for (int i = 0; i < count; ++i) {
+                records.add(readRecord(in, dictionary));
+            }
+            return records;
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not deserialize batch {}", data);
+            log.error("Exception was ", e);
+        }
+        return Collections.emptyList();
+    }
+
+    private static void writeRecord(DataOutputStream out, BulletRecord record, Map<String, Integer> dictionary)
+            throws IOException {
+        writeVarLong(out, record.fieldCount());
+        for (Map.Entry<String, Object> field : record) {
+            writeVarLong(out, indexOf(field.getKey(), dictionary));
+            writeValue(out, field.getValue(), dictionary);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value, Map<String, Integer> dictionary)
+            throws IOException {
+        if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            writeVarLong(out, zigzag((Integer) value));
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Map) {
+            out.writeByte(MAP);
+            writeMap(out, (Map<?, ?>) value, dictionary);
+        } else if (value instanceof List) {
+            out.writeByte(LIST);
+            List<?> list = (List<?>) value;
+            writeVarLong(out, list.size());
+            for (Object element : list) {
+                if (element == null) {
+                    out.writeByte(NULL);
+                } else if (element instanceof Map) {
+                    out.writeByte(MAP);
+                    writeMap(out, (Map<?, ?>) element, dictionary);
+                } else {
+                    throw new IOException("Unsupported type in a list: " + element.getClass());
+                }
+            }
+        } else {
+            writePrimitive(out, value);
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<?, ?> map, Map<String, Integer> dictionary)
+            throws IOException {
+        writeVarLong(out, map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeVarLong(out, indexOf((String) entry.getKey(), dictionary));
+            writePrimitive(out, entry.getValue());
+        }
+    }
+
+    // The only types of the values in maps
+    private static void writePrimitive(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            writeVarLong(out, zigzag((Long) value));
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else {
+            throw new IOException("Unsupported type: " + value.getClass());
+        }
+    }
+
+    private static BulletRecord readRecord(DataInputStream in, String[] dictionary) throws IOException {
+        BulletRecord record = new BulletRecord();
+        int fields = readVarInt(in);
+        for (int i = 0; i < fields; ++i) {
+            String name = dictionary[readVarInt(in)];
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case INTEGER:
+                    record.setInteger(name, (int) unzigzag(in));
+                    break;
+                case FLOAT:
+                    record.setFloat(name, in.readFloat());
+                    break;
+                case MAP:
+                    setMap(record, name, readMap(in, dictionary));
+                    break;
+                case LIST:
+                    setList(record, name, readList(in, dictionary));
+                    break;
+                default:
+                    setPrimitive(record, name, readPrimitive(in, tag));
+                    break;
+            }
+        }
+        return record;
+    }
+
+    private static Map<String, Object> readMap(DataInputStream in, String[] dictionary) throws IOException {
+        int size = readVarInt(in);
+        Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < size; ++i) {
+            String key = dictionary[readVarInt(in)];
+            map.put(key, readPrimitive(in, in.readUnsignedByte()));
+        }
+        return map;
+    }
+
+    private static List<Map<String, Object>> readList(DataInputStream in, String[] dictionary) throws IOException {
+        int size = readVarInt(in);
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            int tag = in.readUnsignedByte();
+            if (tag == NULL) {
+                list.add(null);
+            } else if (tag == MAP) {
+                list.add(readMap(in, dictionary));
+            } else {
+                throw new IOException("Unknown tag in a list: " + tag);
+            }
+        }
+        return list;
+    }
+
+    private static Object readPrimitive(DataInputStream in, int tag) throws IOException {
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case BOOLEAN:
+                return in.readBoolean();
+            case LONG:
+                return unzigzag(in);
+            case DOUBLE:
+                return in.readDouble();
+            default:
+                throw new IOException("Unknown tag: " + tag);
+        }
+    }
+
+    private static void setPrimitive(BulletRecord record, String name, Object value) {
+        if (value instanceof Boolean) {
+            record.setBoolean(name, (Boolean) value);
+        } else if (value instanceof Long) {
+            record.setLong(name, (Long) value);
+        } else if (value instanceof Double) {
+            record.setDouble(name, (Double) value);
+        } else {
+            record.setString(name, (String) value);
+        }
+    }
+
+    // The type of a map is the type of its values. The record does not keep the type of an empty map.
+    @SuppressWarnings("unchecked")
+    private static void setMap(BulletRecord record, String name, Map map) {
+        Object sample = getFirstValue(map);
+        if (sample instanceof Boolean) {
+            record.setBooleanMap(name, map);
+        } else if (sample instanceof Long) {
+            record.setLongMap(name, map);
+        } else if (sample instanceof Double) {
+            record.setDoubleMap(name, map);
+        } else {
+            record.setStringMap(name, map);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void setList(BulletRecord record, String name, List list) {
+        Object sample = null;
+        for (Object map : list) {
+            sample = map == null ? null : getFirstValue((Map) map);
+            if (sample != null) {
+                break;
+            }
+        }
+        if (sample instanceof Boolean) {
+            record.setListOfBooleanMap(name, list);
+        } else if (sample instanceof Long) {
+            record.setListOfLongMap(name, list);
+        } else if (sample instanceof Double) {
+            record.setListOfDoubleMap(name, list);
+        } else {
+            record.setListOfStringMap(name, list);
+        }
+    }
+
+    private static Object getFirstValue(Map<?, ?> map) {
+        for (Object value : map.values()) {
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(String name, Map<String, Integer> dictionary) {
+        Integer index = dictionary.get(name);
+        if (index == null) {
+            index = dictionary.size();
+            dictionary.put(name, index);
+        }
+        return index;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length > in.available()) {
+            throw new IOException("Not enough data for a string of length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Small negative numbers are small too
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length number");
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        long value = readVarLong(in);
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IOException("Not a count: " + value);
+        }
+        return (int) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<BulletRecord> fromJavaSerialized(byte[] data) {
+        try (
+            ByteArrayInputStream bis = new ByteArrayInputStream(data);
+            ObjectInputStream ois = new ObjectInputStream(bis)
+        ) {
+            return (List<BulletRecord>) ois.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            log.error("Could not deserialize batch {}", data);
+            log.error("Exception was ", e);
+        }
+        return Collections.emptyList();
+    }
+}
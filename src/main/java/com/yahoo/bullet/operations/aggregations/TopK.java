@@ -0,0 +1,218 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.aggregations;
+
+import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.parsing.Aggregation;
+import com.yahoo.bullet.parsing.FieldPath;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.Clip;
+import com.yahoo.bullet.result.Metadata;
+import com.yahoo.bullet.result.Metadata.Concept;
+import com.yahoo.memory.NativeMemory;
+import com.yahoo.sketches.ArrayOfStringsSerDe;
+import com.yahoo.sketches.Family;
+import com.yahoo.sketches.frequencies.ErrorType;
+import com.yahoo.sketches.frequencies.ItemsSketch;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Implements the TOP K operation on one or more fields. The combination of the values of the fields is an item and
+ * this returns the K items that appear the most along with how many times they appear. The items are counted in a
+ * frequent items Sketch, which counts them exactly till it has more items than it can hold. After that, the counts are
+ * estimates that are at most the maximum error more than the true counts.
+ *
+ * Each value in an item is prefixed with its length, so that values that contain any separator are kept apart.
+ *
+ * A call to {@link #getSerializedAggregation()} returns the serialized Sketch and a call to {@link #combine(byte[])}
+ * merges a serialized Sketch into this one.
+ */
+@Slf4j
+public class TopK implements Strategy {
+    public static final String NEW_NAME_KEY = "newName";
+    public static final String DEFAULT_NEW_NAME = "COUNT";
+    // Items that appear fewer times than this are not returned
+    public static final String THRESHOLD_KEY = "threshold";
+
+    // No false negatives: every item that appears more than the maximum error is returned
+    public static final String DEFAULT_ERROR_TYPE = "NFN";
+    public static final String NO_FALSE_POSITIVES = "NFP";
+
+    // The size of the map of the items in the Sketch, which holds up to 3/4 as many items. Must be a power of 2.
+    public static final int DEFAULT_MAX_MAP_SIZE = 1024;
+
+    private static final ArrayOfStringsSerDe SER_DE = new ArrayOfStringsSerDe();
+    // Ends the length that each value in an item is prefixed with
+    private static final char LENGTH_SEPARATOR = ':';
+
+    private final ItemsSketch<String> sketch;
+    private final ErrorType errorType;
+    private final int maxMapSize;
+    private final List<FieldPath> fields;
+    private final List<String> names;
+    private final StringBuilder item = new StringBuilder();
+    private final String newName;
+    private final Long threshold;
+    private final int size;
+
+    // The fraction of the records that were consumed, if the rule samples records.
+    private double samplingRate = 1.0;
+    private Map<String, String> metadataKeys;
+
+    /**
+     * Constructor that takes in an {@link Aggregation} with fields.
+     *
+     * @param aggregation The {@link Aggregation} that specifies how and what this will compute.
+     */
+    @SuppressWarnings("unchecked")
+    public TopK(Aggregation aggregation) {
+        Map config = aggregation.getConfiguration();
+        Map<String, Object> attributes = aggregation.getAttributes();
+
+        fields = new ArrayList<>();
+        names = new ArrayList<>();
+        for (Map.Entry<String, String> field : aggregation.getFields().entrySet()) {
+            fields.add(FieldPath.of(field.getKey()));
+            String name = field.getValue();
+            names.add(name == null || name.isEmpty() ? field.getKey() : name);
+        }
+        newName = attributes == null ? DEFAULT_NEW_NAME :
+                                       attributes.getOrDefault(NEW_NAME_KEY, DEFAULT_NEW_NAME).toString();
+        Object thresholdValue = attributes == null ? null : attributes.get(THRESHOLD_KEY);
+        threshold = thresholdValue instanceof Number ? ((Number) thresholdValue).longValue() : null;
+        size = aggregation.getSize();
+
+        errorType = getErrorType(config.getOrDefault(BulletConfig.TOP_K_AGGREGATION_SKETCH_ERROR_TYPE,
+                                                     DEFAULT_ERROR_TYPE).toString());
+        maxMapSize = getMaxMapSize((Number) config.getOrDefault(BulletConfig.TOP_K_AGGREGATION_SKETCH_ENTRIES,
+                                                                DEFAULT_MAX_MAP_SIZE));
+        metadataKeys = (Map<String, String>) config.getOrDefault(BulletConfig.RESULT_METADATA_METRICS_MAPPING,
+                                                                 Collections.emptyMap());
+        double rate = aggregation.getSamplingRate();
+        if (rate > 0.0 && rate < 1.0) {
+            samplingRate = rate;
+        }
+
+        sketch = new ItemsSketch<>(maxMapSize);
+    }
+
+    @Override
+    public void consume(BulletRecord data) {
+        item.setLength(0);
+        for (int i = 0; i < fields.size(); ++i) {
+            // Nulls are an item of their own, the same as GROUP
+            String value = Objects.toString(fields.get(i).extract(data));
+            item.append(value.length()).append(LENGTH_SEPARATOR).append(value);
+        }
+        sketch.update(item.toString());
+    }
+
+    @Override
+    public void combine(byte[] serializedAggregation) {
+        try {
+            sketch.merge(ItemsSketch.getInstance(new NativeMemory(serializedAggregation), SER_DE));
+        } catch (RuntimeException e) {
+            log.error("Could not deserialize sketch {}", serializedAggregation);
+            log.error("Exception was ", e);
+        }
+    }
+
+    @Override
+    public byte[] getSerializedAggregation() {
+        return sketch.toByteArray(SER_DE);
+    }
+
+    @Override
+    public Clip getAggregation() {
+        Clip clip = new Clip();
+        int count = 0;
+        // Sorted by the estimate, from the most to the least
+        for (ItemsSketch.Row<String> row : sketch.getFrequentItems(errorType)) {
+            long estimate = scale(row.getEstimate());
+            if (count++ >= size || (threshold != null && estimate < threshold)) {
+                break;
+            }
+            clip.add(getRecord(row.getItem(), estimate));
+        }
+        String aggregationMetaKey = metadataKeys.get(Concept.AGGREGATION_METADATA.getName());
+        if (aggregationMetaKey == null) {
+            return clip;
+        }
+        return clip.add(new Metadata().add(aggregationMetaKey, getSketchMetadata()));
+    }
+
+    private BulletRecord getRecord(String item, long estimate) {
+        BulletRecord record = new BulletRecord();
+        int start = 0;
+        for (String name : names) {
+            int end = item.indexOf(LENGTH_SEPARATOR, start);
+            int valueStart = end + 1;
+            int valueEnd = valueStart + Integer.parseInt(item.substring(start, end));
+            record.setString(name, item.substring(valueStart, valueEnd));
+            start = valueEnd;
+        }
+        record.setLong(newName, estimate);
+        return record;
+    }
+
+    private long scale(long count) {
+        return Math.round(count / samplingRate);
+    }
+
+    private Map<String, Object> getSketchMetadata() {
+        Map<String, Object> metadata = new HashMap<>();
+        String isEstimatedKey = metadataKeys.get(Concept.ESTIMATED_RESULT.getName());
+        String familyKey = metadataKeys.get(Concept.SKETCH_FAMILY.getName());
+        String sizeKey = metadataKeys.get(Concept.SKETCH_SIZE.getName());
+        String maximumErrorKey = metadataKeys.get(Concept.MAXIMUM_COUNT_ERROR.getName());
+        String itemsSeenKey = metadataKeys.get(Concept.ITEMS_SEEN.getName());
+
+        addIfKeyNonNull(metadata, isEstimatedKey, () -> sketch.getMaximumError() > 0 || samplingRate < 1.0);
+        addIfKeyNonNull(metadata, familyKey, Family.FREQUENCY::getFamilyName);
+        addIfKeyNonNull(metadata, sizeKey, () -> getSerializedAggregation().length);
+        addIfKeyNonNull(metadata, maximumErrorKey, () -> scale(sketch.getMaximumError()));
+        addIfKeyNonNull(metadata, itemsSeenKey, () -> scale(sketch.getStreamLength()));
+        return metadata;
+    }
+
+    private static void addIfKeyNonNull(Map<String, Object> metadata, String key, Supplier<Object> supplier) {
+        if (key != null) {
+            metadata.put(key, supplier.get());
+        }
+    }
+
+    /**
+     * Converts a String into an {@link ErrorType}. For testing.
+     *
+     * @param errorType The string version of the {@link ErrorType}. Either NFP for no false positives or NFN for no
+     *                  false negatives.
+     * @return The ErrorType represented by the string or no false negatives otherwise.
+     */
+    static ErrorType getErrorType(String errorType) {
+        return NO_FALSE_POSITIVES.equals(errorType) ? ErrorType.NO_FALSE_POSITIVES : ErrorType.NO_FALSE_NEGATIVES;
+    }
+
+    /**
+     * Converts the most items the Sketch may hold into the size of its map, which is a power of 2 of at least 8. For
+     * testing.
+     *
+     * @param entries The most items to hold.
+     * @return The smallest valid size of the map that holds at least as many items.
+     */
+    static int getMaxMapSize(Number entries) {
+        int size = Math.max(entries.intValue(), 8);
+        int power = Integer.highestOneBit(size);
+        return power == size ? size : power << 1;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton that finds which of a set of keywords occur in a text in a single pass over the text.
+ * Searching does not allocate.
+ */
+public class AhoCorasick {
+    private static final int ROOT = 0;
+
+    // Transitions of each state, sorted by character
+    private final char[][] labels;
+    private final int[][] targets;
+    private final int[] failures;
+    // The ids of the keywords that end at each state, including through failures
+    private final int[][] outputs;
+
+    /**
+     * Constructor that builds the automaton.
+     *
+     * @param keywords The non-null {@link List} of keywords. The id of a keyword is its index. Null keywords are
+     *                 never found.
+     */
+    public AhoCorasick(List<String> keywords) {
+        List<Map<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> found = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        found.add(new ArrayList<>());
+        for (int id = 0; id < keywords.size(); ++id) {
+            String keyword = keywords.get(id);
+            if (keyword == null) {
+                continue;
+            }
+            int state = ROOT;
+            for (int i = 0; i < keyword.length(); ++i) {
+                Integer next = trie.get(state).get(keyword.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    found.add(new ArrayList<>());
+                    trie.get(state).put(keyword.charAt(i), next);
+                }
+                state = next;
+            }
+            found.get(state).add(id);
+        }
+
+        int size = trie.size();
+        labels = new char[size][];
+        targets = new int[size][];
+        for (int state = 0; state < size; ++state) {
+            Map<Character, Integer> transitions = trie.get(state);
+            labels[state] = new char[transitions.size()];
+            targets[state] = new int[transitions.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                labels[state][i] = transition.getKey();
+                targets[state][i] = transition.getValue();
+                i++;
+            }
+        }
+
+        // Breadth first so that the failure of a state is done before its children
+        failures = new int[size];
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[ROOT]) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            found.get(state).addAll(found.get(failures[state]));
+            for (int i = 0; i < labels[state].length; ++i) {
+                int child = targets[state][i];
+                failures[child] = next(failures[state], labels[state][i]);
+                queue.add(child);
+            }
+        }
+
+        outputs = new int[size][];
+        for (int state = 0; state < size; ++state) {
+            outputs[state] = found.get(state).stream().distinct().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Marks the keywords that occur in the given text.
+     *
+     * @param text The non-null text to search.
+     * @param present The array indexed by keyword ids to set to true for every keyword that occurs. It is not cleared.
+     */
+    public void search(CharSequence text, boolean[] present) {
+        int state = ROOT;
+        for (int i = 0; i < text.length(); ++i) {
+            state = next(state, text.charAt(i));
+            for (int id : outputs[state]) {
+                present[id] = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of states in the automaton.
+     *
+     * @return The number of states.
+     */
+    public int size() {
+        return failures.length;
+    }
+
+    private int next(int state, char c) {
+        while (true) {
+            int index = Arrays.binarySearch(labels[state], c);
+            if (index >= 0) {
+                return targets[state][index];
+            }
+            if (state == ROOT) {
+                return ROOT;
+            }
+            state = failures[state];
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.operations.FilterOperations.FilterType;
+import com.yahoo.bullet.record.BulletRecord;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A compiled {@link com.yahoo.bullet.parsing.LogicalClause}. ANDs and ORs short circuit in the order of the children.
+ * A NOT only looks at its first child.
+ *
+ * ANDs and ORs keep statistics on how often each child passes and, for a sample of the tests, how long it takes.
+ * Every {@link #REORDER_INTERVAL} tests, the children are reordered so that the ones most likely to decide the result
+ * for the least cost go first. The statistics are then halved so that recent tests weigh more. Since the children
+ * have no side effects, this does not change the results. Testing a {@link RecordBatch} times every child and counts
+ * each record as a test.
+ *
+ * Two of these are equal if they are the same operation over equal children, ignoring the order and repetition of
+ * children for ANDs and ORs.
+ */
+public class LogicalPredicate implements Predicate {
+    public static final int REORDER_INTERVAL = 1024;
+    // Time one in this many tests
+    public static final int TIMING_SAMPLE_RATE = 16;
+    // Used instead of 0 for the rate at which a child decides the result
+    private static final double MINIMUM_RATE = 1e-6;
+
+    @Getter
+    private final FilterType operation;
+    // The current order of the children
+    @Getter
+    private final Predicate[] predicates;
+
+    // Statistics for each child, in the same order as the predicates
+    private final long[] evaluations;
+    private final long[] passes;
+    private final long[] timings;
+    private final long[] nanos;
+    private final double[] scores;
+    private long tests = 0;
+
+    /**
+     * Constructor that takes the logical operation and the compiled children.
+     *
+     * @param operation The non-null logical {@link FilterType}: AND, OR or NOT.
+     * @param predicates The non-empty {@link List} of children {@link Predicate}.
+     */
+    public LogicalPredicate(FilterType operation, List<Predicate> predicates) {
+        Objects.requireNonNull(operation);
+        Objects.requireNonNull(predicates);
+        this.operation = operation;
+        this.predicates = predicates.toArray(new Predicate[predicates.size()]);
+        int size = this.predicates.length;
+        evaluations = new long[size];
+        passes = new long[size];
+        timings = new long[size];
+        nanos = new long[size];
+        scores = new double[size];
+    }
+
+    @Override
+    public Predicate copy() {
+        Predicate[] children = new Predicate[predicates.length];
+        for (int i = 0; i < predicates.length; ++i) {
+            children[i] = predicates[i].copy();
+        }
+        return new LogicalPredicate(operation, Arrays.asList(children));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof LogicalPredicate)) {
+            return false;
+        }
+        LogicalPredicate that = (LogicalPredicate) other;
+        return operation == that.operation && getOperands().equals(that.getOperands());
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * operation.hashCode() + getOperands().hashCode();
+    }
+
+    @Override
+    public boolean test(BulletRecord record) {
+        switch (operation) {
+            case AND:
+                return and(record);
+            case OR:
+                return or(record);
+            case NOT:
+                return !predicates[0].test(record);
+            default:
+                throw new UnsupportedOperationException("Not a logical operation: " + operation);
+        }
+    }
+
+    @Override
+    public void test(RecordBatch batch, BitSet selected) {
+        switch (operation) {
+            case AND:
+            case OR:
+                adaptive(batch, selected, operation == FilterType.OR);
+                break;
+            case NOT:
+                BitSet passed = (BitSet) selected.clone();
+                predicates[0].test(batch, passed);
+                selected.andNot(passed);
+                break;
+            default:
+                throw new UnsupportedOperationException("Not a logical operation: " + operation);
+        }
+    }
+
+    private boolean and(BulletRecord record) {
+        return adaptive(record, false);
+    }
+
+    private boolean or(BulletRecord record) {
+        return adaptive(record, true);
+    }
+
+    /*
+     * Tests the children in order till one returns the deciding result, which is true for OR and false for AND.
+     */
+    private boolean adaptive(BulletRecord record, boolean deciding) {
+        boolean timed = tests % TIMING_SAMPLE_RATE == 0;
+        tests++;
+        boolean result = !deciding;
+        for (int i = 0; i < predicates.length; ++i) {
+            long start = timed ? System.nanoTime() : 0L;
+            boolean passed = predicates[i].test(record);
+            if (timed) {
+                nanos[i] += System.nanoTime() - start;
+                timings[i]++;
+            }
+            evaluations[i]++;
+            if (passed) {
+                passes[i]++;
+            }
+            if (passed == deciding) {
+                result = deciding;
+                break;
+            }
+        }
+        if (tests % REORDER_INTERVAL == 0) {
+            reorder(deciding);
+        }
+        return result;
+    }
+
+    /*
+     * Tests the children in order, each on the records that have not been decided yet. The selected records end up
+     * being the ones for which the result is true.
+     */
+    private void adaptive(RecordBatch batch, BitSet selected, boolean deciding) {
+        long before = tests;
+        tests += selected.cardinality();
+        // For AND, the undecided records are the selected ones. For OR, they are moved to selected as they pass.
+        BitSet undecided = deciding ? (BitSet) selected.clone() : selected;
+        if (deciding) {
+            selected.clear();
+        }
+        for (int i = 0; i < predicates.length && !undecided.isEmpty(); ++i) {
+            int count = undecided.cardinality();
+            BitSet passed = deciding ? (BitSet) undecided.clone() : undecided;
+            long start = System.nanoTime();
+            predicates[i].test(batch, passed);
+            nanos[i] += System.nanoTime() - start;
+            timings[i] += count;
+            evaluations[i] += count;
+            passes[i] += passed.cardinality();
+            if (deciding) {
+                selected.or(passed);
+                undecided.andNot(passed);
+            }
+        }
+        if (before / REORDER_INTERVAL != tests / REORDER_INTERVAL) {
+            reorder(deciding);
+        }
+    }
+
+    /*
+     * Orders the children by their expected cost per decision, ascending. Children that were never tested go last in
+     * their current order. This does not allocate.
+     */
+    private void reorder(boolean deciding) {
+        for (int i = 0; i < predicates.length; ++i) {
+            scores[i] = score(i, deciding);
+        }
+        // Stable insertion sort since there are only a few children
+        for (int i = 1; i < predicates.length; ++i) {
+            for (int j = i; j > 0 && scores[j] < scores[j - 1]; --j) {
+                swap(j, j - 1);
+            }
+        }
+        for (int i = 0; i < predicates.length; ++i) {
+            evaluations[i] /= 2;
+            passes[i] /= 2;
+            timings[i] /= 2;
+            nanos[i] /= 2;
+        }
+    }
+
+    private double score(int i, boolean deciding) {
+        if (evaluations[i] == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cost = timings[i] == 0 ? 1.0 : Math.max((double) nanos[i] / timings[i], 1.0);
+        double passRate = (double) passes[i] / evaluations[i];
+        double decidingRate = deciding ? passRate : 1.0 - passRate;
+        return cost / Math.max(decidingRate, MINIMUM_RATE);
+    }
+
+    private void swap(int i, int j) {
+        swap(predicates, i, j);
+        swap(evaluations, i, j);
+        swap(passes, i, j);
+        swap(timings, i, j);
+        swap(nanos, i, j);
+        double score = scores[i];
+        scores[i] = scores[j];
+        scores[j] = score;
+    }
+
+    private static void swap(Predicate[] array, int i, int j) {
+        Predicate temporary = array[i];
+        array[i] = array[j];
+        array[j] = temporary;
+    }
+
+    private static void swap(long[] array, int i, int j) {
+        long temporary = array[i];
+        array[i] = array[j];
+        array[j] = temporary;
+    }
+
+    private Set<Predicate> getOperands() {
+        if (operation == FilterType.NOT) {
+            return predicates.length == 0 ? Collections.emptySet() : Collections.singleton(predicates[0]);
+        }
+        return new HashSet<>(Arrays.asList(predicates));
+    }
+}
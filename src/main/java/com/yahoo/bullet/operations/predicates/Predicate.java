@@ -0,0 +1,60 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.record.BulletRecord;
+
+import java.util.BitSet;
+
+/**
+ * A compiled form of a {@link com.yahoo.bullet.parsing.Clause}. It is created once when the rule is parsed and can then
+ * be tested against any number of records.
+ *
+ * Predicates are not thread-safe. Some keep mutable state while they are tested, such as the statistics and the order
+ * of the children of a {@link LogicalPredicate} or the matchers of a {@link RegexPattern}. Use {@link #copy()} to get
+ * an equivalent predicate for another thread. Only predicates without mutable state, like {@link #TRUE}, may be shared.
+ */
+@FunctionalInterface
+public interface Predicate {
+    /**
+     * Tests this predicate against the given record.
+     *
+     * @param record The {@link BulletRecord} to test.
+     * @return A boolean denoting whether the record satisfied this predicate.
+     */
+    boolean test(BulletRecord record);
+
+    /**
+     * Tests this predicate against the selected records in the given batch, deselecting the ones that do not satisfy
+     * it. By default, this tests each selected record by itself.
+     *
+     * @param batch The {@link RecordBatch} to test.
+     * @param selected The {@link BitSet} of the positions of the records to test in the batch. Positions of records
+     *                 that do not satisfy this are cleared.
+     */
+    default void test(RecordBatch batch, BitSet selected) {
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+            if (!test(batch.get(i))) {
+                selected.clear(i);
+            }
+        }
+    }
+
+    /**
+     * Returns a predicate equivalent to this one that shares no mutable state with it, so that the two can be tested
+     * on different threads. By default, this returns this predicate, which must then have no mutable state.
+     *
+     * @return An equivalent {@link Predicate}.
+     */
+    default Predicate copy() {
+        return this;
+    }
+
+    /**
+     * The predicate that is always satisfied.
+     */
+    Predicate TRUE = record -> true;
+}
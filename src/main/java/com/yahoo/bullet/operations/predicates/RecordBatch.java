@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.operations.typesystem.Type;
+import com.yahoo.bullet.parsing.FieldPath;
+import com.yahoo.bullet.record.BulletRecord;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A batch of records that can be tested by a {@link Predicate} at once. The values of a field in all the records are
+ * extracted into a {@link Column} the first time the field is needed in the batch, so that a predicate can go over a
+ * field in a tight loop and every predicate on the field reuses it.
+ *
+ * The batch and its columns are reused after {@link #clear()}. This is not thread-safe.
+ */
+public class RecordBatch {
+    /**
+     * The values of a field in all the records of a batch. Values of unknown types are converted to
+     * {@link Type#STRING}, the same as {@link RelationalPredicate#test(BulletRecord)}.
+     */
+    @Getter
+    public static class Column {
+        private final Type[] types;
+        private final Object[] values;
+        // A plain copy of the path. A SharedFieldPath would return the same value for every record in the batch.
+        @Getter(AccessLevel.NONE)
+        private final FieldPath path;
+        @Getter(AccessLevel.NONE)
+        private long generation = -1;
+
+        private Column(FieldPath path, int capacity) {
+            this.path = FieldPath.of(path.getPath());
+            types = new Type[capacity];
+            values = new Object[capacity];
+        }
+
+        private void fill(BulletRecord[] records, int size) {
+            for (int i = 0; i < size; ++i) {
+                Object value = path.extract(records[i]);
+                Type type = Type.getType(value);
+                if (type == null) {
+                    type = Type.STRING;
+                    value = value.toString();
+                }
+                types[i] = type;
+                values[i] = value;
+            }
+        }
+    }
+
+    private final BulletRecord[] records;
+    private final Map<FieldPath, Column> columns = new HashMap<>();
+    @Getter
+    private int size = 0;
+    // Columns from before the last clear are stale
+    private long generation = 0;
+
+    /**
+     * Constructor that takes the most number of records this can hold.
+     *
+     * @param capacity The positive capacity.
+     */
+    public RecordBatch(int capacity) {
+        records = new BulletRecord[capacity];
+    }
+
+    /**
+     * Adds a record to the end of this batch.
+     *
+     * @param record The non-null {@link BulletRecord} to add.
+     * @throws IndexOutOfBoundsException if the batch is full.
+     */
+    public void add(BulletRecord record) {
+        records[size++] = record;
+    }
+
+    /**
+     * Gets the record at the given position.
+     *
+     * @param index The position of the record, less than {@link #getSize()}.
+     * @return The {@link BulletRecord} at that position.
+     */
+    public BulletRecord get(int index) {
+        return records[index];
+    }
+
+    /**
+     * Checks to see if this batch cannot hold any more records.
+     *
+     * @return A boolean denoting whether the batch is full.
+     */
+    public boolean isFull() {
+        return size == records.length;
+    }
+
+    /**
+     * Checks to see if this batch has no records.
+     *
+     * @return A boolean denoting whether the batch is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all the records from this batch.
+     */
+    public void clear() {
+        for (int i = 0; i < size; ++i) {
+            records[i] = null;
+        }
+        size = 0;
+        generation++;
+    }
+
+    /**
+     * Gets the values of the given field in all the records of this batch. The column is only updated the first time
+     * it is needed after a {@link #clear()}, so this should only be used once all the records have been added.
+     *
+     * @param path The non-null {@link FieldPath} of the field.
+     * @return The {@link Column} of the field, with the value of the field in each record at the same position.
+     */
+    public Column getColumn(FieldPath path) {
+        Column column = columns.get(path);
+        if (column == null) {
+            column = new Column(path, records.length);
+            columns.put(column.path, column);
+        }
+        if (column.generation != generation) {
+            column.fill(records, size);
+            column.generation = generation;
+        }
+        return column;
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compiled regular expression that matches a whole value, like {@link Matcher#matches()}. The expression is analyzed
+ * once for a literal substring that any matching value must contain. Expressions that are only a literal, optionally
+ * preceded and/or followed by ".*", are matched with String operations instead of the regular expression engine.
+ *
+ * The analysis is conservative. Anything it does not understand, such as alternations, groups, inline flags and
+ * quoting, just leaves the expression to the regular expression engine without a required literal.
+ *
+ * This reuses a {@link Matcher} and is not thread-safe.
+ */
+public class RegexPattern {
+    /**
+     * How the expression can be matched.
+     */
+    public enum Shape {
+        // literal
+        EXACT,
+        // literal.*
+        PREFIX,
+        // .*literal
+        SUFFIX,
+        // .*literal.*
+        CONTAINS,
+        // Needs the regular expression engine
+        GENERAL
+    }
+
+    private enum Kind {
+        LITERAL, DOT, OTHER
+    }
+
+    private enum Quantifier {
+        ONE, OPTIONAL, MANY, AT_LEAST_ONE
+    }
+
+    private static class Atom {
+        private Kind kind;
+        private char character;
+        private Quantifier quantifier = Quantifier.ONE;
+    }
+
+    @Getter
+    private final Pattern pattern;
+    @Getter
+    private final Shape shape;
+    // The literal substring that a matching value must contain or null if none could be found
+    @Getter
+    private final String literal;
+    private Matcher matcher;
+
+    /**
+     * Constructor that analyzes the given {@link Pattern}. Only the default flags are supported by the analysis.
+     *
+     * @param pattern The non-null {@link Pattern} to match with.
+     */
+    public RegexPattern(Pattern pattern) {
+        Objects.requireNonNull(pattern);
+        this.pattern = pattern;
+        List<Atom> atoms = pattern.flags() == 0 ? parse(pattern.pattern()) : null;
+        if (atoms == null) {
+            shape = Shape.GENERAL;
+            literal = null;
+            return;
+        }
+        shape = getShape(atoms);
+        literal = getLiteral(atoms);
+    }
+
+    /**
+     * Constructor that copies the given pattern. The copy can be used on a different thread than the original.
+     *
+     * @param other The non-null {@link RegexPattern} to copy.
+     */
+    public RegexPattern(RegexPattern other) {
+        pattern = other.pattern;
+        shape = other.shape;
+        literal = other.literal;
+    }
+
+    /**
+     * Checks to see if the value could match this. This is a cheap check that uses the required literal.
+     *
+     * @param value The non-null value to check.
+     * @return false if the value definitely does not match this.
+     */
+    public boolean mayMatch(String value) {
+        return literal == null || value.contains(literal);
+    }
+
+    /**
+     * Checks to see if the whole value matches this.
+     *
+     * @param value The non-null value to check.
+     * @return A boolean denoting whether the value matched.
+     */
+    public boolean matches(String value) {
+        switch (shape) {
+            case EXACT:
+                return value.equals(literal);
+            case PREFIX:
+                return value.startsWith(literal) && !hasLineTerminator(value, literal.length(), value.length());
+            case SUFFIX:
+                return value.endsWith(literal) &&
+                       !hasLineTerminator(value, 0, value.length() - literal.length());
+            case CONTAINS:
+                return contains(value);
+            default:
+                if (matcher == null) {
+                    matcher = pattern.matcher("");
+                }
+                return matcher.reset(value).matches();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return pattern.pattern();
+    }
+
+    private boolean contains(String value) {
+        // "." does not match line terminators so the literal must be found in a line that is the whole value
+        int index = value.indexOf(literal);
+        if (index < 0) {
+            return false;
+        }
+        return !hasLineTerminator(value, 0, index) &&
+               !hasLineTerminator(value, index + literal.length(), value.length());
+    }
+
+    private static boolean hasLineTerminator(String value, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            char c = value.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Shape getShape(List<Atom> atoms) {
+        int start = 0;
+        int end = atoms.size();
+        boolean leading = end > 0 && isDotStar(atoms.get(0));
+        boolean trailing = end > 1 && isDotStar(atoms.get(end - 1));
+        start += leading ? 1 : 0;
+        end -= trailing ? 1 : 0;
+        if (start >= end) {
+            return Shape.GENERAL;
+        }
+        for (int i = start; i < end; ++i) {
+            Atom atom = atoms.get(i);
+            if (atom.kind != Kind.LITERAL || atom.quantifier != Quantifier.ONE) {
+                return Shape.GENERAL;
+            }
+        }
+        if (leading && trailing) {
+            return Shape.CONTAINS;
+        }
+        return leading ? Shape.SUFFIX : trailing ? Shape.PREFIX : Shape.EXACT;
+    }
+
+    private static boolean isDotStar(Atom atom) {
+        return atom.kind == Kind.DOT && atom.quantifier == Quantifier.MANY;
+    }
+
+    /*
+     * The longest run of literals that must appear next to each other in any match.
+     */
+    private static String getLiteral(List<Atom> atoms) {
+        String longest = null;
+        StringBuilder current = new StringBuilder();
+        for (Atom atom : atoms) {
+            boolean required = atom.quantifier == Quantifier.ONE || atom.quantifier == Quantifier.AT_LEAST_ONE;
+            if (atom.kind == Kind.LITERAL && required) {
+                current.append(atom.character);
+            }
+            // Anything that is not a single required literal ends the run after it
+            if (atom.kind != Kind.LITERAL || atom.quantifier != Quantifier.ONE) {
+                longest = longer(longest, current);
+                current.setLength(0);
+            }
+        }
+        return longer(longest, current);
+    }
+
+    private static String longer(String longest, StringBuilder current) {
+        if (current.length() == 0 || (longest != null && longest.length() >= current.length())) {
+            return longest;
+        }
+        return current.toString();
+    }
+
+    /*
+     * Splits the expression into atoms with their quantifiers. Returns null if the expression has anything that is not
+     * understood at the top level.
+     */
+    private static List<Atom> parse(String regex) {
+        List<Atom> atoms = new ArrayList<>();
+        int i = 0;
+        int length = regex.length();
+        while (i < length) {
+            char c = regex.charAt(i);
+            Atom atom = new Atom();
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= length || Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                        // Character classes, back references, anchors and quoting
+                        return null;
+                    }
+                    atom.kind = Kind.LITERAL;
+                    atom.character = regex.charAt(i + 1);
+                    i += 2;
+                    break;
+                case '.':
+                    atom.kind = Kind.DOT;
+                    i++;
+                    break;
+                case '[':
+                    atom.kind = Kind.OTHER;
+                    i = skipClass(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    break;
+                case '(':
+                case ')':
+                case '|':
+                case '^':
+                case '$':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    return null;
+                default:
+                    atom.kind = Kind.LITERAL;
+                    atom.character = c;
+                    i++;
+            }
+            i = parseQuantifier(regex, i, atom);
+            if (i < 0) {
+                return null;
+            }
+            atoms.add(atom);
+        }
+        return atoms;
+    }
+
+    /*
+     * Returns the index after the character class starting at the given index or -1 if it is not a simple one.
+     */
+    private static int skipClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        // A leading ']' is a literal. Leave these and nested classes to the engine.
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            return -1;
+        }
+        for (; i < regex.length(); ++i) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                return -1;
+            } else if (c == ']') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseQuantifier(String regex, int i, Atom atom) {
+        if (i >= regex.length()) {
+            return i;
+        }
+        char c = regex.charAt(i);
+        switch (c) {
+            case '?':
+                atom.quantifier = Quantifier.OPTIONAL;
+                break;
+            case '*':
+                atom.quantifier = Quantifier.MANY;
+                break;
+            case '+':
+                atom.quantifier = Quantifier.AT_LEAST_ONE;
+                break;
+            case '{':
+                // Bounded repetition. Only the lower bound matters for the literal.
+                int end = regex.indexOf('}', i);
+                if (end < 0) {
+                    return -1;
+                }
+                atom.quantifier = regex.charAt(i + 1) == '0' ? Quantifier.OPTIONAL : Quantifier.AT_LEAST_ONE;
+                i = end;
+                break;
+            default:
+                return i;
+        }
+        i++;
+        // Lazy modifiers do not change what matches the whole value
+        if (i < regex.length() && regex.charAt(i) == '?') {
+            i++;
+        } else if (i < regex.length() && regex.charAt(i) == '+') {
+            // Possessive modifiers can make a match fail so these can no longer be matched without the engine
+            atom.quantifier = atom.quantifier == Quantifier.MANY ? Quantifier.OPTIONAL : atom.quantifier;
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds which of the literals required by all the {@link RegexPattern} on a field occur in the value of that field,
+ * with one pass of an {@link AhoCorasick} automaton per record. The regular expressions then only need to be run if
+ * their literal was found. This is owned by a {@link SharedPredicates} and is reset when its record changes.
+ */
+public class RegexPrefilter {
+    private final SharedPredicates owner;
+
+    // Literal -> id. The ids are stable while the literal is registered.
+    private Map<String, Integer> ids = new HashMap<>();
+    private Map<String, Integer> references = new HashMap<>();
+    // Literals by id. Unused ids are null.
+    private List<String> literals = new ArrayList<>();
+
+    private AhoCorasick automaton;
+    private boolean[] present = new boolean[0];
+    private long epoch = -1;
+    private String scanned;
+
+    RegexPrefilter(SharedPredicates owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Adds a literal to look for.
+     *
+     * @param literal The non-null literal.
+     * @return The id of the literal to use with {@link #contains(int, String)}.
+     */
+    public int register(String literal) {
+        Integer id = ids.get(literal);
+        if (id != null) {
+            references.merge(literal, 1, Integer::sum);
+            return id;
+        }
+        id = literals.indexOf(null);
+        if (id < 0) {
+            id = literals.size();
+            literals.add(literal);
+        } else {
+            literals.set(id, literal);
+        }
+        ids.put(literal, id);
+        references.put(literal, 1);
+        automaton = null;
+        return id;
+    }
+
+    /**
+     * Removes a literal added with {@link #register(String)} once it has been unregistered as many times.
+     *
+     * @param literal The non-null literal.
+     */
+    public void unregister(String literal) {
+        Integer count = references.get(literal);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            references.put(literal, count - 1);
+            return;
+        }
+        references.remove(literal);
+        literals.set(ids.remove(literal), null);
+        automaton = null;
+    }
+
+    /**
+     * Checks to see if the literal occurs in the value. All the literals are looked for in the value at once, the first
+     * time the value is checked for the current record of the owner.
+     *
+     * @param id The id of the literal.
+     * @param value The non-null value of the field.
+     * @return A boolean denoting whether the literal occurs in the value.
+     */
+    public boolean contains(int id, String value) {
+        if (automaton == null) {
+            automaton = new AhoCorasick(literals);
+            present = new boolean[literals.size()];
+            epoch = -1;
+        }
+        long current = owner.getEpoch();
+        if (epoch != current || (value != scanned && !value.equals(scanned))) {
+            Arrays.fill(present, false);
+            automaton.search(value, present);
+            epoch = current;
+            scanned = value;
+        }
+        return present[id];
+    }
+
+    /**
+     * Returns the number of literals being looked for.
+     *
+     * @return The number of literals.
+     */
+    public int size() {
+        return ids.size();
+    }
+}
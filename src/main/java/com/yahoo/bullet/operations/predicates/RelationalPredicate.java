@@ -0,0 +1,214 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.operations.FilterOperations.FilterType;
+import com.yahoo.bullet.operations.typesystem.Type;
+import com.yahoo.bullet.operations.typesystem.TypedValues;
+import com.yahoo.bullet.parsing.FieldPath;
+import com.yahoo.bullet.record.BulletRecord;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiled {@link com.yahoo.bullet.parsing.FilterClause}. The values are cast up front into {@link TypedValues} and
+ * regular expressions are compiled once into {@link RegexPattern}. These checks behave exactly like the comparators in
+ * {@link com.yahoo.bullet.operations.FilterOperations}.
+ *
+ * Two of these are equal if they check the same field with the same operation against the same set of values.
+ */
+@Getter @EqualsAndHashCode(of = {"field", "operation", "values"})
+public class RelationalPredicate implements Predicate {
+    private final String field;
+    private final FieldPath path;
+    private final FilterType operation;
+    private final TypedValues values;
+    private final RegexPattern[] patterns;
+    // If present, finds the literals of the patterns for all the predicates on this field at once
+    @Getter(AccessLevel.NONE)
+    private final RegexPrefilter prefilter;
+    // The id of the literal of each pattern in the prefilter or -1 if it has none
+    @Getter(AccessLevel.NONE)
+    private final int[] literalIDs;
+
+    /**
+     * Constructor that compiles the values for the given operation.
+     *
+     * @param field The field to extract from the record. It can be "." separated to look inside maps.
+     * @param operation The non-null relational {@link FilterType}.
+     * @param values The non-null {@link List} of values to check against.
+     */
+    public RelationalPredicate(String field, FilterType operation, List<String> values) {
+        Objects.requireNonNull(operation);
+        this.field = field;
+        this.path = FieldPath.of(field);
+        this.operation = operation;
+        this.values = new TypedValues(values);
+        // Bad patterns are dropped
+        this.patterns = operation != FilterType.REGEX_LIKE ? null :
+                        values.stream().map(RelationalPredicate::safeCompile).filter(Objects::nonNull)
+                                       .map(RegexPattern::new).toArray(RegexPattern[]::new);
+        this.prefilter = null;
+        this.literalIDs = null;
+    }
+
+    /**
+     * Constructor that copies the given predicate but extracts the field with the given {@link FieldPath} instead.
+     *
+     * @param other The non-null {@link RelationalPredicate} to copy.
+     * @param path The {@link FieldPath} for the same field as the other predicate.
+     */
+    public RelationalPredicate(RelationalPredicate other, FieldPath path) {
+        this(other, path, null);
+    }
+
+    /**
+     * Constructor that copies the given predicate but extracts the field with the given {@link FieldPath} and looks
+     * for the literals of its patterns with the given {@link RegexPrefilter} instead. The literals are registered with
+     * the prefilter.
+     *
+     * @param other The non-null {@link RelationalPredicate} to copy.
+     * @param path The {@link FieldPath} for the same field as the other predicate.
+     * @param prefilter The {@link RegexPrefilter} for the field or null to look for each literal separately.
+     */
+    public RelationalPredicate(RelationalPredicate other, FieldPath path, RegexPrefilter prefilter) {
+        this.field = other.field;
+        this.path = path;
+        this.operation = other.operation;
+        this.values = other.values;
+        this.patterns = other.patterns;
+        this.prefilter = patterns == null ? null : prefilter;
+        this.literalIDs = this.prefilter == null ? null : register(patterns, prefilter);
+    }
+
+    /*
+     * Copies the given predicate with its own patterns and path, without a prefilter.
+     */
+    private RelationalPredicate(RelationalPredicate other) {
+        this.field = other.field;
+        this.path = FieldPath.of(other.field);
+        this.operation = other.operation;
+        this.values = other.values;
+        this.patterns = other.patterns == null ? null :
+                        Arrays.stream(other.patterns).map(RegexPattern::new).toArray(RegexPattern[]::new);
+        this.prefilter = null;
+        this.literalIDs = null;
+    }
+
+    @Override
+    public Predicate copy() {
+        // The values are immutable. Only the patterns, a shared path and the prefilter cannot be shared.
+        if (patterns == null && !(path instanceof SharedFieldPath)) {
+            return this;
+        }
+        return new RelationalPredicate(this);
+    }
+
+    @Override
+    public boolean test(BulletRecord record) {
+        Object value = path == null ? null : path.extract(record);
+        Type type = Type.getType(value);
+        // Unknown type -> force to string, like TypedObject
+        if (type == null) {
+            type = Type.STRING;
+            value = value.toString();
+        }
+        return test(type, value);
+    }
+
+    @Override
+    public void test(RecordBatch batch, BitSet selected) {
+        if (path == null) {
+            Predicate.super.test(batch, selected);
+            return;
+        }
+        RecordBatch.Column column = batch.getColumn(path);
+        Type[] types = column.getTypes();
+        Object[] columnValues = column.getValues();
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+            if (!test(types[i], columnValues[i])) {
+                selected.clear(i);
+            }
+        }
+    }
+
+    /**
+     * Tests the given typed value against this predicate.
+     *
+     * @param type The non-null {@link Type} of the value.
+     * @param value The value, which is an instance of the underlying type of the {@link Type} or null.
+     * @return A boolean denoting whether the value satisfied this predicate.
+     */
+    public boolean test(Type type, Object value) {
+        switch (operation) {
+            case EQUALS:
+                return values.contains(type, value);
+            case NOT_EQUALS:
+                return !values.contains(type, value);
+            case REGEX_LIKE:
+                return type != Type.NULL && matches(value.toString());
+            default:
+                return type != Type.NULL && !values.isEmpty(type) && compare(type, value);
+        }
+    }
+
+    private boolean compare(Type type, Object value) {
+        switch (operation) {
+            case GREATER_THAN:
+                return values.compareToMinimum(type, value) > 0;
+            case GREATER_EQUALS:
+                return values.compareToMinimum(type, value) >= 0;
+            case LESS_THAN:
+                return values.compareToMaximum(type, value) < 0;
+            case LESS_EQUALS:
+                return values.compareToMaximum(type, value) <= 0;
+            default:
+                return false;
+        }
+    }
+
+    private boolean matches(String value) {
+        for (int i = 0; i < patterns.length; ++i) {
+            RegexPattern pattern = patterns[i];
+            if (mayMatch(i, pattern, value) && pattern.matches(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean mayMatch(int i, RegexPattern pattern, String value) {
+        if (prefilter == null) {
+            return pattern.mayMatch(value);
+        }
+        return literalIDs[i] < 0 || prefilter.contains(literalIDs[i], value);
+    }
+
+    private static int[] register(RegexPattern[] patterns, RegexPrefilter prefilter) {
+        int[] ids = new int[patterns.length];
+        for (int i = 0; i < patterns.length; ++i) {
+            String literal = patterns[i].getLiteral();
+            ids[i] = literal == null ? -1 : prefilter.register(literal);
+        }
+        return ids;
+    }
+
+    private static Pattern safeCompile(String value) {
+        try {
+            return Pattern.compile(value);
+        } catch (PatternSyntaxException | NullPointerException e) {
+            return null;
+        }
+    }
+}
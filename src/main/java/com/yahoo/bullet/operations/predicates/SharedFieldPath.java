@@ -0,0 +1,38 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.parsing.FieldPath;
+import com.yahoo.bullet.record.BulletRecord;
+
+/**
+ * A {@link FieldPath} owned by a {@link SharedPredicates}. It remembers the value it extracted for the current record
+ * of its owner so that a field referred to by many rules is only extracted once per record.
+ */
+public class SharedFieldPath extends FieldPath {
+    private final SharedPredicates owner;
+
+    // The number of shared predicates referencing this
+    int references = 1;
+
+    private long epoch = -1;
+    private Object value;
+
+    SharedFieldPath(String path, SharedPredicates owner) {
+        super(path);
+        this.owner = owner;
+    }
+
+    @Override
+    public Object extract(BulletRecord record) {
+        long current = owner.getEpoch();
+        if (epoch != current) {
+            value = super.extract(record);
+            epoch = current;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.record.BulletRecord;
+import lombok.Getter;
+
+import java.util.BitSet;
+
+/**
+ * A canonical {@link Predicate} owned by a {@link SharedPredicates}. It remembers its result for the current record
+ * of its owner so that every rule referencing it evaluates it at most once per record. For a {@link RecordBatch}, it
+ * is evaluated once on all the records in the batch and the result is remembered for the rest of the batch.
+ */
+public class SharedPredicate implements Predicate {
+    @Getter
+    private final Predicate predicate;
+    private final SharedPredicates owner;
+
+    // The number of roots and parents referencing this
+    int references = 1;
+
+    private long epoch = -1;
+    private boolean result;
+    private long batchEpoch = -1;
+    private BitSet batchResult = new BitSet();
+
+    SharedPredicate(Predicate predicate, SharedPredicates owner) {
+        this.predicate = predicate;
+        this.owner = owner;
+    }
+
+    @Override
+    public Predicate copy() {
+        // The copy is not owned by anything
+        return predicate.copy();
+    }
+
+    @Override
+    public boolean test(BulletRecord record) {
+        long current = owner.getEpoch();
+        if (epoch == current) {
+            owner.hit();
+            return result;
+        }
+        owner.miss();
+        result = predicate.test(record);
+        epoch = current;
+        return result;
+    }
+
+    @Override
+    public void test(RecordBatch batch, BitSet selected) {
+        long current = owner.getEpoch();
+        if (batchEpoch == current) {
+            owner.hit();
+        } else {
+            owner.miss();
+            batchResult.clear();
+            batchResult.set(0, batch.getSize());
+            predicate.test(batch, batchResult);
+            batchEpoch = current;
+        }
+        selected.and(batchResult);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.parsing.FieldPath;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash-conses {@link Predicate} trees across many rules. Equal subtrees in different rules are replaced by the same
+ * {@link SharedPredicate}, which is evaluated at most once per record. {@link #advance()} must be called before each
+ * new record is tested against any shared tree.
+ *
+ * Optionally, the fields used by the shared trees are also shared as {@link SharedFieldPath}, so that a field is
+ * extracted at most once per record no matter how many different filters use it.
+ *
+ * The literals required by the REGEX_LIKE filters on each field are all looked for at once by a {@link RegexPrefilter}
+ * for the field, so that the regular expressions are only run if they could match.
+ *
+ * Shared trees are reference counted and must be given back with {@link #release(Predicate)} when no longer used.
+ *
+ * Every tree returned is made of copies of the given predicates, so it has no mutable state in common with them or with
+ * the trees of any other instance. Like the predicates, an instance and its trees must only be used by one thread at a
+ * time.
+ */
+public class SharedPredicates {
+    // Keys are predicates whose children are already shared so equality is cheap
+    private Map<Predicate, SharedPredicate> canonical = new HashMap<>();
+    private Map<String, SharedFieldPath> paths = new HashMap<>();
+    private Map<String, RegexPrefilter> prefilters = new HashMap<>();
+    private final boolean shareFields;
+
+    @Getter
+    private long epoch = 0;
+    // The number of shared subtree tests that reused a result and that did not since the last reset
+    @Getter
+    private long hits = 0;
+    @Getter
+    private long misses = 0;
+
+    /**
+     * Default constructor that also shares fields.
+     */
+    public SharedPredicates() {
+        this(true);
+    }
+
+    /**
+     * Constructor that takes whether fields should be shared as well.
+     *
+     * @param shareFields A boolean denoting whether each field should be extracted once per record.
+     */
+    public SharedPredicates(boolean shareFields) {
+        this.shareFields = shareFields;
+    }
+
+    /**
+     * Returns a tree equivalent to the given one where every subtree is shared with any equal subtree added before.
+     *
+     * @param predicate The {@link Predicate} to share. It is not modified.
+     * @return A shared equivalent {@link Predicate} or the given one if it cannot be shared.
+     */
+    public Predicate share(Predicate predicate) {
+        if (predicate instanceof LogicalPredicate) {
+            return share((LogicalPredicate) predicate);
+        }
+        if (!(predicate instanceof RelationalPredicate)) {
+            return predicate.copy();
+        }
+        return share((RelationalPredicate) predicate);
+    }
+
+    /**
+     * Gives back a tree returned by {@link #share(Predicate)}. Subtrees not referenced anymore are forgotten.
+     *
+     * @param predicate The {@link Predicate} returned by {@link #share(Predicate)}.
+     */
+    public void release(Predicate predicate) {
+        if (!(predicate instanceof SharedPredicate)) {
+            return;
+        }
+        SharedPredicate shared = (SharedPredicate) predicate;
+        shared.references--;
+        if (shared.references > 0) {
+            return;
+        }
+        Predicate wrapped = shared.getPredicate();
+        canonical.remove(wrapped);
+        if (wrapped instanceof RelationalPredicate) {
+            release(((RelationalPredicate) wrapped).getPath());
+            release((RelationalPredicate) wrapped);
+        } else if (wrapped instanceof LogicalPredicate) {
+            for (Predicate child : ((LogicalPredicate) wrapped).getPredicates()) {
+                release(child);
+            }
+        }
+    }
+
+    /**
+     * Starts a new record or {@link RecordBatch}. Any results remembered for the previous one are discarded.
+     */
+    public void advance() {
+        epoch++;
+    }
+
+    /**
+     * Returns the number of distinct fields currently shared.
+     *
+     * @return The number of shared fields.
+     */
+    public int fieldCount() {
+        return paths.size();
+    }
+
+    /**
+     * Returns the {@link RegexPrefilter} for a field if there are any REGEX_LIKE filters sharing it.
+     *
+     * @param field The field.
+     * @return The {@link RegexPrefilter} for the field or null.
+     */
+    public RegexPrefilter getPrefilter(String field) {
+        return prefilters.get(field);
+    }
+
+    /**
+     * Returns the number of distinct subtrees currently shared.
+     *
+     * @return The number of shared subtrees.
+     */
+    public int size() {
+        return canonical.size();
+    }
+
+    /**
+     * Returns the fraction of the shared subtree tests that reused a result since the last call and resets it.
+     *
+     * @return The hit rate between 0 and 1 or null if there were no tests.
+     */
+    public Double getAndResetHitRate() {
+        long total = hits + misses;
+        Double rate = total == 0 ? null : (double) hits / total;
+        hits = 0;
+        misses = 0;
+        return rate;
+    }
+
+    void hit() {
+        hits++;
+    }
+
+    void miss() {
+        misses++;
+    }
+
+    private Predicate share(RelationalPredicate predicate) {
+        SharedPredicate existing = canonical.get(predicate);
+        if (existing != null) {
+            existing.references++;
+            return existing;
+        }
+        // The copy has its own patterns, so their matchers are not shared with the given predicate
+        RelationalPredicate copy = (RelationalPredicate) predicate.copy();
+        String field = predicate.getField();
+        if (field == null) {
+            return intern(copy);
+        }
+        FieldPath path = shareFields ? share(field) : predicate.getPath();
+        RegexPrefilter prefilter = null;
+        if (predicate.getPatterns() != null) {
+            prefilter = prefilters.computeIfAbsent(field, k -> new RegexPrefilter(this));
+        }
+        return intern(new RelationalPredicate(copy, path, prefilter));
+    }
+
+    private void release(RelationalPredicate predicate) {
+        RegexPrefilter prefilter = predicate.getPatterns() == null ? null : prefilters.get(predicate.getField());
+        if (prefilter == null) {
+            return;
+        }
+        for (RegexPattern pattern : predicate.getPatterns()) {
+            if (pattern.getLiteral() != null) {
+                prefilter.unregister(pattern.getLiteral());
+            }
+        }
+        if (prefilter.size() == 0) {
+            prefilters.remove(predicate.getField());
+        }
+    }
+
+    private SharedFieldPath share(String field) {
+        SharedFieldPath path = paths.get(field);
+        if (path == null) {
+            path = new SharedFieldPath(field, this);
+            paths.put(field, path);
+        } else {
+            path.references++;
+        }
+        return path;
+    }
+
+    private void release(FieldPath path) {
+        if (!(path instanceof SharedFieldPath)) {
+            return;
+        }
+        SharedFieldPath shared = (SharedFieldPath) path;
+        shared.references--;
+        if (shared.references <= 0) {
+            paths.remove(shared.getPath());
+        }
+    }
+
+    private Predicate share(LogicalPredicate predicate) {
+        List<Predicate> children = new ArrayList<>();
+        for (Predicate child : predicate.getPredicates()) {
+            children.add(share(child));
+        }
+        LogicalPredicate candidate = new LogicalPredicate(predicate.getOperation(), children);
+        SharedPredicate existing = canonical.get(candidate);
+        if (existing == null) {
+            return intern(candidate);
+        }
+        // The existing one already holds its children
+        children.forEach(this::release);
+        existing.references++;
+        return existing;
+    }
+
+    private SharedPredicate intern(Predicate predicate) {
+        SharedPredicate existing = canonical.get(predicate);
+        if (existing != null) {
+            existing.references++;
+            return existing;
+        }
+        SharedPredicate shared = new SharedPredicate(predicate, this);
+        canonical.put(predicate, shared);
+        return shared;
+    }
+}
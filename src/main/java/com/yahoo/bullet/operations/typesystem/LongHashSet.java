@@ -0,0 +1,90 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.typesystem;
+
+/**
+ * A set of primitive longs using open addressing with linear probing. It is built once from an array of values and
+ * membership checks do not box or allocate.
+ */
+public class LongHashSet {
+    // Marks an empty slot. Whether the set has this value itself is tracked separately.
+    private static final long EMPTY = 0L;
+    private static final double LOAD_FACTOR = 0.5;
+
+    private final long[] slots;
+    private final int mask;
+    private final boolean hasEmpty;
+    private final int size;
+
+    /**
+     * Constructor that builds the set from the given values.
+     *
+     * @param values The non-null array of values. Duplicates are ignored.
+     */
+    public LongHashSet(long[] values) {
+        int capacity = Integer.highestOneBit((int) Math.max(2, Math.ceil(values.length / LOAD_FACTOR)) - 1) << 1;
+        slots = new long[capacity];
+        mask = capacity - 1;
+        boolean foundEmpty = false;
+        int count = 0;
+        for (long value : values) {
+            if (value == EMPTY) {
+                count += foundEmpty ? 0 : 1;
+                foundEmpty = true;
+                continue;
+            }
+            int slot = find(value);
+            if (slots[slot] == EMPTY) {
+                slots[slot] = value;
+                count++;
+            }
+        }
+        hasEmpty = foundEmpty;
+        size = count;
+    }
+
+    /**
+     * Checks to see if the value is in the set.
+     *
+     * @param value The value to look for.
+     * @return A boolean denoting whether the value is in the set.
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return hasEmpty;
+        }
+        return slots[find(value)] == value;
+    }
+
+    /**
+     * Returns the number of distinct values in the set.
+     *
+     * @return The size of the set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /*
+     * Finds the slot with the value or the empty slot where it would go.
+     */
+    private int find(long value) {
+        int slot = hash(value) & mask;
+        while (slots[slot] != EMPTY && slots[slot] != value) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long value) {
+        // Mixes the bits (from MurmurHash3's finalizer) so that sequential ids spread out
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -27,6 +27,8 @@ public enum Type {
      * Only support the atomic types for now since all our operations are on atomic types.
      */
     public static List<Type> SUPPORTED_TYPES = Type.simpleTypes();
+    // For iterating without allocating
+    private static final Type[] SUPPORTED_TYPE_ARRAY = SUPPORTED_TYPES.toArray(new Type[SUPPORTED_TYPES.size()]);
     private final Class underlyingType;
 
     /**
@@ -58,7 +60,7 @@ public enum Type {
         if (object == null) {
             return Type.NULL;
         }
-        for (Type type : SUPPORTED_TYPES) {
+        for (Type type : SUPPORTED_TYPE_ARRAY) {
             if (type.getUnderlyingType().isInstance(object)) {
                 return type;
             }
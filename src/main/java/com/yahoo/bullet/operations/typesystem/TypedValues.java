@@ -0,0 +1,340 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.typesystem;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * This class holds a {@link List} of String constants cast once to each of the simple {@link Type} that they can be
+ * cast to. It mirrors what {@link TypedObject#typeCast(String)} would do for each value, so that checks against an
+ * object of a given type can be done on primitives without casting any values when the check is performed.
+ *
+ * Values that cannot be cast to a type are dropped for that type, exactly like a failed
+ * {@link TypedObject#typeCast(String)}.
+ *
+ * Checking if a value is one of these values is a linear scan for a few values. For more than
+ * {@link #HASHING_THRESHOLD} values, the values of each type are put into hash sets, primitive ones for numbers.
+ *
+ * Two of these are equal if they have the same distinct non-null values, regardless of their order.
+ */
+@EqualsAndHashCode(of = "distinct")
+public class TypedValues {
+    /**
+     * The key used in place of a null value by {@link #getKey(Type, Object)} and {@link #getKeys()}.
+     */
+    public static final Object NULL_KEY = new Object();
+
+    /**
+     * The number of values of a type above which they are looked up in a hash set instead of scanned.
+     */
+    public static final int HASHING_THRESHOLD = 16;
+
+    @Getter
+    private final List<String> values;
+
+    private final String[] strings;
+    private final Set<String> distinct;
+    // Only for more than HASHING_THRESHOLD values. Doubles are stored as their Double#doubleToLongBits.
+    private final LongHashSet longSet;
+    private final LongHashSet doubleSet;
+    private final long[] longs;
+    private final double[] doubles;
+    private final boolean hasTrue;
+    private final boolean hasFalse;
+    private final boolean hasNull;
+
+    private final String minString;
+    private final String maxString;
+    private long minLong = Long.MAX_VALUE;
+    private long maxLong = Long.MIN_VALUE;
+    private double minDouble = Double.POSITIVE_INFINITY;
+    private double maxDouble = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Constructor that casts the given values to all the supported types.
+     *
+     * @param values The non-null {@link List} of String values.
+     */
+    public TypedValues(List<String> values) {
+        Objects.requireNonNull(values);
+        this.values = values;
+
+        List<Long> castedLongs = new ArrayList<>();
+        List<Double> castedDoubles = new ArrayList<>();
+        boolean foundTrue = false;
+        boolean foundFalse = false;
+        boolean foundNull = false;
+        String smallest = null;
+        String largest = null;
+        for (String value : values) {
+            // A null value can only come from a bad JSON array. It is not castable to anything.
+            if (value == null) {
+                continue;
+            }
+            Long asLong = (Long) cast(Type.LONG, value);
+            if (asLong != null) {
+                castedLongs.add(asLong);
+            }
+            Double asDouble = (Double) cast(Type.DOUBLE, value);
+            if (asDouble != null) {
+                castedDoubles.add(asDouble);
+            }
+            boolean asBoolean = (Boolean) Type.BOOLEAN.cast(value);
+            foundTrue |= asBoolean;
+            foundFalse |= !asBoolean;
+            foundNull |= Type.NULL.cast(value) == null;
+            smallest = smallest == null || value.compareTo(smallest) < 0 ? value : smallest;
+            largest = largest == null || value.compareTo(largest) > 0 ? value : largest;
+        }
+        strings = values.stream().filter(Objects::nonNull).toArray(String[]::new);
+        distinct = new HashSet<>(Arrays.asList(strings));
+        longs = castedLongs.stream().mapToLong(Long::longValue).toArray();
+        doubles = castedDoubles.stream().mapToDouble(Double::doubleValue).toArray();
+        longSet = longs.length > HASHING_THRESHOLD ? new LongHashSet(longs) : null;
+        doubleSet = doubles.length > HASHING_THRESHOLD ?
+                    new LongHashSet(Arrays.stream(doubles).mapToLong(Double::doubleToLongBits).toArray()) : null;
+        hasTrue = foundTrue;
+        hasFalse = foundFalse;
+        hasNull = foundNull;
+        minString = smallest;
+        maxString = largest;
+        for (long l : longs) {
+            minLong = Math.min(minLong, l);
+            maxLong = Math.max(maxLong, l);
+        }
+        // Double.compare orders NaN above everything, the same as TypedObject
+        for (double d : doubles) {
+            minDouble = Double.compare(d, minDouble) < 0 ? d : minDouble;
+            maxDouble = Double.compare(d, maxDouble) > 0 ? d : maxDouble;
+        }
+    }
+
+    /**
+     * Checks to see if none of the values could be cast to the given type.
+     *
+     * @param type The {@link Type} to check for.
+     * @return A boolean denoting whether there are no values of this type.
+     */
+    public boolean isEmpty(Type type) {
+        switch (type) {
+            case STRING:
+            case BOOLEAN:
+            case NULL:
+                return strings.length == 0;
+            case LONG:
+                return longs.length == 0;
+            case DOUBLE:
+                return doubles.length == 0;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Checks to see if the given value is equal to any of the values cast to the given type. This is the same as
+     * comparing the object to each value with {@link TypedObject#compareTo(TypedObject)} and looking for a 0.
+     *
+     * @param type The {@link Type} of the value.
+     * @param value The value, which must be an instance of the underlying type of the {@link Type} or null for
+     *              {@link Type#NULL}.
+     * @return A boolean denoting whether the value is present in these values.
+     */
+    public boolean contains(Type type, Object value) {
+        switch (type) {
+            case STRING:
+                return contains((String) value);
+            case BOOLEAN:
+                return (Boolean) value ? hasTrue : hasFalse;
+            case LONG:
+                return contains((long) (Long) value);
+            case DOUBLE:
+                return contains((double) (Double) value);
+            case NULL:
+                return hasNull;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Compares the given value against the smallest of the values cast to the given type. This should only be used
+     * if {@link #isEmpty(Type)} is false for the type.
+     *
+     * @param type The non-null {@link Type} of the value. It must not be {@link Type#NULL}.
+     * @param value The value, which must be an instance of the underlying type of the {@link Type}.
+     * @return A negative, zero or positive integer if the value is less than, equal to or greater than the minimum.
+     */
+    public int compareToMinimum(Type type, Object value) {
+        switch (type) {
+            case STRING:
+                return ((String) value).compareTo(minString);
+            case BOOLEAN:
+                return Boolean.compare((Boolean) value, !hasFalse);
+            case LONG:
+                return Long.compare((Long) value, minLong);
+            case DOUBLE:
+                return Double.compare((Double) value, minDouble);
+            default:
+                throw new RuntimeException("Unsupported type cannot be compared: " + type);
+        }
+    }
+
+    /**
+     * Compares the given value against the largest of the values cast to the given type. This should only be used
+     * if {@link #isEmpty(Type)} is false for the type.
+     *
+     * @param type The non-null {@link Type} of the value. It must not be {@link Type#NULL}.
+     * @param value The value, which must be an instance of the underlying type of the {@link Type}.
+     * @return A negative, zero or positive integer if the value is less than, equal to or greater than the maximum.
+     */
+    public int compareToMaximum(Type type, Object value) {
+        switch (type) {
+            case STRING:
+                return ((String) value).compareTo(maxString);
+            case BOOLEAN:
+                return Boolean.compare((Boolean) value, hasTrue);
+            case LONG:
+                return Long.compare((Long) value, maxLong);
+            case DOUBLE:
+                return Double.compare((Double) value, maxDouble);
+            default:
+                throw new RuntimeException("Unsupported type cannot be compared: " + type);
+        }
+    }
+
+    /**
+     * Gets a lower bound, as a double, for every {@link Type#LONG} or non-NaN {@link Type#DOUBLE} value that is
+     * greater than or equal to the minimum of the values of its type. Together with {@link #getNumericMaximum()}, this
+     * gives a closed interval containing every such number that can satisfy a range comparison against these values.
+     * Zeros are always positive.
+     *
+     * @return The bound or {@link Double#POSITIVE_INFINITY} if no number could be greater than or equal to the minimum.
+     */
+    public double getNumericMinimum() {
+        double minimum = Double.POSITIVE_INFINITY;
+        if (longs.length > 0) {
+            minimum = (double) minLong;
+        }
+        // A NaN minimum means that all the doubles are NaN, which no other double is greater than or equal to
+        if (doubles.length > 0 && !Double.isNaN(minDouble)) {
+            minimum = Math.min(minimum, minDouble);
+        }
+        return minimum + 0.0;
+    }
+
+    /**
+     * Gets an upper bound, as a double, for every {@link Type#LONG} or non-NaN {@link Type#DOUBLE} value that is
+     * less than or equal to the maximum of the values of its type. See {@link #getNumericMinimum()}.
+     *
+     * @return The bound or {@link Double#NEGATIVE_INFINITY} if no number could be less than or equal to the maximum.
+     */
+    public double getNumericMaximum() {
+        double maximum = Double.NEGATIVE_INFINITY;
+        if (longs.length > 0) {
+            maximum = (double) maxLong;
+        }
+        // NaN is ordered above everything so every other double is less than a NaN maximum
+        if (doubles.length > 0) {
+            maximum = Math.max(maximum, Double.isNaN(maxDouble) ? Double.POSITIVE_INFINITY : maxDouble);
+        }
+        return maximum + 0.0;
+    }
+
+    /**
+     * Gets all the values as every type they could be cast to, boxed as their underlying types. For any value of
+     * a simple {@link Type}, {@link #contains(Type, Object)} is true if and only if {@link #getKey(Type, Object)} for
+     * it is one of these keys. This makes it possible to look up these values in hash based structures.
+     *
+     * @return A {@link Set} of keys representing all the casted values.
+     */
+    public Set<Object> getKeys() {
+        Set<Object> keys = new HashSet<>();
+        for (String string : strings) {
+            keys.add(string);
+        }
+        for (long l : longs) {
+            keys.add(l);
+        }
+        for (double d : doubles) {
+            keys.add(d);
+        }
+        if (hasTrue) {
+            keys.add(Boolean.TRUE);
+        }
+        if (hasFalse) {
+            keys.add(Boolean.FALSE);
+        }
+        if (hasNull) {
+            keys.add(NULL_KEY);
+        }
+        return keys;
+    }
+
+    /**
+     * Gets the key for a value of a given {@link Type} that can be looked up in {@link #getKeys()}.
+     *
+     * @param type The {@link Type} of the value.
+     * @param value The value, which must be an instance of the underlying type of the {@link Type} or null for
+     *              {@link Type#NULL}.
+     * @return The key for the value.
+     */
+    public static Object getKey(Type type, Object value) {
+        return type == Type.NULL ? NULL_KEY : value;
+    }
+
+    private boolean contains(String value) {
+        if (strings.length > HASHING_THRESHOLD) {
+            return distinct.contains(value);
+        }
+        for (String string : strings) {
+            if (string.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(long value) {
+        if (longSet != null) {
+            return longSet.contains(value);
+        }
+        for (long l : longs) {
+            if (l == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean contains(double value) {
+        // Double.compare is 0 exactly when the doubleToLongBits are the same
+        if (doubleSet != null) {
+            return doubleSet.contains(Double.doubleToLongBits(value));
+        }
+        for (double d : doubles) {
+            if (Double.compare(d, value) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Object cast(Type type, String value) {
+        try {
+            return type.cast(value);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import com.yahoo.bullet.operations.AggregationOperations;
 import com.yahoo.bullet.operations.AggregationOperations.AggregationType;
 import com.yahoo.bullet.operations.AggregationOperations.GroupOperationType;
 import com.yahoo.bullet.operations.aggregations.GroupOperation;
+import com.yahoo.bullet.operations.aggregations.Percentile;
 import com.yahoo.bullet.operations.aggregations.Strategy;
 import lombok.AccessLevel;
 import lombok.Getter;
@@ -49,9 +50,15 @@ public class Aggregation implements Configurable, Validatable {
     // In case, any strategies need it.
     private Map configuration;
 
+    // The fraction of the records that are presented to the aggregation if the rule samples records
+    @Setter(AccessLevel.PACKAGE)
+    private double samplingRate = 1.0;
+
     // TODO: Move this to a Validation object tied in properly with Strategies when all are added.
     public static final Set<AggregationType> SUPPORTED_AGGREGATION_TYPES = new HashSet<>(asList(AggregationType.GROUP,
                                                                                                 AggregationType.COUNT_DISTINCT,
+                                                                                                AggregationType.TOP,
+                                                                                                AggregationType.PERCENTILE,
                                                                                                 AggregationType.RAW));
 
     public static final Set<GroupOperationType> SUPPORTED_GROUP_OPERATIONS = new HashSet<>(asList(GroupOperationType.COUNT,
@@ -62,7 +69,7 @@ public class Aggregation implements Configurable, Validatable {
 
     public static final String TYPE_NOT_SUPPORTED_ERROR_PREFIX = "Aggregation type not supported";
     public static final String TYPE_NOT_SUPPORTED_RESOLUTION = "Current supported aggregation types are: RAW, GROUP, " +
-            "                                                   COUNT DISTINCT";
+            "                                                   COUNT DISTINCT, TOP, PERCENTILE";
 
     public static final String SUPPORTED_GROUP_OPERATIONS_RESOLUTION =
             "Currently supported operations are: COUNT, AVG, MIN, MAX, SUM";
@@ -73,15 +80,24 @@ public class Aggregation implements Configurable, Validatable {
     public static final Error COUNT_DISTINCT_REQUIRES_FIELD_ERROR =
             makeError("Count Distinct requires atleast one field", OPERATION_REQUIRES_FIELD_RESOLUTION);
 
-    // Temporary
-    public static final Error GROUP_FIELDS_NOT_SUPPORTED_ERROR = makeError("Group type aggregation cannot have fields",
-                                                                           "Do not specify fields when type is GROUP");
-    // Temporary
+    public static final Error TOP_K_REQUIRES_FIELD_ERROR =
+            makeError("Top K requires atleast one field", OPERATION_REQUIRES_FIELD_RESOLUTION);
+
+    public static final Error PERCENTILE_REQUIRES_ONE_FIELD_ERROR =
+            makeError("Percentile requires exactly one field", "Please add a single numeric field.");
+
+    public static final Error PERCENTILE_TYPE_ERROR =
+            makeError("Percentile type not supported", "Currently supported percentile types are: QUANTILE, PMF, CDF");
+
+    public static final Error PERCENTILE_QUANTILES_ERROR =
+            makeError("Percentile quantiles must be between 0 and 1", "Please use quantiles from 0 to 1, inclusive.");
+
     public static final Error GROUP_ALL_OPERATION_ERROR = makeError("Group all needs to specify an operation to do",
                                                                     SUPPORTED_GROUP_OPERATIONS_RESOLUTION);
 
     public static final Integer DEFAULT_SIZE = 1;
     public static final Integer DEFAULT_MAX_SIZE = 30;
+    public static final Integer DEFAULT_GROUP_MAX_SIZE = 512;
 
     public static final String DEFAULT_FIELD_SEPARATOR = "|";
 
@@ -97,12 +113,35 @@ public class Aggregation implements Configurable, Validatable {
         type = AggregationType.RAW;
     }
 
+    /**
+     * Constructor that copies the given configured aggregation but with its own {@link Strategy}. Everything else is
+     * shared with it and must not be changed.
+     *
+     * @param other The non-null configured {@link Aggregation} to copy.
+     */
+    public Aggregation(Aggregation other) {
+        size = other.size;
+        type = other.type;
+        attributes = other.attributes;
+        fields = other.fields;
+        groupOperations = other.groupOperations;
+        configuration = other.configuration;
+        samplingRate = other.samplingRate;
+        strategy = AggregationOperations.getStrategyFor(this);
+    }
+
     @Override
     public void configure(Map configuration) {
         this.configuration = configuration;
 
         Number defaultSize = (Number) configuration.getOrDefault(BulletConfig.AGGREGATION_DEFAULT_SIZE, DEFAULT_SIZE);
         Number maximumSize = (Number) configuration.getOrDefault(BulletConfig.AGGREGATION_MAX_SIZE, DEFAULT_MAX_SIZE);
+        // A GROUP on fields should return all its groups, so it has its own maximum, which is also its default
+        if (type == AggregationType.GROUP && !isEmpty(fields)) {
+            maximumSize = (Number) configuration.getOrDefault(BulletConfig.GROUP_AGGREGATION_MAX_SIZE,
+                                                              DEFAULT_GROUP_MAX_SIZE);
+            defaultSize = maximumSize;
+        }
         int sizeDefault = defaultSize.intValue();
         int sizeMaximum = maximumSize.intValue();
 
@@ -118,12 +157,8 @@ public class Aggregation implements Configurable, Validatable {
     @Override
     public Optional<List<Error>> validate() {
         if (type == AggregationType.GROUP) {
-            // We only support GROUP by ALL for now
-            if (!isEmpty(fields)) {
-                return Optional.of(singletonList(GROUP_FIELDS_NOT_SUPPORTED_ERROR));
-            }
-            // Group operations are only created if they are supported.
-            if (isEmpty(groupOperations)) {
+            // Group operations are only created if they are supported. Without fields, there must be some.
+            if (isEmpty(fields) && isEmpty(groupOperations)) {
                 return Optional.of(singletonList(GROUP_ALL_OPERATION_ERROR));
             }
         }
@@ -132,6 +167,22 @@ public class Aggregation implements Configurable, Validatable {
                 return Optional.of(singletonList(COUNT_DISTINCT_REQUIRES_FIELD_ERROR));
             }
         }
+        if (type == AggregationType.TOP) {
+            if (isEmpty(fields)) {
+                return Optional.of(singletonList(TOP_K_REQUIRES_FIELD_ERROR));
+            }
+        }
+        if (type == AggregationType.PERCENTILE) {
+            if (isEmpty(fields) || fields.size() != 1) {
+                return Optional.of(singletonList(PERCENTILE_REQUIRES_ONE_FIELD_ERROR));
+            }
+            if (Percentile.getDistributionType(attributes) == null) {
+                return Optional.of(singletonList(PERCENTILE_TYPE_ERROR));
+            }
+            if (!Percentile.hasValidPoints(attributes)) {
+                return Optional.of(singletonList(PERCENTILE_QUANTILES_ERROR));
+            }
+        }
         // Supported aggregation types should be documented in TYPE_NOT_SUPPORTED_RESOLUTION
         if (!SUPPORTED_AGGREGATION_TYPES.contains(type)) {
             String typeSuffix = type == null ? "" : ": " + type;
@@ -8,6 +8,7 @@ package com.yahoo.bullet.parsing;
 import com.google.gson.annotations.Expose;
 import com.google.gson.annotations.SerializedName;
 import com.yahoo.bullet.operations.FilterOperations.FilterType;
+import com.yahoo.bullet.operations.predicates.Predicate;
 import com.yahoo.bullet.record.BulletRecord;
 import lombok.Getter;
 import lombok.Setter;
@@ -22,12 +23,23 @@ public abstract class Clause implements Configurable, Validatable {
     public static final String OPERATION_FIELD = "operation";
 
     /**
-     * Check this clause against this record. Return true iff the clause is satisfied.
+     * Check this clause against this record. Return true iff the clause is satisfied. This compiles the whole clause
+     * on every call, so it is only for checking a record once. Use {@link #compile()} once instead if the clause will
+     * be checked against many records.
      *
      * @param record The {@link BulletRecord} to check this clause against.
      * @return a boolean denoting if the check failed or passed.
      */
-    public abstract boolean check(BulletRecord record);
+    public boolean check(BulletRecord record) {
+        return compile().test(record);
+    }
+
+    /**
+     * Compiles this clause into a {@link Predicate} that can be tested against records.
+     *
+     * @return The non-null compiled {@link Predicate} for this clause.
+     */
+    public abstract Predicate compile();
 
     @Override
     public String toString() {
@@ -0,0 +1,95 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.parsing;
+
+import com.yahoo.bullet.record.BulletRecord;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.util.Objects;
+
+/**
+ * A field reference resolved once into the top level field and the optional key inside it, so that it does not need
+ * to be split every time it is used. The field can be "." separated to look inside maps. Only the first "."
+ * separates the field from the key.
+ *
+ * Two of these are equal if they were made from the same field.
+ */
+@Getter @EqualsAndHashCode(of = "path")
+public class FieldPath {
+    public static final char SEPARATOR = '.';
+
+    private final String path;
+    private final String field;
+    private final String subKey;
+
+    /**
+     * Constructor that resolves the given field reference.
+     *
+     * @param path The non-null field reference.
+     */
+    public FieldPath(String path) {
+        Objects.requireNonNull(path);
+        this.path = path;
+        int index = path.indexOf(SEPARATOR);
+        field = index < 0 ? path : path.substring(0, index);
+        subKey = index < 0 ? null : path.substring(index + 1);
+    }
+
+    /**
+     * Creates a {@link FieldPath} for the given field reference.
+     *
+     * @param path The field reference.
+     * @return The created {@link FieldPath} or null if the path was null.
+     */
+    public static FieldPath of(String path) {
+        return path == null ? null : new FieldPath(path);
+    }
+
+    /**
+     * Checks to see if this refers to a key inside a map field.
+     *
+     * @return A boolean denoting whether there is a key in this path.
+     */
+    public boolean hasSubKey() {
+        return subKey != null;
+    }
+
+    /**
+     * Extracts the value this refers to from the given {@link BulletRecord}.
+     *
+     * @param record The record containing data.
+     * @return The extracted value or null if error or not found.
+     */
+    public Object extract(BulletRecord record) {
+        try {
+            return subKey != null ? record.get(field, subKey) : record.get(field);
+        } catch (ClassCastException cce) {
+            return null;
+        }
+    }
+
+    /**
+     * Copies the value this refers to from the source {@link BulletRecord} into the target one with a new name.
+     *
+     * @param target The record to copy into.
+     * @param newName The name of the copied value in the target.
+     * @param source The record to copy from.
+     * @throws ClassCastException if the field was not a map but a key inside it was referred to.
+     */
+    public void copyInto(BulletRecord target, String newName, BulletRecord source) throws ClassCastException {
+        if (subKey != null) {
+            target.set(newName, source, field, subKey);
+        } else {
+            target.set(newName, source, field);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
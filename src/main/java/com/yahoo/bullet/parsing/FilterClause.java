@@ -6,22 +6,20 @@
 package com.yahoo.bullet.parsing;
 
 import com.google.gson.annotations.Expose;
-import com.yahoo.bullet.operations.FilterOperations;
-import com.yahoo.bullet.operations.typesystem.TypedObject;
-import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.operations.predicates.Predicate;
+import com.yahoo.bullet.operations.predicates.RelationalPredicate;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
-import java.util.stream.Collectors;
 
-import static com.yahoo.bullet.operations.FilterOperations.FilterType.REGEX_LIKE;
-import static com.yahoo.bullet.operations.FilterOperations.RELATIONAL_OPERATORS;
+import static com.yahoo.bullet.parsing.Error.makeError;
+import static java.util.Collections.singletonList;
 
 @Slf4j @Getter @Setter
 public class FilterClause extends Clause {
@@ -30,8 +28,12 @@ public class FilterClause extends Clause {
     @Expose
     private List<String> values;
 
-    // An optimization to cache the compiled patterns per FilterClause rather than redoing it per record
-    private List<Pattern> patterns;
+    @Setter(AccessLevel.NONE)
+    private int maximumValues = DEFAULT_MAX_VALUES;
+
+    public static final int DEFAULT_MAX_VALUES = 10000;
+    public static final String TOO_MANY_VALUES_ERROR_PREFIX = "Filter has too many values: ";
+    public static final String TOO_MANY_VALUES_RESOLUTION = "Please use at most the maximum number of values: ";
 
     /**
      * Default Constructor. GSON recommended.
@@ -43,43 +45,30 @@ public class FilterClause extends Clause {
     }
 
     /**
-     * Checks to see if this expression is satisfied.
+     * Compiles this expression. The values are cast to all the types they can be cast to only once here.
      *
-     * @param record The record to check the expression for.
-     * @return true iff this expression is satisfied.
+     * @return The compiled {@link Predicate} for this expression.
      */
-    public boolean check(BulletRecord record) {
+    @Override
+    public Predicate compile() {
         if (operation == null || values == null || values.isEmpty()) {
-            return true;
-        }
-        return compare(operation, Specification.extractField(field, record), values);
-    }
-
-    @SuppressWarnings("unchecked")
-    private boolean compare(FilterOperations.FilterType operation, Object value, List<String> values) {
-        TypedObject typed = new TypedObject(value);
-        return operation == REGEX_LIKE ? RELATIONAL_OPERATORS.get(REGEX_LIKE).compare(typed, getValuesAsPatterns(values)) :
-                                         RELATIONAL_OPERATORS.get(operation).compare(typed, values);
-    }
-
-    private static Pattern safeCompile(String value) {
-        try {
-            return Pattern.compile(value);
-        } catch (PatternSyntaxException pse) {
-            return null;
+            return Predicate.TRUE;
         }
+        return new RelationalPredicate(field, operation, values);
     }
 
-    private List<Pattern> getValuesAsPatterns(List<String> values) {
-        if (patterns == null) {
-            // Remove all null patterns
-            patterns = values.stream().map(FilterClause::safeCompile).filter(Objects::nonNull).collect(Collectors.toList());
-        }
-        return patterns;
+    @Override
+    public void configure(Map configuration) {
+        Number maximum = (Number) configuration.getOrDefault(BulletConfig.FILTER_MAX_VALUES, DEFAULT_MAX_VALUES);
+        maximumValues = maximum.intValue();
     }
 
     @Override
     public Optional<List<Error>> validate() {
+        if (values != null && values.size() > maximumValues) {
+            return Optional.of(singletonList(makeError(TOO_MANY_VALUES_ERROR_PREFIX + field + " has " + values.size(),
+                                                       TOO_MANY_VALUES_RESOLUTION + maximumValues)));
+        }
         return Optional.empty();
     }
 
@@ -6,15 +6,17 @@
 package com.yahoo.bullet.parsing;
 
 import com.google.gson.annotations.Expose;
-import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.operations.predicates.LogicalPredicate;
+import com.yahoo.bullet.operations.predicates.Predicate;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-
-import static com.yahoo.bullet.operations.FilterOperations.LOGICAL_OPERATORS;
+import java.util.stream.Collectors;
 
 @Slf4j @Getter @Setter
 public class LogicalClause extends Clause {
@@ -34,16 +36,30 @@ public class LogicalClause extends Clause {
     }
 
     @Override
-    public boolean check(BulletRecord record) {
+    public void configure(Map configuration) {
+        if (clauses != null) {
+            clauses.forEach(c -> c.configure(configuration));
+        }
+    }
+
+    @Override
+    public Predicate compile() {
         if (operation == null || clauses == null || clauses.isEmpty()) {
-            return true;
+            return Predicate.TRUE;
         }
-        return LOGICAL_OPERATORS.get(operation).test(record, clauses);
+        return new LogicalPredicate(operation, clauses.stream().map(Clause::compile).collect(Collectors.toList()));
     }
 
     @Override
     public Optional<List<Error>> validate() {
-        return Optional.empty();
+        if (clauses == null) {
+            return Optional.empty();
+        }
+        List<Error> errors = new ArrayList<>();
+        for (Clause clause : clauses) {
+            clause.validate().ifPresent(errors::addAll);
+        }
+        return errors.isEmpty() ? Optional.empty() : Optional.of(errors);
     }
 }
 
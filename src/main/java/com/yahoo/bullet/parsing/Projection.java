@@ -7,10 +7,12 @@ package com.yahoo.bullet.parsing;
 
 import com.google.gson.annotations.Expose;
 import com.yahoo.bullet.record.BulletRecord;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -23,6 +25,10 @@ public class Projection implements Configurable, Validatable {
     @Expose
     private Map<String, String> fields;
 
+    // The source fields resolved once to their new names
+    @Getter(AccessLevel.NONE) @Setter(AccessLevel.NONE)
+    private Map<FieldPath, String> paths;
+
     /**
      * Default constructor. GSON recommended.
      */
@@ -30,6 +36,21 @@ public class Projection implements Configurable, Validatable {
         fields = null;
     }
 
+    /**
+     * Sets the map of source field names to their new projected names.
+     *
+     * @param fields The {@link Map} of fields to project.
+     */
+    public void setFields(Map<String, String> fields) {
+        this.fields = fields;
+        paths = null;
+    }
+
+    @Override
+    public void configure(Map configuration) {
+        paths = compilePaths();
+    }
+
     /**
      * Applies the projection.
      * @param record The record to project from.
@@ -41,29 +62,33 @@ public class Projection implements Configurable, Validatable {
             return record;
         }
         // More efficient if fields << the fields in the BulletRecord
+        if (paths == null) {
+            paths = compilePaths();
+        }
         BulletRecord projected = new BulletRecord();
-        for (Map.Entry<String, String> e : fields.entrySet()) {
-            String field = e.getKey();
+        for (Map.Entry<FieldPath, String> e : paths.entrySet()) {
+            FieldPath path = e.getKey();
             String newName = e.getValue();
             try {
-                copyInto(projected, newName, record, field);
+                path.copyInto(projected, newName, record);
             } catch (ClassCastException cce) {
-                log.warn("Skipping copying {} as {} as it is not a field that can be extracted", field, newName);
+                log.warn("Skipping copying {} as {} as it is not a field that can be extracted", path, newName);
             }
         }
         return projected;
     }
 
-    private void copyInto(BulletRecord record, String newName, BulletRecord source, String field) throws ClassCastException {
-        if (field == null) {
-            return;
+    private Map<FieldPath, String> compilePaths() {
+        if (fields == null) {
+            return null;
         }
-        String[] split = Specification.getFields(field);
-        if (split.length > 1) {
-            record.set(newName, source, split[0], split[1]);
-        } else {
-            record.set(newName, source, field);
+        Map<FieldPath, String> compiled = new LinkedHashMap<>();
+        for (Map.Entry<String, String> e : fields.entrySet()) {
+            if (e.getKey() != null) {
+                compiled.put(new FieldPath(e.getKey()), e.getValue());
+            }
         }
+        return compiled;
     }
 
     @Override
@@ -7,6 +7,11 @@ package com.yahoo.bullet.parsing;
 
 import com.google.gson.annotations.Expose;
 import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.operations.AggregationOperations.AggregationType;
+import com.yahoo.bullet.operations.FilterOperations.FilterType;
+import com.yahoo.bullet.operations.predicates.LogicalPredicate;
+import com.yahoo.bullet.operations.predicates.Predicate;
+import com.yahoo.bullet.operations.predicates.RecordBatch;
 import com.yahoo.bullet.record.BulletRecord;
 import com.yahoo.bullet.result.Clip;
 import com.yahoo.bullet.result.Metadata;
@@ -16,9 +21,12 @@ import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 /**
  * This class is the top level Bullet Rule Specification. It holds the definition of the Rule.
@@ -33,6 +41,12 @@ public class Specification implements Configurable, Validatable  {
     private Aggregation aggregation;
     @Expose
     private Integer duration;
+    @Expose
+    private Double sampling;
+
+    // The filters compiled once into a single Predicate rather than re-evaluating the clauses per record
+    @Setter
+    private Predicate predicate;
 
     private Boolean shouldInjectTimestamp;
     private String timestampKey;
@@ -44,6 +58,10 @@ public class Specification implements Configurable, Validatable  {
 
     public static final String AGGREGATION_FAILURE_RESOLUTION = "Please try again later";
 
+    public static final Error SAMPLING_OUT_OF_RANGE_ERROR =
+            Error.makeError("The sampling must be the fraction of records to keep",
+                            "Please provide a sampling greater than 0 and at most 1");
+
     /**
      * Default constructor. GSON recommended.
      */
@@ -53,6 +71,24 @@ public class Specification implements Configurable, Validatable  {
         aggregation = new Aggregation();
     }
 
+    /**
+     * Constructor that copies the given configured and valid specification. The copy shares the parsed filters,
+     * projection and the immutable parts of the compiled filters with it but has its own aggregation, so that both
+     * can be used at the same time, on different threads.
+     *
+     * @param other The non-null {@link Specification} to copy. It must not be changed after this.
+     */
+    public Specification(Specification other) {
+        projection = other.projection;
+        filters = other.filters;
+        aggregation = new Aggregation(other.aggregation);
+        duration = other.duration;
+        sampling = other.sampling;
+        predicate = other.predicate == null ? null : other.predicate.copy();
+        shouldInjectTimestamp = other.shouldInjectTimestamp;
+        timestampKey = other.timestampKey;
+    }
+
     /**
      * Runs the specification on this record and returns true if this record matched its filters.
      *
@@ -64,8 +100,65 @@ public class Specification implements Configurable, Validatable  {
         if (filters == null) {
             return true;
         }
+        if (predicate == null) {
+            predicate = compileFilters();
+        }
         // Otherwise short circuit evaluate till the first filter fails. Filters are ANDed.
-        return filters.stream().allMatch(c -> c.check(record));
+        return predicate.test(record);
+    }
+
+    /**
+     * Runs the specification on the selected records in the batch and deselects the ones that do not match its
+     * filters.
+     *
+     * @param batch The {@link RecordBatch} of input records.
+     * @param selected The {@link BitSet} of the positions of the records to filter in the batch.
+     */
+    public void filter(RecordBatch batch, BitSet selected) {
+        if (filters == null) {
+            return;
+        }
+        if (predicate == null) {
+            predicate = compileFilters();
+        }
+        predicate.test(batch, selected);
+    }
+
+    /**
+     * Randomly decides whether a record should be kept or dropped because of the sampling of this specification. A
+     * COUNT DISTINCT keeps all the records and samples the distinct values in its Sketch instead, since dropping a
+     * fraction of the records does not drop that fraction of the distinct values.
+     *
+     * @return true if the record should be kept. This is always true if there is no sampling.
+     */
+    public boolean sample() {
+        return !isSamplingRecords() || ThreadLocalRandom.current().nextDouble() < sampling;
+    }
+
+    /**
+     * Deselects the records in the batch that are dropped because of the sampling of this specification.
+     * See {@link #sample()}.
+     *
+     * @param selected The {@link BitSet} of the positions of the selected records.
+     */
+    public void sample(BitSet selected) {
+        if (!isSamplingRecords()) {
+            return;
+        }
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+            if (!sample()) {
+                selected.clear(i);
+            }
+        }
+    }
+
+    /**
+     * Gets the fraction of the records that are kept because of the sampling of this specification.
+     *
+     * @return The sampling rate, which is 1.0 if there is no sampling.
+     */
+    public double getSamplingRate() {
+        return sampling == null ? 1.0 : sampling;
     }
 
     /**
@@ -159,6 +252,7 @@ public class Specification implements Configurable, Validatable  {
     public void configure(Map configuration) {
         if (filters != null) {
             filters.forEach(f -> f.configure(configuration));
+            predicate = compileFilters();
         }
         if (projection != null) {
             projection.configure(configuration);
@@ -167,6 +261,8 @@ public class Specification implements Configurable, Validatable  {
         if (aggregation == null) {
             aggregation = new Aggregation();
         }
+        // The aggregation scales its results up by this if the records were sampled
+        aggregation.setSamplingRate(getSamplingRate());
         aggregation.configure(configuration);
 
         shouldInjectTimestamp = (Boolean) configuration.getOrDefault(BulletConfig.RECORD_INJECT_TIMESTAMP, false);
@@ -181,6 +277,17 @@ public class Specification implements Configurable, Validatable  {
         duration = (duration == null || duration < 0) ? durationDefault : Math.min(duration, durationMax);
     }
 
+    private boolean isSamplingRecords() {
+        return sampling != null && (aggregation == null || aggregation.getType() != AggregationType.COUNT_DISTINCT);
+    }
+
+    private Predicate compileFilters() {
+        if (filters.isEmpty()) {
+            return Predicate.TRUE;
+        }
+        return new LogicalPredicate(FilterType.AND, filters.stream().map(Clause::compile).collect(Collectors.toList()));
+    }
+
     private BulletRecord addAdditionalFields(BulletRecord record) {
         if (shouldInjectTimestamp) {
             record.setLong(timestampKey, System.currentTimeMillis());
@@ -202,26 +309,10 @@ public class Specification implements Configurable, Validatable  {
         if (aggregation != null) {
             aggregation.validate().ifPresent(errors::addAll);
         }
-        return errors.isEmpty() ? Optional.empty() : Optional.of(errors);
-    }
-
-    /**
-     * Extracts the field from the given {@link BulletRecord}.
-     *
-     * @param field The field to get. It can be "." separated to look inside maps.
-     * @param record The record containing data.
-     * @return The extracted field or null if error or not found.
-     */
-    public static Object extractField(String field, BulletRecord record) {
-        if (field == null) {
-            return null;
-        }
-        String[] split = getFields(field);
-        try {
-            return split.length > 1 ? record.get(split[0], split[1]) : record.get(field);
-        } catch (ClassCastException cce) {
-            return null;
+        if (sampling != null && !(sampling > 0.0 && sampling <= 1.0)) {
+            errors.add(SAMPLING_OUT_OF_RANGE_ERROR);
         }
+        return errors.isEmpty() ? Optional.empty() : Optional.of(errors);
     }
 
     /**
@@ -231,12 +322,13 @@ public class Specification implements Configurable, Validatable  {
      * @return The field split into field or subfield if it was a map field, or just the field itself.
      */
     public static String[] getFields(String field) {
-        return field.split(SUB_KEY_SEPERATOR, 2);
+        FieldPath path = new FieldPath(field);
+        return path.hasSubKey() ? new String[] {path.getField(), path.getSubKey()} : new String[] {field};
     }
 
     @Override
     public String toString() {
         return "{filters: " + filters + ", projection: " + projection + ", aggregation: " + aggregation +
-                ", duration: " + duration + "}";
+                ", duration: " + duration + ", sampling: " + sampling + "}";
     }
 }
@@ -30,12 +30,20 @@ public class Metadata {
         RULE_ID("Rule Identifier"),
         RULE_BODY("Rule Body"),
         AGGREGATION_METADATA("Aggregation Metadata"),
+        SAMPLING_RATE("Sampling Rate"),
+        SHED_FRACTION("Shed Fraction"),
 
         ESTIMATED_RESULT("Estimated Result"),
         STANDARD_DEVIATIONS("Standard Deviations"),
         SKETCH_FAMILY("Sketch Family"),
         SKETCH_SIZE("Sketch Size"),
-        SKETCH_THETA("Sketch Theta");
+        SKETCH_THETA("Sketch Theta"),
+        MAXIMUM_COUNT_ERROR("Maximum Count Error"),
+        ITEMS_SEEN("Items Seen"),
+        NORMALIZED_RANK_ERROR("Normalized Rank Error"),
+        TRUNCATED_RESULT("Truncated Result"),
+        MINIMUM_VALUE("Minimum Value"),
+        MAXIMUM_VALUE("Maximum Value");
 
         private String name;
 
@@ -41,13 +41,45 @@ public abstract class AbstractRule<T, R> implements Rule<T, R> {
         startTime = System.currentTimeMillis();
     }
 
+    /**
+     * Constructor that takes a String representation of the rule and its already parsed, configured and validated
+     * {@link Specification}.
+     *
+     * @param ruleString The rule as a string.
+     * @param specification The valid {@link Specification} of the rule.
+     */
+    public AbstractRule(String ruleString, Specification specification) {
+        this.ruleString = ruleString;
+        this.specification = specification;
+        duration = specification.getDuration();
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the time after which the rule has expired.
+     *
+     * @return The time in milliseconds since the epoch after which the rule has expired.
+     */
+    public long getExpiryTime() {
+        return startTime + duration;
+    }
+
     /**
      * Returns true iff the rule has expired.
      *
      * @return boolean denoting if rule has expired.
      */
     public boolean isExpired() {
-        return System.currentTimeMillis() > startTime + duration;
+        return System.currentTimeMillis() > getExpiryTime();
+    }
+
+    /**
+     * Returns the fraction of the records matching the rule that are used for its results.
+     *
+     * @return The sampling rate of the rule, which is 1.0 if it does not sample records.
+     */
+    public double getSamplingRate() {
+        return specification.getSamplingRate();
     }
 
     @Override
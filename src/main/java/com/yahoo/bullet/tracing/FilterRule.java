@@ -5,12 +5,22 @@
  */
 package com.yahoo.bullet.tracing;
 
+import com.yahoo.bullet.operations.predicates.Predicate;
+import com.yahoo.bullet.operations.predicates.RecordBatch;
 import com.yahoo.bullet.parsing.ParsingException;
+import com.yahoo.bullet.parsing.Specification;
 import com.yahoo.bullet.record.BulletRecord;
+import lombok.Getter;
 
+import java.util.BitSet;
 import java.util.Map;
 
 public class FilterRule extends AbstractRule<BulletRecord, byte[]> {
+    // The estimated nanoseconds spent checking records against this rule
+    @Getter
+    private long cost = 0L;
+    private long checks = 0L;
+
     /**
      * Default constructor.
      *
@@ -22,6 +32,16 @@ public class FilterRule extends AbstractRule<BulletRecord, byte[]> {
         super(input, configuration);
     }
 
+    /**
+     * Constructor that takes the already parsed, configured and validated {@link Specification} of the rule.
+     *
+     * @param input The rule as a String.
+     * @param specification The valid {@link Specification} of the rule. It is not shared with other rules.
+     */
+    public FilterRule(String input, Specification specification) {
+        super(input, specification);
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -34,9 +54,71 @@ public class FilterRule extends AbstractRule<BulletRecord, byte[]> {
         return specification.getSerializedAggregate();
     }
 
+    /**
+     * Gets the compiled filters of this rule.
+     *
+     * @return The {@link Predicate} that a record must satisfy for this rule or null if the rule has no filters.
+     */
+    public Predicate getPredicate() {
+        return specification.getPredicate();
+    }
+
+    /**
+     * Replaces the compiled filters of this rule with an equivalent {@link Predicate}.
+     *
+     * @param predicate The {@link Predicate} that is equivalent to the current one from {@link #getPredicate()}.
+     */
+    public void setPredicate(Predicate predicate) {
+        specification.setPredicate(predicate);
+    }
+
     @Override
     public boolean consume(BulletRecord record) {
-        if (!specification.isAcceptingData() || !specification.filter(record)) {
+        // Sampled out records are dropped before any of the filters are evaluated
+        if (!specification.isAcceptingData() || !specification.sample() || !specification.filter(record)) {
+            return false;
+        }
+        specification.aggregate(specification.project(record));
+        return specification.isMicroBatch();
+    }
+
+    /**
+     * Counts a check of a record against this rule.
+     *
+     * @return The number of checks counted before this one.
+     */
+    public long countCheck() {
+        return checks++;
+    }
+
+    /**
+     * Adds to the estimated time spent checking records against this rule.
+     *
+     * @param nanos The estimated nanoseconds to add.
+     */
+    public void addCost(long nanos) {
+        cost += nanos;
+    }
+
+    /**
+     * Deselects the records in the batch that are sampled out or do not match the filters of this rule.
+     *
+     * @param batch The {@link RecordBatch} of records.
+     * @param selected The {@link BitSet} of the positions of the records to filter in the batch.
+     */
+    public void filter(RecordBatch batch, BitSet selected) {
+        specification.sample(selected);
+        specification.filter(batch, selected);
+    }
+
+    /**
+     * Consumes a record that has already matched the filters of this rule. See {@link #consume(BulletRecord)}.
+     *
+     * @param record The {@link BulletRecord} that matched the filters.
+     * @return true if this rule has reached a micro-batch and its data should be emitted.
+     */
+    public boolean consumeFiltered(BulletRecord record) {
+        if (!specification.isAcceptingData()) {
             return false;
         }
         specification.aggregate(specification.project(record));
@@ -0,0 +1,120 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.tracing;
+
+import com.yahoo.bullet.parsing.Error;
+import com.yahoo.bullet.parsing.Parser;
+import com.yahoo.bullet.parsing.ParsingException;
+import com.yahoo.bullet.parsing.Specification;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Parses each rule once for everything in a JVM that uses it. The first {@link #acquire(Long, String, Map)} of a rule
+ * parses, configures and validates it into a {@link Specification}. Every {@link FilterRule} acquired for the rule gets
+ * a copy of it that shares the parsed filters, projection and cast filter values but has its own aggregation and
+ * filter state. The specification is dropped when all the rules acquired for it have been released.
+ *
+ * Use {@link #getInstance()} to share rules between all the bolts in a Storm worker. This is thread-safe.
+ */
+public class RuleRegistry {
+    private static final RuleRegistry INSTANCE = new RuleRegistry();
+
+    @AllArgsConstructor @EqualsAndHashCode
+    private static class Key {
+        private final Long id;
+        private final String ruleString;
+    }
+
+    private static class Plan {
+        private final Specification specification;
+        private final Map configuration;
+        private final Set<FilterRule> rules = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private Plan(Specification specification, Map configuration) {
+            this.specification = specification;
+            this.configuration = configuration;
+        }
+    }
+
+    private final Map<Key, Plan> plans = new HashMap<>();
+
+    /**
+     * Gets the registry shared by everything in this JVM.
+     *
+     * @return The shared {@link RuleRegistry}.
+     */
+    public static RuleRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Creates a {@link FilterRule} for a rule, parsing the rule only if it has not been acquired with the same
+     * configuration before and released since. Rules that cannot be parsed are not remembered.
+     *
+     * @param id The non-null id of the rule.
+     * @param ruleString The rule as a String.
+     * @param configuration The configuration to parse the rule with.
+     * @return A new {@link FilterRule} for the rule. It should be released with {@link #release(Long, FilterRule)}.
+     * @throws ParsingException if the rule was not valid.
+     * @throws com.google.gson.JsonParseException if the rule could not be parsed.
+     */
+    public synchronized FilterRule acquire(Long id, String ruleString, Map configuration) throws ParsingException {
+        Key key = new Key(id, ruleString);
+        Plan plan = plans.get(key);
+        if (plan != null && !plan.configuration.equals(configuration)) {
+            // Not the same rule after all so it is not shared
+            return new FilterRule(ruleString, configuration);
+        }
+        if (plan == null) {
+            plan = new Plan(parse(ruleString, configuration), configuration);
+            plans.put(key, plan);
+        }
+        FilterRule rule = new FilterRule(ruleString, new Specification(plan.specification));
+        plan.rules.add(rule);
+        return rule;
+    }
+
+    /**
+     * Releases a rule created by {@link #acquire(Long, String, Map)}. Nothing is done for other rules.
+     *
+     * @param id The non-null id of the rule.
+     * @param rule The {@link FilterRule} that is no longer used.
+     */
+    public synchronized void release(Long id, FilterRule rule) {
+        Key key = new Key(id, rule.ruleString);
+        Plan plan = plans.get(key);
+        if (plan != null && plan.rules.remove(rule) && plan.rules.isEmpty()) {
+            plans.remove(key);
+        }
+    }
+
+    /**
+     * Returns the number of rules that are currently parsed.
+     *
+     * @return The number of distinct rules.
+     */
+    public synchronized int size() {
+        return plans.size();
+    }
+
+    private static Specification parse(String ruleString, Map configuration) throws ParsingException {
+        Specification specification = Parser.parse(ruleString, configuration);
+        Optional<List<Error>> errors = specification.validate();
+        if (errors.isPresent()) {
+            throw new ParsingException(errors.get());
+        }
+        return specification;
+    }
+}
@@ -7,6 +7,7 @@ package com.yahoo.bullet;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
+import com.yahoo.bullet.operations.aggregations.RecordBatch;
 import com.yahoo.bullet.record.BulletRecord;
 import org.testng.Assert;
 
@@ -43,7 +44,7 @@ public class TestHelpers {
         for (BulletRecord record : records) {
             asList.add(record);
         }
-        return serialize(asList);
+        return RecordBatch.toBytes(asList);
     }
 
     public static byte[] serialize(Object o) {
@@ -5,29 +5,45 @@
  */
 package com.yahoo.bullet.drpc;
 
+import com.sun.management.ThreadMXBean;
 import com.yahoo.bullet.BulletConfig;
 import com.yahoo.bullet.TestHelpers;
 import com.yahoo.bullet.operations.AggregationOperations.AggregationType;
 import com.yahoo.bullet.operations.FilterOperations;
 import com.yahoo.bullet.operations.aggregations.CountDistinct;
+import com.yahoo.bullet.operations.aggregations.GroupBy;
+import com.yahoo.bullet.operations.aggregations.GroupByTest;
 import com.yahoo.bullet.operations.aggregations.GroupData;
 import com.yahoo.bullet.operations.aggregations.GroupOperation;
 import com.yahoo.bullet.parsing.Aggregation;
 import com.yahoo.bullet.record.BulletRecord;
 import com.yahoo.bullet.result.RecordBox;
 import com.yahoo.bullet.tracing.FilterRule;
+import com.yahoo.bullet.tracing.RuleRegistry;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.storm.metric.api.IMetric;
+import org.apache.storm.task.GeneralTopologyContext;
+import org.apache.storm.task.IOutputCollector;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
+import org.mockito.ArgumentCaptor;
 import org.testng.Assert;
+import org.testng.SkipException;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static com.yahoo.bullet.drpc.TupleUtils.makeIDTuple;
@@ -37,6 +53,7 @@ import static com.yahoo.bullet.operations.FilterOperations.FilterType.AND;
 import static com.yahoo.bullet.operations.FilterOperations.FilterType.EQUALS;
 import static com.yahoo.bullet.operations.FilterOperations.FilterType.GREATER_THAN;
 import static com.yahoo.bullet.operations.FilterOperations.FilterType.OR;
+import static com.yahoo.bullet.parsing.AggregationUtils.makeGroupOperation;
 import static com.yahoo.bullet.parsing.LogicalClauseTest.clause;
 import static com.yahoo.bullet.parsing.RuleUtils.getFilterRule;
 import static com.yahoo.bullet.parsing.RuleUtils.makeAggregationRule;
@@ -48,7 +65,11 @@ import static com.yahoo.bullet.parsing.RuleUtils.makeProjectionRule;
 import static com.yahoo.bullet.parsing.RuleUtils.makeSimpleAggregationFilterRule;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class FilterBoltTest {
@@ -67,10 +88,58 @@ public class FilterBoltTest {
         protected FilterRule getRule(Long id, String ruleString) {
             FilterRule spied = spy(getFilterRule(ruleString, configuration));
             when(spied.isExpired()).thenReturn(false).thenReturn(true);
+            // Always due so that every retirement asks the rule if it has expired
+            when(spied.getExpiryTime()).thenReturn(0L);
             return spied;
         }
     }
 
+    private class ExpiredFilterBolt extends FilterBolt {
+        @Override
+        protected FilterRule getRule(Long id, String ruleString) {
+            FilterRule spied = spy(getFilterRule(ruleString, configuration));
+            when(spied.getExpiryTime()).thenReturn(0L);
+            return spied;
+        }
+    }
+
+    private static class NoOpCollector implements IOutputCollector {
+        @Override
+        public List<Integer> emit(String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+            return null;
+        }
+
+        @Override
+        public void emitDirect(int taskId, String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+        }
+
+        @Override
+        public void ack(Tuple input) {
+        }
+
+        @Override
+        public void fail(Tuple input) {
+        }
+
+        @Override
+        public void resetTimeout(Tuple input) {
+        }
+
+        @Override
+        public void reportError(Throwable error) {
+        }
+    }
+
+    private static Tuple makeRealRecordTuple(BulletRecord record) {
+        Map<Integer, String> taskToComponent = singletonMap(1, TopologyConstants.RECORD_COMPONENT);
+        Map<String, Map<String, Fields>> fields = singletonMap(TopologyConstants.RECORD_COMPONENT,
+                                                               singletonMap(TopologyConstants.RECORD_STREAM,
+                                                                            new Fields(TopologyConstants.RECORD_FIELD)));
+        GeneralTopologyContext context = new GeneralTopologyContext(null, new HashMap<>(), taskToComponent,
+                                                                    new HashMap<>(), fields, "");
+        return new TupleImpl(context, singletonList(record), 1, TopologyConstants.RECORD_STREAM);
+    }
+
     public static Tuple makeRecordTuple(TupleType.Type type, Long id, BulletRecord... records) {
         byte[] listBytes = TestHelpers.getListBytes(records);
         return makeTuple(type, id, listBytes);
@@ -130,6 +199,14 @@ public class FilterBoltTest {
         bolt.declareOutputFields(declarer);
         Fields expected = new Fields(TopologyConstants.ID_FIELD, TopologyConstants.RECORD_FIELD);
         Assert.assertTrue(declarer.areFieldsPresent(FilterBolt.FILTER_STREAM, false, expected));
+        Fields error = new Fields(TopologyConstants.ID_FIELD, TopologyConstants.ERROR_FIELD,
+                                  TopologyConstants.RESOLUTION_FIELD);
+        Assert.assertTrue(declarer.areFieldsPresent(FilterBolt.ERROR_STREAM, false, error));
+        Fields shed = new Fields(TopologyConstants.ID_FIELD, TopologyConstants.ARRIVED_FIELD,
+                                 TopologyConstants.SHED_FIELD);
+        Assert.assertTrue(declarer.areFieldsPresent(FilterBolt.SHED_STREAM, false, shed));
+        Fields flush = new Fields(TopologyConstants.ID_FIELD);
+        Assert.assertTrue(declarer.areFieldsPresent(FilterBolt.FLUSH_STREAM, false, flush));
     }
 
     @Test
@@ -192,6 +269,231 @@ public class FilterBoltTest {
         Assert.assertFalse(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, anotherExpected));
     }
 
+    @Test
+    public void testFeedbackRemovesRule() {
+        Tuple rule = makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("b235gf23b"));
+        bolt.execute(rule);
+
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        Tuple matching = makeTuple(TupleType.Type.RECORD_TUPLE, record);
+        bolt.execute(matching);
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
+
+        Tuple feedback = makeIDTuple(TupleType.Type.FEEDBACK_TUPLE, 42L);
+        bolt.execute(feedback);
+        Assert.assertTrue(collector.wasAcked(feedback));
+
+        bolt.execute(matching);
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
+
+        // The rule is not emitted again when it expires
+        bolt.execute(makeTuple(TupleType.Type.TICK_TUPLE));
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testFeedbackBeforeRule() {
+        Tuple feedback = makeIDTuple(TupleType.Type.FEEDBACK_TUPLE, 42L);
+        bolt.execute(feedback);
+        Assert.assertTrue(collector.wasAcked(feedback));
+
+        // The JoinBolt is already done with the rule so it is not run
+        Tuple rule = makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("b235gf23b"));
+        bolt.execute(rule);
+        Assert.assertTrue(collector.wasAcked(rule));
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 0);
+
+        // Another rule with the same id is run
+        bolt.execute(rule);
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testFeedbackBeforeRuleIsForgotten() {
+        bolt.execute(makeIDTuple(TupleType.Type.FEEDBACK_TUPLE, 42L));
+        Tuple tick = makeTuple(TupleType.Type.TICK_TUPLE);
+        for (int i = 0; i < FilterBolt.DEFAULT_FEEDBACK_TICKOUT; ++i) {
+            bolt.execute(tick);
+        }
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("b235gf23b")));
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testRuleOverCPUBudgetIsTerminated() {
+        Map<String, Object> config = new HashMap<>();
+        // Every check is timed and counts for a lot more so that a single check goes over the budget
+        config.put(BulletConfig.FILTER_BOLT_RULE_TIMING_INTERVAL, 1000000000);
+        config.put(BulletConfig.FILTER_BOLT_RULE_CPU_BUDGET_MS, 1);
+        bolt = ComponentUtils.prepare(config, new FilterBolt(), collector);
+
+        Tuple rule = makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("b235gf23b"));
+        bolt.execute(rule);
+
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        Tuple matching = makeTuple(TupleType.Type.RECORD_TUPLE, record);
+        bolt.execute(matching);
+        Assert.assertTrue(collector.wasAcked(matching));
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.ERROR_STREAM).count(), 1);
+        List<Object> error = collector.getNthTupleEmittedTo(FilterBolt.ERROR_STREAM, 1).get();
+        Assert.assertEquals(error.get(TopologyConstants.ID_POSITION), 42L);
+        Assert.assertEquals(error.get(TopologyConstants.RESOLUTION_POSITION), FilterBolt.CPU_BUDGET_EXCEEDED_RESOLUTION);
+
+        // The rule is gone
+        long emitted = collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count();
+        bolt.execute(matching);
+        bolt.execute(makeTuple(TupleType.Type.TICK_TUPLE));
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), emitted);
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.ERROR_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testRuleWithinCPUBudgetIsNotTerminated() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.FILTER_BOLT_RULE_TIMING_INTERVAL, 1);
+        config.put(BulletConfig.FILTER_BOLT_RULE_CPU_BUDGET_MS, 30000);
+        bolt = ComponentUtils.prepare(config, new FilterBolt(), collector);
+
+        Tuple rule = makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("b235gf23b"));
+        bolt.execute(rule);
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+
+        Tuple expected = makeRecordTuple(TupleType.Type.FILTER_TUPLE, 42L, record);
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1, expected));
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.ERROR_STREAM).count(), 0);
+    }
+
+    @Test
+    public void testNoSheddingByDefault() {
+        Tuple rule = makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("b235gf23b"));
+        bolt.execute(rule);
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 42L, record)));
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.SHED_STREAM).count(), 0);
+    }
+
+    @Test
+    public void testLoadIsShedAndReported() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.FILTER_BOLT_SHEDDING_ENABLE, true);
+        // Every record closes a window and any load is too much so the fraction shed goes up with every record
+        config.put(BulletConfig.FILTER_BOLT_SHEDDING_WINDOW_MS, 0);
+        config.put(BulletConfig.FILTER_BOLT_SHEDDING_HIGH_LOAD, -1.0);
+        config.put(BulletConfig.FILTER_BOLT_SHEDDING_LOW_LOAD, -1.0);
+        config.put(BulletConfig.FILTER_BOLT_SHEDDING_MAX_FRACTION, 0.5);
+        bolt = ComponentUtils.prepare(config, new ExpiringFilterBolt(), collector);
+
+        Tuple rule = makeIDTuple(TupleType.Type.RULE_TUPLE, 42L,
+                                 makeGroupFilterRule("timestamp", Arrays.asList("1", "2"), EQUALS,
+                                                     AggregationType.GROUP, 1,
+                                                     singletonList(new GroupOperation(COUNT, null, "cnt"))));
+        bolt.execute(rule);
+
+        int records = 1000;
+        BulletRecord record = RecordBox.get().add("timestamp", "1").getRecord();
+        for (int i = 0; i < records; ++i) {
+            Tuple tuple = makeTuple(TupleType.Type.RECORD_TUPLE, record);
+            bolt.execute(tuple);
+            // Shed records are acked too
+            Assert.assertTrue(collector.wasAcked(tuple));
+        }
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.SHED_STREAM).count(), 0);
+
+        Tuple tick = TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE);
+        bolt.execute(tick);
+        bolt.execute(tick);
+
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.SHED_STREAM).count(), 1);
+        List<Object> shed = collector.getNthTupleEmittedTo(FilterBolt.SHED_STREAM, 1).get();
+        Assert.assertEquals(shed.get(TopologyConstants.ID_POSITION), 42L);
+        Assert.assertEquals(shed.get(TopologyConstants.ARRIVED_POSITION), (long) records);
+        long dropped = (Long) shed.get(TopologyConstants.SHED_POSITION);
+        // The fraction is at the most after ten records so this is about half
+        Assert.assertTrue(dropped > 400 && dropped < 600);
+
+        // Only the records that were not shed are counted
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
+        long count = (Long) GroupData.fromBytes(getRawPayloadOfNthTuple(1)).getAsBulletRecord().get("cnt");
+        Assert.assertEquals(count, records - dropped);
+    }
+
+    @Test
+    public void testSheddingIsReportedOnTicks() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.FILTER_BOLT_SHEDDING_ENABLE, true);
+        // Never busy enough to shed
+        config.put(BulletConfig.FILTER_BOLT_SHEDDING_HIGH_LOAD, 2.0);
+        bolt = ComponentUtils.prepare(config, new FilterBolt(), collector);
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeAggregationRule(AggregationType.RAW, 10)));
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 43L, makeAggregationRule(AggregationType.RAW, 10)));
+
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        for (int i = 0; i < 10; ++i) {
+            bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        }
+        // Data is emitted for every record for each rule but the shedding is not
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 20);
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.SHED_STREAM).count(), 0);
+
+        Tuple tick = makeTuple(TupleType.Type.TICK_TUPLE);
+        bolt.execute(tick);
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.SHED_STREAM).count(), 2);
+        List<Object> shed = collector.getNthTupleEmittedTo(FilterBolt.SHED_STREAM, 1).get();
+        Assert.assertEquals(shed.get(TopologyConstants.ARRIVED_POSITION), 10L);
+        Assert.assertEquals(shed.get(TopologyConstants.SHED_POSITION), 0L);
+
+        // Nothing is reported if no records arrived
+        bolt.execute(tick);
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.SHED_STREAM).count(), 2);
+    }
+
+    @Test
+    public void testTooManyRulesAreRefused() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.MAX_CONCURRENT_RULES, 1);
+        bolt = ComponentUtils.prepare(config, new FilterBolt(), collector);
+
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("b235gf23b")));
+        Tuple refused = makeIDTuple(TupleType.Type.RULE_TUPLE, 43L, makeFieldFilterRule("b235gf23b"));
+        bolt.execute(refused);
+        Assert.assertTrue(collector.wasAcked(refused));
+
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.ERROR_STREAM).count(), 1);
+        List<Object> error = collector.getNthTupleEmittedTo(FilterBolt.ERROR_STREAM, 1).get();
+        Assert.assertEquals(error.get(TopologyConstants.ID_POSITION), 43L);
+        Assert.assertEquals(error.get(TopologyConstants.RESOLUTION_POSITION), RuleBolt.TOO_MANY_RULES_RESOLUTION);
+
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 42L, record)));
+        Assert.assertFalse(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM,
+                                                 makeRecordTuple(TupleType.Type.FILTER_TUPLE, 43L, record)));
+    }
+
+    @Test
+    public void testFeedbackForUnknownRule() {
+        Tuple rule = makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("b235gf23b"));
+        bolt.execute(rule);
+
+        Tuple feedback = makeIDTuple(TupleType.Type.FEEDBACK_TUPLE, 43L);
+        bolt.execute(feedback);
+        Assert.assertTrue(collector.wasAcked(feedback));
+
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        Tuple expected = makeRecordTuple(TupleType.Type.FILTER_TUPLE, 42L, record);
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1, expected));
+    }
+
     @Test
     public void testProjectionAndFiltering() {
         Tuple rule = makeIDTuple(TupleType.Type.RULE_TUPLE, 42L,
@@ -491,13 +793,68 @@ public class FilterBoltTest {
         bolt.execute(tick);
         bolt.execute(tick);
 
-        Assert.assertEquals(collector.getEmittedCount(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
         GroupData actual = GroupData.fromBytes(getRawPayloadOfNthTuple(1));
         BulletRecord expected = RecordBox.get().add("cnt", 10).getRecord();
 
         Assert.assertTrue(isEqual(actual, expected));
     }
 
+    @Test
+    public void testGroupByCount() {
+        bolt = ComponentUtils.prepare(new ExpiringFilterBolt(), collector);
+
+        Tuple rule = makeIDTuple(TupleType.Type.RULE_TUPLE, 42L,
+                                 makeGroupFilterRule("timestamp", Arrays.asList("1", "2"), EQUALS,
+                                                     AggregationType.GROUP, 5,
+                                                     singletonList(new GroupOperation(COUNT, null, "cnt")),
+                                                     Pair.of("timestamp", "ts")));
+        bolt.execute(rule);
+
+        Tuple first = makeTuple(TupleType.Type.RECORD_TUPLE, RecordBox.get().add("timestamp", "1").getRecord());
+        Tuple second = makeTuple(TupleType.Type.RECORD_TUPLE, RecordBox.get().add("timestamp", "2").getRecord());
+        IntStream.range(0, 10).forEach(i -> bolt.execute(first));
+        IntStream.range(0, 5).forEach(i -> bolt.execute(second));
+
+        Tuple tick = TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE);
+        bolt.execute(tick);
+        bolt.execute(tick);
+
+        // Only the two groups are sent
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
+        GroupBy groupBy = GroupByTest.makeGroupBy(singletonMap("timestamp", "ts"), 5,
+                                                  makeGroupOperation(COUNT, null, "cnt"));
+        groupBy.combine(getRawPayloadOfNthTuple(1));
+        List<BulletRecord> actual = groupBy.getAggregation().getRecords();
+        actual.sort(Comparator.comparing(r -> r.get("ts").toString()));
+        Assert.assertEquals(actual.size(), 2);
+        Assert.assertTrue(RecordBox.get().add("ts", "1").add("cnt", 10L).getRecord().equals(actual.get(0)));
+        Assert.assertTrue(RecordBox.get().add("ts", "2").add("cnt", 5L).getRecord().equals(actual.get(1)));
+    }
+
+    @Test
+    public void testSampledGroupAllCount() {
+        bolt = ComponentUtils.prepare(new ExpiringFilterBolt(), collector);
+
+        String ruleString = makeGroupFilterRule("timestamp", Arrays.asList("1", "2"), EQUALS, AggregationType.GROUP, 1,
+                                                singletonList(new GroupOperation(COUNT, null, "cnt")));
+        Tuple rule = makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, "{'sampling' : 0.5, " + ruleString.substring(1));
+        bolt.execute(rule);
+
+        BulletRecord record = RecordBox.get().add("timestamp", "1").getRecord();
+        Tuple matching = makeTuple(TupleType.Type.RECORD_TUPLE, record);
+        IntStream.range(0, 1000).forEach(i -> bolt.execute(matching));
+
+        Tuple tick = TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE);
+        bolt.execute(tick);
+        bolt.execute(tick);
+
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
+        // The counts are only scaled up when the results are joined. This is 500 give or take 16.
+        long count = (Long) GroupData.fromBytes(getRawPayloadOfNthTuple(1)).getAsBulletRecord().get("cnt");
+        Assert.assertTrue(count > 350 && count < 650);
+    }
+
     @Test
     public void testMicroBatching() {
         Map<String, Object> config = new HashMap<>();
@@ -553,7 +910,7 @@ public class FilterBoltTest {
         bolt.execute(tick);
         bolt.execute(tick);
 
-        Assert.assertEquals(collector.getEmittedCount(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
 
         byte[] rawData = getRawPayloadOfNthTuple(1);
         Assert.assertNotNull(rawData);
@@ -569,4 +926,352 @@ public class FilterBoltTest {
         Assert.assertEquals(actual, expected);
 
     }
+
+    @Test
+    public void testSharedFilters() {
+        TopologyContext context = mock(TopologyContext.class);
+        bolt = new FilterBolt();
+        bolt.prepare(new HashMap<>(), context, new OutputCollector(collector));
+        ArgumentCaptor<IMetric> metric = ArgumentCaptor.forClass(IMetric.class);
+        verify(context).registerMetric(eq(FilterBolt.SHARED_FILTER_HIT_RATE_METRIC), metric.capture(), anyInt());
+
+        String filters = makeFilterRule(OR, clause("field", EQUALS, "foo"), clause("id", GREATER_THAN, "5"));
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, filters));
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 43L, filters));
+
+        BulletRecord record = RecordBox.get().add("field", "bar").add("id", 6L).getRecord();
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        BulletRecord anotherRecord = RecordBox.get().add("field", "bar").add("id", 5L).getRecord();
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, anotherRecord));
+
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 42L, record)));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 43L, record)));
+        Assert.assertEquals(collector.getAllEmitted().count(), 2);
+        // Per record: the AND and OR of the first rule and the two filters miss. The second rule reuses the AND.
+        Assert.assertEquals(metric.getValue().getValueAndReset(), 0.2);
+        Assert.assertNull(metric.getValue().getValueAndReset());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRuleCostsAreAggregated() {
+        TopologyContext context = mock(TopologyContext.class);
+        Map<String, Object> config = new HashMap<>();
+        // Every check is timed and counts for a lot more so that a single check costs at least a millisecond
+        config.put(BulletConfig.FILTER_BOLT_RULE_TIMING_INTERVAL, 1000000000);
+        bolt = new FilterBolt();
+        bolt.prepare(config, context, new OutputCollector(collector));
+        ArgumentCaptor<IMetric> metric = ArgumentCaptor.forClass(IMetric.class);
+        verify(context).registerMetric(eq(FilterBolt.RULE_CPU_METRIC), metric.capture(), anyInt());
+
+        Map<String, Long> costs = (Map<String, Long>) metric.getValue().getValueAndReset();
+        Assert.assertEquals(costs.get(FilterBolt.RULE_CPU_TOTAL), (Long) 0L);
+        Assert.assertEquals(costs.get(FilterBolt.RULE_CPU_MAX), (Long) 0L);
+
+        IntStream.range(0, 100).forEach(i -> bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, (long) i,
+                                                                      makeFieldFilterRule("b235gf23b"))));
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, RecordBox.get().add("field", "b235gf23b").getRecord()));
+
+        costs = (Map<String, Long>) metric.getValue().getValueAndReset();
+        // The metric does not grow with the number of rules
+        Assert.assertEquals(costs.size(), 2);
+        Assert.assertTrue(costs.get(FilterBolt.RULE_CPU_MAX) > 0L);
+        Assert.assertTrue(costs.get(FilterBolt.RULE_CPU_TOTAL) >= costs.get(FilterBolt.RULE_CPU_MAX));
+    }
+
+    @Test
+    public void testNoAllocationForNonMatchingRecords() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof ThreadMXBean) || !((ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Measuring allocated memory per thread is not supported");
+        }
+        ThreadMXBean threadBean = (ThreadMXBean) bean;
+        bolt = new FilterBolt();
+        bolt.prepare(new HashMap<>(), mock(TopologyContext.class), new OutputCollector(new NoOpCollector()));
+
+        // Indexed rules on a few fields, rules with shared filters and rules that cannot be indexed
+        for (long i = 0; i < 20; ++i) {
+            bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, i, makeFieldFilterRule("value" + i)));
+        }
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 20L,
+                                 makeFilterRule("map_field.id", Arrays.asList("1", "2"), EQUALS)));
+        for (long i = 21; i < 25; ++i) {
+            bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, i,
+                                     makeFilterRule(OR, clause("id", GREATER_THAN, "100"),
+                                                    clause("field", FilterOperations.FilterType.REGEX_LIKE, "f.*"),
+                                                    clause("map_field.id", FilterOperations.FilterType.NOT_EQUALS,
+                                                           "42"))));
+        }
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 25L,
+                                 makeFilterRule(AND, clause("id", GREATER_THAN, "0"),
+                                                clause("field", EQUALS, "foo", "bar", "baz"))));
+
+        BulletRecord record = RecordBox.get().add("field", "wontmatch").add("id", 42L)
+                                             .addMap("map_field", Pair.of("id", "42")).getRecord();
+        Tuple tuple = makeRealRecordTuple(record);
+
+        int iterations = 200000;
+        for (int i = 0; i < iterations; ++i) {
+            bolt.execute(tuple);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; ++i) {
+            bolt.execute(tuple);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        // Allow for some noise that is not from the bolt
+        Assert.assertTrue(allocated / (double) iterations < 1.0, "Allocated " + allocated + " bytes");
+    }
+
+    private FilterBolt makeBatchingBolt(int size, long timeout) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.FILTER_BOLT_BATCH_SIZE, size);
+        config.put(BulletConfig.FILTER_BOLT_BATCH_TIMEOUT_MS, timeout);
+        return ComponentUtils.prepare(config, new FilterBolt(), collector);
+    }
+
+    @Test
+    public void testBatchedFiltering() {
+        bolt = makeBatchingBolt(3, Long.MAX_VALUE);
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 42L,
+                                 makeFilterRule(AND, clause("field", EQUALS, "b235gf23b"),
+                                                clause("id", GREATER_THAN, "5"))));
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 43L,
+                                 makeSimpleAggregationFilterRule("id", singletonList("1"), GREATER_THAN,
+                                                                 AggregationType.RAW, 5)));
+
+        BulletRecord first = RecordBox.get().add("field", "b235gf23b").add("id", 10L).getRecord();
+        BulletRecord second = RecordBox.get().add("field", "b235gf23b").add("id", 2L).getRecord();
+        BulletRecord third = RecordBox.get().add("field", "wontmatch").add("id", 7L).getRecord();
+        Tuple firstTuple = makeTuple(TupleType.Type.RECORD_TUPLE, first);
+        Tuple secondTuple = makeTuple(TupleType.Type.RECORD_TUPLE, second);
+        Tuple thirdTuple = makeTuple(TupleType.Type.RECORD_TUPLE, third);
+
+        bolt.execute(firstTuple);
+        bolt.execute(secondTuple);
+        // Nothing is checked or acked till the batch is full
+        Assert.assertEquals(collector.getTuplesEmitted().count(), 0L);
+        Assert.assertFalse(collector.wasAcked(firstTuple));
+
+        bolt.execute(thirdTuple);
+        Assert.assertTrue(collector.wasAcked(firstTuple));
+        Assert.assertTrue(collector.wasAcked(secondTuple));
+        Assert.assertTrue(collector.wasAcked(thirdTuple));
+
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 42L, first)));
+        Assert.assertFalse(wasRawRecordEmitted(makeRecordTuple(TupleType.Type.FILTER_TUPLE, 42L, second)));
+        Assert.assertFalse(wasRawRecordEmitted(makeRecordTuple(TupleType.Type.FILTER_TUPLE, 42L, third)));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 43L, first)));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 43L, second)));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 43L, third)));
+        Assert.assertEquals(collector.getTuplesEmitted().count(), 4L);
+    }
+
+    @Test
+    public void testBatchesAreCheckedBeforeRulesChange() {
+        bolt = makeBatchingBolt(10, Long.MAX_VALUE);
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("b235gf23b")));
+
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        Tuple matching = makeTuple(TupleType.Type.RECORD_TUPLE, record);
+        bolt.execute(matching);
+        Assert.assertFalse(collector.wasAcked(matching));
+
+        // The batch is checked before the new rule is added so it does not see the record
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 43L, makeFieldFilterRule("b235gf23b")));
+        Assert.assertTrue(collector.wasAcked(matching));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 42L, record)));
+        Assert.assertFalse(wasRawRecordEmitted(makeRecordTuple(TupleType.Type.FILTER_TUPLE, 43L, record)));
+
+        Tuple another = makeTuple(TupleType.Type.RECORD_TUPLE, record);
+        bolt.execute(another);
+        bolt.execute(TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 43L, record)));
+    }
+
+    @Test
+    public void testBatchTimeout() {
+        bolt = makeBatchingBolt(10, 0L);
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("b235gf23b")));
+
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        Tuple matching = makeTuple(TupleType.Type.RECORD_TUPLE, record);
+        bolt.execute(matching);
+        Assert.assertTrue(collector.wasAcked(matching));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 42L, record)));
+    }
+
+    @Test
+    public void testBatchedAggregation() {
+        bolt = makeBatchingBolt(4, Long.MAX_VALUE);
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 42L,
+                                 makeAggregationRule(AggregationType.RAW, 2)));
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        IntStream.range(0, 4).forEach(i -> bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record)));
+        // A raw aggregation of 2 records is a micro-batch so each record is emitted but the rule then stops
+        Assert.assertEquals(collector.getTuplesEmitted().count(), 2L);
+    }
+
+    private FilterBolt makeParallelBolt(int threads, int batchSize, CustomCollector customCollector) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.FILTER_BOLT_WORKER_THREADS, threads);
+        config.put(BulletConfig.FILTER_BOLT_BATCH_SIZE, batchSize);
+        config.put(BulletConfig.FILTER_BOLT_BATCH_TIMEOUT_MS, Long.MAX_VALUE);
+        return ComponentUtils.prepare(config, new FilterBolt(), customCollector);
+    }
+
+    private static List<String> runMixedRules(FilterBolt filterBolt, CustomCollector customCollector) {
+        for (long i = 0; i < 10; ++i) {
+            filterBolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, i, makeFieldFilterRule("value" + (i % 3))));
+        }
+        for (long i = 10; i < 20; ++i) {
+            filterBolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, i,
+                                           makeFilterRule(OR, clause("id", GREATER_THAN, String.valueOf(i)),
+                                                          clause("field", EQUALS, "value1"))));
+        }
+        filterBolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 20L, makeAggregationRule(AggregationType.RAW, 3)));
+        filterBolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 21L,
+                                       makeGroupFilterRule("field", singletonList("value2"), EQUALS,
+                                                           AggregationType.GROUP, 1,
+                                                           singletonList(new GroupOperation(COUNT, null, "cnt")))));
+        for (long i = 0; i < 30; ++i) {
+            BulletRecord record = RecordBox.get().add("field", "value" + (i % 4)).add("id", i).getRecord();
+            filterBolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        }
+        filterBolt.execute(TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE));
+        // Rules in different partitions emit in a different order so only the emissions themselves are compared
+        return customCollector.getTuplesEmitted().map(t -> t.get(0) + ":" + Arrays.toString((byte[]) t.get(1)))
+                              .sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void testParallelFilteringSameAsSerial() {
+        CustomCollector serialCollector = new CustomCollector();
+        List<String> expected = runMixedRules(makeParallelBolt(1, 1, serialCollector), serialCollector);
+
+        bolt = makeParallelBolt(3, 1, collector);
+        List<String> actual = runMixedRules(bolt, collector);
+        bolt.cleanup();
+
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(actual, expected);
+        Assert.assertEquals(collector.getAcked().count(), serialCollector.getAcked().count());
+    }
+
+    @Test
+    public void testParallelBatchedFilteringSameAsSerial() {
+        CustomCollector serialCollector = new CustomCollector();
+        List<String> expected = runMixedRules(makeParallelBolt(1, 4, serialCollector), serialCollector);
+
+        bolt = makeParallelBolt(3, 4, collector);
+        List<String> actual = runMixedRules(bolt, collector);
+        bolt.cleanup();
+
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(actual, expected);
+        Assert.assertEquals(collector.getAcked().count(), serialCollector.getAcked().count());
+    }
+
+    @Test
+    public void testParallelRuleReplacementAndExpiry() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.FILTER_BOLT_WORKER_THREADS, 2);
+        bolt = ComponentUtils.prepare(config, new ExpiringFilterBolt(), collector);
+
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("b235gf23b")));
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 43L, makeFieldFilterRule("b235gf23b")));
+        // Replaces the first rule in whichever partition it was in
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeFieldFilterRule("other")));
+
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        Assert.assertFalse(wasRawRecordEmitted(makeRecordTuple(TupleType.Type.FILTER_TUPLE, 42L, record)));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 43L, record)));
+
+        // Both rules expire on the second check and are removed from their partitions
+        bolt.execute(TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE));
+        bolt.execute(TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE));
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 43L, record)));
+        bolt.cleanup();
+    }
+
+    @Test
+    public void testRulesAreSharedBetweenBolts() {
+        RuleRegistry registry = RuleRegistry.getInstance();
+        int before = registry.size();
+        CustomCollector anotherCollector = new CustomCollector();
+        FilterBolt another = ComponentUtils.prepare(new FilterBolt(), anotherCollector);
+
+        Tuple rule = makeIDTuple(TupleType.Type.RULE_TUPLE, 4242L, makeFieldFilterRule("shared_b235gf23b"));
+        bolt.execute(rule);
+        another.execute(rule);
+        Assert.assertEquals(registry.size(), before + 1);
+
+        BulletRecord record = RecordBox.get().add("field", "shared_b235gf23b").getRecord();
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        another.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        Tuple expected = makeRecordTuple(TupleType.Type.FILTER_TUPLE, 4242L, record);
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1, expected));
+        Assert.assertTrue(anotherCollector.getTuplesEmitted().anyMatch(t -> tupleEquals(t, expected)));
+
+        bolt.cleanup();
+        Assert.assertEquals(registry.size(), before + 1);
+        another.cleanup();
+        Assert.assertEquals(registry.size(), before);
+    }
+
+    @Test
+    public void testRulesAreNotSharedIfDisabled() {
+        RuleRegistry registry = RuleRegistry.getInstance();
+        int before = registry.size();
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.FILTER_BOLT_SHARED_RULES_ENABLE, false);
+        bolt = ComponentUtils.prepare(config, new FilterBolt(), collector);
+
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 4243L, makeFieldFilterRule("b235gf23b")));
+        Assert.assertEquals(registry.size(), before);
+        BulletRecord record = RecordBox.get().add("field", "b235gf23b").getRecord();
+        bolt.execute(makeTuple(TupleType.Type.RECORD_TUPLE, record));
+        Assert.assertTrue(wasRawRecordEmittedTo(FilterBolt.FILTER_STREAM, 1,
+                                                makeRecordTuple(TupleType.Type.FILTER_TUPLE, 4243L, record)));
+    }
+
+    @Test
+    public void testRulesRetiredOnRecordsBeforeTicks() {
+        bolt = ComponentUtils.prepare(new ExpiredFilterBolt(), collector);
+        bolt.execute(makeIDTuple(TupleType.Type.RULE_TUPLE, 42L,
+                                 makeGroupFilterRule("timestamp", Arrays.asList("1", "2"), EQUALS,
+                                                     AggregationType.GROUP, 1,
+                                                     singletonList(new GroupOperation(COUNT, null, "cnt")))));
+
+        // The rule has already expired so it is retired and emitted before the record is checked
+        BulletRecord record = RecordBox.get().add("timestamp", "1").getRecord();
+        Tuple matching = makeTuple(TupleType.Type.RECORD_TUPLE, record);
+        bolt.execute(matching);
+        Assert.assertTrue(collector.wasAcked(matching));
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
+        GroupData actual = GroupData.fromBytes(getRawPayloadOfNthTuple(1));
+        Assert.assertTrue(isEqual(actual, RecordBox.get().add("cnt", 0).getRecord()));
+        // Followed by the flush
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FLUSH_STREAM).count(), 1);
+        Assert.assertEquals(collector.getNthTupleEmittedTo(FilterBolt.FLUSH_STREAM, 1).get(), singletonList(42L));
+
+        bolt.execute(matching);
+        bolt.execute(TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE));
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FILTER_STREAM).count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(FilterBolt.FLUSH_STREAM).count(), 1);
+    }
 }
@@ -0,0 +1,159 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.drpc;
+
+import com.yahoo.bullet.tracing.FilterRule;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static java.util.Arrays.asList;
+import static org.mockito.Mockito.mock;
+
+public class IntervalIndexTest {
+    private IntervalIndex index;
+    private FilterRule rule;
+
+    private List<Long> containing(double value) {
+        List<Long> ids = new ArrayList<>();
+        index.forEachContaining(null, value, (r, id, f) -> ids.add(id));
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private List<Long> all() {
+        List<Long> ids = new ArrayList<>();
+        index.forEach(null, (r, id, f) -> ids.add(id));
+        Collections.sort(ids);
+        return ids;
+    }
+
+    @BeforeMethod
+    public void setup() {
+        index = new IntervalIndex();
+        rule = mock(FilterRule.class);
+    }
+
+    @Test
+    public void testEmpty() {
+        Assert.assertTrue(index.isEmpty());
+        Assert.assertEquals(containing(1.0), Collections.emptyList());
+        Assert.assertEquals(all(), Collections.emptyList());
+    }
+
+    @Test
+    public void testClosedIntervals() {
+        index.add(1L, rule, 1.0, 5.0);
+        index.add(2L, rule, 5.0, 10.0);
+        index.add(3L, rule, Double.NEGATIVE_INFINITY, 2.0);
+        index.add(4L, rule, 7.0, Double.POSITIVE_INFINITY);
+        Assert.assertEquals(index.size(), 4);
+
+        Assert.assertEquals(containing(-100.0), asList(3L));
+        Assert.assertEquals(containing(1.0), asList(1L, 3L));
+        Assert.assertEquals(containing(2.5), asList(1L));
+        Assert.assertEquals(containing(5.0), asList(1L, 2L));
+        Assert.assertEquals(containing(7.0), asList(2L, 4L));
+        Assert.assertEquals(containing(10.5), asList(4L));
+        Assert.assertEquals(containing(Double.POSITIVE_INFINITY), asList(4L));
+        Assert.assertEquals(all(), asList(1L, 2L, 3L, 4L));
+    }
+
+    @Test
+    public void testEmptyIntervalsAreOnlyInAll() {
+        index.add(1L, rule, 5.0, 1.0);
+        index.add(2L, rule, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+        Assert.assertEquals(containing(3.0), Collections.emptyList());
+        Assert.assertEquals(containing(5.0), Collections.emptyList());
+        Assert.assertEquals(all(), asList(1L, 2L));
+    }
+
+    @Test
+    public void testZerosAreTheSame() {
+        index.add(1L, rule, -0.0, -0.0);
+        index.add(2L, rule, 0.0, 1.0);
+        Assert.assertEquals(containing(0.0), asList(1L, 2L));
+        Assert.assertEquals(containing(-0.0), asList(1L, 2L));
+    }
+
+    @Test
+    public void testUpdates() {
+        index.add(1L, rule, 1.0, 5.0);
+        index.add(2L, rule, 3.0, 8.0);
+        Assert.assertEquals(containing(4.0), asList(1L, 2L));
+
+        // Replacing
+        index.add(1L, rule, 10.0, 20.0);
+        Assert.assertEquals(containing(4.0), asList(2L));
+        Assert.assertEquals(containing(15.0), asList(1L));
+
+        Assert.assertTrue(index.remove(2L));
+        Assert.assertFalse(index.remove(2L));
+        Assert.assertEquals(containing(4.0), Collections.emptyList());
+        Assert.assertEquals(index.size(), 1);
+
+        Assert.assertTrue(index.remove(1L));
+        Assert.assertTrue(index.isEmpty());
+        Assert.assertEquals(containing(15.0), Collections.emptyList());
+    }
+
+    @Test
+    public void testSameAsScanning() {
+        Random random = new Random(42);
+        double[][] intervals = new double[200][];
+        for (int i = 0; i < intervals.length; ++i) {
+            double low = random.nextInt(100);
+            intervals[i] = new double[] {low, low + random.nextInt(20) - 2};
+            index.add((long) i, rule, intervals[i][0], intervals[i][1]);
+        }
+        for (double value = -5.0; value <= 125.0; value += 0.5) {
+            List<Long> expected = new ArrayList<>();
+            for (int i = 0; i < intervals.length; ++i) {
+                if (intervals[i][0] <= value && value <= intervals[i][1]) {
+                    expected.add((long) i);
+                }
+            }
+            Assert.assertEquals(containing(value), expected);
+        }
+    }
+
+    @Test
+    public void testSameAsScanningWhileChanging() {
+        Random random = new Random(42);
+        Map<Long, double[]> intervals = new HashMap<>();
+        for (int round = 0; round < 2000; ++round) {
+            long id = random.nextInt(50);
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(index.remove(id), intervals.remove(id) != null);
+            } else {
+                double low = random.nextInt(100);
+                double[] interval = {low, low + random.nextInt(20) - 2};
+                intervals.put(id, interval);
+                index.add(id, rule, interval[0], interval[1]);
+            }
+            Assert.assertEquals(index.size(), intervals.size());
+            double value = random.nextInt(130) - 5.0;
+            List<Long> expected = new ArrayList<>();
+            for (Map.Entry<Long, double[]> entry : intervals.entrySet()) {
+                if (entry.getValue()[0] <= value && value <= entry.getValue()[1]) {
+                    expected.add(entry.getKey());
+                }
+            }
+            Collections.sort(expected);
+            Assert.assertEquals(containing(value), expected);
+            List<Long> ids = new ArrayList<>(intervals.keySet());
+            Collections.sort(ids);
+            Assert.assertEquals(all(), ids);
+        }
+    }
+}
@@ -9,6 +9,8 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.yahoo.bullet.BulletConfig;
 import com.yahoo.bullet.operations.aggregations.CountDistinct;
+import com.yahoo.bullet.operations.aggregations.Percentile;
+import com.yahoo.bullet.operations.aggregations.TopK;
 import com.yahoo.bullet.operations.aggregations.GroupData;
 import com.yahoo.bullet.operations.aggregations.GroupOperation;
 import com.yahoo.bullet.parsing.Aggregation;
@@ -20,6 +22,8 @@ import com.yahoo.bullet.result.Metadata.Concept;
 import com.yahoo.bullet.result.RecordBox;
 import com.yahoo.bullet.tracing.AggregationRule;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.IRichBolt;
 import org.apache.storm.tuple.Fields;
 import org.apache.storm.tuple.Tuple;
@@ -32,12 +36,14 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static com.yahoo.bullet.TestHelpers.assertJSONEquals;
 import static com.yahoo.bullet.TestHelpers.getListBytes;
 import static com.yahoo.bullet.operations.AggregationOperations.AggregationType.COUNT_DISTINCT;
 import static com.yahoo.bullet.operations.AggregationOperations.AggregationType.GROUP;
+import static com.yahoo.bullet.operations.AggregationOperations.AggregationType.PERCENTILE;
 import static com.yahoo.bullet.operations.AggregationOperations.AggregationType.RAW;
 import static com.yahoo.bullet.operations.AggregationOperations.AggregationType.TOP;
 import static com.yahoo.bullet.operations.AggregationOperations.GroupOperationType.COUNT;
@@ -49,6 +55,7 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
@@ -61,6 +68,23 @@ public class JoinBoltTest {
         protected AggregationRule getRule(Long id, String ruleString) {
             AggregationRule spied = spy(getAggregationRule(ruleString, emptyMap()));
             when(spied.isExpired()).thenReturn(false).thenReturn(true);
+            // Always due so that every retirement asks the rule if it has expired
+            when(spied.getExpiryTime()).thenReturn(0L);
+            return spied;
+        }
+
+        // Only ticks retire rules so that the tests can count them
+        @Override
+        protected boolean hasExpiredRules() {
+            return false;
+        }
+    }
+
+    private class ExpiredJoinBolt extends JoinBolt {
+        @Override
+        protected AggregationRule getRule(Long id, String ruleString) {
+            AggregationRule spied = spy(getAggregationRule(ruleString, emptyMap()));
+            when(spied.getExpiryTime()).thenReturn(0L);
             return spied;
         }
     }
@@ -130,6 +154,8 @@ public class JoinBoltTest {
         bolt.declareOutputFields(declarer);
         Fields expected = new Fields(TopologyConstants.JOIN_FIELD, TopologyConstants.RETURN_FIELD);
         Assert.assertTrue(declarer.areFieldsPresent(JoinBolt.JOIN_STREAM, false, expected));
+        Fields feedback = new Fields(TopologyConstants.ID_FIELD);
+        Assert.assertTrue(declarer.areFieldsPresent(JoinBolt.FEEDBACK_STREAM, false, feedback));
     }
 
     @Test
@@ -152,7 +178,7 @@ public class JoinBoltTest {
         // We'd have <JSON, returnInfo> as the expected tuple
         Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).asJSON(), "");
         Assert.assertTrue(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
     }
 
     @Test
@@ -182,7 +208,7 @@ public class JoinBoltTest {
         bolt.execute(tick);
 
         Assert.assertTrue(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
     }
 
     @Test
@@ -194,7 +220,7 @@ public class JoinBoltTest {
 
         Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).asJSON(), "");
         Assert.assertFalse(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 0);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 0);
     }
 
     @Test
@@ -206,7 +232,7 @@ public class JoinBoltTest {
 
         Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).asJSON(), "");
         Assert.assertFalse(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 0);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 0);
     }
 
     @Test
@@ -215,7 +241,7 @@ public class JoinBoltTest {
 
         Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).asJSON(), "");
         Assert.assertFalse(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 0);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 0);
     }
 
     @Test
@@ -246,7 +272,91 @@ public class JoinBoltTest {
         // This will cause the emission
         bolt.execute(tick);
         Assert.assertTrue(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testRulesRetiredOnTuplesBeforeTicks() {
+        bolt = ComponentUtils.prepare(new ExpiredJoinBolt(), collector);
+        Tuple rule = TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeAggregationRule(RAW, 3));
+        bolt.execute(rule);
+
+        // The rule has already expired so this retires it and starts buffering it without a tick
+        Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
+        bolt.execute(returnInfo);
+
+        List<BulletRecord> sent = sendRawRecordTuplesTo(bolt, 42L, 2);
+        Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).asJSON(), "");
+
+        // The rule is emitted on the rule tickout-th tick after it was retired
+        Tuple tick = TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE);
+        for (int i = 0; i < JoinBolt.DEFAULT_RULE_TICKOUT - 1; ++i) {
+            bolt.execute(tick);
+            Assert.assertFalse(collector.wasTupleEmitted(expected));
+        }
+        bolt.execute(tick);
+        Assert.assertTrue(collector.wasNthEmitted(expected, 1));
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+    }
+
+    private JoinBolt prepareWithFilterBolts(JoinBolt joinBolt, int filterBolts) {
+        TopologyContext context = mock(TopologyContext.class);
+        List<Integer> tasks = IntStream.range(0, filterBolts).boxed().collect(Collectors.toList());
+        when(context.getComponentTasks(TopologyConstants.FILTER_COMPONENT)).thenReturn(tasks);
+        joinBolt.prepare(new HashMap<>(), context, new OutputCollector(collector));
+        return joinBolt;
+    }
+
+    @Test
+    public void testJoiningOnceAllFilterBoltsFlush() {
+        bolt = prepareWithFilterBolts(new ExpiredJoinBolt(), 2);
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeAggregationRule(RAW, 3)));
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, ""));
+
+        List<BulletRecord> sent = sendRawRecordTuplesTo(bolt, 42L, 2);
+        Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).asJSON(), "");
+
+        Tuple flush = TupleUtils.makeIDTuple(TupleType.Type.FLUSH_TUPLE, 42L);
+        bolt.execute(flush);
+        Assert.assertFalse(collector.wasTupleEmitted(expected));
+        // The last FilterBolt is done so the result is emitted without waiting for any ticks
+        bolt.execute(flush);
+        Assert.assertTrue(collector.wasNthEmitted(expected, 1));
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+
+        // Nothing more for the rule is kept
+        bolt.execute(flush);
+        Tuple tick = TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE);
+        IntStream.range(0, JoinBolt.DEFAULT_RULE_TICKOUT + 1).forEach(i -> bolt.execute(tick));
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testJoiningOnFlushesBeforeExpiryHere() {
+        bolt = prepareWithFilterBolts(new JoinBolt(), 1);
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeAggregationRule(RAW, 3)));
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, ""));
+        List<BulletRecord> sent = sendRawRecordTuplesTo(bolt, 42L, 2);
+
+        // The FilterBolts may expire the rule before this does
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.FLUSH_TUPLE, 42L));
+        Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).asJSON(), "");
+        Assert.assertTrue(collector.wasNthEmitted(expected, 1));
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testFlushesAreIgnoredWithoutFilterBolts() {
+        bolt = ComponentUtils.prepare(new ExpiredJoinBolt(), collector);
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeAggregationRule(RAW, 3)));
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, ""));
+        sendRawRecordTuplesTo(bolt, 42L, 2);
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.FLUSH_TUPLE, 42L));
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 0);
+
+        Tuple tick = TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE);
+        IntStream.range(0, JoinBolt.DEFAULT_RULE_TICKOUT).forEach(i -> bolt.execute(tick));
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
     }
 
     @Test
@@ -282,7 +392,7 @@ public class JoinBoltTest {
         expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).asJSON(), "");
 
         Assert.assertTrue(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
     }
 
     @Test
@@ -345,8 +455,135 @@ public class JoinBoltTest {
         }
         // This will cause the emission
         bolt.execute(tick);
-        Assert.assertTrue(collector.wasNthEmitted(emittedSecond, 2));
-        Assert.assertEquals(collector.getAllEmitted().count(), 2);
+        Assert.assertEquals(collector.getNthTupleEmittedTo(JoinBolt.JOIN_STREAM, 2).get(), emittedSecond.getValues());
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 2);
+    }
+
+    @Test
+    public void testTerminatedRule() {
+        Tuple rule = TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeAggregationRule(RAW, 3));
+        bolt.execute(rule);
+        Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
+        bolt.execute(returnInfo);
+        sendRawRecordTuplesTo(bolt, 42L, 2);
+
+        Tuple error = TupleUtils.makeIDTuple(TupleType.Type.ERROR_TUPLE, 42L, "terminated", "try again");
+        bolt.execute(error);
+        Assert.assertTrue(collector.wasAcked(error));
+
+        Metadata meta = Metadata.of(Error.makeError("terminated", "try again"));
+        List<Object> expected = TupleUtils.makeTuple(Clip.of(meta).asJSON(), "").getValues();
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+        Assert.assertEquals(collector.getNthTupleEmittedTo(JoinBolt.JOIN_STREAM, 1).get(), expected);
+        Assert.assertEquals(collector.getNthTupleEmittedTo(JoinBolt.FEEDBACK_STREAM, 1).get(), singletonList(42L));
+
+        // Only the first error for a rule is reported and nothing more is emitted for it
+        bolt.execute(error);
+        sendRawRecordTuplesTo(bolt, 42L, 3);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.FEEDBACK_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testTerminatedRuleBeforeReturn() {
+        Tuple rule = TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeAggregationRule(RAW, 3));
+        bolt.execute(rule);
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.ERROR_TUPLE, 42L, "terminated", "try again"));
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 0);
+
+        // The error is buffered till the return information arrives
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, ""));
+        Metadata meta = Metadata.of(Error.makeError("terminated", "try again"));
+        List<Object> expected = TupleUtils.makeTuple(Clip.of(meta).asJSON(), "").getValues();
+        Assert.assertEquals(collector.getNthTupleEmittedTo(JoinBolt.JOIN_STREAM, 1).get(), expected);
+    }
+
+    @Test
+    public void testTerminatedRuleBeforeRule() {
+        // Every FilterBolt terminates the rule before it gets here but only the first error is kept
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.ERROR_TUPLE, 42L, "terminated", "try again"));
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.ERROR_TUPLE, 42L, "also terminated", "try again"));
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 0);
+
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeAggregationRule(RAW, 3)));
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, ""));
+        Metadata meta = Metadata.of(Error.makeError("terminated", "try again"));
+        List<Object> expected = TupleUtils.makeTuple(Clip.of(meta).asJSON(), "").getValues();
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+        Assert.assertEquals(collector.getNthTupleEmittedTo(JoinBolt.JOIN_STREAM, 1).get(), expected);
+        Assert.assertEquals(collector.getNthTupleEmittedTo(JoinBolt.FEEDBACK_STREAM, 1).get(), singletonList(42L));
+
+        // The rule is not run
+        sendRawRecordTuplesTo(bolt, 42L, 3);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testBufferedTerminationIsForgotten() {
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.ERROR_TUPLE, 42L, "terminated", "try again"));
+        Tuple tick = TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE);
+        for (int i = 0; i < JoinBolt.DEFAULT_ERROR_TICKOUT; ++i) {
+            bolt.execute(tick);
+        }
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeAggregationRule(RAW, 3)));
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, ""));
+        List<BulletRecord> sent = sendRawRecordTuplesTo(bolt, 42L, 3);
+
+        Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).asJSON(), "");
+        Assert.assertTrue(collector.wasNthEmitted(expected, 1));
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testTooManyRulesAreRefused() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.MAX_CONCURRENT_RULES, 1);
+        setup(config);
+
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, "{}"));
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 43L, "{}"));
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 43L, ""));
+
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+        String result = (String) collector.getMthElementFromNthTupleEmittedTo(JoinBolt.JOIN_STREAM, 1, 0).get();
+        Assert.assertTrue(result.contains(RuleBolt.TOO_MANY_RULES_RESOLUTION));
+        // The FilterBolts are told to drop it
+        Assert.assertEquals(collector.getNthTupleEmittedTo(JoinBolt.FEEDBACK_STREAM, 1).get(), singletonList(43L));
+    }
+
+    @Test
+    public void testFeedbackForSatisfiedRule() {
+        Tuple rule = TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, "{}");
+        bolt.execute(rule);
+        Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
+        bolt.execute(returnInfo);
+
+        sendRawRecordTuplesTo(bolt, 42L);
+
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.FEEDBACK_STREAM).count(), 1);
+        Assert.assertEquals(collector.getNthTupleEmittedTo(JoinBolt.FEEDBACK_STREAM, 1).get(), singletonList(42L));
+    }
+
+    @Test
+    public void testNoFeedbackForExpiredRule() {
+        bolt = ComponentUtils.prepare(new ExpiringJoinBolt(), collector);
+        Tuple rule = TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, makeAggregationRule(RAW, 3));
+        bolt.execute(rule);
+        Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
+        bolt.execute(returnInfo);
+
+        // Not enough to satisfy the rule
+        sendRawRecordTuplesTo(bolt, 42L, 2);
+
+        // The rule expires and is then emitted anyway
+        Tuple tick = TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE);
+        for (int i = 0; i < JoinBolt.DEFAULT_RULE_TICKOUT + 2; ++i) {
+            bolt.execute(tick);
+        }
+
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.FEEDBACK_STREAM).count(), 0);
     }
 
     @Test
@@ -356,7 +593,7 @@ public class JoinBoltTest {
         bolt.execute(returnInfo);
         bolt.execute(rule);
 
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
 
         Error expectedError = Error.of(Error.GENERIC_JSON_ERROR + ":\ngarbage\n" +
                                        "IllegalStateException: Expected BEGIN_OBJECT but was STRING at line 1 column 1 path $",
@@ -378,11 +615,11 @@ public class JoinBoltTest {
             bolt.execute(tick);
         }
 
-        Assert.assertEquals(collector.getAllEmitted().count(), 0);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 0);
         Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
         bolt.execute(returnInfo);
 
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
 
         Error expectedError = Error.of(Error.GENERIC_JSON_ERROR + ":\n" + ruleString + "\n" +
                                        "MalformedJsonException: Expected value at line 1 column 12 path $.filters",
@@ -406,7 +643,7 @@ public class JoinBoltTest {
         Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
         bolt.execute(returnInfo);
 
-        Assert.assertEquals(collector.getAllEmitted().count(), 0);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 0);
     }
 
     @Test
@@ -423,12 +660,12 @@ public class JoinBoltTest {
             bolt.execute(tick);
         }
 
-        Assert.assertEquals(collector.getAllEmitted().count(), 0);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 0);
 
         Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
         bolt.execute(returnInfo);
 
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
         Error expectedError = Error.of(Error.GENERIC_JSON_ERROR + ":\ngarbage\n" +
                                         "IllegalStateException: Expected BEGIN_OBJECT but was STRING at line 1 column 1 path $",
                                         singletonList(Error.GENERIC_JSON_RESOLUTION));
@@ -455,7 +692,7 @@ public class JoinBoltTest {
         Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
         bolt.execute(returnInfo);
 
-        Assert.assertEquals(collector.getAllEmitted().count(), 0);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 0);
     }
 
     @Test
@@ -476,7 +713,70 @@ public class JoinBoltTest {
         meta.add("id", 42);
         Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).add(meta).asJSON(), "");
         Assert.assertTrue(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testSamplingRateMetadata() {
+        Map<String, Object> config = new HashMap<>();
+        enableMetadataInConfig(config, Concept.SAMPLING_RATE.getName(), "rate");
+        setup(config);
+
+        Tuple rule = TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, "{'sampling' : 0.5}");
+        bolt.execute(rule);
+
+        Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
+        bolt.execute(returnInfo);
+
+        List<BulletRecord> sent = sendRawRecordTuplesTo(bolt, 42L);
+
+        Metadata meta = new Metadata();
+        meta.add("rate", 0.5);
+        Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).add(meta).asJSON(), "");
+        Assert.assertTrue(collector.wasNthEmitted(expected, 1));
+    }
+
+    @Test
+    public void testShedFractionMetadata() {
+        Map<String, Object> config = new HashMap<>();
+        enableMetadataInConfig(config, Concept.SHED_FRACTION.getName(), "shed");
+        setup(config);
+
+        Tuple rule = TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, "{}");
+        bolt.execute(rule);
+
+        Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
+        bolt.execute(returnInfo);
+
+        // From two FilterBolts. The one for an unknown rule is ignored.
+        Tuple shed = TupleUtils.makeIDTuple(TupleType.Type.SHED_TUPLE, 42L, 10L, 4L);
+        bolt.execute(shed);
+        Assert.assertTrue(collector.wasAcked(shed));
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.SHED_TUPLE, 42L, 30L, 1L));
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.SHED_TUPLE, 43L, 30L, 30L));
+
+        List<BulletRecord> sent = sendRawRecordTuplesTo(bolt, 42L);
+
+        Metadata meta = new Metadata();
+        meta.add("shed", 0.125);
+        Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).add(meta).asJSON(), "");
+        Assert.assertTrue(collector.wasNthEmitted(expected, 1));
+    }
+
+    @Test
+    public void testNoShedFractionMetadata() {
+        Map<String, Object> config = new HashMap<>();
+        enableMetadataInConfig(config, Concept.SHED_FRACTION.getName(), "shed");
+        setup(config);
+
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L, "{}"));
+        bolt.execute(TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, ""));
+        List<BulletRecord> sent = sendRawRecordTuplesTo(bolt, 42L);
+
+        Metadata meta = new Metadata();
+        meta.add("shed", 0.0);
+        Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).add(meta).asJSON(), "");
+        Assert.assertTrue(collector.wasNthEmitted(expected, 1));
     }
 
     @Test
@@ -498,7 +798,7 @@ public class JoinBoltTest {
         meta.add("id", 42);
         Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(sent).add(meta).asJSON(), "");
         Assert.assertTrue(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
     }
 
     @Test
@@ -522,7 +822,7 @@ public class JoinBoltTest {
 
         long endTime = System.currentTimeMillis();
 
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
 
         String response = (String) collector.getTuplesEmitted().findFirst().get().get(0);
         JsonParser parser = new JsonParser();
@@ -545,13 +845,13 @@ public class JoinBoltTest {
 
     @Test
     public void testUnsupportedAggregation() {
-        // "TOP" aggregation type not currently supported - error should be emitted
+        // "PERCENTILE" aggregation type without a field is not valid - error should be emitted
         Tuple rule = TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L,
-                                            makeAggregationRule(TOP, 5));
+                                            makeAggregationRule(PERCENTILE, 5));
         bolt.execute(rule);
         Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
         bolt.execute(returnInfo);
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
     }
 
     @Test
@@ -563,7 +863,7 @@ public class JoinBoltTest {
         Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
         bolt.execute(returnInfo);
 
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
         Error expectedError = Error.of(Aggregation.TYPE_NOT_SUPPORTED_ERROR_PREFIX,
                                        singletonList(Aggregation.TYPE_NOT_SUPPORTED_RESOLUTION));
         Metadata expectedMetadata = Metadata.of(expectedError);
@@ -583,7 +883,7 @@ public class JoinBoltTest {
 
         sendRawRecordTuplesTo(bolt, 42L);
 
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
         Error expectedError = Error.of(Error.GENERIC_JSON_ERROR + ":\n\nNullPointerException: ",
                                        singletonList(Error.GENERIC_JSON_RESOLUTION));
         Metadata expectedMetadata = Metadata.of(expectedError);
@@ -627,7 +927,7 @@ public class JoinBoltTest {
         bolt.execute(tick);
 
         Assert.assertTrue(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
 
     }
 
@@ -646,7 +946,7 @@ public class JoinBoltTest {
 
         Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(actualSent).asJSON(), "");
         Assert.assertTrue(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
     }
 
     @Test
@@ -690,6 +990,102 @@ public class JoinBoltTest {
         bolt.execute(tick);
 
         Assert.assertTrue(collector.wasNthEmitted(expected, 1));
-        Assert.assertEquals(collector.getAllEmitted().count(), 1);
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testTopK() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.TOP_K_AGGREGATION_SKETCH_ENTRIES, 16);
+
+        Aggregation aggregation = new Aggregation();
+        aggregation.setConfiguration(config);
+        aggregation.setFields(singletonMap("field", "foo"));
+        aggregation.setSize(2);
+
+        TopK topK = new TopK(aggregation);
+        IntStream.range(0, 6).mapToObj(i -> RecordBox.get().add("field", i % 3).getRecord()).forEach(topK::consume);
+        byte[] first = topK.getSerializedAggregation();
+
+        topK = new TopK(aggregation);
+        IntStream.range(0, 3).mapToObj(i -> RecordBox.get().add("field", 1).getRecord()).forEach(topK::consume);
+        IntStream.range(0, 1).mapToObj(i -> RecordBox.get().add("field", 2).getRecord()).forEach(topK::consume);
+        byte[] second = topK.getSerializedAggregation();
+
+        // Send generated data to JoinBolt
+        bolt = ComponentUtils.prepare(config, new ExpiringJoinBolt(), collector);
+
+        Tuple rule = TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L,
+                                            makeAggregationRule(TOP, 2, null, Pair.of("field", "foo")));
+        bolt.execute(rule);
+        Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
+        bolt.execute(returnInfo);
+
+        sendRawByteTuplesTo(bolt, 42L, asList(first, second));
+
+        List<BulletRecord> result = asList(RecordBox.get().add("foo", "1").add(TopK.DEFAULT_NEW_NAME, 5L).getRecord(),
+                                           RecordBox.get().add("foo", "2").add(TopK.DEFAULT_NEW_NAME, 3L).getRecord());
+        Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(result).asJSON(), "");
+
+        Tuple tick = TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE);
+        bolt.execute(tick);
+        bolt.execute(tick);
+        for (int i = 0; i < JoinBolt.DEFAULT_RULE_TICKOUT - 1; ++i) {
+            bolt.execute(tick);
+            Assert.assertFalse(collector.wasTupleEmitted(expected));
+        }
+        bolt.execute(tick);
+
+        Assert.assertTrue(collector.wasNthEmitted(expected, 1));
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
+    }
+
+    @Test
+    public void testPercentile() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.PERCENTILE_AGGREGATION_SKETCH_ENTRIES, 64);
+
+        Aggregation aggregation = new Aggregation();
+        aggregation.setConfiguration(config);
+        aggregation.setFields(singletonMap("field", null));
+
+        Percentile percentile = new Percentile(aggregation);
+        IntStream.range(0, 50).mapToObj(i -> RecordBox.get().add("field", i).getRecord()).forEach(percentile::consume);
+        byte[] first = percentile.getSerializedAggregation();
+
+        percentile = new Percentile(aggregation);
+        IntStream.range(50, 101).mapToObj(i -> RecordBox.get().add("field", i).getRecord())
+                                .forEach(percentile::consume);
+        byte[] second = percentile.getSerializedAggregation();
+
+        // Send generated data to JoinBolt
+        bolt = ComponentUtils.prepare(config, new ExpiringJoinBolt(), collector);
+
+        Tuple rule = TupleUtils.makeIDTuple(TupleType.Type.RULE_TUPLE, 42L,
+                                            makeAggregationRule(PERCENTILE, 1, null, Pair.of("field", "field")));
+        bolt.execute(rule);
+        Tuple returnInfo = TupleUtils.makeIDTuple(TupleType.Type.RETURN_TUPLE, 42L, "");
+        bolt.execute(returnInfo);
+
+        sendRawByteTuplesTo(bolt, 42L, asList(first, second));
+
+        List<BulletRecord> result = IntStream.range(0, Percentile.DEFAULT_NUMBER_OF_POINTS)
+                                             .mapToObj(i -> RecordBox.get().add(Percentile.QUANTILE_FIELD, i / 10.0)
+                                                                           .add(Percentile.VALUE_FIELD, i * 10.0)
+                                                                           .getRecord())
+                                             .collect(Collectors.toList());
+        Tuple expected = TupleUtils.makeTuple(TupleType.Type.JOIN_TUPLE, Clip.of(result).asJSON(), "");
+
+        Tuple tick = TupleUtils.makeTuple(TupleType.Type.TICK_TUPLE);
+        bolt.execute(tick);
+        bolt.execute(tick);
+        for (int i = 0; i < JoinBolt.DEFAULT_RULE_TICKOUT - 1; ++i) {
+            bolt.execute(tick);
+            Assert.assertFalse(collector.wasTupleEmitted(expected));
+        }
+        bolt.execute(tick);
+
+        Assert.assertTrue(collector.wasNthEmitted(expected, 1));
+        Assert.assertEquals(collector.getAllEmittedTo(JoinBolt.JOIN_STREAM).count(), 1);
     }
 }
@@ -0,0 +1,104 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.drpc;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.BitSet;
+
+public class LoadShedderTest {
+    private static final double DELTA = 1e-9;
+
+    private static BitSet shedRecords(LoadShedder shedder, int count) {
+        BitSet shed = new BitSet(count);
+        for (int i = 0; i < count; ++i) {
+            shed.set(i, shedder.shouldShed());
+        }
+        return shed;
+    }
+
+    @Test
+    public void testNothingIsShedInitially() {
+        LoadShedder shedder = new LoadShedder(100L, 0.9, 0.5, 1.0, 0L);
+        Assert.assertTrue(shedRecords(shedder, 1000).isEmpty());
+        Assert.assertEquals(shedder.getArrived(), 1000L);
+        Assert.assertEquals(shedder.getShed(), 0L);
+        Assert.assertEquals(shedder.getFraction(), 0.0);
+    }
+
+    @Test
+    public void testFractionChangesOnlyAtTheEndOfAWindow() {
+        LoadShedder shedder = new LoadShedder(100L, 0.9, 0.5, 1.0, 0L);
+        shedder.addBusyTime(0L, 99L);
+        Assert.assertEquals(shedder.getFraction(), 0.0);
+        shedder.addBusyTime(99L, 100L);
+        Assert.assertEquals(shedder.getFraction(), LoadShedder.STEP, DELTA);
+    }
+
+    @Test
+    public void testFractionRampsUpToTheMostAndBackDown() {
+        LoadShedder shedder = new LoadShedder(100L, 0.9, 0.5, 0.2, 0L);
+        long now = 0L;
+        for (int i = 0; i < 10; ++i) {
+            // Fully busy
+            shedder.addBusyTime(now, now + 100L);
+            now += 100L;
+        }
+        Assert.assertEquals(shedder.getFraction(), 0.2, DELTA);
+
+        // Busy for 70% of the window is within the watermarks
+        shedder.addBusyTime(now + 30L, now + 100L);
+        now += 100L;
+        Assert.assertEquals(shedder.getFraction(), 0.2, DELTA);
+
+        // Busy for 10% of the window
+        shedder.addBusyTime(now + 90L, now + 100L);
+        now += 100L;
+        Assert.assertEquals(shedder.getFraction(), 0.15, DELTA);
+        for (int i = 0; i < 10; ++i) {
+            shedder.addBusyTime(now + 90L, now + 100L);
+            now += 100L;
+        }
+        Assert.assertEquals(shedder.getFraction(), 0.0);
+        Assert.assertTrue(shedRecords(shedder, 1000).isEmpty());
+    }
+
+    @Test
+    public void testShedRecordsFollowTheFraction() {
+        LoadShedder shedder = new LoadShedder(1L, 0.9, 0.5, 0.25, 0L);
+        for (long i = 0; i < 5; ++i) {
+            shedder.addBusyTime(i, i + 1);
+        }
+        Assert.assertEquals(shedder.getFraction(), 0.25, DELTA);
+
+        int count = 100000;
+        int shed = shedRecords(shedder, count).cardinality();
+        Assert.assertEquals(shedder.getShed(), shed);
+        Assert.assertEquals((double) shed / count, 0.25, 0.01);
+    }
+
+    @Test
+    public void testEverythingIsShedAtAFractionOfOne() {
+        LoadShedder shedder = new LoadShedder(1L, 0.9, 0.5, 1.0, 0L);
+        for (long i = 0; i < 20; ++i) {
+            shedder.addBusyTime(i, i + 1);
+        }
+        Assert.assertEquals(shedder.getFraction(), 1.0, DELTA);
+        Assert.assertEquals(shedRecords(shedder, 1000).cardinality(), 1000);
+    }
+
+    @Test
+    public void testSheddingIsDeterministic() {
+        LoadShedder first = new LoadShedder(1L, 0.9, 0.5, 0.5, 0L);
+        LoadShedder second = new LoadShedder(1L, 0.9, 0.5, 0.5, 0L);
+        for (long i = 0; i < 6; ++i) {
+            first.addBusyTime(i, i + 1);
+            second.addBusyTime(i, i + 1);
+        }
+        Assert.assertEquals(shedRecords(first, 1000), shedRecords(second, 1000));
+    }
+}
@@ -5,6 +5,8 @@
  */
 package com.yahoo.bullet.drpc;
 
+import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.parsing.Error;
 import com.yahoo.bullet.tracing.AbstractRule;
 import lombok.Getter;
 import org.apache.storm.Config;
@@ -14,13 +16,28 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.stream.LongStream;
+
+import static com.yahoo.bullet.drpc.TupleUtils.makeIDTuple;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class RuleBoltTest {
 
     private class TestRuleBolt extends RuleBolt<AbstractRule> {
         @Getter
         private boolean cleaned = false;
+        @Getter
+        private Map<Long, Error> refused = new HashMap<>();
 
         @Override
         public void execute(Tuple input) {
@@ -35,6 +52,11 @@ public class RuleBoltTest {
             return null;
         }
 
+        @Override
+        protected void refuseRule(Long id, Error error) {
+            refused.put(id, error);
+        }
+
         @Override
         public void cleanup() {
             super.cleanup();
@@ -42,6 +64,125 @@ public class RuleBoltTest {
         }
     }
 
+    private class ExpiringRuleBolt extends TestRuleBolt {
+        private Map<String, AbstractRule> rules = new HashMap<>();
+
+        @Override
+        public AbstractRule getRule(Long id, String ruleString) {
+            return rules.get(ruleString);
+        }
+
+        private void add(Long id, String name, AbstractRule rule) {
+            rules.put(name, rule);
+            initializeRule(makeIDTuple(TupleType.Type.RULE_TUPLE, id, name));
+        }
+    }
+
+    private static AbstractRule makeRule(long expiryTime) {
+        AbstractRule rule = mock(AbstractRule.class);
+        when(rule.getExpiryTime()).thenReturn(expiryTime);
+        when(rule.isExpired()).thenCallRealMethod();
+        return rule;
+    }
+
+    private ExpiringRuleBolt makeBolt() {
+        return ComponentUtils.prepare(new ExpiringRuleBolt(), new CustomCollector());
+    }
+
+    @Test
+    public void testTooManyRulesAreRefused() {
+        Map<String, Object> config = new HashMap<>();
+        config.put(BulletConfig.MAX_CONCURRENT_RULES, 2);
+        ExpiringRuleBolt bolt = ComponentUtils.prepare(config, new ExpiringRuleBolt(), new CustomCollector());
+        bolt.add(1L, "first", makeRule(Long.MAX_VALUE));
+        bolt.add(2L, "second", makeRule(Long.MAX_VALUE));
+        Assert.assertTrue(bolt.getRefused().isEmpty());
+
+        bolt.add(3L, "third", makeRule(Long.MAX_VALUE));
+        Assert.assertEquals(bolt.rulesMap.keySet(), new HashSet<>(asList(1L, 2L)));
+        Assert.assertEquals(bolt.getRefused().keySet(), singleton(3L));
+        Assert.assertEquals(bolt.getRefused().get(3L).getResolutions(), singletonList(RuleBolt.TOO_MANY_RULES_RESOLUTION));
+
+        // Rules can still be replaced
+        AbstractRule replacement = makeRule(Long.MAX_VALUE);
+        bolt.add(2L, "replacement", replacement);
+        Assert.assertSame(bolt.rulesMap.get(2L), replacement);
+        Assert.assertEquals(bolt.getRefused().size(), 1);
+
+        // There is room once a rule is gone
+        bolt.rulesMap.remove(1L);
+        bolt.add(3L, "third", makeRule(Long.MAX_VALUE));
+        Assert.assertEquals(bolt.rulesMap.keySet(), new HashSet<>(asList(2L, 3L)));
+        Assert.assertEquals(bolt.getRefused().size(), 1);
+    }
+
+    @Test
+    public void testNoRuleLimitByDefault() {
+        ExpiringRuleBolt bolt = makeBolt();
+        LongStream.range(0, 10000).forEach(i -> bolt.add(i, "rule", makeRule(Long.MAX_VALUE)));
+        Assert.assertEquals(bolt.rulesMap.size(), 10000);
+        Assert.assertTrue(bolt.getRefused().isEmpty());
+    }
+
+    @Test
+    public void testOnlyDueRulesAreChecked() {
+        ExpiringRuleBolt bolt = makeBolt();
+        AbstractRule expired = makeRule(0L);
+        AbstractRule active = makeRule(Long.MAX_VALUE);
+        bolt.add(1L, "active", active);
+        bolt.add(2L, "expired", expired);
+        Assert.assertTrue(bolt.hasExpiredRules());
+
+        Map<Long, AbstractRule> retired = bolt.retireRules();
+        Assert.assertEquals(retired, Collections.singletonMap(2L, expired));
+        Assert.assertEquals(bolt.rulesMap, Collections.singletonMap(1L, active));
+        Assert.assertFalse(bolt.hasExpiredRules());
+        Assert.assertTrue(bolt.retireRules().isEmpty());
+        verify(active, never()).isExpired();
+    }
+
+    @Test
+    public void testRulesRetiredInExpiryOrder() {
+        ExpiringRuleBolt bolt = makeBolt();
+        for (long i = 0; i < 10; ++i) {
+            bolt.add(i, "rule" + i, makeRule(100L - i));
+        }
+        Map<Long, AbstractRule> retired = bolt.retireRules();
+        Assert.assertEquals(retired.keySet().toArray(), new Long[] {9L, 8L, 7L, 6L, 5L, 4L, 3L, 2L, 1L, 0L});
+        Assert.assertTrue(bolt.rulesMap.isEmpty());
+    }
+
+    @Test
+    public void testReplacedRulesAreNotRetired() {
+        ExpiringRuleBolt bolt = makeBolt();
+        AbstractRule replacement = makeRule(Long.MAX_VALUE);
+        bolt.add(1L, "expired", makeRule(0L));
+        bolt.add(1L, "replacement", replacement);
+        // The entry for the replaced rule is still due
+        Assert.assertTrue(bolt.hasExpiredRules());
+        Assert.assertTrue(bolt.retireRules().isEmpty());
+        Assert.assertFalse(bolt.hasExpiredRules());
+        Assert.assertEquals(bolt.rulesMap, Collections.singletonMap(1L, replacement));
+
+        // Removed rules are not retired either
+        bolt.add(2L, "another", makeRule(0L));
+        bolt.rulesMap.remove(2L);
+        Assert.assertTrue(bolt.retireRules().isEmpty());
+    }
+
+    @Test
+    public void testDueRulesThatHaveNotExpiredAreCheckedAgain() {
+        ExpiringRuleBolt bolt = makeBolt();
+        AbstractRule rule = makeRule(0L);
+        doReturn(false).doReturn(true).when(rule).isExpired();
+        bolt.add(1L, "rule", rule);
+        Assert.assertTrue(bolt.retireRules().isEmpty());
+        // It is only checked on the next retirement
+        Assert.assertFalse(bolt.hasExpiredRules());
+        Assert.assertEquals(bolt.retireRules(), Collections.singletonMap(1L, rule));
+        Assert.assertTrue(bolt.retireRules().isEmpty());
+    }
+
     @Test
     public void testCleanup() {
         TestRuleBolt testRuleBolt = new TestRuleBolt();
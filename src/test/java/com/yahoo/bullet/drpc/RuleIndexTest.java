@@ -0,0 +1,210 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.drpc;
+
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.RecordBox;
+import com.yahoo.bullet.tracing.FilterRule;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.AND;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.EQUALS;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.GREATER_EQUALS;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.GREATER_THAN;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.LESS_EQUALS;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.LESS_THAN;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.NOT_EQUALS;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.OR;
+import static com.yahoo.bullet.parsing.LogicalClauseTest.clause;
+import static com.yahoo.bullet.parsing.RuleUtils.getFilterRule;
+import static com.yahoo.bullet.parsing.RuleUtils.makeFieldFilterRule;
+import static com.yahoo.bullet.parsing.RuleUtils.makeFilterRule;
+import static com.yahoo.bullet.parsing.RuleUtils.makeProjectionRule;
+import static java.util.Arrays.asList;
+
+public class RuleIndexTest {
+    private RuleIndex index;
+
+    private static FilterRule rule(String ruleString) {
+        return getFilterRule(ruleString, Collections.emptyMap());
+    }
+
+    private List<Long> candidates(BulletRecord record) {
+        List<Long> ids = new ArrayList<>();
+        index.forEachCandidate(record, (r, id, rule) -> ids.add(id));
+        Collections.sort(ids);
+        return ids;
+    }
+
+    @BeforeMethod
+    public void setup() {
+        index = new RuleIndex();
+    }
+
+    @Test
+    public void testEqualityIsIndexed() {
+        index.add(1L, rule(makeFieldFilterRule("foo")));
+        index.add(2L, rule(makeFieldFilterRule("bar")));
+        Assert.assertEquals(index.size(), 2);
+        Assert.assertEquals(index.residualSize(), 0);
+
+        Assert.assertEquals(candidates(RecordBox.get().add("field", "foo").getRecord()), asList(1L));
+        Assert.assertEquals(candidates(RecordBox.get().add("field", "bar").getRecord()), asList(2L));
+        Assert.assertEquals(candidates(RecordBox.get().add("field", "baz").getRecord()), Collections.emptyList());
+        Assert.assertEquals(candidates(RecordBox.get().getRecord()), Collections.emptyList());
+    }
+
+    @Test
+    public void testNonIndexableRulesAreResiduals() {
+        index.add(1L, rule(makeProjectionRule(Pair.of("field", "id"))));
+        index.add(2L, rule(makeFilterRule("field", asList("foo"), NOT_EQUALS)));
+        index.add(3L, rule(makeFilterRule(OR, clause("field", EQUALS, "foo"), clause("id", EQUALS, "1"))));
+        Assert.assertEquals(index.residualSize(), 3);
+        Assert.assertEquals(candidates(RecordBox.get().getRecord()), asList(1L, 2L, 3L));
+    }
+
+    @Test
+    public void testTypedValuesAreIndexed() {
+        index.add(1L, rule(makeFilterRule("id", asList("45", "1.5", "true"), EQUALS)));
+        Assert.assertEquals(candidates(RecordBox.get().add("id", 45L).getRecord()), asList(1L));
+        Assert.assertEquals(candidates(RecordBox.get().add("id", 1.5).getRecord()), asList(1L));
+        Assert.assertEquals(candidates(RecordBox.get().add("id", 45.0).getRecord()), asList(1L));
+        Assert.assertEquals(candidates(RecordBox.get().add("id", true).getRecord()), asList(1L));
+        Assert.assertEquals(candidates(RecordBox.get().add("id", "45").getRecord()), asList(1L));
+        // Boolean casting makes anything that is not true false
+        Assert.assertEquals(candidates(RecordBox.get().add("id", false).getRecord()), asList(1L));
+        Assert.assertEquals(candidates(RecordBox.get().add("id", 46L).getRecord()), Collections.emptyList());
+        Assert.assertEquals(candidates(RecordBox.get().add("id", "45.0").getRecord()), Collections.emptyList());
+
+        index.add(2L, rule(makeFilterRule("id", asList("NULL"), EQUALS)));
+        Assert.assertEquals(candidates(RecordBox.get().getRecord()), asList(2L));
+        Assert.assertEquals(candidates(RecordBox.get().add("id", "NULL").getRecord()), asList(2L));
+        Assert.assertEquals(candidates(RecordBox.get().add("id", "null").getRecord()), Collections.emptyList());
+    }
+
+    @Test
+    public void testSmallestConjunctIsIndexed() {
+        index.add(1L, rule(makeFilterRule(AND,
+                                          clause("field", EQUALS, "a", "b", "c"),
+                                          clause(AND, clause("id", EQUALS, "1"), clause("ts", GREATER_THAN, "5")))));
+        Assert.assertEquals(index.residualSize(), 0);
+        Assert.assertEquals(candidates(RecordBox.get().add("id", 1L).getRecord()), asList(1L));
+        Assert.assertEquals(candidates(RecordBox.get().add("field", "a").getRecord()), Collections.emptyList());
+    }
+
+    @Test
+    public void testNestedFields() {
+        index.add(1L, rule(makeFilterRule("map_field.id", asList("1"), EQUALS)));
+        BulletRecord record = RecordBox.get().addMap("map_field", Pair.of("id", "1")).getRecord();
+        Assert.assertEquals(candidates(record), asList(1L));
+    }
+
+    @Test
+    public void testRemoval() {
+        index.add(1L, rule(makeFieldFilterRule("foo")));
+        index.add(2L, rule(makeFieldFilterRule("foo")));
+        index.add(3L, rule(makeProjectionRule(Pair.of("field", "id"))));
+        BulletRecord record = RecordBox.get().add("field", "foo").getRecord();
+        Assert.assertEquals(candidates(record), asList(1L, 2L, 3L));
+
+        index.remove(1L);
+        index.remove(3L);
+        index.remove(42L);
+        Assert.assertEquals(index.size(), 1);
+        Assert.assertEquals(candidates(record), asList(2L));
+
+        // Re-adding replaces
+        index.add(2L, rule(makeFieldFilterRule("bar")));
+        Assert.assertEquals(index.size(), 1);
+        Assert.assertEquals(candidates(record), Collections.emptyList());
+
+        index.remove(2L);
+        Assert.assertEquals(index.size(), 0);
+    }
+
+    @Test
+    public void testRangesAreIndexed() {
+        index.add(1L, rule(makeFilterRule(AND, clause("ts", GREATER_EQUALS, "10"), clause("ts", LESS_THAN, "20"))));
+        index.add(2L, rule(makeFilterRule(AND, clause("ts", GREATER_THAN, "15.5"),
+                                          clause(AND, clause("ts", LESS_EQUALS, "30", "25")))));
+        index.add(3L, rule(makeFilterRule("ts", asList("100"), LESS_THAN)));
+        Assert.assertEquals(index.size(), 3);
+        Assert.assertEquals(index.rangedSize(), 3);
+        Assert.assertEquals(index.residualSize(), 0);
+
+        Assert.assertEquals(candidates(RecordBox.get().add("ts", 5L).getRecord()), asList(3L));
+        Assert.assertEquals(candidates(RecordBox.get().add("ts", 10L).getRecord()), asList(1L, 3L));
+        Assert.assertEquals(candidates(RecordBox.get().add("ts", 16.0).getRecord()), asList(1L, 2L, 3L));
+        Assert.assertEquals(candidates(RecordBox.get().add("ts", 30L).getRecord()), asList(2L, 3L));
+        Assert.assertEquals(candidates(RecordBox.get().add("ts", 31.0).getRecord()), asList(3L));
+        Assert.assertEquals(candidates(RecordBox.get().add("ts", 100L).getRecord()), asList(3L));
+        Assert.assertEquals(candidates(RecordBox.get().add("ts", 101L).getRecord()), Collections.emptyList());
+        // Missing fields never satisfy ranges
+        Assert.assertEquals(candidates(RecordBox.get().getRecord()), Collections.emptyList());
+        // Other types are compared differently so they need to be checked
+        Assert.assertEquals(candidates(RecordBox.get().add("ts", "5").getRecord()), asList(1L, 2L, 3L));
+        Assert.assertEquals(candidates(RecordBox.get().add("ts", Double.NaN).getRecord()), asList(1L, 2L, 3L));
+    }
+
+    @Test
+    public void testRangeCandidatesIncludeMatches() {
+        FilterRule ranged = rule(makeFilterRule(AND, clause("ts", GREATER_THAN, "-0.0"),
+                                                clause("ts", LESS_EQUALS, "5", "NaN")));
+        FilterRule never = rule(makeFilterRule("ts", asList("NaN"), GREATER_THAN));
+        index.add(1L, ranged);
+        index.add(2L, never);
+        Object[] values = {-1L, 0L, 0.0, -0.0, 1.5, 5L, 6L, 1e300, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY};
+        for (Object value : values) {
+            RecordBox box = RecordBox.get();
+            BulletRecord record = value instanceof Long ? box.add("ts", (Long) value).getRecord() :
+                                                          box.add("ts", (Double) value).getRecord();
+            List<Long> found = candidates(record);
+            Assert.assertTrue(!ranged.getPredicate().test(record) || found.contains(1L), "Missed " + value);
+            Assert.assertTrue(!never.getPredicate().test(record) || found.contains(2L), "Missed " + value);
+        }
+    }
+
+    @Test
+    public void testEqualityIsPreferredToRanges() {
+        index.add(1L, rule(makeFilterRule(AND, clause("ts", GREATER_THAN, "10"), clause("field", EQUALS, "foo"))));
+        Assert.assertEquals(index.rangedSize(), 0);
+        Assert.assertEquals(candidates(RecordBox.get().add("ts", 5L).add("field", "foo").getRecord()), asList(1L));
+    }
+
+    @Test
+    public void testBoundedRangesArePreferred() {
+        index.add(1L, rule(makeFilterRule(AND, clause("a", GREATER_THAN, "10"),
+                                          clause("b", GREATER_THAN, "1"), clause("b", LESS_THAN, "2"))));
+        Assert.assertEquals(candidates(RecordBox.get().add("a", 5L).add("b", 1.5).getRecord()), asList(1L));
+        Assert.assertEquals(candidates(RecordBox.get().add("a", 50L).add("b", 5L).getRecord()),
+                            Collections.emptyList());
+    }
+
+    @Test
+    public void testRangeRemoval() {
+        index.add(1L, rule(makeFilterRule("ts", asList("10"), GREATER_THAN)));
+        index.add(2L, rule(makeFilterRule("ts", asList("10"), LESS_THAN)));
+        BulletRecord record = RecordBox.get().add("ts", 10L).getRecord();
+        Assert.assertEquals(candidates(record), asList(1L, 2L));
+
+        index.remove(1L);
+        Assert.assertEquals(index.rangedSize(), 1);
+        Assert.assertEquals(candidates(record), asList(2L));
+
+        // Re-adding as a residual
+        index.add(2L, rule(makeFilterRule("ts", asList("10"), NOT_EQUALS)));
+        Assert.assertEquals(index.rangedSize(), 0);
+        Assert.assertEquals(index.residualSize(), 1);
+        Assert.assertEquals(candidates(record), asList(2L));
+    }
+}
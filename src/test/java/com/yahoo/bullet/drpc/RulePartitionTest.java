@@ -0,0 +1,188 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.drpc;
+
+import com.yahoo.bullet.operations.AggregationOperations.AggregationType;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.RecordBox;
+import com.yahoo.bullet.tracing.FilterRule;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.EQUALS;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.GREATER_THAN;
+import static com.yahoo.bullet.parsing.RuleUtils.getFilterRule;
+import static com.yahoo.bullet.parsing.RuleUtils.makeSimpleAggregationFilterRule;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+
+public class RulePartitionTest {
+    private List<Long> emitted;
+
+    private static FilterRule rule(String field, String value, boolean equals) {
+        return getFilterRule(makeSimpleAggregationFilterRule(field, singletonList(value),
+                                                             equals ? EQUALS : GREATER_THAN, AggregationType.RAW, 10),
+                             Collections.emptyMap());
+    }
+
+    private static BulletRecord record(String field, long id) {
+        return RecordBox.get().add("field", field).add("id", id).getRecord();
+    }
+
+    private void emit(Long id, byte[] data) {
+        Assert.assertNotNull(data);
+        emitted.add(id);
+    }
+
+    @BeforeMethod
+    public void setup() {
+        emitted = new ArrayList<>();
+    }
+
+    @Test
+    public void testAddingAndRemoving() {
+        RulePartition partition = new RulePartition(true, 1, this::emit);
+        FilterRule first = rule("field", "foo", true);
+        FilterRule second = rule("id", "5", false);
+        partition.add(1L, first);
+        partition.add(2L, second);
+        Assert.assertEquals(partition.size(), 2);
+
+        partition.check(record("foo", 6L));
+        Assert.assertEquals(emitted, asList(1L, 2L));
+
+        partition.remove(1L, first);
+        Assert.assertEquals(partition.size(), 1);
+        partition.check(record("foo", 6L));
+        Assert.assertEquals(emitted, asList(1L, 2L, 2L));
+
+        partition.remove(2L, second);
+        Assert.assertEquals(partition.size(), 0);
+        partition.check(record("foo", 6L));
+        Assert.assertEquals(emitted.size(), 3);
+    }
+
+    @Test
+    public void testFiltersAreShared() {
+        RulePartition partition = new RulePartition(true, 1, this::emit);
+        partition.add(1L, rule("id", "5", false));
+        partition.add(2L, rule("id", "5", false));
+        partition.check(record("foo", 6L));
+        partition.check(record("foo", 4L));
+        Assert.assertEquals(emitted, asList(1L, 2L));
+        // Per record: the AND of the filters of the first rule and its filter miss. The second rule reuses the AND.
+        Assert.assertEquals(partition.getSharedPredicates().getAndResetHitRate(), 1.0 / 3);
+    }
+
+    @Test
+    public void testBatchedSameAsRecords() {
+        RulePartition partition = new RulePartition(true, 1, this::emit);
+        List<Long> batchEmitted = new ArrayList<>();
+        RulePartition batched = new RulePartition(true, 4, (id, data) -> batchEmitted.add(id));
+        for (long i = 0; i < 4; ++i) {
+            partition.add(i, rule("id", String.valueOf(i), false));
+            batched.add(i, rule("id", String.valueOf(i), false));
+        }
+        partition.add(4L, rule("field", "foo", true));
+        batched.add(4L, rule("field", "foo", true));
+
+        for (long i = 0; i < 6; ++i) {
+            BulletRecord record = record(i % 2 == 0 ? "foo" : "bar", i);
+            partition.check(record);
+            batched.addToBatch(record);
+            if (i == 3) {
+                // Nothing is emitted till the batch is checked
+                Assert.assertTrue(batchEmitted.isEmpty());
+                batched.checkBatch();
+            }
+        }
+        batched.checkBatch();
+        // Nothing is left to check
+        batched.checkBatch();
+
+        Collections.sort(emitted);
+        Collections.sort(batchEmitted);
+        Assert.assertFalse(emitted.isEmpty());
+        Assert.assertEquals(batchEmitted, emitted);
+    }
+
+    @Test
+    public void testPendingHoldsDataTillDrained() {
+        RulePartition.Pending pending = new RulePartition.Pending();
+        RulePartition partition = new RulePartition(true, 1, pending);
+        partition.add(1L, rule("field", "foo", true));
+        partition.add(2L, rule("field", "foo", true));
+
+        partition.check(record("foo", 1L));
+        Assert.assertTrue(emitted.isEmpty());
+        pending.drainTo(this::emit);
+        Assert.assertEquals(emitted.size(), 2);
+        Assert.assertTrue(emitted.containsAll(asList(1L, 2L)));
+
+        pending.drainTo(this::emit);
+        Assert.assertEquals(emitted.size(), 2);
+    }
+
+    @Test
+    public void testNoTiming() {
+        RulePartition partition = new RulePartition(true, 1, 0, 1L, this::emit);
+        FilterRule rule = rule("field", "foo", true);
+        partition.add(1L, rule);
+        partition.check(record("foo", 1L));
+        Assert.assertEquals(rule.getCost(), 0L);
+        Assert.assertTrue(partition.getOverBudget().isEmpty());
+    }
+
+    @Test
+    public void testTimingWithoutBudget() {
+        RulePartition partition = new RulePartition(true, 1, 4, 0L, this::emit);
+        FilterRule rule = rule("field", "foo", true);
+        partition.add(1L, rule);
+        // The first check is timed
+        partition.check(record("foo", 1L));
+        long cost = rule.getCost();
+        Assert.assertTrue(cost > 0L);
+        // The next three are not
+        for (int i = 0; i < 3; ++i) {
+            partition.check(record("foo", 1L));
+        }
+        Assert.assertEquals(rule.getCost(), cost);
+        partition.check(record("foo", 1L));
+        Assert.assertTrue(rule.getCost() > cost);
+        Assert.assertTrue(partition.getOverBudget().isEmpty());
+    }
+
+    @Test
+    public void testOverBudgetRulesAreCollectedOnce() {
+        RulePartition partition = new RulePartition(true, 1, 1, 1L, this::emit);
+        partition.add(1L, rule("field", "foo", true));
+        partition.add(2L, rule("id", "5", false));
+        // Only the first rule is a candidate for this record
+        partition.check(record("foo", 1L));
+        Assert.assertEquals(partition.getOverBudget(), singletonList(1L));
+        partition.check(record("foo", 1L));
+        Assert.assertEquals(partition.getOverBudget(), singletonList(1L));
+        partition.check(record("bar", 6L));
+        Assert.assertEquals(partition.getOverBudget(), asList(1L, 2L));
+    }
+
+    @Test
+    public void testBatchesAreTimed() {
+        RulePartition partition = new RulePartition(true, 4, 16, 1L, this::emit);
+        FilterRule rule = rule("field", "foo", true);
+        partition.add(1L, rule);
+        partition.addToBatch(record("foo", 1L));
+        partition.addToBatch(record("bar", 2L));
+        partition.checkBatch();
+        Assert.assertTrue(rule.getCost() > 0L);
+        Assert.assertEquals(partition.getOverBudget(), singletonList(1L));
+    }
+}
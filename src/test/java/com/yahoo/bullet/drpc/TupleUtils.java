@@ -26,6 +26,9 @@ public class TupleUtils {
         for (int i = 0; i < contents.length; ++i) {
             when(mocked.getValue(i)).thenReturn(contents[i]);
             when(mocked.getString(i)).thenReturn(contents[i].toString());
+            if (contents[i] instanceof Long) {
+                when(mocked.getLong(i)).thenReturn((Long) contents[i]);
+            }
         }
         return mocked;
     }
@@ -7,12 +7,17 @@ package com.yahoo.bullet.operations;
 
 import com.yahoo.bullet.operations.aggregations.CountDistinct;
 import com.yahoo.bullet.operations.aggregations.GroupAll;
+import com.yahoo.bullet.operations.aggregations.GroupBy;
+import com.yahoo.bullet.operations.aggregations.Percentile;
 import com.yahoo.bullet.operations.aggregations.Raw;
+import com.yahoo.bullet.operations.aggregations.TopK;
 import com.yahoo.bullet.parsing.Aggregation;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.singletonMap;
@@ -62,6 +67,16 @@ public class AggregationOperationsTest {
         Assert.assertEquals(AggregationOperations.getStrategyFor(aggregation).getClass(), GroupAll.class);
     }
 
+    @Test
+    public void testGroupByStrategy() {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(AggregationOperations.AggregationType.GROUP);
+        aggregation.setFields(singletonMap("field", "foo"));
+        aggregation.configure(Collections.emptyMap());
+
+        Assert.assertEquals(AggregationOperations.getStrategyFor(aggregation).getClass(), GroupBy.class);
+    }
+
     @Test
     public void testCountDistinctStrategy() {
         Aggregation aggregation = new Aggregation();
@@ -71,4 +86,30 @@ public class AggregationOperationsTest {
 
         Assert.assertEquals(AggregationOperations.getStrategyFor(aggregation).getClass(), CountDistinct.class);
     }
+
+    @Test
+    public void testTopKStrategy() {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(AggregationOperations.AggregationType.TOP);
+        aggregation.setFields(singletonMap("field", "foo"));
+        aggregation.configure(Collections.emptyMap());
+
+        Assert.assertEquals(AggregationOperations.getStrategyFor(aggregation).getClass(), TopK.class);
+    }
+
+    @Test
+    public void testPercentileStrategy() {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(AggregationOperations.AggregationType.PERCENTILE);
+        aggregation.setFields(singletonMap("field", "foo"));
+        aggregation.configure(Collections.emptyMap());
+
+        Assert.assertEquals(AggregationOperations.getStrategyFor(aggregation).getClass(), Percentile.class);
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put("fieldA", null);
+        fields.put("fieldB", null);
+        aggregation.setFields(fields);
+        Assert.assertNull(AggregationOperations.getStrategyFor(aggregation));
+    }
 }
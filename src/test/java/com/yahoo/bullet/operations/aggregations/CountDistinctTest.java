@@ -21,6 +21,9 @@ import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
 
 public class CountDistinctTest {
     @SafeVarargs
@@ -159,6 +162,38 @@ public class CountDistinctTest {
         Assert.assertEquals(actual, expected);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSampledCountDistinct() {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setFields(singletonMap("field", "field"));
+        Map<String, String> metadataKeys = new HashMap<>();
+        metadataKeys.put(Concept.AGGREGATION_METADATA.getName(), "stats");
+        metadataKeys.put(Concept.SKETCH_THETA.getName(), "theta");
+        metadataKeys.put(Concept.ESTIMATED_RESULT.getName(), "isEstimate");
+        metadataKeys.put(Concept.STANDARD_DEVIATIONS.getName(), "stddev");
+        Map<Object, Object> config = makeConfiguration(8, 16384);
+        config.put(BulletConfig.RESULT_METADATA_METRICS_MAPPING, metadataKeys);
+        aggregation.setConfiguration(config);
+        Aggregation sampled = spy(aggregation);
+        when(sampled.getSamplingRate()).thenReturn(0.25);
+        CountDistinct countDistinct = new CountDistinct(sampled);
+        IntStream.range(0, 10000).mapToObj(i -> RecordBox.get().add("field", i).getRecord())
+                                 .forEach(countDistinct::consume);
+
+        Clip clip = countDistinct.getAggregation();
+        Map<String, Object> stats = (Map<String, Object>) clip.getMeta().asMap().get("stats");
+        // The Sketch keeps about a quarter of the distinct values but still estimates all of them
+        Assert.assertTrue((Double) stats.get("theta") <= 0.25);
+        Assert.assertTrue((Boolean) stats.get("isEstimate"));
+        double estimate = (Double) clip.getRecords().get(0).get(CountDistinct.DEFAULT_NEW_NAME);
+        Map<String, Map<String, Double>> deviations = (Map<String, Map<String, Double>>) stats.get("stddev");
+        Map<String, Double> bounds = deviations.get(CountDistinct.META_STD_DEV_3);
+        Assert.assertTrue(bounds.get(CountDistinct.META_STD_DEV_LB) <= 10000.0);
+        Assert.assertTrue(bounds.get(CountDistinct.META_STD_DEV_UB) >= 10000.0);
+        Assert.assertTrue(Math.abs(estimate - 10000.0) < 1000.0);
+    }
+
     @Test
     public void testSingleFieldApproximateCountDistinctWithMetadata() {
         Map<Object, Object> config = makeConfiguration(4, 512);
@@ -335,7 +370,7 @@ public class CountDistinctTest {
         CountDistinct countDistinct = makeCountDistinct(config, "myCount", asList("fieldA", "fieldB"));
         BulletRecord first = RecordBox.get().add("fieldA", s).add("fieldB", s + s).getRecord();
         BulletRecord second = RecordBox.get().add("fieldA", s + s).add("fieldB", s).getRecord();
-        // first and second will look the same to the Sketch. third will not
+        // The values of the fields are hashed separately, so the separator in them does not make any look the same
         BulletRecord third = RecordBox.get().add("fieldA", s + s).add("fieldB", s + s).getRecord();
 
         countDistinct.consume(first);
@@ -345,7 +380,47 @@ public class CountDistinctTest {
         Clip clip = countDistinct.getAggregation();
         Assert.assertEquals(clip.getRecords().size(), 1);
         BulletRecord actual = clip.getRecords().get(0);
-        BulletRecord expected = RecordBox.get().add("myCount", 2.0).getRecord();
+        BulletRecord expected = RecordBox.get().add("myCount", 3.0).getRecord();
+        Assert.assertEquals(actual, expected);
+    }
+
+    @Test
+    public void testCountDistinctOfTypedValues() {
+        Map<Object, Object> config = makeConfiguration(4, 512);
+        CountDistinct countDistinct = makeCountDistinct(config, "myCount", asList("fieldA", "fieldB"));
+        // The same as the first two
+        countDistinct.consume(RecordBox.get().add("fieldA", 1).add("fieldB", true).getRecord());
+        countDistinct.consume(RecordBox.get().add("fieldA", 1L).add("fieldB", true).getRecord());
+        countDistinct.consume(new BulletRecord().setFloat("fieldA", 1.5f));
+        countDistinct.consume(RecordBox.get().add("fieldA", 1.5).getRecord());
+        // All different
+        countDistinct.consume(RecordBox.get().add("fieldA", "1").add("fieldB", true).getRecord());
+        countDistinct.consume(RecordBox.get().add("fieldA", 1.0).add("fieldB", true).getRecord());
+        countDistinct.consume(RecordBox.get().add("fieldA", 1L).add("fieldB", false).getRecord());
+        countDistinct.consume(RecordBox.get().add("fieldA", 1L).add("fieldB", "true").getRecord());
+        countDistinct.consume(RecordBox.get().add("fieldA", "null").getRecord());
+
+        Clip clip = countDistinct.getAggregation();
+        Assert.assertEquals(clip.getRecords().size(), 1);
+        BulletRecord actual = clip.getRecords().get(0);
+        BulletRecord expected = RecordBox.get().add("myCount", 7.0).getRecord();
         Assert.assertEquals(actual, expected);
     }
+
+    @Test
+    public void testHashing() {
+        Assert.assertEquals(CountDistinct.hash(42), CountDistinct.hash(42L));
+        Assert.assertEquals(CountDistinct.hash((short) 42), CountDistinct.hash((byte) 42));
+        Assert.assertEquals(CountDistinct.hash(0.25f), CountDistinct.hash(0.25));
+        Assert.assertEquals(CountDistinct.hash("foo"), CountDistinct.hash(new String("foo")));
+        Assert.assertEquals(CountDistinct.hash(null), CountDistinct.hash(null));
+        Assert.assertEquals(CountDistinct.hash(singletonMap("a", 1L)), CountDistinct.hash(singletonMap("a", 1L)));
+
+        Assert.assertNotEquals(CountDistinct.hash(42L), CountDistinct.hash(42.0));
+        Assert.assertNotEquals(CountDistinct.hash(42L), CountDistinct.hash("42"));
+        Assert.assertNotEquals(CountDistinct.hash(null), CountDistinct.hash("null"));
+        Assert.assertNotEquals(CountDistinct.hash(true), CountDistinct.hash(false));
+        Assert.assertNotEquals(CountDistinct.hash(""), CountDistinct.hash("\0"));
+        Assert.assertNotEquals(CountDistinct.hash("ab"), CountDistinct.hash("ba"));
+    }
 }
@@ -5,15 +5,19 @@
  */
 package com.yahoo.bullet.operations.aggregations;
 
+import com.yahoo.bullet.BulletConfig;
 import com.yahoo.bullet.operations.AggregationOperations.AggregationType;
 import com.yahoo.bullet.operations.AggregationOperations.GroupOperationType;
 import com.yahoo.bullet.parsing.Aggregation;
 import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.Clip;
+import com.yahoo.bullet.result.Metadata.Concept;
 import com.yahoo.bullet.result.RecordBox;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -22,6 +26,9 @@ import java.util.stream.IntStream;
 import static com.yahoo.bullet.parsing.AggregationUtils.makeAttributes;
 import static com.yahoo.bullet.parsing.AggregationUtils.makeGroupOperation;
 import static java.util.Arrays.asList;
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -258,4 +265,67 @@ public class GroupAllTest {
 
         Assert.assertEquals(groupAll.getAggregation().getRecords().size(), 1);
     }
+
+    private static GroupAll makeSampledGroupAll(double samplingRate, Map<String, String> metadataKeys) {
+        Aggregation aggregation = mock(Aggregation.class);
+        when(aggregation.getGroupOperations()).thenReturn(singleton(new GroupOperation(GroupOperationType.COUNT,
+                                                                                       null, null)));
+        when(aggregation.getSamplingRate()).thenReturn(samplingRate);
+        when(aggregation.getConfiguration()).thenReturn(singletonMap(BulletConfig.RESULT_METADATA_METRICS_MAPPING,
+                                                                     metadataKeys));
+        return new GroupAll(aggregation);
+    }
+
+    @Test
+    public void testSampledCounting() {
+        GroupAll groupAll = makeSampledGroupAll(0.25, Collections.emptyMap());
+        IntStream.range(0, 10).forEach(i -> groupAll.consume(RecordBox.get().getRecord()));
+
+        Clip clip = groupAll.getAggregation();
+        Assert.assertNull(clip.getMeta().asMap().get("aggregation"));
+        BulletRecord expected = RecordBox.get().add(GroupOperationType.COUNT.getName(), 40L).getRecord();
+        Assert.assertEquals(clip.getRecords(), singletonList(expected));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSampledCountingBounds() {
+        Map<String, String> metadataKeys = new HashMap<>();
+        metadataKeys.put(Concept.AGGREGATION_METADATA.getName(), "aggregation");
+        metadataKeys.put(Concept.STANDARD_DEVIATIONS.getName(), "stddev");
+        GroupAll groupAll = makeSampledGroupAll(0.5, metadataKeys);
+        IntStream.range(0, 50).forEach(i -> groupAll.consume(RecordBox.get().getRecord()));
+
+        Clip clip = groupAll.getAggregation();
+        BulletRecord expected = RecordBox.get().add(GroupOperationType.COUNT.getName(), 100L).getRecord();
+        Assert.assertEquals(clip.getRecords(), singletonList(expected));
+
+        Map<String, Object> aggregation = (Map<String, Object>) clip.getMeta().asMap().get("aggregation");
+        Map<String, Object> deviations = (Map<String, Object>) aggregation.get("stddev");
+        Map<String, Map<String, Double>> bounds =
+            (Map<String, Map<String, Double>>) deviations.get(GroupOperationType.COUNT.getName());
+        // sqrt(50 * 0.5) / 0.5 = 10
+        Assert.assertEquals(bounds.get(CountDistinct.META_STD_DEV_1).get(CountDistinct.META_STD_DEV_LB), 90.0);
+        Assert.assertEquals(bounds.get(CountDistinct.META_STD_DEV_1).get(CountDistinct.META_STD_DEV_UB), 110.0);
+        Assert.assertEquals(bounds.get(CountDistinct.META_STD_DEV_2).get(CountDistinct.META_STD_DEV_UB), 120.0);
+        Assert.assertEquals(bounds.get(CountDistinct.META_STD_DEV_3).get(CountDistinct.META_STD_DEV_LB), 70.0);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSampledCountingBoundsAtLeastCount() {
+        Map<String, String> metadataKeys = new HashMap<>();
+        metadataKeys.put(Concept.AGGREGATION_METADATA.getName(), "aggregation");
+        metadataKeys.put(Concept.STANDARD_DEVIATIONS.getName(), "stddev");
+        GroupAll groupAll = makeSampledGroupAll(0.01, metadataKeys);
+        groupAll.consume(RecordBox.get().getRecord());
+
+        Map<String, Object> aggregation = (Map<String, Object>) groupAll.getAggregation().getMeta().asMap()
+                                                                        .get("aggregation");
+        Map<String, Object> deviations = (Map<String, Object>) aggregation.get("stddev");
+        Map<String, Map<String, Double>> bounds =
+            (Map<String, Map<String, Double>>) deviations.get(GroupOperationType.COUNT.getName());
+        // At least the one record was seen
+        Assert.assertEquals(bounds.get(CountDistinct.META_STD_DEV_3).get(CountDistinct.META_STD_DEV_LB), 1.0);
+    }
 }
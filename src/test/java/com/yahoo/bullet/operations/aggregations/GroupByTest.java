@@ -0,0 +1,352 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.aggregations;
+
+import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.operations.AggregationOperations.AggregationType;
+import com.yahoo.bullet.operations.AggregationOperations.GroupOperationType;
+import com.yahoo.bullet.parsing.Aggregation;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.Clip;
+import com.yahoo.bullet.result.Metadata.Concept;
+import com.yahoo.bullet.result.RecordBox;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import static com.yahoo.bullet.parsing.AggregationUtils.makeAttributes;
+import static com.yahoo.bullet.parsing.AggregationUtils.makeGroupOperation;
+import static java.util.Collections.singletonMap;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+public class GroupByTest {
+    @SafeVarargs
+    public static GroupBy makeGroupBy(Map<String, String> fields, int size, Map<String, String>... groupOperations) {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(AggregationType.GROUP);
+        aggregation.setSize(size);
+        aggregation.setFields(fields);
+        aggregation.setAttributes(makeAttributes(groupOperations));
+        aggregation.configure(Collections.emptyMap());
+        return new GroupBy(aggregation);
+    }
+
+    private static List<BulletRecord> sorted(List<BulletRecord> records, String field) {
+        records.sort(Comparator.comparing(r -> Objects.toString(r.get(field))));
+        return records;
+    }
+
+    @Test
+    public void testNoRecords() {
+        GroupBy groupBy = makeGroupBy(singletonMap("fieldA", "A"), 10,
+                                      makeGroupOperation(GroupOperationType.COUNT, null, "count"));
+        Assert.assertNotNull(groupBy.getSerializedAggregation());
+        Assert.assertTrue(groupBy.getAggregation().getRecords().isEmpty());
+    }
+
+    @Test
+    public void testGroupingByOneField() {
+        GroupBy groupBy = makeGroupBy(singletonMap("fieldA", "A"), 10,
+                                      makeGroupOperation(GroupOperationType.COUNT, null, "count"),
+                                      makeGroupOperation(GroupOperationType.SUM, "fieldB", "sum"));
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", 1.0).getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "bar").add("fieldB", 2.0).getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", 3.0).getRecord());
+        groupBy.consume(RecordBox.get().add("fieldB", 4.0).getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "null").add("fieldB", 5.0).getRecord());
+
+        List<BulletRecord> aggregate = sorted(groupBy.getAggregation().getRecords(), "A");
+        Assert.assertEquals(aggregate.size(), 4);
+        BulletRecord bar = RecordBox.get().add("A", "bar").add("count", 1L).add("sum", 2.0).getRecord();
+        BulletRecord foo = RecordBox.get().add("A", "foo").add("count", 2L).add("sum", 4.0).getRecord();
+        // Records without the field are grouped together, apart from the String null
+        BulletRecord none = RecordBox.get().addNull("A").add("count", 1L).add("sum", 4.0).getRecord();
+        BulletRecord nullString = RecordBox.get().add("A", "null").add("count", 1L).add("sum", 5.0).getRecord();
+        Assert.assertTrue(bar.equals(aggregate.get(0)));
+        Assert.assertTrue(foo.equals(aggregate.get(1)));
+        Assert.assertTrue(none.equals(aggregate.get(2)) && nullString.equals(aggregate.get(3)) ||
+                          none.equals(aggregate.get(3)) && nullString.equals(aggregate.get(2)));
+
+        GroupBy another = makeGroupBy(singletonMap("fieldA", "A"), 10,
+                                      makeGroupOperation(GroupOperationType.COUNT, null, "count"),
+                                      makeGroupOperation(GroupOperationType.SUM, "fieldB", "sum"));
+        another.combine(groupBy.getSerializedAggregation());
+        Assert.assertEquals(another.getAggregation().getRecords().size(), 4);
+        Assert.assertTrue(another.getAggregation().getRecords().stream().anyMatch(none::equals));
+    }
+
+    @Test
+    public void testGroupingByManyFields() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("fieldA", "A");
+        // No new name
+        fields.put("fieldB", "");
+        GroupBy groupBy = makeGroupBy(fields, 10, makeGroupOperation(GroupOperationType.COUNT, null, "count"));
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", "1").getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", "2").getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", "1").getRecord());
+
+        List<BulletRecord> aggregate = sorted(groupBy.getAggregation().getRecords(), "fieldB");
+        Assert.assertEquals(aggregate.size(), 2);
+        BulletRecord first = RecordBox.get().add("A", "foo").add("fieldB", "1").add("count", 2L).getRecord();
+        BulletRecord second = RecordBox.get().add("A", "foo").add("fieldB", "2").add("count", 1L).getRecord();
+        Assert.assertTrue(first.equals(aggregate.get(0)));
+        Assert.assertTrue(second.equals(aggregate.get(1)));
+    }
+
+    @Test
+    public void testValuesWithTheSeparatorAreDifferentGroups() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("fieldA", "A");
+        fields.put("fieldB", "B");
+        GroupBy groupBy = makeGroupBy(fields, 10, makeGroupOperation(GroupOperationType.COUNT, null, "count"));
+        groupBy.consume(RecordBox.get().add("fieldA", "a|b").add("fieldB", "c").getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "a").add("fieldB", "b|c").getRecord());
+        Assert.assertEquals(groupBy.getAggregation().getRecords().size(), 2);
+
+        GroupBy another = makeGroupBy(fields, 10, makeGroupOperation(GroupOperationType.COUNT, null, "count"));
+        another.consume(RecordBox.get().add("fieldA", "a").add("fieldB", "b|c").getRecord());
+        groupBy.combine(another.getSerializedAggregation());
+
+        List<BulletRecord> aggregate = sorted(groupBy.getAggregation().getRecords(), "B");
+        Assert.assertEquals(aggregate.size(), 2);
+        BulletRecord first = RecordBox.get().add("A", "a").add("B", "b|c").add("count", 2L).getRecord();
+        BulletRecord second = RecordBox.get().add("A", "a|b").add("B", "c").add("count", 1L).getRecord();
+        Assert.assertTrue(first.equals(aggregate.get(0)));
+        Assert.assertTrue(second.equals(aggregate.get(1)));
+    }
+
+    @Test
+    public void testFieldsWithTheSameNewNameAreDifferentGroups() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("fieldA", "A");
+        fields.put("fieldB", "A");
+        GroupBy groupBy = makeGroupBy(fields, 10, makeGroupOperation(GroupOperationType.COUNT, null, "count"));
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", "bar").getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "baz").add("fieldB", "bar").getRecord());
+
+        GroupBy another = makeGroupBy(fields, 10, makeGroupOperation(GroupOperationType.COUNT, null, "count"));
+        another.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", "bar").getRecord());
+        another.combine(groupBy.getSerializedAggregation());
+
+        List<BulletRecord> aggregate = another.getAggregation().getRecords();
+        Assert.assertEquals(aggregate.size(), 2);
+        Assert.assertEquals(aggregate.stream().mapToLong(r -> (Long) r.get("count")).sorted().toArray(),
+                            new long[] {1L, 2L});
+    }
+
+    @Test
+    public void testDistinctWithoutOperations() {
+        GroupBy groupBy = makeGroupBy(singletonMap("fieldA", "A"), 10);
+        IntStream.range(0, 10).forEach(i -> groupBy.consume(RecordBox.get().add("fieldA", i % 3).getRecord()));
+
+        List<BulletRecord> aggregate = sorted(groupBy.getAggregation().getRecords(), "A");
+        Assert.assertEquals(aggregate.size(), 3);
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertTrue(RecordBox.get().add("A", String.valueOf(i)).getRecord().equals(aggregate.get(i)));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSampledCountingBounds() {
+        Map<String, String> metadataKeys = new HashMap<>();
+        metadataKeys.put(Concept.AGGREGATION_METADATA.getName(), "aggregation");
+        metadataKeys.put(Concept.STANDARD_DEVIATIONS.getName(), "stddev");
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(AggregationType.GROUP);
+        aggregation.setSize(10);
+        aggregation.setFields(singletonMap("fieldA", "A"));
+        aggregation.setAttributes(makeAttributes(makeGroupOperation(GroupOperationType.COUNT, null, "count")));
+        aggregation.configure(singletonMap(BulletConfig.RESULT_METADATA_METRICS_MAPPING, metadataKeys));
+        Aggregation sampled = spy(aggregation);
+        when(sampled.getSamplingRate()).thenReturn(0.5);
+        GroupBy groupBy = new GroupBy(sampled);
+        IntStream.range(0, 50).forEach(i -> groupBy.consume(RecordBox.get().add("fieldA", "foo").getRecord()));
+        IntStream.range(0, 8).forEach(i -> groupBy.consume(RecordBox.get().add("fieldA", "bar").getRecord()));
+
+        Clip clip = groupBy.getAggregation();
+        List<BulletRecord> records = clip.getRecords();
+        Assert.assertEquals(records.size(), 2);
+        Map<String, Object> meta = (Map<String, Object>) clip.getMeta().asMap().get("aggregation");
+        List<Map<String, Object>> deviations = (List<Map<String, Object>>) meta.get("stddev");
+        Assert.assertEquals(deviations.size(), 2);
+        // The bounds are in the same order as the records
+        for (int i = 0; i < records.size(); ++i) {
+            long count = (Long) records.get(i).get("count");
+            Map<String, Map<String, Double>> bounds = (Map<String, Map<String, Double>>) deviations.get(i).get("count");
+            double deviation = Math.sqrt(count / 2 * 0.5) / 0.5;
+            Assert.assertEquals(bounds.get(CountDistinct.META_STD_DEV_1).get(CountDistinct.META_STD_DEV_UB),
+                                count + deviation);
+            Assert.assertEquals(bounds.get(CountDistinct.META_STD_DEV_2).get(CountDistinct.META_STD_DEV_LB),
+                                count - 2 * deviation);
+        }
+        Assert.assertEquals(records.get(0).get("A").equals("foo") ? records.get(0).get("count") :
+                            records.get(1).get("count"), 100L);
+    }
+
+    @Test
+    public void testGroupsAreBoundedBySize() {
+        GroupBy groupBy = makeGroupBy(singletonMap("fieldA", "A"), 2,
+                                      makeGroupOperation(GroupOperationType.COUNT, null, "count"));
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "bar").getRecord());
+        // No room for a third group but the others are still counted
+        groupBy.consume(RecordBox.get().add("fieldA", "baz").getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").getRecord());
+
+        List<BulletRecord> aggregate = sorted(groupBy.getAggregation().getRecords(), "A");
+        Assert.assertEquals(aggregate.size(), 2);
+        Assert.assertTrue(RecordBox.get().add("A", "bar").add("count", 1L).getRecord().equals(aggregate.get(0)));
+        Assert.assertTrue(RecordBox.get().add("A", "foo").add("count", 2L).getRecord().equals(aggregate.get(1)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testTruncationIsReported() {
+        Map<String, String> metadataKeys = new HashMap<>();
+        metadataKeys.put(Concept.AGGREGATION_METADATA.getName(), "aggregation");
+        metadataKeys.put(Concept.TRUNCATED_RESULT.getName(), "truncated");
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(AggregationType.GROUP);
+        aggregation.setSize(2);
+        aggregation.setFields(singletonMap("fieldA", "A"));
+        aggregation.setAttributes(makeAttributes(makeGroupOperation(GroupOperationType.COUNT, null, "count")));
+        aggregation.configure(singletonMap(BulletConfig.RESULT_METADATA_METRICS_MAPPING, metadataKeys));
+
+        GroupBy groupBy = new GroupBy(aggregation);
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "bar").getRecord());
+        Map<String, Object> meta = (Map<String, Object>) groupBy.getAggregation().getMeta().asMap().get("aggregation");
+        Assert.assertEquals(meta.get("truncated"), false);
+
+        GroupBy another = new GroupBy(aggregation);
+        another.consume(RecordBox.get().add("fieldA", "baz").getRecord());
+        another.consume(RecordBox.get().add("fieldA", "qux").getRecord());
+        another.consume(RecordBox.get().add("fieldA", "quux").getRecord());
+        meta = (Map<String, Object>) another.getAggregation().getMeta().asMap().get("aggregation");
+        Assert.assertEquals(meta.get("truncated"), true);
+
+        // Truncation in any of the combined groups truncates the result
+        GroupBy join = new GroupBy(aggregation);
+        join.combine(groupBy.getSerializedAggregation());
+        join.combine(another.getSerializedAggregation());
+        Clip clip = join.getAggregation();
+        Assert.assertEquals(clip.getRecords().size(), 2);
+        meta = (Map<String, Object>) clip.getMeta().asMap().get("aggregation");
+        Assert.assertEquals(meta.get("truncated"), true);
+    }
+
+    @Test
+    public void testSizeIsCappedByTheMaximum() {
+        GroupBy groupBy = makeGroupBy(singletonMap("fieldA", "A"), 2 * Aggregation.DEFAULT_GROUP_MAX_SIZE);
+        IntStream.range(0, 2 * Aggregation.DEFAULT_GROUP_MAX_SIZE)
+                 .forEach(i -> groupBy.consume(RecordBox.get().add("fieldA", i).getRecord()));
+        Assert.assertEquals(groupBy.getAggregation().getRecords().size(), (int) Aggregation.DEFAULT_GROUP_MAX_SIZE);
+    }
+
+    @Test
+    public void testCombining() {
+        GroupBy groupBy = makeGroupBy(singletonMap("fieldA", "A"), 3,
+                                      makeGroupOperation(GroupOperationType.COUNT, null, "count"),
+                                      makeGroupOperation(GroupOperationType.MIN, "fieldB", "min"),
+                                      makeGroupOperation(GroupOperationType.AVG, "fieldB", "avg"));
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", 4.0).getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "bar").add("fieldB", 1.0).getRecord());
+
+        GroupBy another = makeGroupBy(singletonMap("fieldA", "A"), 3,
+                                      makeGroupOperation(GroupOperationType.COUNT, null, "count"),
+                                      makeGroupOperation(GroupOperationType.MIN, "fieldB", "min"),
+                                      makeGroupOperation(GroupOperationType.AVG, "fieldB", "avg"));
+        another.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", 2.0).getRecord());
+        another.consume(RecordBox.get().add("fieldA", "baz").add("fieldB", 3.0).getRecord());
+        groupBy.combine(another.getSerializedAggregation());
+
+        GroupBy last = makeGroupBy(singletonMap("fieldA", "A"), 3,
+                                   makeGroupOperation(GroupOperationType.COUNT, null, "count"),
+                                   makeGroupOperation(GroupOperationType.MIN, "fieldB", "min"),
+                                   makeGroupOperation(GroupOperationType.AVG, "fieldB", "avg"));
+        last.consume(RecordBox.get().add("fieldA", "qux").add("fieldB", 5.0).getRecord());
+        groupBy.combine(last.getSerializedAggregation());
+
+        // qux does not fit
+        List<BulletRecord> aggregate = sorted(groupBy.getAggregation().getRecords(), "A");
+        Assert.assertEquals(aggregate.size(), 3);
+        BulletRecord bar = RecordBox.get().add("A", "bar").add("count", 1L).add("min", 1.0).add("avg", 1.0)
+                                    .getRecord();
+        BulletRecord baz = RecordBox.get().add("A", "baz").add("count", 1L).add("min", 3.0).add("avg", 3.0)
+                                    .getRecord();
+        BulletRecord foo = RecordBox.get().add("A", "foo").add("count", 2L).add("min", 2.0).add("avg", 3.0)
+                                    .getRecord();
+        Assert.assertTrue(bar.equals(aggregate.get(0)));
+        Assert.assertTrue(baz.equals(aggregate.get(1)));
+        Assert.assertTrue(foo.equals(aggregate.get(2)));
+    }
+
+    @Test
+    public void testCombiningBadData() {
+        GroupBy groupBy = makeGroupBy(singletonMap("fieldA", "A"), 3,
+                                      makeGroupOperation(GroupOperationType.COUNT, null, "count"));
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").getRecord());
+
+        groupBy.combine(null);
+        groupBy.combine(String.valueOf(242).getBytes());
+
+        List<BulletRecord> aggregate = groupBy.getAggregation().getRecords();
+        Assert.assertEquals(aggregate.size(), 1);
+        Assert.assertTrue(RecordBox.get().add("A", "foo").add("count", 1L).getRecord().equals(aggregate.get(0)));
+    }
+
+    @Test
+    public void testCombiningPastGroupsThatDoNotFit() {
+        GroupBy groupBy = makeGroupBy(singletonMap("fieldA", "A"), 2,
+                                      makeGroupOperation(GroupOperationType.COUNT, null, "count"),
+                                      makeGroupOperation(GroupOperationType.SUM, "fieldB", "sum"));
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", 1.0).getRecord());
+        groupBy.consume(RecordBox.get().add("fieldA", "bar").add("fieldB", 1.0).getRecord());
+
+        GroupBy another = makeGroupBy(singletonMap("fieldA", "A"), 10,
+                                      makeGroupOperation(GroupOperationType.COUNT, null, "count"),
+                                      makeGroupOperation(GroupOperationType.SUM, "fieldB", "sum"));
+        IntStream.range(0, 8).forEach(i -> another.consume(RecordBox.get().add("fieldA", "baz" + i).getRecord()));
+        another.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", 2.0).getRecord());
+        another.consume(RecordBox.get().add("fieldA", "bar").getRecord());
+        groupBy.combine(another.getSerializedAggregation());
+
+        List<BulletRecord> aggregate = sorted(groupBy.getAggregation().getRecords(), "A");
+        Assert.assertEquals(aggregate.size(), 2);
+        BulletRecord bar = RecordBox.get().add("A", "bar").add("count", 2L).add("sum", 1.0).getRecord();
+        BulletRecord foo = RecordBox.get().add("A", "foo").add("count", 2L).add("sum", 3.0).getRecord();
+        Assert.assertTrue(bar.equals(aggregate.get(0)));
+        Assert.assertTrue(foo.equals(aggregate.get(1)));
+    }
+
+    @Test
+    public void testCombiningDifferentOperations() {
+        GroupBy groupBy = makeGroupBy(singletonMap("fieldA", "A"), 10,
+                                      makeGroupOperation(GroupOperationType.COUNT, null, "count"));
+        groupBy.consume(RecordBox.get().add("fieldA", "foo").getRecord());
+
+        GroupBy another = makeGroupBy(singletonMap("fieldA", "A"), 10,
+                                      makeGroupOperation(GroupOperationType.COUNT, null, "count"),
+                                      makeGroupOperation(GroupOperationType.MAX, "fieldB", "max"));
+        another.consume(RecordBox.get().add("fieldA", "foo").add("fieldB", 2.0).getRecord());
+        groupBy.combine(another.getSerializedAggregation());
+
+        List<BulletRecord> aggregate = groupBy.getAggregation().getRecords();
+        Assert.assertEquals(aggregate.size(), 1);
+        Assert.assertTrue(RecordBox.get().add("A", "foo").add("count", 2L).getRecord().equals(aggregate.get(0)));
+    }
+}
@@ -5,49 +5,32 @@
  */
 package com.yahoo.bullet.operations.aggregations;
 
+import com.sun.management.ThreadMXBean;
 import com.yahoo.bullet.operations.AggregationOperations.GroupOperationType;
 import com.yahoo.bullet.parsing.Aggregation;
 import com.yahoo.bullet.record.BulletRecord;
 import com.yahoo.bullet.result.RecordBox;
 import org.testng.Assert;
+import org.testng.SkipException;
 import org.testng.annotations.Test;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputStream;
+import java.io.InputStream;
 import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.IntStream;
 
 import static java.util.Arrays.asList;
 
 public class GroupDataTest {
-    private class NotSerializable {
-        private int foo;
-    }
-
-    private class UnserializableGroupData extends GroupData {
-        private NotSerializable notSerializable = new NotSerializable();
-
-        public UnserializableGroupData(Set<GroupOperation> operations) {
-            super(operations);
-        }
-    }
-
-    private GroupData make(byte[] data) {
-        try {
-            ByteArrayInputStream bis = new ByteArrayInputStream(data);
-            ObjectInputStream ois = new ObjectInputStream(bis);
-            return (GroupData) ois.readObject();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     private byte[] unmake(GroupData data) {
         try {
             ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -65,8 +48,7 @@ public class GroupDataTest {
 
     @Test
     public void testManualSerializationFailing() {
-        GroupData bad = new UnserializableGroupData(Collections.emptySet());
-        Assert.assertNull(GroupData.toBytes(bad));
+        Assert.assertNull(GroupData.toBytes(null));
     }
 
     @Test
@@ -77,8 +59,9 @@ public class GroupDataTest {
 
         byte[] serialized = GroupData.toBytes(data);
         Assert.assertNotNull(serialized);
+        Assert.assertEquals(serialized[0], GroupData.VERSION);
 
-        GroupData remade = make(serialized);
+        GroupData remade = GroupData.fromBytes(serialized);
         BulletRecord expected = RecordBox.get().add("foo", 5L).getRecord();
         Assert.assertEquals(remade.getAsBulletRecord(), expected);
     }
@@ -88,6 +71,149 @@ public class GroupDataTest {
         Assert.assertNull(GroupData.fromBytes(null));
     }
 
+    @Test
+    public void testDeserializingUnknownVersion() {
+        GroupData data = make(new GroupOperation(GroupOperationType.COUNT, null, "foo"));
+        byte[] serialized = GroupData.toBytes(data);
+        serialized[0] = GroupData.VERSION + 1;
+        Assert.assertNull(GroupData.fromBytes(serialized));
+    }
+
+    @Test
+    public void testDeserializingTruncatedData() {
+        GroupData data = make(new GroupOperation(GroupOperationType.SUM, "field", "sum"));
+        data.consume(RecordBox.get().add("field", 1.0).getRecord());
+        byte[] serialized = GroupData.toBytes(data);
+        Assert.assertNull(GroupData.fromBytes(Arrays.copyOf(serialized, serialized.length - 1)));
+    }
+
+    /*
+     * Serialized with Java serialization by the GroupData of an older version after it consumed records with the
+     * values 1.0, 2.0 and 5.0 and one record without the field.
+     */
+    private static byte[] getOlderVersionBytes() {
+        try (InputStream in = GroupDataTest.class.getResourceAsStream("/group_data_java_serialized.ser")) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                bos.write(buffer, 0, read);
+            }
+            return bos.toByteArray();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static GroupData makeAllOperations() {
+        return make(new GroupOperation(GroupOperationType.COUNT, null, "count"),
+                    new GroupOperation(GroupOperationType.SUM, "field", "sum"),
+                    new GroupOperation(GroupOperationType.MIN, "field", "min"),
+                    new GroupOperation(GroupOperationType.MAX, "field", "max"),
+                    new GroupOperation(GroupOperationType.AVG, "field", "avg"));
+    }
+
+    @Test
+    public void testOlderVersionCompatibility() {
+        byte[] older = getOlderVersionBytes();
+        BulletRecord expected = RecordBox.get().add("count", 4L).add("sum", 8.0).add("min", 1.0).add("max", 5.0)
+                                               .add("avg", 8.0 / 3).getRecord();
+        GroupData remade = GroupData.fromBytes(older);
+        Assert.assertNull(remade.getGroupFields());
+        Assert.assertTrue(expected.equals(remade.getAsBulletRecord()));
+
+        GroupData data = makeAllOperations();
+        data.consume(RecordBox.get().add("field", 0.0).getRecord());
+        data.combine(older);
+        expected = RecordBox.get().add("count", 5L).add("sum", 8.0).add("min", 0.0).add("max", 5.0)
+                                  .add("avg", 2.0).getRecord();
+        Assert.assertTrue(expected.equals(data.getAsBulletRecord()));
+
+        // This version writes the same form
+        Assert.assertTrue(expected.equals(GroupData.fromBytes(unmake(data)).getAsBulletRecord()));
+        Assert.assertTrue(GroupData.toBytes(data).length * 4 < older.length);
+    }
+
+    @Test
+    public void testJavaSerializationWithGroupFields() {
+        Map<String, String> groupFields = new LinkedHashMap<>();
+        groupFields.put("A", "foo");
+        GroupData data = new GroupData(groupFields, new HashSet<>(asList(
+            new GroupOperation(GroupOperationType.COUNT, null, "count"),
+            new GroupOperation(GroupOperationType.AVG, "field", "avg"))));
+        // No numbers so the average is null
+        data.consume(RecordBox.get().getRecord());
+
+        GroupData remade = GroupData.fromBytes(unmake(data));
+        Assert.assertEquals(remade.getGroupFields(), groupFields);
+        Assert.assertTrue(data.getAsBulletRecord().equals(remade.getAsBulletRecord()));
+        Assert.assertNull(remade.getAsBulletRecord().get("avg"));
+    }
+
+    @Test
+    public void testSerializingManyMetricsAndGroupFields() {
+        Set<GroupOperation> operations = new HashSet<>();
+        operations.add(new GroupOperation(GroupOperationType.COUNT, null, "count"));
+        // More than a byte's worth of doubles, not all of which are present
+        for (int i = 0; i < 10; ++i) {
+            operations.add(new GroupOperation(GroupOperationType.SUM, "field" + i, "sum" + i));
+        }
+        Map<String, String> groupFields = new LinkedHashMap<>();
+        groupFields.put("A", "foo");
+        groupFields.put("B", null);
+        GroupData data = new GroupData(groupFields, operations);
+        data.consume(RecordBox.get().add("field1", 1.0).add("field8", 8L).getRecord());
+        data.consume(RecordBox.get().add("field9", -9.0).add("field8", 1L).getRecord());
+
+        GroupData remade = GroupData.fromBytes(GroupData.toBytes(data));
+        Assert.assertEquals(remade.getGroupFields(), groupFields);
+        Assert.assertTrue(data.getAsBulletRecord().equals(remade.getAsBulletRecord()));
+        Assert.assertNull(remade.getAsBulletRecord().get("sum0"));
+
+        // Merging the bytes is the same as merging the reified object
+        data.combine(GroupData.toBytes(remade));
+        remade.combine(GroupData.fromBytes(GroupData.toBytes(remade)));
+        Assert.assertTrue(data.getAsBulletRecord().equals(remade.getAsBulletRecord()));
+        Assert.assertEquals(data.getAsBulletRecord().get("sum8"), 18.0);
+    }
+
+    @Test
+    public void testBinaryFormatIsSmallerAndFasterThanJavaSerialization() {
+        GroupData data = make(new GroupOperation(GroupOperationType.COUNT, null, "count"),
+                              new GroupOperation(GroupOperationType.MIN, "field", "min"),
+                              new GroupOperation(GroupOperationType.MAX, "field", "max"),
+                              new GroupOperation(GroupOperationType.SUM, "field", "sum"),
+                              new GroupOperation(GroupOperationType.AVG, "field", "avg"));
+        IntStream.range(0, 100).forEach(i -> data.consume(RecordBox.get().add("field", i).getRecord()));
+
+        byte[] binary = GroupData.toBytes(data);
+        byte[] java = unmake(data);
+        Assert.assertTrue(binary.length * 4 < java.length, binary.length + " is not much smaller than " + java.length);
+
+        GroupData target = make(new GroupOperation(GroupOperationType.COUNT, null, "count"),
+                                new GroupOperation(GroupOperationType.MIN, "field", "min"),
+                                new GroupOperation(GroupOperationType.MAX, "field", "max"),
+                                new GroupOperation(GroupOperationType.SUM, "field", "sum"),
+                                new GroupOperation(GroupOperationType.AVG, "field", "avg"));
+        int iterations = 5000;
+        // Warm up both
+        for (int i = 0; i < iterations; ++i) {
+            target.combine(binary);
+            target.combine(java);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            target.combine(binary);
+        }
+        long binaryTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            target.combine(java);
+        }
+        long javaTime = System.nanoTime() - start;
+        Assert.assertTrue(binaryTime < javaTime, binaryTime + "ns is not faster than " + javaTime + "ns");
+        Assert.assertEquals(target.getCounts().get("count"), (Long) (100L * 4 * iterations));
+    }
+
     @Test
     public void testManualDeserialization() {
         GroupData data = make(new GroupOperation(GroupOperationType.COUNT, null, "foo"));
@@ -547,4 +673,134 @@ public class GroupDataTest {
         expected = RecordBox.get().add("foo", 18.6).getRecord();
         Assert.assertEquals(data.getAsBulletRecord(), expected);
     }
+
+    @Test
+    public void testScalingForSampling() {
+        GroupData data = make(new GroupOperation(GroupOperationType.COUNT, null, "myCount"),
+                              new GroupOperation(GroupOperationType.SUM, "field", "mySum"),
+                              new GroupOperation(GroupOperationType.AVG, "field", "myAvg"),
+                              new GroupOperation(GroupOperationType.MIN, "field", "myMin"),
+                              new GroupOperation(GroupOperationType.MAX, "field", "myMax"));
+        IntStream.range(1, 4).mapToObj(i -> RecordBox.get().add("field", i).getRecord()).forEach(data::consume);
+
+        BulletRecord expected = RecordBox.get().add("myCount", 12L).add("mySum", 24.0).add("myAvg", 2.0)
+                                               .add("myMin", 1.0).add("myMax", 3.0).getRecord();
+        Assert.assertTrue(expected.equals(data.getAsBulletRecord(0.25)));
+        Assert.assertTrue(data.getAsBulletRecord().equals(data.getAsBulletRecord(1.0)));
+    }
+
+    @Test
+    public void testScalingEmptyForSampling() {
+        GroupData data = make(new GroupOperation(GroupOperationType.COUNT, null, null),
+                              new GroupOperation(GroupOperationType.SUM, "field", null));
+        BulletRecord expected = RecordBox.get().add(GroupOperationType.COUNT.getName(), 0L)
+                                               .addNull(GroupOperationType.SUM.getName() + "_field").getRecord();
+        Assert.assertTrue(expected.equals(data.getAsBulletRecord(0.5)));
+    }
+
+    @Test
+    public void testGettingCounts() {
+        GroupData data = make(new GroupOperation(GroupOperationType.COUNT, null, "myCount"),
+                              new GroupOperation(GroupOperationType.AVG, "field", null));
+        Assert.assertEquals(data.getCounts().get("myCount"), (Long) 0L);
+
+        data.consume(RecordBox.get().add("field", 1).getRecord());
+        data.consume(RecordBox.get().getRecord());
+        // The count kept for the AVG is not a COUNT
+        Assert.assertEquals(data.getCounts().size(), 1);
+        Assert.assertEquals(data.getCounts().get("myCount"), (Long) 2L);
+    }
+
+    @Test
+    public void testLayoutsOfTheSameOperationsAreEqual() {
+        GroupOperation count = new GroupOperation(GroupOperationType.COUNT, null, "count");
+        GroupOperation sum = new GroupOperation(GroupOperationType.SUM, "field", "sum");
+        GroupOperation avg = new GroupOperation(GroupOperationType.AVG, "field", "avg");
+        GroupData.Layout layout = new GroupData.Layout(new LinkedHashSet<>(asList(count, sum, avg)));
+        GroupData.Layout another = new GroupData.Layout(new LinkedHashSet<>(asList(avg, count, sum)));
+        Assert.assertEquals(layout, another);
+        Assert.assertEquals(layout.hashCode(), another.hashCode());
+        Assert.assertNotEquals(layout, new GroupData.Layout(new HashSet<>(asList(count, sum))));
+        Assert.assertNotEquals(layout, null);
+    }
+
+    @Test
+    public void testSharedLayout() {
+        GroupData.Layout layout = new GroupData.Layout(new HashSet<>(asList(
+                new GroupOperation(GroupOperationType.COUNT, null, "count"),
+                new GroupOperation(GroupOperationType.MAX, "field", "max"),
+                new GroupOperation(GroupOperationType.AVG, "field", "avg"))));
+        GroupData data = new GroupData(null, layout);
+        GroupData another = new GroupData(null, layout);
+        data.consume(RecordBox.get().add("field", 1L).getRecord());
+        another.consume(RecordBox.get().add("field", 5.0).getRecord());
+        another.consume(RecordBox.get().add("field", 3).getRecord());
+
+        // The data is not shared
+        BulletRecord expected = RecordBox.get().add("count", 1L).add("max", 1.0).add("avg", 1.0).getRecord();
+        Assert.assertTrue(expected.equals(data.getAsBulletRecord()));
+
+        data.combine(GroupData.toBytes(another));
+        expected = RecordBox.get().add("count", 3L).add("max", 5.0).add("avg", 3.0).getRecord();
+        Assert.assertTrue(expected.equals(data.getAsBulletRecord()));
+    }
+
+    @Test
+    public void testMergingPartlyOverlappingOperations() {
+        GroupData data = make(new GroupOperation(GroupOperationType.COUNT, null, "count"),
+                              new GroupOperation(GroupOperationType.MIN, "field", "min"),
+                              new GroupOperation(GroupOperationType.AVG, "field", "avg"));
+        data.consume(RecordBox.get().add("field", 4.0).getRecord());
+
+        GroupData another = make(new GroupOperation(GroupOperationType.AVG, "field", "avg"),
+                                 new GroupOperation(GroupOperationType.SUM, "field", "sum"),
+                                 new GroupOperation(GroupOperationType.MIN, "other", "min"));
+        another.consume(RecordBox.get().add("field", 2.0).add("other", -1.0).getRecord());
+
+        data.combine(another);
+        BulletRecord expected = RecordBox.get().add("count", 1L).add("min", 4.0).add("avg", 3.0).getRecord();
+        Assert.assertTrue(expected.equals(data.getAsBulletRecord()));
+    }
+
+    @Test
+    public void testCountingAField() {
+        GroupData data = make(new GroupOperation(GroupOperationType.COUNT_FIELD, "field", "count"));
+        data.consume(RecordBox.get().add("field", "foo").getRecord());
+        data.consume(RecordBox.get().getRecord());
+
+        GroupData another = make(new GroupOperation(GroupOperationType.COUNT_FIELD, "field", "count"));
+        another.consume(RecordBox.get().add("field", 1).getRecord());
+        data.combine(another);
+
+        // Only kept for AVG and not exposed
+        Assert.assertTrue(RecordBox.get().getRecord().equals(data.getAsBulletRecord()));
+    }
+
+    @Test
+    public void testConsumingDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof ThreadMXBean) || !((ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Measuring allocated memory per thread is not supported");
+        }
+        ThreadMXBean threadBean = (ThreadMXBean) bean;
+        GroupData data = make(new GroupOperation(GroupOperationType.COUNT, null, "count"),
+                              new GroupOperation(GroupOperationType.MIN, "field", "min"),
+                              new GroupOperation(GroupOperationType.MAX, "field", "max"),
+                              new GroupOperation(GroupOperationType.SUM, "field", "sum"),
+                              new GroupOperation(GroupOperationType.AVG, "field", "avg"));
+        BulletRecord record = RecordBox.get().add("field", 4.2).getRecord();
+        int iterations = 100000;
+        // Warm up
+        for (int i = 0; i < iterations; ++i) {
+            data.consume(record);
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; ++i) {
+            data.consume(record);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        // Allow for some noise that is not from the data
+        Assert.assertTrue(allocated / (double) iterations < 1.0, "Allocated " + allocated + " bytes");
+    }
 }
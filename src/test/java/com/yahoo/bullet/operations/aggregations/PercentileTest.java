@@ -0,0 +1,277 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.aggregations;
+
+import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.operations.AggregationOperations.AggregationType;
+import com.yahoo.bullet.operations.aggregations.Percentile.DistributionType;
+import com.yahoo.bullet.parsing.Aggregation;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.Clip;
+import com.yahoo.bullet.result.Metadata.Concept;
+import com.yahoo.bullet.result.RecordBox;
+import com.yahoo.sketches.Family;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+
+public class PercentileTest {
+    private static final double EPSILON = 1E-6;
+
+    @SafeVarargs
+    public static Percentile makePercentile(Map<Object, Object> configuration, Map<String, Object> attributes,
+                                            Map.Entry<Concept, String>... metadata) {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(AggregationType.PERCENTILE);
+        aggregation.setFields(singletonMap("field", null));
+        aggregation.setAttributes(attributes);
+        Map<String, String> metadataKeys = new HashMap<>();
+        for (Map.Entry<Concept, String> e : metadata) {
+            metadataKeys.put(e.getKey().getName(), e.getValue());
+        }
+        configuration.put(BulletConfig.RESULT_METADATA_METRICS_MAPPING, metadataKeys);
+        aggregation.setConfiguration(configuration);
+        return new Percentile(aggregation);
+    }
+
+    public static Percentile makePercentile(DistributionType type, List<?> points) {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(Percentile.TYPE_KEY, type.name());
+        attributes.put(Percentile.POINTS_KEY, points);
+        return makePercentile(new HashMap<>(), attributes);
+    }
+
+    private static void consume(Percentile percentile, int from, int to) {
+        IntStream.range(from, to).mapToObj(i -> RecordBox.get().add("field", (long) i).getRecord())
+                                 .forEach(percentile::consume);
+    }
+
+    private static void assertRange(BulletRecord record, String range, double probability, double count) {
+        Assert.assertEquals(record.get(Percentile.RANGE_FIELD), range);
+        Assert.assertEquals((Double) record.get(Percentile.PROBABILITY_FIELD), probability, EPSILON);
+        Assert.assertEquals((Double) record.get(Percentile.COUNT_FIELD), count, EPSILON);
+    }
+
+    @Test
+    public void testNoRecords() {
+        Percentile percentile = makePercentile(new HashMap<>(), null);
+        Assert.assertNotNull(percentile.getSerializedAggregation());
+        Assert.assertTrue(percentile.getAggregation().getRecords().isEmpty());
+    }
+
+    @Test
+    public void testExactQuantiles() {
+        Percentile percentile = makePercentile(DistributionType.QUANTILE, asList(0.5, 0, 1.0));
+        consume(percentile, 1, 101);
+        // Not numbers
+        percentile.consume(RecordBox.get().add("field", "1000").getRecord());
+        percentile.consume(RecordBox.get().add("field", Double.NaN).getRecord());
+        percentile.consume(RecordBox.get().getRecord());
+
+        List<BulletRecord> records = percentile.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 3);
+        BulletRecord expected = RecordBox.get().add(Percentile.QUANTILE_FIELD, 0.0)
+                                               .add(Percentile.VALUE_FIELD, 1.0).getRecord();
+        Assert.assertTrue(expected.equals(records.get(0)));
+        expected = RecordBox.get().add(Percentile.QUANTILE_FIELD, 0.5).add(Percentile.VALUE_FIELD, 51.0).getRecord();
+        Assert.assertTrue(expected.equals(records.get(1)));
+        expected = RecordBox.get().add(Percentile.QUANTILE_FIELD, 1.0).add(Percentile.VALUE_FIELD, 100.0).getRecord();
+        Assert.assertTrue(expected.equals(records.get(2)));
+    }
+
+    @Test
+    public void testDefaultQuantiles() {
+        Percentile percentile = makePercentile(new HashMap<>(), null);
+        consume(percentile, 0, 101);
+
+        List<BulletRecord> records = percentile.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), Percentile.DEFAULT_NUMBER_OF_POINTS);
+        for (int i = 0; i < records.size(); ++i) {
+            Assert.assertEquals((Double) records.get(i).get(Percentile.QUANTILE_FIELD), i * 0.1, EPSILON);
+            Assert.assertEquals((Double) records.get(i).get(Percentile.VALUE_FIELD), i * 10.0, EPSILON);
+        }
+    }
+
+    @Test
+    public void testPMF() {
+        Percentile percentile = makePercentile(DistributionType.PMF, asList(50, 25L, 25.0));
+        consume(percentile, 0, 100);
+
+        List<BulletRecord> records = percentile.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 3);
+        assertRange(records.get(0), "(-inf to 25.0)", 0.25, 25.0);
+        assertRange(records.get(1), "[25.0 to 50.0)", 0.25, 25.0);
+        assertRange(records.get(2), "[50.0 to +inf)", 0.5, 50.0);
+    }
+
+    @Test
+    public void testCDF() {
+        Percentile percentile = makePercentile(DistributionType.CDF, asList(25, 50));
+        consume(percentile, 0, 100);
+
+        List<BulletRecord> records = percentile.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 3);
+        assertRange(records.get(0), "(-inf to 25.0)", 0.25, 25.0);
+        assertRange(records.get(1), "(-inf to 50.0)", 0.5, 50.0);
+        assertRange(records.get(2), "(-inf to +inf)", 1.0, 100.0);
+    }
+
+    @Test
+    public void testEvenlySpacedPoints() {
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(Percentile.TYPE_KEY, "CDF");
+        attributes.put(Percentile.NUMBER_OF_POINTS_KEY, 3);
+        Percentile percentile = makePercentile(new HashMap<>(), attributes);
+        consume(percentile, 0, 101);
+
+        List<BulletRecord> records = percentile.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 4);
+        assertRange(records.get(0), "(-inf to 0.0)", 0.0, 0.0);
+        assertRange(records.get(1), "(-inf to 50.0)", 50.0 / 101, 50.0);
+        assertRange(records.get(2), "(-inf to 100.0)", 100.0 / 101, 100.0);
+        assertRange(records.get(3), "(-inf to +inf)", 1.0, 101.0);
+    }
+
+    @Test
+    public void testMaxPoints() {
+        Map<Object, Object> config = new HashMap<>();
+        config.put(BulletConfig.PERCENTILE_AGGREGATION_MAX_POINTS, 2);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(Percentile.POINTS_KEY, asList(0.9, 0.1, 0.5));
+        Percentile percentile = makePercentile(config, attributes);
+        consume(percentile, 0, 10);
+
+        List<BulletRecord> records = percentile.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 2);
+        Assert.assertEquals(records.get(0).get(Percentile.QUANTILE_FIELD), 0.1);
+        Assert.assertEquals(records.get(1).get(Percentile.QUANTILE_FIELD), 0.5);
+    }
+
+    @Test
+    public void testCombining() {
+        Percentile percentile = makePercentile(DistributionType.PMF, asList(100, 200));
+        consume(percentile, 0, 150);
+        Percentile another = makePercentile(DistributionType.PMF, asList(100, 200));
+        consume(another, 150, 300);
+
+        Percentile join = makePercentile(DistributionType.PMF, asList(100, 200));
+        join.combine(percentile.getSerializedAggregation());
+        join.combine(another.getSerializedAggregation());
+
+        List<BulletRecord> records = join.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 3);
+        assertRange(records.get(0), "(-inf to 100.0)", 1.0 / 3, 100.0);
+        assertRange(records.get(1), "[100.0 to 200.0)", 1.0 / 3, 100.0);
+        assertRange(records.get(2), "[200.0 to +inf)", 1.0 / 3, 100.0);
+    }
+
+    @Test
+    public void testCombiningBadData() {
+        Percentile percentile = makePercentile(DistributionType.QUANTILE, asList(1.0));
+        consume(percentile, 0, 10);
+        percentile.combine(new byte[0]);
+        percentile.combine(String.valueOf(242).getBytes());
+
+        List<BulletRecord> records = percentile.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 1);
+        Assert.assertEquals(records.get(0).get(Percentile.VALUE_FIELD), 9.0);
+    }
+
+    @Test
+    public void testApproximateQuantilesWithMetadata() {
+        Map<Object, Object> config = new HashMap<>();
+        config.put(BulletConfig.PERCENTILE_AGGREGATION_SKETCH_ENTRIES, 32);
+        Map<String, Object> attributes = singletonMap(Percentile.POINTS_KEY, asList(0.5, 0.9));
+        Percentile percentile = makePercentile(config, attributes,
+                                               Pair.of(Concept.AGGREGATION_METADATA, "stats"),
+                                               Pair.of(Concept.ESTIMATED_RESULT, "isEstimate"),
+                                               Pair.of(Concept.SKETCH_FAMILY, "family"),
+                                               Pair.of(Concept.SKETCH_SIZE, "size"),
+                                               Pair.of(Concept.NORMALIZED_RANK_ERROR, "error"),
+                                               Pair.of(Concept.ITEMS_SEEN, "seen"),
+                                               Pair.of(Concept.MINIMUM_VALUE, "min"),
+                                               Pair.of(Concept.MAXIMUM_VALUE, "max"));
+        consume(percentile, 0, 10000);
+
+        Clip clip = percentile.getAggregation();
+        Map<String, Object> stats = (Map<String, Object>) clip.getMeta().asMap().get("stats");
+        Assert.assertEquals(stats.size(), 7);
+        Assert.assertTrue((Boolean) stats.get("isEstimate"));
+        Assert.assertEquals(stats.get("family"), Family.QUANTILES.getFamilyName());
+        Assert.assertTrue((Integer) stats.get("size") > 0);
+        Assert.assertEquals(stats.get("seen"), 10000L);
+        Assert.assertEquals(stats.get("min"), 0.0);
+        Assert.assertEquals(stats.get("max"), 9999.0);
+        double error = (Double) stats.get("error");
+        Assert.assertTrue(error > 0.0 && error < 0.1);
+
+        // The values are within the rank error of the true ones
+        List<BulletRecord> records = clip.getRecords();
+        Assert.assertEquals(records.size(), 2);
+        Assert.assertEquals((Double) records.get(0).get(Percentile.VALUE_FIELD), 5000.0, 10000 * error);
+        Assert.assertEquals((Double) records.get(1).get(Percentile.VALUE_FIELD), 9000.0, 10000 * error);
+    }
+
+    @Test
+    public void testExactResultMetadata() {
+        Percentile percentile = makePercentile(new HashMap<>(), null,
+                                               Pair.of(Concept.AGGREGATION_METADATA, "stats"),
+                                               Pair.of(Concept.ESTIMATED_RESULT, "isEstimate"));
+        consume(percentile, 0, 100);
+        Map<String, Object> stats = (Map<String, Object>) percentile.getAggregation().getMeta().asMap().get("stats");
+        Assert.assertEquals(stats.size(), 1);
+        Assert.assertFalse((Boolean) stats.get("isEstimate"));
+    }
+
+    @Test
+    public void testDistributionTypes() {
+        Assert.assertEquals(Percentile.getDistributionType(null), DistributionType.QUANTILE);
+        Assert.assertEquals(Percentile.getDistributionType(singletonMap(Percentile.TYPE_KEY, "PMF")),
+                            DistributionType.PMF);
+        Assert.assertEquals(Percentile.getDistributionType(singletonMap(Percentile.TYPE_KEY, "CDF")),
+                            DistributionType.CDF);
+        Assert.assertNull(Percentile.getDistributionType(singletonMap(Percentile.TYPE_KEY, "cdf")));
+    }
+
+    @Test
+    public void testPoints() {
+        Assert.assertNull(Percentile.getPoints(null, 10));
+        Assert.assertNull(Percentile.getPoints(singletonMap(Percentile.POINTS_KEY, "0.5"), 10));
+        Assert.assertNull(Percentile.getPoints(singletonMap(Percentile.POINTS_KEY, asList("0.5", null)), 10));
+        double[] points = Percentile.getPoints(singletonMap(Percentile.POINTS_KEY, asList(3, 1.0, "2", 1L, -4.5)), 10);
+        Assert.assertEquals(points, new double[] { -4.5, 1.0, 3.0 });
+        Assert.assertEquals(Percentile.getPoints(singletonMap(Percentile.POINTS_KEY, asList(3, 2, 1)), 2),
+                            new double[] { 1.0, 2.0 });
+
+        Assert.assertTrue(Percentile.hasValidPoints(null));
+        Assert.assertTrue(Percentile.hasValidPoints(singletonMap(Percentile.POINTS_KEY, asList(0, 0.5, 1))));
+        Assert.assertFalse(Percentile.hasValidPoints(singletonMap(Percentile.POINTS_KEY, asList(-0.1, 0.5))));
+    }
+
+    @Test
+    public void testNumberOfPoints() {
+        Assert.assertEquals(Percentile.getNumberOfPoints(null, 100), Percentile.DEFAULT_NUMBER_OF_POINTS);
+        Assert.assertEquals(Percentile.getNumberOfPoints(null, 5), 5);
+        Assert.assertEquals(Percentile.getNumberOfPoints(singletonMap(Percentile.NUMBER_OF_POINTS_KEY, 20), 100), 20);
+        Assert.assertEquals(Percentile.getNumberOfPoints(singletonMap(Percentile.NUMBER_OF_POINTS_KEY, -2), 100), 1);
+    }
+
+    @Test
+    public void testK() {
+        Assert.assertEquals(Percentile.getK(128), 128);
+        Assert.assertEquals(Percentile.getK(100), 128);
+        Assert.assertEquals(Percentile.getK(0), Percentile.MIN_K);
+        Assert.assertEquals(Percentile.getK(100000), Percentile.MAX_K);
+    }
+}
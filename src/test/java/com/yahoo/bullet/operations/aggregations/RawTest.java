@@ -14,9 +14,10 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
-import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -25,13 +26,10 @@ import static java.util.Collections.singletonMap;
 import static java.util.stream.Collectors.toList;
 
 public class RawTest {
-    private class NoSerDeBulletRecord extends BulletRecord implements Serializable {
-        private void writeObject(java.io.ObjectOutputStream out) throws IOException {
-            throw new IOException("Forced test serialization failure");
-        }
-
-        private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
-            throw new IOException("Forced test deserialization failure");
+    private class UnsupportedBulletRecord extends BulletRecord {
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return singletonMap("foo", (Object) new Object()).entrySet().iterator();
         }
     }
 
@@ -115,7 +113,7 @@ public class RawTest {
 
     @Test
     public void testWritingBadRecord() throws IOException {
-        BulletRecord mocked = new NoSerDeBulletRecord();
+        BulletRecord mocked = new UnsupportedBulletRecord();
 
         Raw raw = makeRaw(1);
         raw.consume(mocked);
@@ -124,8 +122,6 @@ public class RawTest {
 
     @Test
     public void tesReadingBadSerialization() throws IOException {
-        BulletRecord mocked = new NoSerDeBulletRecord();
-
         Raw raw = makeRaw(1);
         raw.combine(new byte[0]);
 
@@ -249,4 +245,52 @@ public class RawTest {
         expected.add(RecordBox.get().add("i", 0).getRecord());
         Assert.assertEquals(actual, expected);
     }
+
+    @Test
+    public void testCombiningTruncatesWithoutDecodingTheRest() {
+        Raw raw = makeRaw(3);
+        List<BulletRecord> records = IntStream.range(0, 5).mapToObj(x -> RecordBox.get().add("i", x).getRecord())
+                                              .collect(toList());
+        byte[] batch = getListBytes(records.toArray(new BulletRecord[5]));
+        // Corrupt the last record, which is never read
+        batch[batch.length - 1] = (byte) 0xFF;
+
+        raw.combine(batch);
+        Assert.assertEquals(raw.getAggregation().getRecords(), records.subList(0, 3));
+        Assert.assertFalse(raw.isAcceptingData());
+    }
+
+    @Test
+    public void testCombiningJavaSerializedBatches() {
+        Raw raw = makeRaw(3);
+        List<BulletRecord> records = IntStream.range(0, 5).mapToObj(x -> RecordBox.get().add("i", x).getRecord())
+                                              .collect(Collectors.toCollection(ArrayList::new));
+        // Serialized by an older version
+        raw.combine(TestHelpers.serialize(records));
+        Assert.assertEquals(raw.getAggregation().getRecords(), records.subList(0, 3));
+    }
+
+    @Test
+    public void testConsumedRecordsAreAggregated() {
+        Raw raw = makeRaw(10, 5);
+        List<BulletRecord> records = IntStream.range(0, 3).mapToObj(x -> RecordBox.get().add("i", x).getRecord())
+                                              .collect(toList());
+        records.forEach(raw::consume);
+        Assert.assertEquals(raw.getAggregation().getRecords(), records);
+        Assert.assertEquals(raw.getSerializedAggregation(), getListBytes(records.toArray(new BulletRecord[3])));
+        Assert.assertTrue(raw.getAggregation().getRecords().isEmpty());
+    }
+
+    @Test
+    public void testRecordsThatCannotBeWrittenAreNotConsumed() {
+        Raw raw = makeRaw(2, 2);
+        BulletRecord record = RecordBox.get().add("foo", "bar").getRecord();
+        raw.consume(record);
+        raw.consume(new UnsupportedBulletRecord());
+        Assert.assertFalse(raw.isMicroBatch());
+        Assert.assertTrue(raw.isAcceptingData());
+        raw.consume(record);
+        Assert.assertTrue(raw.isMicroBatch());
+        Assert.assertEquals(raw.getSerializedAggregation(), getListBytes(record, record));
+    }
 }
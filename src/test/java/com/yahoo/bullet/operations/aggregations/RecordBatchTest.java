@@ -0,0 +1,150 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.aggregations;
+
+import com.yahoo.bullet.TestHelpers;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.RecordBox;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+
+public class RecordBatchTest {
+    private static List<BulletRecord> makeRecords(int count) {
+        return IntStream.range(0, count).mapToObj(i -> RecordBox.get().add("id", (long) i).add("name", "record" + i)
+                                                                .add("score", i * 1.5).add("valid", i % 2 == 0)
+                                                                .getRecord())
+                        .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        List<BulletRecord> records = makeRecords(10);
+        byte[] serialized = RecordBatch.toBytes(records);
+        Assert.assertEquals(serialized[0], RecordBatch.VERSION);
+        Assert.assertEquals(RecordBatch.fromBytes(serialized), records);
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        byte[] serialized = RecordBatch.toBytes(Collections.emptyList());
+        Assert.assertNotNull(serialized);
+        Assert.assertTrue(RecordBatch.fromBytes(serialized).isEmpty());
+    }
+
+    @Test
+    public void testAllTypes() {
+        Map<String, Long> longs = new HashMap<>();
+        longs.put("a", Long.MIN_VALUE);
+        longs.put("b", null);
+        Map<String, Double> doubles = singletonMap("c", -0.5);
+        Map<String, Boolean> booleans = singletonMap("d", true);
+        BulletRecord record = new BulletRecord().setString("string", "foo")
+                                                .setString("nothing", null)
+                                                .setBoolean("boolean", false)
+                                                .setInteger("integer", -42)
+                                                .setLong("long", Long.MAX_VALUE)
+                                                .setFloat("float", 4.2f)
+                                                .setDouble("double", Double.NaN)
+                                                .setStringMap("stringMap", singletonMap("e", "é中"))
+                                                .setLongMap("longMap", longs)
+                                                .setDoubleMap("doubleMap", doubles)
+                                                .setBooleanMap("booleanMap", booleans)
+                                                .setStringMap("emptyMap", Collections.emptyMap())
+                                                .setListOfLongMap("list", asList(longs, null))
+                                                .setListOfDoubleMap("doubleList", singletonList(doubles))
+                                                .setListOfBooleanMap("booleanList", singletonList(booleans));
+        List<BulletRecord> remade = RecordBatch.fromBytes(RecordBatch.toBytes(singletonList(record)));
+        Assert.assertEquals(remade.size(), 1);
+        Assert.assertTrue(record.equals(remade.get(0)));
+    }
+
+    @Test
+    public void testReadingAMaximum() {
+        List<BulletRecord> records = makeRecords(10);
+        byte[] serialized = RecordBatch.toBytes(records);
+        Assert.assertEquals(RecordBatch.fromBytes(serialized, 4), records.subList(0, 4));
+        Assert.assertEquals(RecordBatch.fromBytes(serialized, 20), records);
+        Assert.assertTrue(RecordBatch.fromBytes(serialized, 0).isEmpty());
+        Assert.assertTrue(RecordBatch.fromBytes(serialized, -1).isEmpty());
+    }
+
+    @Test
+    public void testUnsupportedTypes() {
+        BulletRecord record = new BulletRecord().setStringMap("map", (Map) singletonMap("a", 1));
+        Assert.assertNull(RecordBatch.toBytes(singletonList(record)));
+    }
+
+    @Test
+    public void testReadingBadData() {
+        Assert.assertTrue(RecordBatch.fromBytes(null).isEmpty());
+        Assert.assertTrue(RecordBatch.fromBytes(new byte[0]).isEmpty());
+        Assert.assertTrue(RecordBatch.fromBytes(String.valueOf(242).getBytes()).isEmpty());
+
+        byte[] serialized = RecordBatch.toBytes(makeRecords(2));
+        Assert.assertTrue(RecordBatch.fromBytes(Arrays.copyOf(serialized, serialized.length - 1)).isEmpty());
+        serialized[0] = RecordBatch.VERSION + 1;
+        Assert.assertTrue(RecordBatch.fromBytes(serialized).isEmpty());
+    }
+
+    @Test
+    public void testJavaSerializedCompatibility() {
+        List<BulletRecord> records = makeRecords(5);
+        byte[] serialized = TestHelpers.serialize(records);
+        Assert.assertEquals(RecordBatch.fromBytes(serialized), records);
+        Assert.assertEquals(RecordBatch.fromBytes(serialized, 2), records.subList(0, 2));
+        Assert.assertTrue(RecordBatch.fromBytes(TestHelpers.serialize("foo")).isEmpty());
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() {
+        List<BulletRecord> records = makeRecords(100);
+        byte[] binary = RecordBatch.toBytes(records);
+        byte[] java = TestHelpers.serialize(records);
+        Assert.assertTrue(binary.length * 2 < java.length, binary.length + " is not much smaller than " + java.length);
+    }
+
+    @Test
+    public void testWriterIsReusable() {
+        List<BulletRecord> records = makeRecords(6);
+        RecordBatch.Writer writer = new RecordBatch.Writer();
+        records.subList(0, 4).forEach(writer::add);
+        Assert.assertEquals(writer.getSize(), 4);
+        Assert.assertEquals(writer.toBytes(), RecordBatch.toBytes(records.subList(0, 4)));
+        // Not reset till asked
+        Assert.assertEquals(writer.getSize(), 4);
+
+        writer.reset();
+        Assert.assertEquals(writer.getSize(), 0);
+        Assert.assertTrue(RecordBatch.fromBytes(writer.toBytes()).isEmpty());
+        records.subList(4, 6).forEach(writer::add);
+        Assert.assertEquals(writer.toBytes(), RecordBatch.toBytes(records.subList(4, 6)));
+    }
+
+    @Test
+    public void testWriterLeavesOutRecordsThatCannotBeWritten() {
+        List<BulletRecord> records = makeRecords(2);
+        BulletRecord bad = RecordBox.get().add("id", 42L).getRecord().setStringMap("map", (Map) singletonMap("a", 1));
+        RecordBatch.Writer writer = new RecordBatch.Writer();
+        Assert.assertTrue(writer.add(records.get(0)));
+        Assert.assertFalse(writer.add(bad));
+        Assert.assertTrue(writer.add(records.get(1)));
+        Assert.assertEquals(writer.getSize(), 2);
+        Assert.assertEquals(RecordBatch.fromBytes(writer.toBytes()), records);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.aggregations;
+
+import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.operations.AggregationOperations.AggregationType;
+import com.yahoo.bullet.parsing.Aggregation;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.Clip;
+import com.yahoo.bullet.result.Metadata.Concept;
+import com.yahoo.bullet.result.RecordBox;
+import com.yahoo.sketches.Family;
+import com.yahoo.sketches.frequencies.ErrorType;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static java.util.Collections.singletonMap;
+
+public class TopKTest {
+    @SafeVarargs
+    public static TopK makeTopK(Map<Object, Object> configuration, Map<String, Object> attributes,
+                                Map<String, String> fields, int size, Map.Entry<Concept, String>... metadata) {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(AggregationType.TOP);
+        aggregation.setFields(fields);
+        aggregation.setAttributes(attributes);
+        aggregation.setSize(size);
+        Map<String, String> metadataKeys = new HashMap<>();
+        for (Map.Entry<Concept, String> e : metadata) {
+            metadataKeys.put(e.getKey().getName(), e.getValue());
+        }
+        configuration.put(BulletConfig.RESULT_METADATA_METRICS_MAPPING, metadataKeys);
+        aggregation.setConfiguration(configuration);
+        return new TopK(aggregation);
+    }
+
+    public static TopK makeTopK(Map<String, String> fields, int size) {
+        return makeTopK(new HashMap<>(), null, fields, size);
+    }
+
+    private static void consume(TopK topK, String field, Object value, int times) {
+        BulletRecord record = RecordBox.get().add(field, value).getRecord();
+        IntStream.range(0, times).forEach(i -> topK.consume(record));
+    }
+
+    @Test
+    public void testNoRecords() {
+        TopK topK = makeTopK(singletonMap("field", "A"), 3);
+        Assert.assertNotNull(topK.getSerializedAggregation());
+        Assert.assertTrue(topK.getAggregation().getRecords().isEmpty());
+    }
+
+    @Test
+    public void testExactTopK() {
+        TopK topK = makeTopK(singletonMap("field", "A"), 2);
+        consume(topK, "field", "foo", 5);
+        consume(topK, "field", "bar", 10);
+        consume(topK, "field", "baz", 1);
+        topK.consume(RecordBox.get().getRecord());
+
+        List<BulletRecord> records = topK.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 2);
+        Assert.assertTrue(RecordBox.get().add("A", "bar").add("COUNT", 10L).getRecord().equals(records.get(0)));
+        Assert.assertTrue(RecordBox.get().add("A", "foo").add("COUNT", 5L).getRecord().equals(records.get(1)));
+    }
+
+    @Test
+    public void testManyFieldsNewNameAndThreshold() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("fieldA", "A");
+        fields.put("fieldB", "");
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(TopK.NEW_NAME_KEY, "cnt");
+        attributes.put(TopK.THRESHOLD_KEY, 3.0);
+        TopK topK = makeTopK(new HashMap<>(), attributes, fields, 10);
+        BulletRecord first = RecordBox.get().add("fieldA", "foo").add("fieldB", 1L).getRecord();
+        BulletRecord second = RecordBox.get().add("fieldA", "foo").add("fieldB", "a|b:3").getRecord();
+        BulletRecord third = RecordBox.get().add("fieldA", "bar").getRecord();
+        IntStream.range(0, 4).forEach(i -> topK.consume(first));
+        IntStream.range(0, 3).forEach(i -> topK.consume(second));
+        IntStream.range(0, 2).forEach(i -> topK.consume(third));
+
+        List<BulletRecord> records = topK.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 2);
+        BulletRecord expected = RecordBox.get().add("A", "foo").add("fieldB", "1").add("cnt", 4L).getRecord();
+        Assert.assertTrue(expected.equals(records.get(0)));
+        expected = RecordBox.get().add("A", "foo").add("fieldB", "a|b:3").add("cnt", 3L).getRecord();
+        Assert.assertTrue(expected.equals(records.get(1)));
+    }
+
+    @Test
+    public void testValuesWithSeparatorsAreDifferentItems() {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("fieldA", "");
+        fields.put("fieldB", "");
+        TopK topK = makeTopK(fields, 10);
+        BulletRecord first = RecordBox.get().add("fieldA", "a|b").add("fieldB", "c").getRecord();
+        BulletRecord second = RecordBox.get().add("fieldA", "a").add("fieldB", "b|c").getRecord();
+        BulletRecord third = RecordBox.get().add("fieldA", "1:a").add("fieldB", "").getRecord();
+        BulletRecord fourth = RecordBox.get().add("fieldA", "1").add("fieldB", "a0:").getRecord();
+        IntStream.range(0, 4).forEach(i -> topK.consume(first));
+        IntStream.range(0, 3).forEach(i -> topK.consume(second));
+        IntStream.range(0, 2).forEach(i -> topK.consume(third));
+        topK.consume(fourth);
+
+        List<BulletRecord> records = topK.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 4);
+        BulletRecord expected = RecordBox.get().add("fieldA", "a|b").add("fieldB", "c").add("COUNT", 4L).getRecord();
+        Assert.assertTrue(expected.equals(records.get(0)));
+        expected = RecordBox.get().add("fieldA", "a").add("fieldB", "b|c").add("COUNT", 3L).getRecord();
+        Assert.assertTrue(expected.equals(records.get(1)));
+        expected = RecordBox.get().add("fieldA", "1:a").add("fieldB", "").add("COUNT", 2L).getRecord();
+        Assert.assertTrue(expected.equals(records.get(2)));
+        expected = RecordBox.get().add("fieldA", "1").add("fieldB", "a0:").add("COUNT", 1L).getRecord();
+        Assert.assertTrue(expected.equals(records.get(3)));
+    }
+
+    @Test
+    public void testCombining() {
+        TopK topK = makeTopK(singletonMap("field", "A"), 3);
+        consume(topK, "field", "foo", 5);
+        consume(topK, "field", "bar", 2);
+
+        TopK another = makeTopK(singletonMap("field", "A"), 3);
+        consume(another, "field", "bar", 7);
+        consume(another, "field", "baz", 3);
+
+        TopK join = makeTopK(singletonMap("field", "A"), 3);
+        join.combine(topK.getSerializedAggregation());
+        join.combine(another.getSerializedAggregation());
+
+        List<BulletRecord> records = join.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 3);
+        Assert.assertTrue(RecordBox.get().add("A", "bar").add("COUNT", 9L).getRecord().equals(records.get(0)));
+        Assert.assertTrue(RecordBox.get().add("A", "foo").add("COUNT", 5L).getRecord().equals(records.get(1)));
+        Assert.assertTrue(RecordBox.get().add("A", "baz").add("COUNT", 3L).getRecord().equals(records.get(2)));
+    }
+
+    @Test
+    public void testCombiningBadData() {
+        TopK topK = makeTopK(singletonMap("field", "A"), 3);
+        consume(topK, "field", "foo", 5);
+        topK.combine(new byte[0]);
+        topK.combine(String.valueOf(242).getBytes());
+
+        List<BulletRecord> records = topK.getAggregation().getRecords();
+        Assert.assertEquals(records.size(), 1);
+        Assert.assertTrue(RecordBox.get().add("A", "foo").add("COUNT", 5L).getRecord().equals(records.get(0)));
+    }
+
+    @Test
+    public void testApproximateTopKWithMetadata() {
+        Map<Object, Object> config = new HashMap<>();
+        config.put(BulletConfig.TOP_K_AGGREGATION_SKETCH_ENTRIES, 16);
+        TopK topK = makeTopK(config, null, singletonMap("field", "A"), 2,
+                             Pair.of(Concept.AGGREGATION_METADATA, "stats"),
+                             Pair.of(Concept.ESTIMATED_RESULT, "isEstimate"),
+                             Pair.of(Concept.SKETCH_FAMILY, "family"),
+                             Pair.of(Concept.SKETCH_SIZE, "size"),
+                             Pair.of(Concept.MAXIMUM_COUNT_ERROR, "error"),
+                             Pair.of(Concept.ITEMS_SEEN, "seen"));
+        consume(topK, "field", "foo", 1000);
+        consume(topK, "field", "bar", 500);
+        // Far more distinct items than the Sketch holds
+        IntStream.range(0, 200).forEach(i -> consume(topK, "field", i, 1));
+
+        Clip clip = topK.getAggregation();
+        List<BulletRecord> records = clip.getRecords();
+        Assert.assertEquals(records.size(), 2);
+        Assert.assertEquals(records.get(0).get("A"), "foo");
+        Assert.assertEquals(records.get(1).get("A"), "bar");
+
+        Map<String, Object> stats = (Map<String, Object>) clip.getMeta().asMap().get("stats");
+        Assert.assertEquals(stats.size(), 5);
+        Assert.assertTrue((Boolean) stats.get("isEstimate"));
+        Assert.assertEquals(stats.get("family"), Family.FREQUENCY.getFamilyName());
+        Assert.assertTrue((Integer) stats.get("size") > 0);
+        Assert.assertEquals(stats.get("seen"), 1700L);
+        long error = (Long) stats.get("error");
+        Assert.assertTrue(error > 0);
+        // The estimate is never less than the true count and at most the error more than it
+        long fooCount = (Long) records.get(0).get("COUNT");
+        Assert.assertTrue(fooCount >= 1000 && fooCount <= 1000 + error);
+    }
+
+    @Test
+    public void testExactResultMetadata() {
+        TopK topK = makeTopK(new HashMap<>(), null, singletonMap("field", "A"), 2,
+                             Pair.of(Concept.AGGREGATION_METADATA, "stats"),
+                             Pair.of(Concept.ESTIMATED_RESULT, "isEstimate"),
+                             Pair.of(Concept.MAXIMUM_COUNT_ERROR, "error"));
+        consume(topK, "field", "foo", 10);
+        Map<String, Object> stats = (Map<String, Object>) topK.getAggregation().getMeta().asMap().get("stats");
+        Assert.assertFalse((Boolean) stats.get("isEstimate"));
+        Assert.assertEquals(stats.get("error"), 0L);
+    }
+
+    @Test
+    public void testErrorTypes() {
+        Assert.assertEquals(TopK.getErrorType("NFP"), ErrorType.NO_FALSE_POSITIVES);
+        Assert.assertEquals(TopK.getErrorType("NFN"), ErrorType.NO_FALSE_NEGATIVES);
+        Assert.assertEquals(TopK.getErrorType("foo"), ErrorType.NO_FALSE_NEGATIVES);
+    }
+
+    @Test
+    public void testMaxMapSizes() {
+        Assert.assertEquals(TopK.getMaxMapSize(1024), 1024);
+        Assert.assertEquals(TopK.getMaxMapSize(1000), 1024);
+        Assert.assertEquals(TopK.getMaxMapSize(1025), 2048);
+        Assert.assertEquals(TopK.getMaxMapSize(2), 8);
+        Assert.assertEquals(TopK.getMaxMapSize(-5), 8);
+    }
+}
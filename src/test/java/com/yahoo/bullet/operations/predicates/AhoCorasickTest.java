@@ -0,0 +1,65 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+
+public class AhoCorasickTest {
+    private static boolean[] search(AhoCorasick automaton, int size, String text) {
+        boolean[] present = new boolean[size];
+        automaton.search(text, present);
+        return present;
+    }
+
+    @Test
+    public void testOverlappingKeywords() {
+        List<String> keywords = asList("he", "she", "his", "hers", null, "e");
+        AhoCorasick automaton = new AhoCorasick(keywords);
+        Assert.assertEquals(search(automaton, 6, "ushers"), new boolean[] {true, true, false, true, false, true});
+        Assert.assertEquals(search(automaton, 6, "this"), new boolean[] {false, false, true, false, false, false});
+        Assert.assertEquals(search(automaton, 6, ""), new boolean[6]);
+    }
+
+    @Test
+    public void testNoKeywords() {
+        AhoCorasick automaton = new AhoCorasick(emptyList());
+        Assert.assertEquals(automaton.size(), 1);
+        automaton.search("foo", new boolean[0]);
+    }
+
+    @Test
+    public void testSameAsContains() {
+        Random random = new Random(42);
+        List<String> keywords = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            keywords.add(randomString(random, 1 + random.nextInt(4)));
+        }
+        AhoCorasick automaton = new AhoCorasick(keywords);
+        for (int i = 0; i < 500; ++i) {
+            String text = randomString(random, random.nextInt(30));
+            boolean[] present = search(automaton, keywords.size(), text);
+            for (int id = 0; id < keywords.size(); ++id) {
+                Assert.assertEquals(present[id], text.contains(keywords.get(id)), keywords.get(id) + " in " + text);
+            }
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            builder.append((char) ('a' + random.nextInt(3)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.RecordBox;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.AND;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.EQUALS;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.GREATER_THAN;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.NOT;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.OR;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.REGEX_LIKE;
+import static java.util.Arrays.asList;
+
+public class LogicalPredicateTest {
+    private static final Predicate FALSE = record -> false;
+
+    private static Predicate counting(AtomicInteger counter, boolean result) {
+        return record -> {
+            counter.incrementAndGet();
+            return result;
+        };
+    }
+
+    @Test
+    public void testShortCircuiting() {
+        BulletRecord record = RecordBox.get().getRecord();
+        AtomicInteger counter = new AtomicInteger();
+
+        Assert.assertFalse(new LogicalPredicate(AND, asList(FALSE, counting(counter, true))).test(record));
+        Assert.assertTrue(new LogicalPredicate(OR, asList(Predicate.TRUE, counting(counter, true))).test(record));
+        Assert.assertEquals(counter.get(), 0);
+
+        Assert.assertTrue(new LogicalPredicate(AND, asList(Predicate.TRUE, counting(counter, true))).test(record));
+        Assert.assertFalse(new LogicalPredicate(OR, asList(FALSE, counting(counter, false))).test(record));
+        Assert.assertEquals(counter.get(), 2);
+    }
+
+    @Test
+    public void testNotOnlyUsesFirst() {
+        BulletRecord record = RecordBox.get().getRecord();
+        Assert.assertTrue(new LogicalPredicate(NOT, asList(FALSE, Predicate.TRUE)).test(record));
+        Assert.assertFalse(new LogicalPredicate(NOT, asList(Predicate.TRUE, FALSE)).test(record));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testNotLogical() {
+        new LogicalPredicate(EQUALS, asList(Predicate.TRUE)).test(RecordBox.get().getRecord());
+    }
+
+    @Test
+    public void testEquality() {
+        Predicate a = new RelationalPredicate("a", EQUALS, asList("1"));
+        Predicate b = new RelationalPredicate("b", EQUALS, asList("1"));
+        LogicalPredicate ab = new LogicalPredicate(AND, asList(a, b));
+
+        Assert.assertEquals(ab, new LogicalPredicate(AND, asList(b, a, b)));
+        Assert.assertEquals(ab.hashCode(), new LogicalPredicate(AND, asList(b, a, b)).hashCode());
+        Assert.assertNotEquals(ab, new LogicalPredicate(OR, asList(a, b)));
+        Assert.assertNotEquals(ab, new LogicalPredicate(AND, asList(a)));
+        Assert.assertNotEquals(ab, a);
+        Assert.assertEquals(new LogicalPredicate(NOT, asList(a, b)), new LogicalPredicate(NOT, asList(a)));
+        Assert.assertNotEquals(new LogicalPredicate(NOT, asList(a, b)), new LogicalPredicate(NOT, asList(b, a)));
+    }
+
+    private static Predicate slow(boolean result) {
+        return record -> {
+            long end = System.nanoTime() + 1000L;
+            long now = System.nanoTime();
+            while (now < end) {
+                now = System.nanoTime();
+            }
+            return result;
+        };
+    }
+
+    private static void test(Predicate predicate, int times) {
+        BulletRecord record = RecordBox.get().getRecord();
+        for (int i = 0; i < times; ++i) {
+            predicate.test(record);
+        }
+    }
+
+    @Test
+    public void testAndReordersRejectingChildrenFirst() {
+        Predicate slowPassing = slow(true);
+        Predicate rejecting = record -> false;
+        LogicalPredicate and = new LogicalPredicate(AND, asList(Predicate.TRUE, slowPassing, rejecting));
+
+        test(and, LogicalPredicate.REORDER_INTERVAL - 1);
+        Assert.assertEquals(and.getPredicates(), new Predicate[] {Predicate.TRUE, slowPassing, rejecting});
+        test(and, 1);
+        Assert.assertSame(and.getPredicates()[0], rejecting);
+        // The children that were never tested after the rejection keep their order
+        Assert.assertEquals(and.getPredicates(), new Predicate[] {rejecting, Predicate.TRUE, slowPassing});
+    }
+
+    @Test
+    public void testOrReordersPassingChildrenFirst() {
+        Predicate slowPassing = slow(true);
+        Predicate rejecting = record -> false;
+        Predicate passing = Predicate.TRUE;
+        LogicalPredicate or = new LogicalPredicate(OR, asList(rejecting, slowPassing, passing));
+
+        test(or, LogicalPredicate.REORDER_INTERVAL);
+        Assert.assertEquals(or.getPredicates(), new Predicate[] {slowPassing, rejecting, passing});
+    }
+
+    @Test
+    public void testReorderingKeepsResults() {
+        Random random = new Random(42);
+        List<Predicate> children = new ArrayList<>();
+        for (int i = 0; i < 6; ++i) {
+            children.add(new RelationalPredicate("field" + i, EQUALS, asList("1")));
+        }
+        LogicalPredicate and = new LogicalPredicate(AND, children);
+        LogicalPredicate or = new LogicalPredicate(OR, children);
+        for (int i = 0; i < 10 * LogicalPredicate.REORDER_INTERVAL; ++i) {
+            RecordBox box = RecordBox.get();
+            boolean all = true;
+            boolean any = false;
+            for (int j = 0; j < children.size(); ++j) {
+                // Later fields are more likely to be 1
+                boolean one = random.nextInt(children.size() + 1) <= j;
+                box.add("field" + j, one ? "1" : "0");
+                all &= one;
+                any |= one;
+            }
+            BulletRecord record = box.getRecord();
+            Assert.assertEquals(and.test(record), all);
+            Assert.assertEquals(or.test(record), any);
+        }
+        Assert.assertNotEquals(asList(and.getPredicates()), children);
+        Assert.assertNotEquals(asList(or.getPredicates()), children);
+    }
+
+    private static BitSet all(RecordBatch batch) {
+        BitSet selected = new BitSet();
+        selected.set(0, batch.getSize());
+        return selected;
+    }
+
+    @Test
+    public void testBatchSameAsRecords() {
+        Random random = new Random(42);
+        Predicate a = new RelationalPredicate("a", EQUALS, asList("1"));
+        Predicate b = new RelationalPredicate("b", GREATER_THAN, asList("5"));
+        Predicate c = new RelationalPredicate("c", EQUALS, asList("1"));
+        Predicate ab = new LogicalPredicate(AND, asList(a, b));
+        Predicate notC = new LogicalPredicate(NOT, asList(c));
+        List<LogicalPredicate> predicates = asList(new LogicalPredicate(AND, asList(a, b, c)),
+                                                   new LogicalPredicate(OR, asList(a, b, c)),
+                                                   new LogicalPredicate(NOT, asList(a)),
+                                                   new LogicalPredicate(OR, asList(ab, notC)));
+        RecordBatch batch = new RecordBatch(64);
+        for (int round = 0; round < 100; ++round) {
+            batch.clear();
+            while (!batch.isFull()) {
+                RecordBox box = RecordBox.get().add("a", String.valueOf(random.nextInt(2)));
+                box.add("b", (long) random.nextInt(10));
+                if (random.nextBoolean()) {
+                    box.add("c", "1");
+                }
+                batch.add(box.getRecord());
+            }
+            for (LogicalPredicate predicate : predicates) {
+                // Only some of the records are selected to start with
+                BitSet selected = all(batch);
+                selected.clear(0, 8);
+                predicate.test(batch, selected);
+                for (int i = 0; i < batch.getSize(); ++i) {
+                    Assert.assertEquals(selected.get(i), i >= 8 && predicate.test(batch.get(i)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBatchesReorder() {
+        Predicate slowPassing = slow(true);
+        Predicate rejecting = record -> false;
+        LogicalPredicate and = new LogicalPredicate(AND, asList(slowPassing, rejecting));
+        RecordBatch batch = new RecordBatch(LogicalPredicate.REORDER_INTERVAL);
+        while (!batch.isFull()) {
+            batch.add(RecordBox.get().getRecord());
+        }
+        BitSet selected = all(batch);
+        and.test(batch, selected);
+        Assert.assertTrue(selected.isEmpty());
+        Assert.assertEquals(and.getPredicates(), new Predicate[] {rejecting, slowPassing});
+    }
+
+    @Test
+    public void testCopying() {
+        Predicate pattern = new RelationalPredicate("a", REGEX_LIKE, asList("f.*"));
+        Predicate values = new RelationalPredicate("b", EQUALS, asList("1"));
+        LogicalPredicate predicate = new LogicalPredicate(OR, asList(pattern, new LogicalPredicate(NOT, asList(values))));
+        LogicalPredicate copy = (LogicalPredicate) predicate.copy();
+        Assert.assertNotSame(copy, predicate);
+        Assert.assertEquals(copy, predicate);
+        Assert.assertNotSame(copy.getPredicates()[0], pattern);
+        Assert.assertSame(((LogicalPredicate) copy.getPredicates()[1]).getPredicates()[0], values);
+
+        BulletRecord record = RecordBox.get().add("a", "bar").add("b", 2L).getRecord();
+        Assert.assertTrue(copy.test(record));
+        Assert.assertEquals(copy.test(record), predicate.test(record));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.operations.typesystem.Type;
+import com.yahoo.bullet.parsing.FieldPath;
+import com.yahoo.bullet.result.RecordBox;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.BitSet;
+import java.util.Collections;
+
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.EQUALS;
+import static java.util.Collections.singletonList;
+
+public class RecordBatchTest {
+    @Test
+    public void testAddingAndClearing() {
+        RecordBatch batch = new RecordBatch(2);
+        Assert.assertTrue(batch.isEmpty());
+        batch.add(RecordBox.get().add("a", 1L).getRecord());
+        Assert.assertFalse(batch.isEmpty());
+        Assert.assertFalse(batch.isFull());
+        batch.add(RecordBox.get().add("a", 2L).getRecord());
+        Assert.assertTrue(batch.isFull());
+        Assert.assertEquals(batch.getSize(), 2);
+        Assert.assertEquals(batch.get(1).get("a"), 2L);
+
+        batch.clear();
+        Assert.assertTrue(batch.isEmpty());
+        Assert.assertNull(batch.get(0));
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testAddingToFullBatch() {
+        RecordBatch batch = new RecordBatch(1);
+        batch.add(RecordBox.get().getRecord());
+        batch.add(RecordBox.get().getRecord());
+    }
+
+    @Test
+    public void testColumns() {
+        RecordBatch batch = new RecordBatch(4);
+        batch.add(RecordBox.get().add("a", 1L).addMap("m", Pair.of("a", "x")).getRecord());
+        batch.add(RecordBox.get().add("a", "b").getRecord());
+        batch.add(RecordBox.get().addList("a", Collections.singletonMap("k", "v")).getRecord());
+
+        RecordBatch.Column column = batch.getColumn(FieldPath.of("a"));
+        Assert.assertSame(batch.getColumn(FieldPath.of("a")), column);
+        Assert.assertEquals(column.getTypes()[0], Type.LONG);
+        Assert.assertEquals(column.getValues()[0], 1L);
+        Assert.assertEquals(column.getTypes()[1], Type.STRING);
+        Assert.assertEquals(column.getValues()[1], "b");
+        // Unknown types are strings
+        Assert.assertEquals(column.getTypes()[2], Type.STRING);
+        Assert.assertTrue(column.getValues()[2] instanceof String);
+
+        RecordBatch.Column nested = batch.getColumn(FieldPath.of("m.a"));
+        Assert.assertEquals(nested.getValues()[0], "x");
+        Assert.assertEquals(nested.getTypes()[1], Type.NULL);
+        Assert.assertNull(nested.getValues()[1]);
+
+        batch.clear();
+        batch.add(RecordBox.get().add("a", 5.0).getRecord());
+        column = batch.getColumn(FieldPath.of("a"));
+        Assert.assertEquals(column.getTypes()[0], Type.DOUBLE);
+        Assert.assertEquals(column.getValues()[0], 5.0);
+    }
+
+    @Test
+    public void testColumnsDoNotUseSharedFields() {
+        SharedPredicates shared = new SharedPredicates();
+        Predicate predicate = shared.share(new RelationalPredicate("a", EQUALS, singletonList("1")));
+        RecordBatch batch = new RecordBatch(2);
+        batch.add(RecordBox.get().add("a", 1L).getRecord());
+        batch.add(RecordBox.get().add("a", 2L).getRecord());
+
+        // The shared field remembers the value from the second record for this epoch
+        shared.advance();
+        Assert.assertFalse(predicate.test(batch.get(1)));
+        BitSet selected = new BitSet();
+        selected.set(0, 2);
+        predicate.test(batch, selected);
+        Assert.assertEquals(selected.cardinality(), 1);
+        Assert.assertTrue(selected.get(0));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.operations.predicates.RegexPattern.Shape;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static java.util.Arrays.asList;
+
+public class RegexPatternTest {
+    private static final List<String> PATTERNS =
+        asList("foo", "foo.*", ".*foo", ".*foo.*", ".*?foo.*?", ".*+foo", "f.o", "fo+", "fo*", "fo?o", "fo{2}",
+               "fo{0,2}", "f[o]o", "f[^]]o", "[a-z]+bar[0-9]*", "(foo)", "foo|bar", "\\.com.*", ".*\\.com",
+               "\\d+foo", "a\\.b", "^foo$", "(?i)foo", "foo\\Q.*\\E", ".*", "", "x.*y.*z", "https://.*\\.yahoo\\.com/.*",
+               ".*Mozilla/5\\.0.*Chrome.*", "ab+c", "a+?b", "a++b", "[\\]]foo");
+
+    private static final List<String> VALUES =
+        asList("foo", "FOO", "fooo", "fo", "f", "afoo", "fooa", "afooa", "a\nfoo", "foo\n", "foo\r\nbar", "fxo",
+               "f]o", "abar12", "bar", "x.com", "yahoo.com", ".com", "a.b", "axb", "12foo", "", "xyz", "xaybzc",
+               "https://www.yahoo.com/news", "https://www.yahoo.com", "Mozilla/5.0 (X11) Chrome/1", "abbbc", "ac",
+               "aab", "ab", "]foo", "foo ", "\u0085foo");
+
+    @Test
+    public void testShapesAndLiterals() {
+        assertAnalysis("foo", Shape.EXACT, "foo");
+        assertAnalysis("foo.*", Shape.PREFIX, "foo");
+        assertAnalysis(".*foo", Shape.SUFFIX, "foo");
+        assertAnalysis(".*foo.*", Shape.CONTAINS, "foo");
+        assertAnalysis(".*?foo.*?", Shape.CONTAINS, "foo");
+        assertAnalysis(".*+foo", Shape.GENERAL, "foo");
+        assertAnalysis("a\\.b", Shape.EXACT, "a.b");
+        assertAnalysis("f.o", Shape.GENERAL, "f");
+        assertAnalysis("fo+bar", Shape.GENERAL, "bar");
+        assertAnalysis("fo?bar", Shape.GENERAL, "bar");
+        assertAnalysis("fooo?bar", Shape.GENERAL, "foo");
+        assertAnalysis("[a-z]+bar[0-9]*", Shape.GENERAL, "bar");
+        assertAnalysis("https://.*\\.yahoo\\.com/.*", Shape.GENERAL, ".yahoo.com/");
+        assertAnalysis(".*", Shape.GENERAL, null);
+        assertAnalysis("", Shape.GENERAL, null);
+        assertAnalysis("foo|bar", Shape.GENERAL, null);
+        assertAnalysis("(foo)", Shape.GENERAL, null);
+        assertAnalysis("(?i)foo", Shape.GENERAL, null);
+        assertAnalysis("\\d+foo", Shape.GENERAL, null);
+        assertAnalysis("[\\]]foo", Shape.GENERAL, "foo");
+        assertAnalysis("[]]foo", Shape.GENERAL, null);
+
+        RegexPattern flagged = new RegexPattern(Pattern.compile("foo", Pattern.CASE_INSENSITIVE));
+        Assert.assertEquals(flagged.getShape(), Shape.GENERAL);
+        Assert.assertNull(flagged.getLiteral());
+        Assert.assertTrue(flagged.matches("FOO"));
+    }
+
+    @Test
+    public void testSameAsMatcher() {
+        for (String regex : PATTERNS) {
+            Pattern pattern = Pattern.compile(regex);
+            RegexPattern compiled = new RegexPattern(pattern);
+            for (String value : VALUES) {
+                boolean expected = pattern.matcher(value).matches();
+                Assert.assertEquals(compiled.matches(value), expected, regex + " on " + value);
+                // The literal must never rule out a match
+                if (expected) {
+                    Assert.assertTrue(compiled.mayMatch(value), regex + " on " + value);
+                }
+            }
+        }
+    }
+
+    private static void assertAnalysis(String regex, Shape shape, String literal) {
+        RegexPattern pattern = new RegexPattern(Pattern.compile(regex));
+        Assert.assertEquals(pattern.getShape(), shape, regex);
+        Assert.assertEquals(pattern.getLiteral(), literal, regex);
+        Assert.assertEquals(pattern.toString(), regex);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.operations.FilterOperations;
+import com.yahoo.bullet.operations.FilterOperations.FilterType;
+import com.yahoo.bullet.operations.typesystem.TypedObject;
+import com.yahoo.bullet.result.RecordBox;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.EQUALS;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.GREATER_THAN;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.REGEX_LIKE;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+
+public class RelationalPredicateTest {
+    private static final List<FilterType> OPERATIONS = asList(FilterType.EQUALS, FilterType.NOT_EQUALS,
+                                                              FilterType.GREATER_THAN, FilterType.LESS_THAN,
+                                                              FilterType.GREATER_EQUALS, FilterType.LESS_EQUALS,
+                                                              FilterType.REGEX_LIKE);
+
+    private static final List<List<String>> VALUES = asList(singletonList("foo"), singletonList("null"),
+                                                            asList("1", "2", "-4"), asList("1.5", "bar", "-0.0"),
+                                                            asList("true", "5"), asList("NaN", "3", "z.*"),
+                                                            asList("[", "1.*"));
+
+    private static final List<Object> OBJECTS = asList(null, "foo", "bar", "1", 1L, 2L, -5L, 6L, 1.5, 0.0, -0.0,
+                                                       Double.NaN, 4.2, true, false, 3, singletonList("foo"));
+
+    @SuppressWarnings("unchecked")
+    private static boolean expected(FilterType operation, Object object, List<String> values) {
+        TypedObject typed = new TypedObject(object);
+        if (operation == REGEX_LIKE) {
+            List<Pattern> patterns = values.stream().map(RelationalPredicateTest::compile)
+                                           .filter(p -> p != null).collect(Collectors.toList());
+            return FilterOperations.RLIKE.compare(typed, patterns);
+        }
+        return FilterOperations.RELATIONAL_OPERATORS.get(operation).compare(typed, values);
+    }
+
+    private static Pattern compile(String pattern) {
+        try {
+            return Pattern.compile(pattern);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Test
+    public void testSameAsComparators() {
+        for (FilterType operation : OPERATIONS) {
+            for (List<String> values : VALUES) {
+                RelationalPredicate predicate = new RelationalPredicate("field", operation, values);
+                for (Object object : OBJECTS) {
+                    TypedObject typed = new TypedObject(object);
+                    Assert.assertEquals(predicate.test(typed.getType(), typed.getValue()),
+                                        expected(operation, object, values),
+                                        operation + " " + values + " on " + object);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExtractingFields() {
+        RelationalPredicate predicate = new RelationalPredicate("map_field.id", EQUALS, asList("1", "2"));
+        Assert.assertTrue(predicate.test(RecordBox.get().addMap("map_field", Pair.of("id", 2L)).getRecord()));
+        Assert.assertFalse(predicate.test(RecordBox.get().addMap("map_field", Pair.of("id", 3L)).getRecord()));
+        Assert.assertFalse(predicate.test(RecordBox.get().add("map_field", 1L).getRecord()));
+
+        predicate = new RelationalPredicate("field", GREATER_THAN, singletonList("41"));
+        Assert.assertTrue(predicate.test(RecordBox.get().add("field", 42L).getRecord()));
+        Assert.assertFalse(predicate.test(RecordBox.get().add("field", 41L).getRecord()));
+        Assert.assertFalse(predicate.test(RecordBox.get().getRecord()));
+    }
+
+    @Test
+    public void testBadPatternsAreDropped() {
+        RelationalPredicate predicate = new RelationalPredicate("field", REGEX_LIKE, asList("*foo", "b.r"));
+        Assert.assertEquals(predicate.getPatterns().length, 1);
+        Assert.assertEquals(predicate.getPatterns()[0].toString(), "b.r");
+        Assert.assertTrue(predicate.test(RecordBox.get().add("field", "bar").getRecord()));
+        Assert.assertFalse(predicate.test(RecordBox.get().add("field", "*foo").getRecord()));
+    }
+
+    @Test
+    public void testEquality() {
+        RelationalPredicate predicate = new RelationalPredicate("a", EQUALS, asList("1", "2"));
+        Assert.assertEquals(predicate, new RelationalPredicate("a", EQUALS, asList("2", "1", "2")));
+        Assert.assertEquals(predicate.hashCode(), new RelationalPredicate("a", EQUALS, asList("2", "1")).hashCode());
+        Assert.assertNotEquals(predicate, new RelationalPredicate("b", EQUALS, asList("1", "2")));
+        Assert.assertNotEquals(predicate, new RelationalPredicate("a", GREATER_THAN, asList("1", "2")));
+        Assert.assertNotEquals(predicate, new RelationalPredicate("a", EQUALS, asList("1", "2.0")));
+    }
+
+    @Test
+    public void testCopying() {
+        RelationalPredicate predicate = new RelationalPredicate("field", EQUALS, asList("1", "2"));
+        // Nothing to copy
+        Assert.assertSame(predicate.copy(), predicate);
+
+        predicate = new RelationalPredicate("field", REGEX_LIKE, asList("f.*o", "b.r"));
+        RelationalPredicate copy = (RelationalPredicate) predicate.copy();
+        Assert.assertNotSame(copy, predicate);
+        Assert.assertEquals(copy, predicate);
+        Assert.assertSame(copy.getValues(), predicate.getValues());
+        Assert.assertNotSame(copy.getPatterns()[0], predicate.getPatterns()[0]);
+        Assert.assertSame(copy.getPatterns()[0].getPattern(), predicate.getPatterns()[0].getPattern());
+        Assert.assertTrue(copy.test(RecordBox.get().add("field", "foooo").getRecord()));
+        Assert.assertFalse(copy.test(RecordBox.get().add("field", "baz").getRecord()));
+
+        // The copy of a shared predicate is not shared and does not use a shared path
+        SharedPredicate shared = (SharedPredicate) new SharedPredicates().share(predicate);
+        Assert.assertTrue(((RelationalPredicate) shared.getPredicate()).getPath() instanceof SharedFieldPath);
+        copy = (RelationalPredicate) shared.copy();
+        Assert.assertFalse(copy.getPath() instanceof SharedFieldPath);
+        Assert.assertTrue(copy.test(RecordBox.get().add("field", "bar").getRecord()));
+    }
+}
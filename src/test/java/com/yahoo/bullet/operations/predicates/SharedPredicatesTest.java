@@ -0,0 +1,238 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.predicates;
+
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.RecordBox;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.BitSet;
+
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.AND;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.EQUALS;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.GREATER_THAN;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.LESS_THAN;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.NOT;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.OR;
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.REGEX_LIKE;
+import static java.util.Arrays.asList;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SharedPredicatesTest {
+    private SharedPredicates shared;
+
+    private static Predicate relational(String field, String... values) {
+        return new RelationalPredicate(field, EQUALS, asList(values));
+    }
+
+    private static Predicate children(Predicate predicate, int index) {
+        LogicalPredicate logical = (LogicalPredicate) ((SharedPredicate) predicate).getPredicate();
+        return logical.getPredicates()[index];
+    }
+
+    @BeforeMethod
+    public void setup() {
+        shared = new SharedPredicates();
+    }
+
+    @Test
+    public void testEqualSubtreesAreShared() {
+        Predicate first = shared.share(new LogicalPredicate(AND, asList(relational("a", "1", "2"),
+                                                                        relational("b", "1"))));
+        Predicate second = shared.share(new LogicalPredicate(OR, asList(relational("a", "2", "1", "2"),
+                                                                        relational("c", "1"))));
+        Predicate third = shared.share(new LogicalPredicate(AND, asList(relational("b", "1"),
+                                                                        relational("a", "2", "1"))));
+        Assert.assertSame(children(first, 0), children(second, 0));
+        Assert.assertSame(first, third);
+        Assert.assertNotSame(first, second);
+        // a, b, c, the AND and the OR
+        Assert.assertEquals(shared.size(), 5);
+    }
+
+    @Test
+    public void testSharedTreesHaveNoMutableStateInCommon() {
+        RelationalPredicate regex = new RelationalPredicate("ua", REGEX_LIKE, asList(".*Chrome.*"));
+        RelationalPredicate noField = new RelationalPredicate(null, REGEX_LIKE, asList(".*Chrome.*"));
+        Predicate tree = new LogicalPredicate(AND, asList(regex, noField));
+        SharedPredicates other = new SharedPredicates();
+
+        Predicate first = shared.share(tree);
+        Predicate second = other.share(tree);
+        for (int i = 0; i < 2; ++i) {
+            RelationalPredicate original = (RelationalPredicate) ((LogicalPredicate) tree).getPredicates()[i];
+            RelationalPredicate mine = (RelationalPredicate) ((SharedPredicate) children(first, i)).getPredicate();
+            RelationalPredicate theirs = (RelationalPredicate) ((SharedPredicate) children(second, i)).getPredicate();
+            Assert.assertNotSame(mine.getPatterns()[0], original.getPatterns()[0]);
+            Assert.assertNotSame(mine.getPatterns()[0], theirs.getPatterns()[0]);
+        }
+        Assert.assertNotSame(((SharedPredicate) first).getPredicate(), tree);
+        Assert.assertNotSame(((SharedPredicate) first).getPredicate(), ((SharedPredicate) second).getPredicate());
+    }
+
+    @Test
+    public void testUnshareablePredicates() {
+        Assert.assertSame(shared.share(Predicate.TRUE), Predicate.TRUE);
+        Assert.assertEquals(shared.size(), 0);
+        shared.release(Predicate.TRUE);
+        shared.release(null);
+        Assert.assertEquals(shared.size(), 0);
+    }
+
+    @Test
+    public void testReleasing() {
+        Predicate first = shared.share(new LogicalPredicate(AND, asList(relational("a", "1"), relational("b", "1"))));
+        Predicate second = shared.share(new LogicalPredicate(NOT, asList(relational("a", "1"))));
+        Predicate third = shared.share(new LogicalPredicate(AND, asList(relational("a", "1"), relational("b", "1"))));
+        Assert.assertEquals(shared.size(), 4);
+
+        shared.release(third);
+        Assert.assertEquals(shared.size(), 4);
+        shared.release(first);
+        Assert.assertEquals(shared.size(), 2);
+        shared.release(second);
+        Assert.assertEquals(shared.size(), 0);
+
+        Predicate fourth = shared.share(new LogicalPredicate(AND, asList(relational("a", "1"), relational("b", "1"))));
+        Assert.assertNotSame(fourth, first);
+        Assert.assertEquals(shared.size(), 3);
+    }
+
+    @Test
+    public void testEvaluatedOncePerRecord() {
+        Predicate first = shared.share(new LogicalPredicate(AND, asList(relational("a", "1"),
+                                                                        new RelationalPredicate("b", GREATER_THAN,
+                                                                                                asList("1")))));
+        Predicate second = shared.share(new LogicalPredicate(OR, asList(relational("a", "1"), relational("b", "1"))));
+        Assert.assertNull(shared.getAndResetHitRate());
+
+        BulletRecord record = RecordBox.get().add("a", "1").add("b", 2L).getRecord();
+        shared.advance();
+        Assert.assertTrue(first.test(record));
+        Assert.assertTrue(second.test(record));
+        // a, b > 1, the AND, the OR missed. a was reused.
+        Assert.assertEquals(shared.getAndResetHitRate(), 0.2);
+
+        shared.advance();
+        Assert.assertTrue(first.test(record));
+        Assert.assertTrue(first.test(record));
+        Assert.assertEquals(shared.getAndResetHitRate(), 0.25);
+
+        BulletRecord another = RecordBox.get().add("a", "2").add("b", 1L).getRecord();
+        shared.advance();
+        Assert.assertFalse(first.test(another));
+        Assert.assertTrue(second.test(another));
+        Assert.assertEquals(shared.getAndResetHitRate(), 0.2);
+        Assert.assertNull(shared.getAndResetHitRate());
+    }
+
+    @Test
+    public void testFieldsAreExtractedOncePerRecord() {
+        Predicate first = shared.share(new LogicalPredicate(AND, asList(relational("a", "1"),
+                                                                        new RelationalPredicate("b", GREATER_THAN,
+                                                                                                asList("1")))));
+        Predicate second = shared.share(new LogicalPredicate(OR, asList(new RelationalPredicate("b", LESS_THAN,
+                                                                                                asList("5")),
+                                                                        relational("m.a", "1"))));
+        Assert.assertEquals(shared.fieldCount(), 3);
+
+        BulletRecord record = spy(RecordBox.get().add("a", "1").add("b", 7L).addMap("m", Pair.of("a", "1"))
+                                               .getRecord());
+        shared.advance();
+        Assert.assertTrue(first.test(record));
+        Assert.assertTrue(second.test(record));
+        verify(record, times(1)).get("a");
+        verify(record, times(1)).get("b");
+        verify(record, times(1)).get("m", "a");
+
+        shared.advance();
+        Assert.assertTrue(second.test(record));
+        verify(record, times(2)).get("b");
+
+        shared.release(first);
+        Assert.assertEquals(shared.fieldCount(), 2);
+        shared.release(second);
+        Assert.assertEquals(shared.fieldCount(), 0);
+    }
+
+    @Test
+    public void testFieldsAreNotSharedIfDisabled() {
+        shared = new SharedPredicates(false);
+        Predicate first = shared.share(relational("a", "1"));
+        Predicate second = shared.share(new RelationalPredicate("a", GREATER_THAN, asList("1")));
+        Assert.assertEquals(shared.fieldCount(), 0);
+
+        BulletRecord record = spy(RecordBox.get().add("a", "1").getRecord());
+        shared.advance();
+        Assert.assertTrue(first.test(record));
+        Assert.assertFalse(second.test(record));
+        verify(record, times(2)).get("a");
+    }
+
+    @Test
+    public void testRegexLiteralsArePrefiltered() {
+        Predicate first = shared.share(new RelationalPredicate("ua", REGEX_LIKE, asList(".*Chrome.*", "Safari/[0-9]+")));
+        Predicate second = shared.share(new RelationalPredicate("ua", REGEX_LIKE, asList(".*Firefox/[0-9]+", ".*")));
+        Predicate third = shared.share(new RelationalPredicate("url", REGEX_LIKE, asList("https://.*")));
+        RegexPrefilter prefilter = shared.getPrefilter("ua");
+        // Chrome, Safari/ and Firefox/
+        Assert.assertEquals(prefilter.size(), 3);
+        Assert.assertEquals(shared.getPrefilter("url").size(), 1);
+
+        String[] agents = {"Mozilla/5.0 Chrome/1", "Safari/12", "Safari/", "Firefox/2", "curl", "Chrome\nSafari/1"};
+        RelationalPredicate unshared = new RelationalPredicate("ua", REGEX_LIKE, asList(".*Chrome.*", "Safari/[0-9]+"));
+        for (String agent : agents) {
+            BulletRecord record = RecordBox.get().add("ua", agent).add("url", "https://" + agent).getRecord();
+            shared.advance();
+            Assert.assertEquals(first.test(record), unshared.test(record), agent);
+            // . does not match line terminators
+            Assert.assertEquals(second.test(record), !agent.contains("\n"), agent);
+            Assert.assertEquals(third.test(record), !agent.contains("\n"), agent);
+        }
+
+        shared.release(second);
+        Assert.assertEquals(prefilter.size(), 2);
+        shared.release(first);
+        Assert.assertNull(shared.getPrefilter("ua"));
+        shared.release(third);
+        Assert.assertNull(shared.getPrefilter("url"));
+    }
+
+    @Test
+    public void testEvaluatedOncePerBatch() {
+        Predicate first = shared.share(new LogicalPredicate(AND, asList(relational("a", "1"),
+                                                                        new RelationalPredicate("b", GREATER_THAN,
+                                                                                                asList("1")))));
+        Predicate second = shared.share(new LogicalPredicate(OR, asList(relational("a", "1"), relational("b", "1"))));
+        RecordBatch batch = new RecordBatch(3);
+        batch.add(RecordBox.get().add("a", "1").add("b", 2L).getRecord());
+        batch.add(RecordBox.get().add("a", "2").add("b", 1L).getRecord());
+        batch.add(RecordBox.get().add("a", "2").add("b", 5L).getRecord());
+
+        shared.advance();
+        BitSet selected = new BitSet();
+        selected.set(0, 3);
+        first.test(batch, selected);
+        Assert.assertEquals(selected, BitSet.valueOf(new long[] {1L}));
+        selected.set(0, 3);
+        second.test(batch, selected);
+        Assert.assertEquals(selected, BitSet.valueOf(new long[] {3L}));
+        // Once per batch, like once per record. The OR does not short circuit b == 1 since not all records passed a.
+        Assert.assertEquals(shared.getAndResetHitRate(), 1.0 / 6);
+
+        // Each predicate narrows down what is selected but is evaluated on all the records
+        selected.clear();
+        selected.set(2);
+        second.test(batch, selected);
+        Assert.assertTrue(selected.isEmpty());
+        Assert.assertEquals(shared.getAndResetHitRate(), 1.0);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.typesystem;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class LongHashSetTest {
+    @Test
+    public void testEmpty() {
+        LongHashSet set = new LongHashSet(new long[0]);
+        Assert.assertEquals(set.size(), 0);
+        Assert.assertFalse(set.contains(0L));
+        Assert.assertFalse(set.contains(1L));
+    }
+
+    @Test
+    public void testZeroAndNegatives() {
+        LongHashSet set = new LongHashSet(new long[] {0L, -1L, Long.MIN_VALUE, Long.MAX_VALUE});
+        Assert.assertEquals(set.size(), 4);
+        Assert.assertTrue(set.contains(0L));
+        Assert.assertTrue(set.contains(-1L));
+        Assert.assertTrue(set.contains(Long.MIN_VALUE));
+        Assert.assertTrue(set.contains(Long.MAX_VALUE));
+        Assert.assertFalse(set.contains(1L));
+        Assert.assertFalse(set.contains(Long.MIN_VALUE + 1));
+    }
+
+    @Test
+    public void testDuplicates() {
+        LongHashSet set = new LongHashSet(new long[] {0L, 0L, 5L, 5L, 5L, 7L});
+        Assert.assertEquals(set.size(), 3);
+        Assert.assertTrue(set.contains(0L));
+        Assert.assertTrue(set.contains(5L));
+        Assert.assertTrue(set.contains(7L));
+        Assert.assertFalse(set.contains(6L));
+    }
+
+    @Test
+    public void testSameAsHashSet() {
+        Random random = new Random(42);
+        long[] values = new long[5000];
+        Set<Long> expected = new HashSet<>();
+        for (int i = 0; i < values.length; ++i) {
+            // Few distinct values so that there are duplicates and collisions
+            values[i] = random.nextInt(8000) - 4000;
+            expected.add(values[i]);
+        }
+        LongHashSet set = new LongHashSet(values);
+        Assert.assertEquals(set.size(), expected.size());
+        for (long i = -5000; i <= 5000; ++i) {
+            Assert.assertEquals(set.contains(i), expected.contains(i));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.operations.typesystem;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+public class TypedValuesTest {
+    @Test
+    public void testEmpty() {
+        TypedValues values = new TypedValues(emptyList());
+        for (Type type : Type.values()) {
+            Assert.assertTrue(values.isEmpty(type));
+        }
+        Assert.assertFalse(values.contains(Type.STRING, "foo"));
+        Assert.assertFalse(values.contains(Type.LONG, 1L));
+        Assert.assertFalse(values.contains(Type.NULL, null));
+    }
+
+    @Test
+    public void testUncastableValuesAreDropped() {
+        TypedValues values = new TypedValues(asList("foo", "1.5"));
+        Assert.assertTrue(values.isEmpty(Type.LONG));
+        Assert.assertFalse(values.isEmpty(Type.DOUBLE));
+        Assert.assertFalse(values.isEmpty(Type.STRING));
+        Assert.assertFalse(values.isEmpty(Type.BOOLEAN));
+        Assert.assertFalse(values.contains(Type.LONG, 1L));
+        Assert.assertTrue(values.contains(Type.DOUBLE, 1.5));
+        Assert.assertTrue(values.contains(Type.STRING, "foo"));
+    }
+
+    @Test
+    public void testNullValuesAreIgnored() {
+        TypedValues values = new TypedValues(asList(null, "1"));
+        Assert.assertTrue(values.contains(Type.LONG, 1L));
+        Assert.assertFalse(values.contains(Type.NULL, null));
+        Assert.assertEquals(values.compareToMinimum(Type.STRING, "1"), 0);
+    }
+
+    @Test
+    public void testNullLiteral() {
+        Assert.assertTrue(new TypedValues(asList("foo", "NuLL")).contains(Type.NULL, null));
+        Assert.assertFalse(new TypedValues(singletonList("foo")).contains(Type.NULL, null));
+    }
+
+    @Test
+    public void testBooleans() {
+        TypedValues values = new TypedValues(singletonList("TRUE"));
+        Assert.assertTrue(values.contains(Type.BOOLEAN, true));
+        Assert.assertFalse(values.contains(Type.BOOLEAN, false));
+        // Anything not true is false
+        values = new TypedValues(singletonList("foo"));
+        Assert.assertFalse(values.contains(Type.BOOLEAN, true));
+        Assert.assertTrue(values.contains(Type.BOOLEAN, false));
+        Assert.assertEquals(values.compareToMinimum(Type.BOOLEAN, true), 1);
+        Assert.assertEquals(values.compareToMaximum(Type.BOOLEAN, false), 0);
+    }
+
+    @Test
+    public void testMinimumAndMaximum() {
+        TypedValues values = new TypedValues(asList("5", "-3", "12", "abc"));
+        Assert.assertEquals(values.compareToMinimum(Type.LONG, -3L), 0);
+        Assert.assertEquals(values.compareToMaximum(Type.LONG, 12L), 0);
+        Assert.assertTrue(values.compareToMinimum(Type.LONG, -4L) < 0);
+        Assert.assertTrue(values.compareToMaximum(Type.LONG, 13L) > 0);
+
+        Assert.assertEquals(values.compareToMinimum(Type.DOUBLE, -3.0), 0);
+        Assert.assertEquals(values.compareToMaximum(Type.DOUBLE, 12.0), 0);
+
+        // Lexicographic for strings
+        Assert.assertEquals(values.compareToMinimum(Type.STRING, "-3"), 0);
+        Assert.assertEquals(values.compareToMaximum(Type.STRING, "abc"), 0);
+    }
+
+    @Test
+    public void testDoublesUseTotalOrdering() {
+        TypedValues values = new TypedValues(asList("NaN", "-0.0"));
+        Assert.assertTrue(values.contains(Type.DOUBLE, Double.NaN));
+        Assert.assertTrue(values.contains(Type.DOUBLE, -0.0));
+        Assert.assertFalse(values.contains(Type.DOUBLE, 0.0));
+        Assert.assertEquals(values.compareToMaximum(Type.DOUBLE, Double.NaN), 0);
+        Assert.assertEquals(values.compareToMinimum(Type.DOUBLE, -0.0), 0);
+    }
+
+    @Test(expectedExceptions = RuntimeException.class)
+    public void testUnsupportedComparison() {
+        new TypedValues(singletonList("foo")).compareToMinimum(Type.MAP, null);
+    }
+
+    @Test
+    public void testKeys() {
+        TypedValues values = new TypedValues(asList("1", "null", "1.0"));
+        Assert.assertEquals(values.getKeys(), new HashSet<>(asList("1", "null", "1.0", 1L, 1.0, false,
+                                                                   TypedValues.NULL_KEY)));
+        Assert.assertEquals(TypedValues.getKey(Type.NULL, null), TypedValues.NULL_KEY);
+        Assert.assertEquals(TypedValues.getKey(Type.LONG, 1L), 1L);
+    }
+
+    @Test
+    public void testLargeListsSameAsSmallLists() {
+        List<String> large = new ArrayList<>(asList("NaN", "-0.0", "true", "null", "foo"));
+        for (int i = 0; i < 4 * TypedValues.HASHING_THRESHOLD; ++i) {
+            large.add(String.valueOf(i * 7 - 100));
+            large.add(String.valueOf(i * 7 - 100 + 0.5));
+        }
+        TypedValues values = new TypedValues(large);
+        for (int i = -200; i < 500; ++i) {
+            boolean isValue = i >= -100 && (i + 100) % 7 == 0 && i < 4 * TypedValues.HASHING_THRESHOLD * 7 - 100;
+            Assert.assertEquals(values.contains(Type.LONG, (long) i), isValue);
+            Assert.assertEquals(values.contains(Type.STRING, String.valueOf(i)), isValue);
+            Assert.assertEquals(values.contains(Type.DOUBLE, i + 0.5), isValue);
+            Assert.assertEquals(values.contains(Type.DOUBLE, (double) i), isValue);
+        }
+        Assert.assertTrue(values.contains(Type.DOUBLE, Double.NaN));
+        Assert.assertTrue(values.contains(Type.DOUBLE, -0.0));
+        Assert.assertTrue(values.contains(Type.BOOLEAN, true));
+        Assert.assertTrue(values.contains(Type.NULL, null));
+        Assert.assertTrue(values.contains(Type.STRING, "foo"));
+        Assert.assertFalse(values.contains(Type.STRING, "bar"));
+    }
+
+    @Test
+    public void testNumericBounds() {
+        TypedValues values = new TypedValues(asList("5", "-2.5", "foo", "100"));
+        Assert.assertEquals(values.getNumericMinimum(), -2.5);
+        Assert.assertEquals(values.getNumericMaximum(), 100.0);
+
+        values = new TypedValues(asList("foo", "bar"));
+        Assert.assertEquals(values.getNumericMinimum(), Double.POSITIVE_INFINITY);
+        Assert.assertEquals(values.getNumericMaximum(), Double.NEGATIVE_INFINITY);
+
+        // NaN is above everything
+        values = new TypedValues(asList("NaN", "3"));
+        Assert.assertEquals(values.getNumericMinimum(), 3.0);
+        Assert.assertEquals(values.getNumericMaximum(), Double.POSITIVE_INFINITY);
+        values = new TypedValues(singletonList("NaN"));
+        Assert.assertEquals(values.getNumericMinimum(), Double.POSITIVE_INFINITY);
+
+        // Zeros are positive
+        values = new TypedValues(singletonList("-0.0"));
+        Assert.assertEquals(Double.doubleToLongBits(values.getNumericMinimum()), Double.doubleToLongBits(0.0));
+        Assert.assertEquals(Double.doubleToLongBits(values.getNumericMaximum()), Double.doubleToLongBits(0.0));
+    }
+}
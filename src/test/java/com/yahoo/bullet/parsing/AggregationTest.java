@@ -8,6 +8,7 @@ package com.yahoo.bullet.parsing;
 import com.yahoo.bullet.BulletConfig;
 import com.yahoo.bullet.TestHelpers;
 import com.yahoo.bullet.operations.aggregations.GroupOperation;
+import com.yahoo.bullet.operations.aggregations.Percentile;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -19,6 +20,7 @@ import java.util.Set;
 import static com.yahoo.bullet.operations.AggregationOperations.AggregationType.COUNT_DISTINCT;
 import static com.yahoo.bullet.operations.AggregationOperations.AggregationType.GROUP;
 import static com.yahoo.bullet.operations.AggregationOperations.AggregationType.PERCENTILE;
+import static com.yahoo.bullet.operations.AggregationOperations.AggregationType.TOP;
 import static com.yahoo.bullet.operations.AggregationOperations.GroupOperationType.COUNT;
 import static com.yahoo.bullet.operations.AggregationOperations.GroupOperationType.COUNT_FIELD;
 import static com.yahoo.bullet.operations.AggregationOperations.GroupOperationType.SUM;
@@ -58,6 +60,35 @@ public class AggregationTest {
         Assert.assertEquals(aggregation.getSize(), Aggregation.DEFAULT_MAX_SIZE);
     }
 
+    @Test
+    public void testGroupOnFieldsSize() {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(GROUP);
+        aggregation.setFields(singletonMap("field", "name"));
+
+        aggregation.setSize(null);
+        aggregation.configure(emptyMap());
+        Assert.assertEquals(aggregation.getSize(), Aggregation.DEFAULT_GROUP_MAX_SIZE);
+
+        aggregation.setSize(Aggregation.DEFAULT_MAX_SIZE + 1);
+        aggregation.configure(emptyMap());
+        Assert.assertEquals(aggregation.getSize(), (Integer) (Aggregation.DEFAULT_MAX_SIZE + 1));
+
+        aggregation.setSize(Aggregation.DEFAULT_GROUP_MAX_SIZE + 1);
+        aggregation.configure(emptyMap());
+        Assert.assertEquals(aggregation.getSize(), Aggregation.DEFAULT_GROUP_MAX_SIZE);
+
+        aggregation.setSize(null);
+        aggregation.configure(singletonMap(BulletConfig.GROUP_AGGREGATION_MAX_SIZE, 100));
+        Assert.assertEquals(aggregation.getSize(), (Integer) 100);
+
+        // Without fields, a GROUP has one record so it uses the usual sizes
+        aggregation.setFields(null);
+        aggregation.setSize(null);
+        aggregation.configure(emptyMap());
+        Assert.assertEquals(aggregation.getSize(), Aggregation.DEFAULT_SIZE);
+    }
+
     @Test
     public void testConfiguredSize() {
         Map<String, Object> config = new HashMap<>();
@@ -105,12 +136,49 @@ public class AggregationTest {
     }
 
     @Test
-    public void testFailValidateOnUnknownType() {
+    public void testFailValidateOnPercentileFieldsMissing() {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(PERCENTILE);
+        List<Error> errors = aggregation.validate().get();
+        Assert.assertEquals(errors.size(), 1);
+        Assert.assertEquals(errors.get(0), Aggregation.PERCENTILE_REQUIRES_ONE_FIELD_ERROR);
+
+        Map<String, String> fields = new HashMap<>();
+        fields.put("foo", null);
+        fields.put("bar", null);
+        aggregation.setFields(fields);
+        errors = aggregation.validate().get();
+        Assert.assertEquals(errors.size(), 1);
+        Assert.assertEquals(errors.get(0), Aggregation.PERCENTILE_REQUIRES_ONE_FIELD_ERROR);
+    }
+
+    @Test
+    public void testFailValidateOnPercentileType() {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(PERCENTILE);
+        aggregation.setFields(singletonMap("foo", null));
+        aggregation.setAttributes(singletonMap(Percentile.TYPE_KEY, "HISTOGRAM"));
+        List<Error> errors = aggregation.validate().get();
+        Assert.assertEquals(errors.size(), 1);
+        Assert.assertEquals(errors.get(0), Aggregation.PERCENTILE_TYPE_ERROR);
+    }
+
+    @Test
+    public void testFailValidateOnPercentileQuantiles() {
         Aggregation aggregation = new Aggregation();
         aggregation.setType(PERCENTILE);
+        aggregation.setFields(singletonMap("foo", null));
+        aggregation.setAttributes(singletonMap(Percentile.POINTS_KEY, asList(0.5, 1.5)));
         List<Error> errors = aggregation.validate().get();
         Assert.assertEquals(errors.size(), 1);
-        Assert.assertEquals(errors.get(0).getError(), Aggregation.TYPE_NOT_SUPPORTED_ERROR_PREFIX + ": PERCENTILE");
+        Assert.assertEquals(errors.get(0), Aggregation.PERCENTILE_QUANTILES_ERROR);
+
+        // Any points are fine for the other types
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(Percentile.TYPE_KEY, "PMF");
+        attributes.put(Percentile.POINTS_KEY, asList(-10, 1.5, 20L));
+        aggregation.setAttributes(attributes);
+        Assert.assertFalse(aggregation.validate().isPresent());
     }
 
     @Test
@@ -123,13 +191,22 @@ public class AggregationTest {
     }
 
     @Test
-    public void testFailValidateOnGroupWithFields() {
+    public void testValidateGroupWithFieldsAndNoOperations() {
         Aggregation aggregation = new Aggregation();
         aggregation.setType(GROUP);
         aggregation.setFields(singletonMap("foo", "bar"));
-        List<Error> errors = aggregation.validate().get();
-        Assert.assertEquals(errors.size(), 1);
-        Assert.assertEquals(errors.get(0).getError(), Aggregation.GROUP_FIELDS_NOT_SUPPORTED_ERROR.getError());
+        aggregation.configure(emptyMap());
+        Assert.assertFalse(aggregation.validate().isPresent());
+    }
+
+    @Test
+    public void testValidateGroupWithFieldsAndOperations() {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(GROUP);
+        aggregation.setFields(singletonMap("foo", "bar"));
+        aggregation.setAttributes(makeAttributes(makeGroupOperation(COUNT, null, "count")));
+        aggregation.configure(emptyMap());
+        Assert.assertFalse(aggregation.validate().isPresent());
     }
 
     @Test
@@ -241,6 +318,17 @@ public class AggregationTest {
 
     }
 
+    @Test
+    public void testFailValidateOnTopKFieldsMissing() {
+        Aggregation aggregation = new Aggregation();
+        aggregation.setType(TOP);
+        aggregation.configure(emptyMap());
+
+        List<Error> errors = aggregation.validate().get();
+        Assert.assertEquals(errors.size(), 1);
+        Assert.assertEquals(errors.get(0), Aggregation.TOP_K_REQUIRES_FIELD_ERROR);
+    }
+
     @Test
     public void testToString() {
         Aggregation aggregation = new Aggregation();
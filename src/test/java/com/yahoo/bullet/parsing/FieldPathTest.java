@@ -0,0 +1,77 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.parsing;
+
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.RecordBox;
+import org.apache.commons.lang3.tuple.Pair;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import static java.util.Collections.singletonMap;
+
+public class FieldPathTest {
+    @Test
+    public void testResolving() {
+        FieldPath path = new FieldPath("field");
+        Assert.assertEquals(path.getField(), "field");
+        Assert.assertNull(path.getSubKey());
+        Assert.assertFalse(path.hasSubKey());
+
+        path = new FieldPath("map_field.id.nested");
+        Assert.assertEquals(path.getField(), "map_field");
+        Assert.assertEquals(path.getSubKey(), "id.nested");
+        Assert.assertTrue(path.hasSubKey());
+        Assert.assertEquals(path.toString(), "map_field.id.nested");
+
+        path = new FieldPath("field.");
+        Assert.assertEquals(path.getField(), "field");
+        Assert.assertEquals(path.getSubKey(), "");
+
+        Assert.assertNull(FieldPath.of(null));
+        Assert.assertEquals(FieldPath.of("a.b"), new FieldPath("a.b"));
+        Assert.assertNotEquals(FieldPath.of("a.b"), new FieldPath("a"));
+    }
+
+    @Test
+    public void testSameAsSplitting() {
+        for (String field : new String[] {"a", "a.b", "a.b.c", ".a", "a.", ".", ""}) {
+            String[] expected = field.split(Specification.SUB_KEY_SEPERATOR, 2);
+            Assert.assertEquals(Specification.getFields(field), expected, field);
+        }
+    }
+
+    @Test
+    public void testExtracting() {
+        BulletRecord record = RecordBox.get().add("field", "foo").add("num", 42L)
+                                             .addMap("map_field", Pair.of("id", "123"))
+                                             .addList("list_field", singletonMap("id", "123"))
+                                             .getRecord();
+        Assert.assertEquals(new FieldPath("field").extract(record), "foo");
+        Assert.assertEquals(new FieldPath("num").extract(record), 42L);
+        Assert.assertEquals(new FieldPath("map_field.id").extract(record), "123");
+        Assert.assertNull(new FieldPath("map_field.foo").extract(record));
+        Assert.assertNull(new FieldPath("missing").extract(record));
+        Assert.assertNull(new FieldPath("field.foo").extract(record));
+        Assert.assertNull(new FieldPath("list_field.id").extract(record));
+        Assert.assertNull(new FieldPath("").extract(record));
+    }
+
+    @Test
+    public void testCopying() {
+        BulletRecord record = RecordBox.get().add("field", "foo").addMap("map_field", Pair.of("id", "123")).getRecord();
+        BulletRecord target = new BulletRecord();
+        new FieldPath("field").copyInto(target, "bar", record);
+        new FieldPath("map_field.id").copyInto(target, "id", record);
+        Assert.assertEquals(target, RecordBox.get().add("bar", "foo").add("id", "123").getRecord());
+    }
+
+    @Test(expectedExceptions = ClassCastException.class)
+    public void testCopyingFromNonMap() {
+        BulletRecord record = RecordBox.get().add("field", singletonMap("a", 1L).toString()).getRecord();
+        new FieldPath("field.a").copyInto(new BulletRecord(), "bar", record);
+    }
+}
@@ -5,12 +5,14 @@
  */
 package com.yahoo.bullet.parsing;
 
+import com.yahoo.bullet.BulletConfig;
 import com.yahoo.bullet.operations.FilterOperations.FilterType;
 import com.yahoo.bullet.result.RecordBox;
 import org.apache.commons.lang3.tuple.Pair;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +26,7 @@ import static com.yahoo.bullet.operations.FilterOperations.FilterType.REGEX_LIKE
 import static com.yahoo.bullet.parsing.RuleUtils.makeClause;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonMap;
 import static java.util.Collections.singletonList;
 
 public class FilterClauseTest {
@@ -217,7 +220,46 @@ public class FilterClauseTest {
     public void testValidate() {
         FilterClause filterClause = new FilterClause();
         Optional<List<Error>> errors = filterClause.validate();
-        // currently FilterClause.validate() does nothing
         Assert.assertFalse(errors.isPresent());
     }
+
+    @Test
+    public void testValidateTooManyValues() {
+        FilterClause filterClause = getFieldFilter(EQUALS, "1", "2", "3");
+        filterClause.configure(singletonMap(BulletConfig.FILTER_MAX_VALUES, 3));
+        Assert.assertFalse(filterClause.validate().isPresent());
+
+        filterClause.configure(singletonMap(BulletConfig.FILTER_MAX_VALUES, 2));
+        Optional<List<Error>> errors = filterClause.validate();
+        Assert.assertTrue(errors.isPresent());
+        Assert.assertEquals(errors.get().size(), 1);
+        Assert.assertEquals(errors.get().get(0).getError(), FilterClause.TOO_MANY_VALUES_ERROR_PREFIX + "field has 3");
+        Assert.assertEquals(errors.get().get(0).getResolutions(),
+                            singletonList(FilterClause.TOO_MANY_VALUES_RESOLUTION + 2));
+    }
+
+    @Test
+    public void testDefaultMaximumValues() throws IOException {
+        FilterClause filterClause = getFieldFilter(EQUALS, "1");
+        filterClause.configure(new BulletConfig().getAll(Optional.empty()));
+        Assert.assertEquals(filterClause.getMaximumValues(), FilterClause.DEFAULT_MAX_VALUES);
+    }
+
+    @Test
+    public void testManyValues() {
+        String[] values = new String[1000];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = String.valueOf(i * 3);
+        }
+        FilterClause filterClause = getFieldFilter(EQUALS, values);
+        Assert.assertTrue(filterClause.check(RecordBox.get().add("field", "2997").getRecord()));
+        Assert.assertTrue(filterClause.check(RecordBox.get().add("field", 0L).getRecord()));
+        Assert.assertTrue(filterClause.check(RecordBox.get().add("field", 300.0).getRecord()));
+        Assert.assertFalse(filterClause.check(RecordBox.get().add("field", 301L).getRecord()));
+        Assert.assertFalse(filterClause.check(RecordBox.get().add("field", "301").getRecord()));
+
+        filterClause = getFieldFilter(NOT_EQUALS, values);
+        Assert.assertFalse(filterClause.check(RecordBox.get().add("field", 42L).getRecord()));
+        Assert.assertTrue(filterClause.check(RecordBox.get().add("field", 43L).getRecord()));
+    }
 }
@@ -5,6 +5,7 @@
  */
 package com.yahoo.bullet.parsing;
 
+import com.yahoo.bullet.BulletConfig;
 import com.yahoo.bullet.operations.FilterOperations.FilterType;
 import com.yahoo.bullet.record.BulletRecord;
 import com.yahoo.bullet.result.RecordBox;
@@ -25,6 +26,7 @@ import static com.yahoo.bullet.parsing.RuleUtils.makeClause;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 
 public class LogicalClauseTest {
     public static Clause clause(String field, FilterType operation, String... values) {
@@ -239,7 +241,20 @@ public class LogicalClauseTest {
     public void testValidate() {
         LogicalClause logicalClause = new LogicalClause();
         Optional<List<Error>> errors = logicalClause.validate();
-        // currently LogicalClause.validate() does nothing
         Assert.assertFalse(errors.isPresent());
     }
+
+    @Test
+    public void testValidateCascades() {
+        LogicalClause logicalClause = clause(OR, clause("field", EQUALS, "1", "2"),
+                                            clause(NOT, clause("field", EQUALS, "1", "2", "3")));
+        logicalClause.configure(singletonMap(BulletConfig.FILTER_MAX_VALUES, 2));
+        Optional<List<Error>> errors = logicalClause.validate();
+        Assert.assertTrue(errors.isPresent());
+        Assert.assertEquals(errors.get().size(), 1);
+        Assert.assertEquals(errors.get().get(0).getError(), FilterClause.TOO_MANY_VALUES_ERROR_PREFIX + "field has 3");
+
+        logicalClause.configure(singletonMap(BulletConfig.FILTER_MAX_VALUES, 3));
+        Assert.assertFalse(logicalClause.validate().isPresent());
+    }
 }
@@ -42,6 +42,18 @@ public class ProjectionTest {
         Assert.assertEquals(actual, expected);
     }
 
+    @Test
+    public void testChangingFieldsAfterProjecting() {
+        Projection projection = new Projection();
+        projection.setFields(singletonMap("field", "foo"));
+        projection.configure(emptyMap());
+        BulletRecord record = RecordBox.get().add("field", "123").add("id", "456").getRecord();
+        Assert.assertEquals(projection.project(record), RecordBox.get().add("foo", "123").getRecord());
+
+        projection.setFields(singletonMap("id", "bar"));
+        Assert.assertEquals(projection.project(record), RecordBox.get().add("bar", "456").getRecord());
+    }
+
     @Test
     public void testUnsupportedProjection() {
         Projection projection = new Projection();
@@ -290,6 +290,8 @@ public class RuleUtils {
         switch (operation) {
             case TOP:
                 return "TOP";
+            case PERCENTILE:
+                return "PERCENTILE";
             case RAW:
                 return "RAW";
             case GROUP:
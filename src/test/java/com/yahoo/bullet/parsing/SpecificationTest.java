@@ -18,6 +18,7 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -98,20 +99,6 @@ public class SpecificationTest {
         Assert.assertEquals(specification.getAggregate().getRecords(), emptyList());
     }
 
-    @Test
-    public void testExtractField() {
-        BulletRecord record = RecordBox.get().add("field", "foo").add("map_field.foo", "bar")
-                                             .addMap("map_field", Pair.of("foo", "baz"))
-                                             .addList("list_field", singletonMap("foo", "baz"))
-                                             .getRecord();
-
-        Assert.assertNull(Specification.extractField(null, record));
-        Assert.assertNull(Specification.extractField("", record));
-        Assert.assertNull(Specification.extractField("id", record));
-        Assert.assertEquals(Specification.extractField("map_field.foo", record), "baz");
-        Assert.assertNull(Specification.extractField("list_field.bar", record));
-    }
-
     @Test
     public void testAggregationForced() {
         Specification specification = new Specification();
@@ -353,17 +340,128 @@ public class SpecificationTest {
 
         Assert.assertEquals(specification.toString(),
                             "{filters: null, projection: null, " +
-                            "aggregation: {size: 1, type: RAW, fields: null, attributes: null}, duration: 30000}");
+                            "aggregation: {size: 1, type: RAW, fields: null, attributes: null}, duration: 30000, " +
+                            "sampling: null}");
 
         specification.setFilters(singletonList(FilterClauseTest.getFieldFilter(FilterType.EQUALS, "foo", "bar")));
         Projection projection = new Projection();
         projection.setFields(singletonMap("field", "bid"));
         specification.setProjection(projection);
+        specification.setSampling(0.5);
         specification.configure(emptyMap());
 
         Assert.assertEquals(specification.toString(),
                             "{filters: [{operation: EQUALS, field: field, values: [foo, bar]}], " +
                             "projection: {fields: {field=bid}}, " +
-                            "aggregation: {size: 1, type: RAW, fields: null, attributes: null}, duration: 30000}");
+                            "aggregation: {size: 1, type: RAW, fields: null, attributes: null}, duration: 30000, " +
+                            "sampling: 0.5}");
+    }
+
+    @Test
+    public void testCopying() {
+        Specification specification = Parser.parse(RuleUtils.makeRawFullRule("field", asList("foo", "bar"),
+                                                                             FilterType.EQUALS, AggregationType.RAW, 2,
+                                                                             Pair.of("field", "new")),
+                                                   emptyMap());
+        Specification copy = new Specification(specification);
+        Assert.assertSame(copy.getFilters(), specification.getFilters());
+        Assert.assertSame(copy.getProjection(), specification.getProjection());
+        Assert.assertEquals(copy.getDuration(), specification.getDuration());
+        Assert.assertEquals(copy.getAggregation().getSize(), specification.getAggregation().getSize());
+        Assert.assertNotSame(copy.getAggregation().getStrategy(), specification.getAggregation().getStrategy());
+
+        BulletRecord record = RecordBox.get().add("field", "foo").getRecord();
+        Assert.assertTrue(copy.filter(record));
+        Assert.assertFalse(copy.filter(RecordBox.get().add("field", "baz").getRecord()));
+        copy.aggregate(copy.project(record));
+        copy.aggregate(copy.project(record));
+        // Only the copy has aggregated anything
+        Assert.assertFalse(copy.isAcceptingData());
+        Assert.assertTrue(specification.isAcceptingData());
+        Assert.assertEquals(copy.getAggregate().getRecords(),
+                            asList(RecordBox.get().add("new", "foo").getRecord(),
+                                   RecordBox.get().add("new", "foo").getRecord()));
+    }
+
+    @Test
+    public void testSamplingDefaults() {
+        Specification specification = new Specification();
+        specification.configure(emptyMap());
+        Assert.assertNull(specification.getSampling());
+        Assert.assertEquals(specification.getSamplingRate(), 1.0);
+        Assert.assertEquals(specification.getAggregation().getSamplingRate(), 1.0);
+        Assert.assertTrue(IntStream.range(0, 100).allMatch(i -> specification.sample()));
+    }
+
+    @Test
+    public void testSamplingParsing() {
+        Specification specification = Parser.parse("{'sampling' : 0.25}", emptyMap());
+        Assert.assertEquals(specification.getSampling(), 0.25);
+        Assert.assertEquals(specification.getSamplingRate(), 0.25);
+        Assert.assertEquals(specification.getAggregation().getSamplingRate(), 0.25);
+        Assert.assertFalse(specification.validate().isPresent());
+        Assert.assertEquals(new Specification(specification).getAggregation().getSamplingRate(), 0.25);
+    }
+
+    @Test
+    public void testSamplingValidation() {
+        Specification specification = new Specification();
+        for (double sampling : asList(0.0, -0.5, 1.5, Double.NaN)) {
+            specification.setSampling(sampling);
+            Assert.assertEquals(specification.validate().get(), singletonList(Specification.SAMPLING_OUT_OF_RANGE_ERROR));
+        }
+        for (double sampling : asList(0.001, 0.5, 1.0)) {
+            specification.setSampling(sampling);
+            Assert.assertFalse(specification.validate().isPresent());
+        }
+    }
+
+    @Test
+    public void testSamplingCountDistinct() {
+        Specification specification = new Specification();
+        specification.getAggregation().setType(AggregationType.COUNT_DISTINCT);
+        specification.getAggregation().setFields(singletonMap("field", ""));
+        specification.setSampling(0.5);
+        Assert.assertFalse(specification.validate().isPresent());
+        specification.configure(emptyMap());
+        Assert.assertEquals(specification.getSamplingRate(), 0.5);
+        Assert.assertEquals(specification.getAggregation().getSamplingRate(), 0.5);
+
+        // The Sketch samples the distinct values instead of the records being sampled
+        Assert.assertTrue(IntStream.range(0, 100).allMatch(i -> specification.sample()));
+        BitSet selected = new BitSet();
+        selected.set(0, 100);
+        specification.sample(selected);
+        Assert.assertEquals(selected.cardinality(), 100);
+
+        specification.setSampling(0.0);
+        Assert.assertEquals(specification.validate().get(), singletonList(Specification.SAMPLING_OUT_OF_RANGE_ERROR));
+    }
+
+    @Test
+    public void testSampling() {
+        Specification specification = new Specification();
+        specification.setSampling(1.0);
+        Assert.assertTrue(IntStream.range(0, 100).allMatch(i -> specification.sample()));
+
+        specification.setSampling(0.5);
+        long kept = IntStream.range(0, 10000).filter(i -> specification.sample()).count();
+        // About 50 standard deviations from 5000 is never going to happen
+        Assert.assertTrue(kept > 2500 && kept < 7500);
+    }
+
+    @Test
+    public void testSamplingBatch() {
+        Specification specification = new Specification();
+        BitSet selected = new BitSet();
+        selected.set(0, 10000);
+        specification.sample(selected);
+        Assert.assertEquals(selected.cardinality(), 10000);
+
+        specification.setSampling(0.5);
+        selected.clear(5000, 10000);
+        specification.sample(selected);
+        Assert.assertTrue(selected.cardinality() > 1250 && selected.cardinality() < 3750);
+        Assert.assertTrue(selected.nextSetBit(5000) < 0);
     }
 }
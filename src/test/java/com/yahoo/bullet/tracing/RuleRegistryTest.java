@@ -0,0 +1,122 @@
+/*
+ *  Copyright 2016, Yahoo Inc.
+ *  Licensed under the terms of the Apache License, Version 2.0.
+ *  See the LICENSE file associated with the project for terms.
+ */
+package com.yahoo.bullet.tracing;
+
+import com.google.gson.JsonParseException;
+import com.yahoo.bullet.BulletConfig;
+import com.yahoo.bullet.operations.AggregationOperations.AggregationType;
+import com.yahoo.bullet.parsing.ParsingException;
+import com.yahoo.bullet.record.BulletRecord;
+import com.yahoo.bullet.result.RecordBox;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.yahoo.bullet.operations.FilterOperations.FilterType.EQUALS;
+import static com.yahoo.bullet.parsing.RuleUtils.getFilterRule;
+import static com.yahoo.bullet.parsing.RuleUtils.makeAggregationRule;
+import static com.yahoo.bullet.parsing.RuleUtils.makeFieldFilterRule;
+import static com.yahoo.bullet.parsing.RuleUtils.makeSimpleAggregationFilterRule;
+import static java.util.Collections.emptyMap;
+import static java.util.Collections.singletonList;
+
+public class RuleRegistryTest {
+    private RuleRegistry registry;
+
+    @BeforeMethod
+    public void setup() {
+        registry = new RuleRegistry();
+    }
+
+    @Test
+    public void testSharedInstance() {
+        Assert.assertSame(RuleRegistry.getInstance(), RuleRegistry.getInstance());
+    }
+
+    @Test
+    public void testRulesAreParsedOnce() throws ParsingException {
+        String ruleString = makeSimpleAggregationFilterRule("field", singletonList("foo"), EQUALS,
+                                                            AggregationType.RAW, 2);
+        FilterRule first = registry.acquire(1L, ruleString, emptyMap());
+        FilterRule second = registry.acquire(1L, ruleString, new HashMap<>());
+        Assert.assertEquals(registry.size(), 1);
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(first.specification.getFilters(), second.specification.getFilters());
+        Assert.assertEquals(first.toString(), ruleString);
+
+        // Another id is another rule
+        registry.acquire(2L, ruleString, emptyMap());
+        Assert.assertEquals(registry.size(), 2);
+    }
+
+    @Test
+    public void testRulesHaveTheirOwnData() throws ParsingException {
+        String ruleString = makeSimpleAggregationFilterRule("field", singletonList("foo"), EQUALS,
+                                                            AggregationType.RAW, 2);
+        FilterRule first = registry.acquire(1L, ruleString, emptyMap());
+        FilterRule second = registry.acquire(1L, ruleString, emptyMap());
+        FilterRule expected = getFilterRule(ruleString, emptyMap());
+
+        BulletRecord record = RecordBox.get().add("field", "foo").getRecord();
+        Assert.assertTrue(first.consume(record));
+        Assert.assertTrue(expected.consume(record));
+        Assert.assertEquals(first.getData(), expected.getData());
+        Assert.assertNull(second.getData());
+        Assert.assertFalse(second.consume(RecordBox.get().add("field", "bar").getRecord()));
+    }
+
+    @Test
+    public void testRulesAreDroppedWhenReleased() throws ParsingException {
+        String ruleString = makeFieldFilterRule("foo");
+        FilterRule first = registry.acquire(1L, ruleString, emptyMap());
+        FilterRule second = registry.acquire(1L, ruleString, emptyMap());
+
+        registry.release(1L, first);
+        // Releasing again or releasing rules that were not acquired does nothing
+        registry.release(1L, first);
+        registry.release(1L, getFilterRule(ruleString, emptyMap()));
+        registry.release(2L, second);
+        Assert.assertEquals(registry.size(), 1);
+
+        registry.release(1L, second);
+        Assert.assertEquals(registry.size(), 0);
+
+        FilterRule third = registry.acquire(1L, ruleString, emptyMap());
+        Assert.assertNotSame(third.specification.getFilters(), first.specification.getFilters());
+    }
+
+    @Test
+    public void testDifferentConfigurationsAreNotShared() throws ParsingException {
+        String ruleString = makeAggregationRule(AggregationType.RAW, 10);
+        FilterRule first = registry.acquire(1L, ruleString, emptyMap());
+        Map<String, Object> configuration = new HashMap<>();
+        configuration.put(BulletConfig.AGGREGATION_MAX_SIZE, 5);
+        FilterRule second = registry.acquire(1L, ruleString, configuration);
+
+        Assert.assertEquals(registry.size(), 1);
+        Assert.assertEquals(first.specification.getAggregation().getSize(), Integer.valueOf(10));
+        Assert.assertEquals(second.specification.getAggregation().getSize(), Integer.valueOf(5));
+        registry.release(1L, second);
+        Assert.assertEquals(registry.size(), 1);
+    }
+
+    @Test(expectedExceptions = ParsingException.class)
+    public void testInvalidRules() throws ParsingException {
+        try {
+            registry.acquire(1L, "{'aggregation': {'type': 'GROUP'}}", emptyMap());
+        } finally {
+            Assert.assertEquals(registry.size(), 0);
+        }
+    }
+
+    @Test(expectedExceptions = JsonParseException.class)
+    public void testUnparseableRules() throws ParsingException {
+        registry.acquire(1L, "{", emptyMap());
+    }
+}